@@ -100,7 +100,7 @@ private HdfsMetaInfoSchema() throws SQLException {
       String[] tableNames = new String[] {
         "hdfs", "namespace", "inodes", "namenodes", "mount", "stringtable",
         "inodexattrs", "inodeuc", "inode2block", "datablocks", "blockstripes",
-        "block2storage", "storage", "delegationkeys", "persisttokens"};
+        "block2storage", "storage", "delegationkeys", "persisttokens", "inodefilters"};
       for (String tableName : tableNames) {
         if (env.equals("VOLT")) {
           sql1 += String.format("DROP TABLE %s IF EXISTS;", tableName);
@@ -173,9 +173,13 @@ private HdfsMetaInfoSchema() throws SQLException {
       if (env.equals("IGNITE")) {
         sql8 += " with \"atomicity=TRANSACTIONAL_SNAPSHOT,template=partitioned,affinityKey=parentName,cache_name=inodes,key_type=InodeKey,value_type=Inode\";";
         sql8 += "CREATE INDEX inode_idx ON inodes (id) inline_size 9;";
+        sql8 += "CREATE INDEX inode_parent ON inodes (parent, name);";
       } else if (env.equals("VOLT")) {
         sql8 += "; PARTITION TABLE inodes ON COLUMN parentName;";
         sql8 += "CREATE ASSUMEUNIQUE INDEX inode_id ON inodes(id);";
+        sql8 += "CREATE INDEX inode_parent ON inodes(parent, name);";
+      } else {
+        sql8 += "; CREATE INDEX inode_parent ON inodes(parent, name);";
       }
 
       String sql9 =
@@ -240,6 +244,20 @@ private HdfsMetaInfoSchema() throws SQLException {
         sql15 += " with \"atomicity=TRANSACTIONAL_SNAPSHOT,template=replicated, cache_name=storage, key_type=StorageKey, value_type=Storage\";";
       }
 
+      String sql16 =
+      "CREATE TABLE inodefilters("
+      + "   id bigint primary key, bits %s"
+      + ")";
+      if (env.equals("IGNITE")) {
+        sql16 = String.format(sql16, "varbinary");
+        sql16 += " with \"atomicity=TRANSACTIONAL_SNAPSHOT,template=replicated, cache_name=inodefilters, key_type=InodeFiltersKey, value_type=InodeFilters\";";
+      } else if (env.equals("VOLT")) {
+        sql16 = String.format(sql16, "varbinary(1048576)");
+        sql16 += "; PARTITION TABLE inodefilters ON COLUMN id;";
+      } else {
+        sql16 = String.format(sql16, "bytea");
+      }
+
       // + "CREATE VIEW namenodes("
       // + "   namenode"
       // + ") AS SELECT DISTINCT namenode FROM mount;"
@@ -260,6 +278,7 @@ private HdfsMetaInfoSchema() throws SQLException {
       st.execute(sql13);
       st.execute(sql14);
       st.execute(sql15);
+      st.execute(sql16);
       st.close();
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
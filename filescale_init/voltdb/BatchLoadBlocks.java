@@ -0,0 +1,19 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class BatchLoadBlocks extends VoltProcedure {
+
+  public final SQLStmt sql1 =
+      new SQLStmt(
+          "SELECT blockId, numBytes, generationStamp, replication FROM datablocks WHERE blockId IN ?;");
+  public final SQLStmt sql2 = new SQLStmt("SELECT blockId, id FROM inode2block WHERE blockId IN ?;");
+  public final SQLStmt sql3 =
+      new SQLStmt("SELECT blockId, idx, storageId FROM block2storage WHERE blockId IN ?;");
+
+  public VoltTable[] run(long[] blockIds) throws VoltAbortException {
+    voltQueueSQL(sql1, blockIds);
+    voltQueueSQL(sql2, blockIds);
+    voltQueueSQL(sql3, blockIds);
+    return voltExecuteSQL();
+  }
+}
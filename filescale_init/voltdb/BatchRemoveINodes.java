@@ -79,15 +79,20 @@ public class BatchRemoveINodes extends VoltProcedure {
   // }
 
   public final SQLStmt sql1 = new SQLStmt("DELETE FROM inodes WHERE parentName = ? and name = ?;");
-  public final SQLStmt sql2 = new SQLStmt("DELETE FROM inodes WHERE parentName like '?%';");
+  // the prefix is bound as a parameter; a '?' inside a quoted pattern is a literal
+  public final SQLStmt sql2 = new SQLStmt(
+      "DELETE FROM inodes WHERE parentName = ? OR parentName STARTS WITH ?;");
 
   public long run(final String[] paths) throws VoltAbortException {
     for (int i = 0; i < paths.length; ++i) {
       File f = new File(paths[i]);
-      voltQueueSQL(sql1, f.getParent(), f.getName()); 
-      voltQueueSQL(sql2, paths[i]);
-    } 
-    voltExecuteSQL();
+      voltQueueSQL(sql1, f.getParent(), f.getName());
+      voltQueueSQL(sql2, paths[i], paths[i] + "/");
+      if ((i + 1) % 100 == 0) {
+        voltExecuteSQL();
+      }
+    }
+    voltExecuteSQL(true);
     return getUniqueId();
   }
 }
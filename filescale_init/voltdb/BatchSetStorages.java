@@ -0,0 +1,16 @@
+import org.voltdb.*;
+
+public class BatchSetStorages extends VoltProcedure {
+
+  public final SQLStmt sql =
+      new SQLStmt("UPDATE block2storage SET storageId = ? WHERE blockId = ? and idx = ?;");
+
+  public long run(final long[] blockIds, final int[] idxs, final String[] storageIds)
+      throws VoltAbortException {
+    for (int i = 0; i < blockIds.length; ++i) {
+      voltQueueSQL(sql, storageIds[i], blockIds[i], idxs[i]);
+    }
+    voltExecuteSQL();
+    return getUniqueId();
+  }
+}
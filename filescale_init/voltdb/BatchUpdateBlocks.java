@@ -0,0 +1,16 @@
+import org.voltdb.*;
+
+public class BatchUpdateBlocks extends VoltProcedure {
+
+  public final SQLStmt sql =
+      new SQLStmt("UPSERT INTO block2storage(blockId, idx, storageId) VALUES (?, ?, ?);");
+
+  public long run(final long[] blockIds, final int[] idxs, final String[] storageIds)
+      throws VoltAbortException {
+    for (int i = 0; i < blockIds.length; ++i) {
+      voltQueueSQL(sql, blockIds[i], idxs[i], storageIds[i]);
+    }
+    voltExecuteSQL();
+    return getUniqueId();
+  }
+}
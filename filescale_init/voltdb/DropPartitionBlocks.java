@@ -0,0 +1,14 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class DropPartitionBlocks extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt(
+    "DELETE FROM inode2block WHERE id IN (SELECT id FROM inodes WHERE parentName = ?);");
+
+  public long run(String parentName) throws VoltAbortException {
+    voltQueueSQL(sql, parentName);
+    voltExecuteSQL(true);
+    return 1;
+  }
+}
@@ -0,0 +1,12 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetINodeFilter extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("SELECT bits FROM inodefilters WHERE id = ?;");
+
+  public VoltTable[] run(long id) throws VoltAbortException {
+    voltQueueSQL(sql, id);
+    return voltExecuteSQL();
+  }
+}
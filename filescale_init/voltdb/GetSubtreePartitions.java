@@ -0,0 +1,13 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class GetSubtreePartitions extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt(
+    "SELECT DISTINCT parentName FROM inodes WHERE parentName = ? OR parentName STARTS WITH ?;");
+
+  public VoltTable[] run(String path) throws VoltAbortException {
+    voltQueueSQL(sql, path, path + "/");
+    return voltExecuteSQL();
+  }
+}
@@ -5,10 +5,12 @@ public class LoadINode extends VoltProcedure {
 
   public final SQLStmt sql =
       new SQLStmt(
-          "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE id = ?;");
+          "SELECT i.parent, i.parentName, i.id, i.name, i.permission, i.modificationTime, i.accessTime, i.header,"
+              + " u.clientName, u.clientMachine FROM inodes i LEFT JOIN inodeuc u ON i.id = u.id"
+              + " WHERE i.id = ?;");
 
-  public VoltTable[] run(long parentId, String childName) throws VoltAbortException {
-    voltQueueSQL(sql, parentId, childName);
+  public VoltTable[] run(long id) throws VoltAbortException {
+    voltQueueSQL(sql, id);
     return voltExecuteSQL();
   }
 }
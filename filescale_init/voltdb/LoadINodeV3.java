@@ -5,7 +5,9 @@ public class LoadINodeV3 extends VoltProcedure {
 
   public final SQLStmt sql =
       new SQLStmt(
-          "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE parentName = ? AND name = ?;");
+          "SELECT i.parent, i.parentName, i.id, i.name, i.permission, i.modificationTime, i.accessTime, i.header,"
+              + " u.clientName, u.clientMachine FROM inodes i LEFT JOIN inodeuc u ON i.id = u.id"
+              + " WHERE i.parentName = ? AND i.name = ?;");
 
   public VoltTable[] run(String parentName, String childName) throws VoltAbortException {
     voltQueueSQL(sql, parentName, childName);
@@ -0,0 +1,17 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class ReclaimPartition extends VoltProcedure {
+
+  public final SQLStmt sql1 = new SQLStmt(
+    "SELECT i.id, i.header, u.id, b.blockId, d.numBytes FROM inodes i"
+    + " LEFT JOIN inodeuc u ON i.id = u.id"
+    + " LEFT JOIN inode2block b ON i.id = b.id"
+    + " LEFT JOIN datablocks d ON b.blockId = d.blockId"
+    + " WHERE i.parentName = ?;");
+
+  public VoltTable[] run(String parentName) throws VoltAbortException {
+    voltQueueSQL(sql1, parentName);
+    return voltExecuteSQL(true);
+  }
+}
@@ -0,0 +1,13 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class RemoveINodeFilter extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("DELETE FROM inodefilters WHERE id = ?;");
+
+  public long run(long id) throws VoltAbortException {
+    voltQueueSQL(sql, id);
+    voltExecuteSQL();
+    return 1;
+  }
+}
@@ -0,0 +1,57 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class RenameSubtree extends VoltProcedure {
+  // a procedure may queue at most 200 statements per batch; each row takes two
+  private static final int ROWS_PER_BATCH = 100;
+
+  public final SQLStmt sql1 = new SQLStmt(
+    "SELECT id, name, accessTime, modificationTime, permission, header, parent, parentName"
+    + " FROM inodes WHERE parentName = ? OR parentName STARTS WITH ? LIMIT ?;");
+
+  public final SQLStmt sql2 = new SQLStmt("DELETE FROM inodes WHERE parentName = ? AND name = ?;");
+
+  // parentName is the partition column, so a moved row is deleted and inserted
+  public final SQLStmt sql3 = new SQLStmt("INSERT INTO inodes("
+    + "id, name, accessTime, modificationTime, permission, header, parent, parentName"
+    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?);");
+
+  /**
+   * Moves at most {@code limit} rows below {@code oldPath} under {@code newPath}, keeping their
+   * ids and names.
+   *
+   * @return one row: the number of rows moved, and the transaction id.
+   */
+  public VoltTable[] run(String oldPath, String newPath, int limit) throws VoltAbortException {
+    voltQueueSQL(sql1, oldPath, oldPath + "/", limit);
+    VoltTable rows = voltExecuteSQL()[0];
+    int moved = rows.getRowCount();
+
+    int queued = 0;
+    rows.resetRowPosition();
+    while (rows.advanceRow()) {
+      String parentName = rows.getString(7);
+      voltQueueSQL(sql2, parentName, rows.getString(1));
+      voltQueueSQL(sql3,
+        rows.getLong(0),
+        rows.getString(1),
+        rows.getLong(2),
+        rows.getLong(3),
+        rows.getLong(4),
+        rows.getLong(5),
+        rows.getLong(6),
+        newPath + parentName.substring(oldPath.length()));
+      if (++queued == ROWS_PER_BATCH) {
+        voltExecuteSQL();
+        queued = 0;
+      }
+    }
+    voltExecuteSQL(true);
+
+    VoltTable result = new VoltTable(
+      new VoltTable.ColumnInfo("moved", VoltType.BIGINT),
+      new VoltTable.ColumnInfo("txnId", VoltType.BIGINT));
+    result.addRow(moved, getUniqueId());
+    return new VoltTable[] {result};
+  }
+}
@@ -0,0 +1,13 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class SetINodeFilter extends VoltProcedure {
+
+  public final SQLStmt sql = new SQLStmt("UPSERT INTO inodefilters(id, bits) VALUES(?, ?);");
+
+  public long run(long id, byte[] bits) throws VoltAbortException {
+    voltQueueSQL(sql, id, bits);
+    voltExecuteSQL();
+    return 1;
+  }
+}
@@ -0,0 +1,33 @@
+import org.voltdb.*;
+
+// https://docs.voltdb.com/tutorial/Part5.php
+public class SetSubtreePermission extends VoltProcedure {
+
+  public final SQLStmt sql1 = new SQLStmt(
+    "UPDATE inodes SET permission = BITOR(BITAND(permission, ?), ?) WHERE id = ?;");
+
+  public final SQLStmt sql2 = new SQLStmt(
+    "UPDATE inodes SET permission = BITOR(BITAND(permission, ?), ?)"
+    + " WHERE parentName = ? OR parentName STARTS WITH ?;");
+
+  /**
+   * Sets {@code permission = (permission & keep) | bits} on inode {@code id}, which is at
+   * {@code path}, and on every inode below it. Every partition is updated in this one
+   * transaction, so a recursive chmod or chown is atomic whatever the size of the subtree.
+   *
+   * @return one row: the number of rows updated, and the transaction id.
+   */
+  public VoltTable[] run(long id, String path, long keep, long bits) throws VoltAbortException {
+    String prefix = path.equals("/") ? path : path + "/";
+    voltQueueSQL(sql1, keep, bits, id);
+    voltQueueSQL(sql2, keep, bits, path, prefix);
+    VoltTable[] res = voltExecuteSQL(true);
+    long updated = res[0].asScalarLong() + res[1].asScalarLong();
+
+    VoltTable result = new VoltTable(
+      new VoltTable.ColumnInfo("updated", VoltType.BIGINT),
+      new VoltTable.ColumnInfo("txnId", VoltType.BIGINT));
+    result.addRow(updated, getUniqueId());
+    return new VoltTable[] {result};
+  }
+}
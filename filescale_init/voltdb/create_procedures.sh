@@ -40,7 +40,23 @@ Creating New Stored Procedures ...
 EOF
 
 
+## single-partition procedures: the partitioning column and the parameter that
+## carries it, so that the client sends each call straight to the owning node
+declare -A PARTITIONS=(
+    [LoadINodeV3]="TABLE inodes COLUMN parentName PARAMETER 0"
+    [InsertINode]="TABLE inodes COLUMN parentName PARAMETER 7"
+    [ReclaimPartition]="TABLE inodes COLUMN parentName PARAMETER 0"
+    [GetINodeFilter]="TABLE inodefilters COLUMN id PARAMETER 0"
+    [SetINodeFilter]="TABLE inodefilters COLUMN id PARAMETER 0"
+    [RemoveINodeFilter]="TABLE inodefilters COLUMN id PARAMETER 0"
+)
+
 for procedure in $VOLTDB_PROCEDURES
 do
-    echo "CREATE PROCEDURE FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    if [[ -n "${PARTITIONS[$procedure]}" ]];
+    then
+        echo "CREATE PROCEDURE PARTITION ON ${PARTITIONS[$procedure]} FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    else
+        echo "CREATE PROCEDURE FROM CLASS $procedure;" | sqlcmd --servers=$1;
+    fi
 done
@@ -97,6 +97,8 @@ public class Client implements AutoCloseable {
       = new ThreadLocal<>();
   private static final ThreadLocal<AsyncGet<? extends Writable, IOException>>
       ASYNC_RPC_RESPONSE = new ThreadLocal<>();
+  private static final ThreadLocal<CompletableFuture<Void>>
+      ASYNC_RPC_COMPLETION = new ThreadLocal<>();
   private static final ThreadLocal<Boolean> asynchronousMode =
       new ThreadLocal<Boolean>() {
         @Override
@@ -112,6 +114,18 @@ protected Boolean initialValue() {
     return (AsyncGet<T, IOException>) ASYNC_RPC_RESPONSE.get();
   }
 
+  /**
+   * @return a future completed once the response of the last asynchronous
+   * call of this thread, or its error, can be taken from
+   * {@link #getAsyncRpcResponse()} without waiting. It is completed on the
+   * thread that reads the responses of the connection, so the actions that
+   * depend on it must not block.
+   */
+  @Unstable
+  public static CompletableFuture<Void> getAsyncRpcCompletion() {
+    return ASYNC_RPC_COMPLETION.get();
+  }
+
   /** Set call id and retry count for the next call. */
   public static void setCallIdAndRetryCount(int cid, int rc,
                                             Object externalHandler) {
@@ -344,6 +358,8 @@ static class Call {
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
     private final Object externalHandler;
+    // completed when the call is done, for asynchronous calls
+    private CompletableFuture<Void> completion;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -377,6 +393,9 @@ public String toString() {
     protected synchronized void callComplete() {
       this.done = true;
       notify();                                 // notify caller
+      if (completion != null) {
+        completion.complete(null);
+      }
 
       if (externalHandler != null) {
         synchronized (externalHandler) {
@@ -385,6 +404,14 @@ protected synchronized void callComplete() {
       }
     }
 
+    synchronized void setCompletion(CompletableFuture<Void> completion) {
+      if (done) {
+        completion.complete(null);
+      } else {
+        this.completion = completion;
+      }
+    }
+
     /** Set the exception when there is an error.
      * Notify the caller the call is done.
      * 
@@ -1456,7 +1483,10 @@ public boolean isDone() {
         }
       };
 
+      final CompletableFuture<Void> completion = new CompletableFuture<>();
+      call.setCompletion(completion);
       ASYNC_RPC_RESPONSE.set(asyncGet);
+      ASYNC_RPC_COMPLETION.set(completion);
       return null;
     } else {
       return getRpcResponse(call, connection, -1, null);
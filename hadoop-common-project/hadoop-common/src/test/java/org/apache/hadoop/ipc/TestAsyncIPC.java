@@ -28,6 +28,7 @@
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.concurrent.AsyncGet;
 import org.apache.hadoop.util.concurrent.AsyncGetFuture;
 import org.junit.Assert;
 import org.junit.Before;
@@ -38,6 +39,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +47,7 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TestAsyncIPC {
 
@@ -291,6 +294,36 @@ public void testCallGetReturnRpcResponseMultipleTimes() throws IOException,
     }
   }
 
+  @Test(timeout = 60000)
+  public void testAsyncRpcCompletion() throws Exception {
+    Server server = new TestIPC.TestServer(10, false, conf);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+    try {
+      List<CompletableFuture<Void>> completions = new ArrayList<>();
+      List<AsyncGet<LongWritable, IOException>> responses = new ArrayList<>();
+      List<Long> params = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        long param = TestIPC.RANDOM.nextLong();
+        TestIPC.call(client, param, addr, conf);
+        completions.add(Client.getAsyncRpcCompletion());
+        responses.add(Client.<LongWritable>getAsyncRpcResponse());
+        params.add(param);
+      }
+      for (int i = 0; i < 10; i++) {
+        completions.get(i).get();
+        // the response is there once the call is complete
+        assertTrue(responses.get(i).isDone());
+        assertEquals(params.get(i).longValue(),
+            responses.get(i).get(0, TimeUnit.MILLISECONDS).get());
+      }
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout = 60000)
   public void testFutureGetWithTimeout() throws IOException,
       InterruptedException, ExecutionException {
@@ -107,6 +107,18 @@ public Block(Block blk) {
     blockId = blk.getBlockId();
   }
 
+  private Block(final long blkid, final Void existing) {
+    blockId = blkid;
+  }
+
+  /**
+   * @return the block {@code blkid}, which already has a row in the database;
+   * unlike the constructors, the row is not written.
+   */
+  public static Block existing(final long blkid) {
+    return new Block(blkid, null);
+  }
+
   /**
    * Find the blockid from the given filename
    */
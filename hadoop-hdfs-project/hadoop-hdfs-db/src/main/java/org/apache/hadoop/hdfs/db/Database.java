@@ -7,14 +7,22 @@
 import org.voltdb.client.*;
 
 public class Database {
-  private static Database instance;
+  private static volatile Database instance;
+  private static volatile DatabaseType type;
   private GenericObjectPool<DatabaseConnection> pool;
+  // connections to the read servers, see ReplicaReads; null if there are none
+  private GenericObjectPool<DatabaseConnection> readPool;
   private ExecutorService executor;
+  private MetadataStore store;
 
   Database() {
     try {
-      initializePool();
+      if (getType() != DatabaseType.MEMORY) {
+        initializePool();
+        initializeReadPool();
+      }
       initializeExecutor();
+      store = createStore(getType());
     } catch (Exception e) {
       e.printStackTrace();
       System.exit(-1);
@@ -25,11 +33,65 @@ public static void init() {
     getInstance();
   }
 
+  /**
+   * Selects the database by name (see {@link DatabaseType}) and connects to it. Must be called
+   * before the first use of the database; later calls keep the first choice.
+   */
+  public static synchronized void init(String name) {
+    if (type == null) {
+      type = DatabaseType.of(name);
+    }
+    getInstance();
+  }
+
+  /** @return the database in use; unless chosen by {@link #init(String)}, it is read from DATABASE. */
+  public static DatabaseType getType() {
+    DatabaseType t = type;
+    if (t == null) {
+      synchronized (Database.class) {
+        if (type == null) {
+          type = DatabaseType.of(System.getenv("DATABASE"));
+        }
+        t = type;
+      }
+    }
+    return t;
+  }
+
+  private static MetadataStore createStore(DatabaseType type) {
+    switch (type) {
+      case VOLT:
+        return new VoltMetadataStore();
+      case IGNITE:
+        return new IgniteMetadataStore();
+      case MEMORY:
+        return new InMemoryMetadataStore();
+      default:
+        return new JdbcMetadataStore();
+    }
+  }
+
+  /** @return the store of the inode tables. */
+  public MetadataStore getStore() {
+    return store;
+  }
+
   public static Database getInstance() {
-    if (instance == null) {
-      instance = new Database();
+    Database db = instance;
+    if (db == null) {
+      synchronized (Database.class) {
+        if (instance == null) {
+          instance = new Database();
+        }
+        db = instance;
+      }
     }
-    return instance;
+    return db;
+  }
+
+  /** @return true if bounded reads can be sent to read servers; see {@link ReplicaReads}. */
+  public static boolean hasReadServers() {
+    return getInstance().readPool != null;
   }
 
   public ExecutorService getExecutorService() {
@@ -37,9 +99,20 @@ public ExecutorService getExecutorService() {
   }
 
   public DatabaseConnection getConnection() {
+    if (pool == null) {
+      // MEMORY keeps only the inode tables, see InMemoryMetadataStore
+      throw new IllegalStateException("No database connection with DATABASE=" + getType()
+          + ": only the inode tables are kept in memory");
+    }
     DatabaseConnection obj = null;
+    long start = System.nanoTime();
     try {
-      obj = pool.borrowObject();
+      if (readPool != null && ReplicaReads.onReplica()) {
+        obj = readPool.borrowObject();
+      } else {
+        obj = pool.borrowObject();
+      }
+      DatabaseMetrics.get().addPoolWait(System.nanoTime() - start);
     } catch (Exception e) {
       System.err.println("Failed to borrow a Connection object : " + e.getMessage());
       e.printStackTrace();
@@ -51,7 +124,11 @@ public DatabaseConnection getConnection() {
   public void retConnection(DatabaseConnection obj) {
     // make sure the object is returned to the pool
     if (null != obj) {
-      pool.returnObject(obj);
+      if (obj.isReadOnly()) {
+        readPool.returnObject(obj);
+      } else {
+        pool.returnObject(obj);
+      }
     }
   }
 
@@ -81,6 +158,38 @@ private void initializePool() throws Exception {
     }
   }
 
+  // The read servers get a pool of their own, so bounded reads do not take connections from the
+  // writes.
+  private void initializeReadPool() throws Exception {
+    String servers = null;
+    if (getType() == DatabaseType.VOLT) {
+      servers = System.getenv("VOLTDB_READ_SERVERS");
+    } else if (getType() == DatabaseType.IGNITE) {
+      servers = System.getenv("IGNITE_READ_SERVERS");
+    }
+    if (servers == null || servers.trim().isEmpty()) {
+      return;
+    }
+    try {
+      readPool = new GenericObjectPool<DatabaseConnection>(new DatabaseFactory(servers.trim()));
+      String num = System.getenv("MAX_READ_CONNECTION_NUM");
+      if (num == null) {
+        readPool.setMaxTotal(100);
+      } else {
+        readPool.setMaxTotal(Integer.parseInt(num));
+      }
+
+      readPool.setMinIdle(8);
+      readPool.setMaxIdle(16);
+      readPool.setBlockWhenExhausted(true);
+      readPool.setMaxWaitMillis(30 * 1000);
+      readPool.preparePool();
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(-1);
+    }
+  }
+
   private void initializeExecutor() throws Exception {
     try {
       String num = System.getenv("ASYNC_EXECUTOR_NUM");
@@ -0,0 +1,252 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.voltdb.*;
+import org.voltdb.client.*;
+
+/**
+ * Non-blocking stored procedure invocation on top of VoltDB's {@link ProcedureCallback}.
+ *
+ * <p>All invocations share one VoltDB client, so many procedures can be in flight on a single
+ * connection instead of each caller holding a pooled {@link DatabaseConnection} for the whole
+ * round trip. Concurrent requests for the same procedure and parameters are coalesced into one
+ * invocation whose future is handed to every caller, unless an inode was written through {@link
+ * DatabaseINode} after that invocation was issued: a read issued after a write has returned never
+ * gets a value read before it.
+ *
+ * <p>{@link DatabaseINode#loadINodeAsync} is used by path resolution to load the missing
+ * components of a path at once rather than one after the other.
+ *
+ * <p>Futures are completed on the VoltDB network thread; callers that do real work in their
+ * continuations should use the {@code *Async} variants of {@link CompletableFuture}.
+ */
+public class DatabaseAsyncClient {
+  static final Logger LOG = LoggerFactory.getLogger(DatabaseAsyncClient.class);
+
+  private static DatabaseAsyncClient instance;
+
+  // bumped after every write to the inode rows, so that reads issued before and after it are
+  // never coalesced
+  private static final AtomicLong writes = new AtomicLong();
+
+  /** Converts the results of a procedure invocation into the value of the future. */
+  public interface ResultMapper<T> {
+    T map(VoltTable[] results);
+  }
+
+  public static final ResultMapper<Long> FIRST_LONG =
+      results -> {
+        long res = 0;
+        VoltTable result = results[0];
+        result.resetRowPosition();
+        while (result.advanceRow()) {
+          res = result.getLong(0);
+        }
+        return res;
+      };
+
+  public static final ResultMapper<String> FIRST_STRING =
+      results -> {
+        String res = null;
+        VoltTable result = results[0];
+        result.resetRowPosition();
+        while (result.advanceRow()) {
+          res = result.getString(0);
+        }
+        return res;
+      };
+
+  private final ConcurrentHashMap<CallKey, CompletableFuture<?>> inflight =
+      new ConcurrentHashMap<>();
+  private final boolean volt;
+  private Client client = null;
+
+  DatabaseAsyncClient() {
+    DatabaseType env = Database.getType();
+    volt = env == DatabaseType.VOLT;
+    if (volt) {
+      try {
+        String host = System.getenv("VOLTDB_SERVER");
+        if (host == null) {
+          host = "localhost";
+        }
+        ClientConfig config = new ClientConfig();
+        config.setTopologyChangeAware(true);
+        String num = System.getenv("ASYNC_MAX_OUTSTANDING_TXNS");
+        if (num != null) {
+          config.setMaxOutstandingTxns(Integer.parseInt(num));
+        }
+        client = ClientFactory.createClient(config);
+        client.createConnection(host, 21212);
+      } catch (Exception e) {
+        e.printStackTrace();
+        System.exit(-1);
+      }
+    }
+  }
+
+  public static synchronized DatabaseAsyncClient getInstance() {
+    if (instance == null) {
+      instance = new DatabaseAsyncClient();
+    }
+    return instance;
+  }
+
+  /** Called by {@link DatabaseINode} once a write to the inode rows has returned or been sent. */
+  static void written() {
+    writes.incrementAndGet();
+  }
+
+  /**
+   * @return true if calls are pipelined on one connection; otherwise each one occupies a thread
+   *     of the database executor and a pooled connection.
+   */
+  public boolean isPipelined() {
+    return volt;
+  }
+
+  /**
+   * Invokes a stored procedure asynchronously.
+   *
+   * <p>On VoltDB the procedure is queued on the shared client and the returned future completes
+   * from its callback. The other backends have no pipelined client, so {@code fallback} (usually
+   * the blocking accessor in {@link DatabaseINode}) is run on the database executor instead.
+   *
+   * @param procedure stored procedure name, also used as part of the coalescing key
+   * @param mapper converts the procedure results into the future's value
+   * @param fallback blocking implementation for non-VoltDB backends
+   * @param params procedure parameters
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> call(
+      final String procedure,
+      final ResultMapper<T> mapper,
+      final Supplier<T> fallback,
+      final Object... params) {
+    final CallKey key = new CallKey(procedure, params, writes.get());
+    CompletableFuture<T> future = new CompletableFuture<>();
+    CompletableFuture<T> existing = (CompletableFuture<T>) inflight.putIfAbsent(key, future);
+    if (existing != null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Coalesced " + key);
+      }
+      return existing;
+    }
+
+    if (volt) {
+      try {
+        boolean queued =
+            client.callProcedure(
+                new ProcedureCallback() {
+                  @Override
+                  public void clientCallback(ClientResponse response) {
+                    inflight.remove(key, future);
+                    if (response.getStatus() != ClientResponse.SUCCESS) {
+                      future.completeExceptionally(new SQLException(response.getStatusString()));
+                      return;
+                    }
+                    try {
+                      future.complete(mapper.map(response.getResults()));
+                    } catch (Throwable t) {
+                      future.completeExceptionally(t);
+                    }
+                  }
+                },
+                procedure,
+                params);
+        if (!queued) {
+          inflight.remove(key, future);
+          future.completeExceptionally(
+              new SQLException("Failed to queue procedure " + procedure));
+        }
+      } catch (Exception e) {
+        inflight.remove(key, future);
+        future.completeExceptionally(e);
+      }
+    } else {
+      try {
+        Database.getInstance()
+            .getExecutorService()
+            .execute(
+                () -> {
+                  try {
+                    T res = fallback.get();
+                    inflight.remove(key, future);
+                    future.complete(res);
+                  } catch (Throwable t) {
+                    inflight.remove(key, future);
+                    future.completeExceptionally(t);
+                  }
+                });
+      } catch (Exception e) {
+        inflight.remove(key, future);
+        future.completeExceptionally(e);
+      }
+    }
+    return future;
+  }
+
+  /** Number of distinct invocations currently in flight. */
+  public int getInflightCount() {
+    return inflight.size();
+  }
+
+  /** Blocks until every outstanding invocation on the shared client has been answered. */
+  public void drain() {
+    if (client != null) {
+      try {
+        client.drain();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private static final class CallKey {
+    private final String procedure;
+    private final Object[] params;
+    // writes when the call was issued
+    private final long generation;
+    private final int hash;
+
+    CallKey(String procedure, Object[] params, long generation) {
+      this.procedure = procedure;
+      this.params = params;
+      this.generation = generation;
+      this.hash =
+          31 * (31 * procedure.hashCode() + Arrays.hashCode(params)) + Long.hashCode(generation);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CallKey)) {
+        return false;
+      }
+      CallKey other = (CallKey) o;
+      return hash == other.hash
+          && generation == other.generation
+          && procedure.equals(other.procedure)
+          && Arrays.equals(params, other.params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return procedure + Arrays.toString(params);
+    }
+  }
+}
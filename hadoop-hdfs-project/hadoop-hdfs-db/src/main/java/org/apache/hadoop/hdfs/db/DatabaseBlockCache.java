@@ -0,0 +1,405 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, write-through cache of block attributes keyed by blockId.
+ *
+ * <p>Entries live in primitive arrays organized as a 4-way set-associative table, so a lookup
+ * neither boxes the key nor allocates, and the heap footprint is fixed at start-up. Each entry
+ * holds the fields of {@link DatabaseDatablock}, {@link DatabaseINode2Block} and {@link
+ * DatabaseStorage} that are read per block during block report processing; every field is
+ * tracked as valid or not independently.
+ *
+ * <p>Writers update the database first and then call {@link #put} or {@link #invalidate}. Loaders
+ * take a {@link #version} of the entry before they read the database and pass it to {@link
+ * #fill}, which drops the value if the entry was written or invalidated in between and never
+ * overwrites a value already present, so a slow loader cannot cache a value older than the
+ * database.
+ *
+ * <p>BC_ID, the inode of a block, can also be dropped by inode with {@link #invalidateBcIds}, for
+ * the inode2block writes keyed by inode, which do not know the blocks they change. Inodes are
+ * hashed into buckets that each keep the time of their last invalidation, and a cached BC_ID is
+ * only valid if it was cached after the last invalidation of the bucket of its value. Loaders of
+ * BC_ID also take a {@link #bcIdVersion} before they read and pass it to {@link #fillBcId}.
+ *
+ * <p>The size is taken from BLOCK_CACHE_SIZE (number of entries, default 1M). A size of 0
+ * disables the cache.
+ */
+public class DatabaseBlockCache {
+  static final Logger LOG = LoggerFactory.getLogger(DatabaseBlockCache.class);
+
+  public static final long MISS = Long.MIN_VALUE;
+
+  public static final int NUM_BYTES = 0;
+  public static final int GENERATION_STAMP = 1;
+  public static final int REPLICATION = 2;
+  public static final int BC_ID = 3;
+  public static final int NUM_STORAGES = 4;
+  private static final int FIELDS = 5;
+
+  private static final int WAYS = 4;
+  private static final int STRIPES = 1024;
+  private static final int INODE_BUCKETS = 1 << 16;
+
+  private static DatabaseBlockCache instance;
+
+  private final int setMask;
+  private final long[] keys;
+  private final long[] values;
+  private final byte[] valid;
+  private final byte[] hands;
+  private final Object[] locks;
+  // bumped under the lock of a stripe by every put and invalidate in it
+  private final int[] versions;
+  // the bcIdClock when the BC_ID of a slot was cached
+  private final long[] bcIdStamps;
+  // the bcIdClock at the last invalidateBcIds of an inode bucket
+  private final AtomicLongArray inodeStamps = new AtomicLongArray(INODE_BUCKETS);
+  private final AtomicLong bcIdClock = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  DatabaseBlockCache(int capacity) {
+    int sets = 1;
+    while (sets * WAYS < capacity) {
+      sets <<= 1;
+    }
+    if (capacity <= 0) {
+      sets = 0;
+    }
+    this.setMask = sets - 1;
+    this.keys = new long[sets * WAYS];
+    this.values = new long[sets * WAYS * FIELDS];
+    this.valid = new byte[sets * WAYS];
+    this.bcIdStamps = new long[sets * WAYS];
+    this.hands = new byte[sets];
+    this.locks = new Object[STRIPES];
+    this.versions = new int[STRIPES];
+    for (int i = 0; i < STRIPES; ++i) {
+      locks[i] = new Object();
+    }
+  }
+
+  public static synchronized DatabaseBlockCache getInstance() {
+    if (instance == null) {
+      String num = System.getenv("BLOCK_CACHE_SIZE");
+      int capacity = (num == null) ? (1 << 20) : Integer.parseInt(num);
+      instance = new DatabaseBlockCache(capacity);
+      if (LOG.isInfoEnabled()) {
+        LOG.info("Block cache capacity: " + instance.capacity());
+      }
+    }
+    return instance;
+  }
+
+  public boolean isEnabled() {
+    return setMask >= 0;
+  }
+
+  public int capacity() {
+    return keys.length;
+  }
+
+  private int setOf(long blockId) {
+    long h = blockId * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & setMask;
+  }
+
+  private static int bucketOf(long inodeId) {
+    long h = inodeId * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & (INODE_BUCKETS - 1);
+  }
+
+  private static int stripeOf(int set) {
+    return set & (STRIPES - 1);
+  }
+
+  private Object lockOf(int set) {
+    return locks[stripeOf(set)];
+  }
+
+  // caller holds the set lock
+  private int find(int set, long blockId) {
+    int base = set * WAYS;
+    for (int i = base; i < base + WAYS; ++i) {
+      if (valid[i] != 0 && keys[i] == blockId) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // caller holds the set lock
+  private int findOrAllocate(int set, long blockId) {
+    int slot = find(set, blockId);
+    if (slot >= 0) {
+      return slot;
+    }
+    int base = set * WAYS;
+    for (int i = base; i < base + WAYS; ++i) {
+      if (valid[i] == 0) {
+        keys[i] = blockId;
+        return i;
+      }
+    }
+    slot = base + (hands[set] & (WAYS - 1));
+    hands[set]++;
+    valid[slot] = 0;
+    keys[slot] = blockId;
+    evictions.increment();
+    return slot;
+  }
+
+  private boolean isValid(int slot, int field) {
+    if ((valid[slot] & (1 << field)) == 0) {
+      return false;
+    }
+    return field != BC_ID
+        || bcIdStamps[slot] >= inodeStamps.get(bucketOf(values[slot * FIELDS + BC_ID]));
+  }
+
+  private void set(int slot, int field, long value, long bcIdStamp) {
+    values[slot * FIELDS + field] = value;
+    valid[slot] |= (1 << field);
+    if (field == BC_ID) {
+      bcIdStamps[slot] = bcIdStamp;
+    }
+  }
+
+  /** @return the cached value of {@code field}, or {@link #MISS}. */
+  public long get(final long blockId, final int field) {
+    if (!isEnabled()) {
+      return MISS;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      int slot = find(set, blockId);
+      if (slot >= 0 && isValid(slot, field)) {
+        hits.increment();
+        return values[slot * FIELDS + field];
+      }
+    }
+    misses.increment();
+    return MISS;
+  }
+
+  /**
+   * Looks up two fields of a block at once; a lookup counts as one hit or one miss.
+   *
+   * @return true, with the values of {@code first} and {@code second} in {@code res}, if both are
+   *     cached.
+   */
+  public boolean get(final long blockId, final int first, final int second, final long[] res) {
+    if (!isEnabled()) {
+      return false;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      int slot = find(set, blockId);
+      if (slot >= 0 && isValid(slot, first) && isValid(slot, second)) {
+        res[0] = values[slot * FIELDS + first];
+        res[1] = values[slot * FIELDS + second];
+        hits.increment();
+        return true;
+      }
+    }
+    misses.increment();
+    return false;
+  }
+
+  /** Write-through update after the database has been changed. */
+  public void put(final long blockId, final int field, final long value) {
+    if (!isEnabled()) {
+      return;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      versions[stripeOf(set)]++;
+      set(findOrAllocate(set, blockId), field, value, bcIdClock.get());
+    }
+  }
+
+  /**
+   * @return the version to pass to {@link #fill} for a value of {@code blockId} that is read from
+   *     the database after this call.
+   */
+  public int version(final long blockId) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      return versions[stripeOf(set)];
+    }
+  }
+
+  /** @return the versions of every block, for a loader that reads many blocks at once. */
+  public int[] versions() {
+    int[] res = new int[STRIPES];
+    if (!isEnabled()) {
+      return res;
+    }
+    for (int i = 0; i < STRIPES; ++i) {
+      synchronized (locks[i]) {
+        res[i] = versions[i];
+      }
+    }
+    return res;
+  }
+
+  /**
+   * @return the version to pass to {@link #fillBcId} for a BC_ID that is read from the database
+   *     after this call, along with {@link #version} or {@link #versions}.
+   */
+  public long bcIdVersion() {
+    return bcIdClock.get();
+  }
+
+  /**
+   * Populates a field read from the database, unless the block was written or invalidated since
+   * {@code version} was taken or a value is already cached. BC_ID is populated by {@link
+   * #fillBcId}.
+   */
+  public void fill(final long blockId, final int field, final long value, final int version) {
+    if (field == BC_ID) {
+      throw new IllegalArgumentException("BC_ID is populated by fillBcId");
+    }
+    fill(blockId, field, value, version, 0);
+  }
+
+  /** {@link #fill} with the version of {@code blockId} in {@code versions}. */
+  public void fill(final long blockId, final int field, final long value, final int[] versions) {
+    if (!isEnabled()) {
+      return;
+    }
+    fill(blockId, field, value, versions[stripeOf(setOf(blockId))]);
+  }
+
+  /**
+   * Populates the BC_ID of a block read from the database, unless the block was written or
+   * invalidated since {@code version} was taken, or its inode since {@code bcIdVersion} was.
+   */
+  public void fillBcId(
+      final long blockId, final long bcId, final int version, final long bcIdVersion) {
+    if (bcIdVersion < inodeStamps.get(bucketOf(bcId))) {
+      return;
+    }
+    fill(blockId, BC_ID, bcId, version, bcIdVersion);
+  }
+
+  /** {@link #fillBcId} with the version of {@code blockId} in {@code versions}. */
+  public void fillBcId(
+      final long blockId, final long bcId, final int[] versions, final long bcIdVersion) {
+    if (!isEnabled()) {
+      return;
+    }
+    fillBcId(blockId, bcId, versions[stripeOf(setOf(blockId))], bcIdVersion);
+  }
+
+  private void fill(
+      final long blockId, final int field, final long value, final int version, long bcIdStamp) {
+    if (!isEnabled()) {
+      return;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      if (versions[stripeOf(set)] != version) {
+        return;
+      }
+      int slot = findOrAllocate(set, blockId);
+      if (!isValid(slot, field)) {
+        set(slot, field, value, bcIdStamp);
+      }
+    }
+  }
+
+  public void invalidate(final long blockId, final int field) {
+    if (!isEnabled()) {
+      return;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      versions[stripeOf(set)]++;
+      int slot = find(set, blockId);
+      if (slot >= 0) {
+        valid[slot] &= ~(1 << field);
+        invalidations.increment();
+      }
+    }
+  }
+
+  public void invalidate(final long blockId) {
+    if (!isEnabled()) {
+      return;
+    }
+    int set = setOf(blockId);
+    synchronized (lockOf(set)) {
+      versions[stripeOf(set)]++;
+      int slot = find(set, blockId);
+      if (slot >= 0) {
+        valid[slot] = 0;
+        invalidations.increment();
+      }
+    }
+  }
+
+  /**
+   * Drops the cached BC_ID of every block of inode {@code inodeId}, after inode2block rows were
+   * changed by inode. It also drops the BC_IDs of the inodes that share its bucket.
+   */
+  public void invalidateBcIds(final long inodeId) {
+    if (!isEnabled()) {
+      return;
+    }
+    long now = bcIdClock.incrementAndGet();
+    inodeStamps.accumulateAndGet(bucketOf(inodeId), now, Math::max);
+    invalidations.increment();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  public long getInvalidationCount() {
+    return invalidations.sum();
+  }
+
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return (total == 0) ? 1.0 : (double) h / total;
+  }
+
+  @Override
+  public String toString() {
+    return "DatabaseBlockCache[capacity="
+        + capacity()
+        + ", hits="
+        + getHitCount()
+        + ", misses="
+        + getMissCount()
+        + ", hitRate="
+        + getHitRate()
+        + ", evictions="
+        + getEvictionCount()
+        + ", invalidations="
+        + getInvalidationCount()
+        + "]";
+  }
+}
@@ -1,12 +1,16 @@
 package org.apache.hadoop.hdfs.db;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.voltdb.*;
@@ -35,47 +39,66 @@ public class DatabaseConnection {
   private Connection connection;
   private Client volt_client = null;
   private IgniteEx ignite_client = null;
+  private final boolean readOnly;
 
   static final Logger LOG = LoggerFactory.getLogger(DatabaseConnection.class);
 
   DatabaseConnection() throws SQLException {
+    this(null);
+  }
+
+  /**
+   * @param readServers comma-separated read servers to connect to instead of VOLTDB_SERVER or
+   *     IGNITE_SERVER, or null.
+   */
+  DatabaseConnection(String readServers) throws SQLException {
+    this.readOnly = readServers != null;
     try {
       String url = null;
       String host = null;
-      String env = System.getenv("DATABASE");
+      DatabaseType env = Database.getType();
       Properties props = new Properties();
 
-      if (env.equals("VOLT")) {
+      if (env == DatabaseType.VOLT) {
         Class.forName("org.voltdb.jdbc.Driver");
-        url = System.getenv("VOLTDB_SERVER");
+        url = readOnly ? readServers : System.getenv("VOLTDB_SERVER");
         if (url == null) {
           host = "localhost";
           url = volt;
         } else {
           host = url;
-          url = "jdbc:voltdb://" + url + ":21212";
+          url = "jdbc:voltdb://" + withPort(url, 21212);
         }
-        this.connection = DriverManager.getConnection(url);
+        this.connection = TimedJdbc.wrap(DriverManager.getConnection(url));
         ClientConfig config = new ClientConfig();
+        // connect to every node and send each single-partition procedure to the node that owns
+        // its partition
         config.setTopologyChangeAware(true);
+        config.setClientAffinity(true);
         this.volt_client = ClientFactory.createClient(config);
-        this.volt_client.createConnection(host, 21212);
-      } else if (env.equals("IGNITE")) {
+        for (String h : host.split(",")) {
+          this.volt_client.createConnection(h.trim(), 21212);
+        }
+      } else if (env == DatabaseType.IGNITE) {
         Class.forName("org.apache.ignite.IgniteJdbcThinDriver");
-        url = System.getenv("IGNITE_SERVER");
+        url = readOnly ? readServers : System.getenv("IGNITE_SERVER");
         String ip = null;
         if (url == null) {
           ip = "localhost";
           url = ignite;
         } else {
           ip = url;
-          url = "jdbc:ignite:thin://" + url + ":10800"; 
+          url = "jdbc:ignite:thin://" + withPort(url, 10800);
         }
-        this.connection = DriverManager.getConnection(url);
+        this.connection = TimedJdbc.wrap(DriverManager.getConnection(url));
 
         TcpDiscoverySpi discoverySpi = new TcpDiscoverySpi();
         TcpDiscoveryMulticastIpFinder ipFinder = new TcpDiscoveryMulticastIpFinder();
-        ipFinder.setAddresses(Collections.singletonList(ip + ":47500..47507"));
+        List<String> addresses = new ArrayList<>();
+        for (String h : ip.split(",")) {
+          addresses.add(h.trim() + ":47500..47507");
+        }
+        ipFinder.setAddresses(addresses);
         discoverySpi.setIpFinder(ipFinder);
     
         IgniteConfiguration cfg = new IgniteConfiguration();
@@ -88,21 +111,21 @@ public class DatabaseConnection {
 
         Ignition.setClientMode(true);
         this.ignite_client = (IgniteEx)Ignition.start(cfg);
-      } else if (env.equals("COCKROACH")) {
+      } else if (env == DatabaseType.COCKROACH) {
         Class.forName("org.postgresql.Driver");
         props.setProperty("user", username);
         props.setProperty("sslmode", "disable");
-        this.connection = DriverManager.getConnection(cockroach, props);
+        this.connection = TimedJdbc.wrap(DriverManager.getConnection(cockroach, props));
         url = cockroach;
       } else {
         Class.forName("org.postgresql.Driver");
         props.setProperty("user", username);
         props.setProperty("password", password);
-        this.connection = DriverManager.getConnection(postgres, props);
+        this.connection = TimedJdbc.wrap(DriverManager.getConnection(postgres, props));
         url = postgres;
       }
       if (LOG.isInfoEnabled()) {
-        LOG.info("DatabaseConnection: [" + env + "] " + url);
+        LOG.info("DatabaseConnection: [" + env + "] " + url + (readOnly ? " (read)" : ""));
       }
     } catch (Exception ex) {
       System.err.println("Database Connection Creation Failed : " + ex.getMessage());
@@ -111,15 +134,75 @@ public class DatabaseConnection {
     }
   }
 
+  // h1,h2 -> h1:port,h2:port
+  private static String withPort(String hosts, int port) {
+    StringBuilder sb = new StringBuilder();
+    for (String h : hosts.split(",")) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(h.trim()).append(':').append(port);
+    }
+    return sb.toString();
+  }
+
   public Connection getConnection() {
     return connection;
   }
 
+  /** @return true if this is a connection to the read servers. */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
   public Client getVoltClient() {
     return volt_client;
   }
 
+  /** Calls a VoltDB procedure and records the call in {@link DatabaseMetrics}. */
+  public ClientResponse callProcedure(String procedure, Object... params)
+      throws IOException, ProcCallException {
+    long start = System.nanoTime();
+    boolean ok = false;
+    try {
+      ClientResponse response = volt_client.callProcedure(procedure, params);
+      ok = true;
+      return response;
+    } finally {
+      DatabaseMetrics.get().addCall(procedure, System.nanoTime() - start, ok);
+    }
+  }
+
+  /**
+   * Calls a VoltDB procedure asynchronously; the call is recorded in {@link DatabaseMetrics}
+   * when its response arrives.
+   */
+  public boolean callProcedure(ProcedureCallback callback, String procedure, Object... params)
+      throws IOException {
+    final long start = System.nanoTime();
+    return volt_client.callProcedure(
+        response -> {
+          DatabaseMetrics.get().addCall(procedure, System.nanoTime() - start,
+              response.getStatus() == ClientResponse.SUCCESS);
+          callback.clientCallback(response);
+        },
+        procedure, params);
+  }
+
   public IgniteEx getIgniteClient() {
     return ignite_client;
   }
+
+  /** Runs an Ignite cache or compute call and records it in {@link DatabaseMetrics}. */
+  public <T> T callIgnite(String name, Supplier<T> call) {
+    long start = System.nanoTime();
+    boolean ok = false;
+    try {
+      T res = call.get();
+      ok = true;
+      return res;
+    } finally {
+      DatabaseMetrics.get().addCall(name, System.nanoTime() - start, ok);
+    }
+  }
 }
@@ -7,6 +7,13 @@
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.voltdb.*;
@@ -15,15 +22,18 @@
 public class DatabaseDatablock {
   static final Logger LOG = LoggerFactory.getLogger(DatabaseDatablock.class);
 
+  // number of blocks loaded per procedure call by batchLoadBlocks
+  private static final int BATCH_LOAD_SIZE = 1024;
+
   private static boolean checkBlockExistence(final long blkid) {
     boolean exist = false;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("CheckBlockExistence", blkid).getResults();
+              obj.callProcedure("CheckBlockExistence", blkid).getResults();
          VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -52,8 +62,8 @@ private static boolean checkBlockExistence(final long blkid) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("checkBlockExistence [GET]: (" + blkid + "," + exist + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("checkBlockExistence [GET]: (" + blkid + "," + exist + ")");
     }
     return exist;
   }
@@ -61,10 +71,10 @@ private static boolean checkBlockExistence(final long blkid) {
   public static void insertBlock(final long blkid, final long len, final long genStamp) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "InsertBlock", blkid, len, genStamp);
+          obj.callProcedure(new NullCallback(), "InsertBlock", blkid, len, genStamp);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -87,8 +97,10 @@ public static void insertBlock(final long blkid, final long len, final long genS
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("insertBlock [UPDATE]: (" + blkid + ", " + len + ", " + genStamp + ")");
+    DatabaseBlockCache.getInstance().put(blkid, DatabaseBlockCache.NUM_BYTES, len);
+    DatabaseBlockCache.getInstance().put(blkid, DatabaseBlockCache.GENERATION_STAMP, genStamp);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("insertBlock [UPDATE]: (" + blkid + ", " + len + ", " + genStamp + ")");
     }
   }
 
@@ -118,15 +130,36 @@ private static <T> T getAttribute(final long id, final String attrName) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info(attrName + " [GET]: (" + id + "," + result + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(attrName + " [GET]: (" + id + "," + result + ")");
     }
 
     return result;
   }
 
+  // numBytes and generationStamp of a block without a datablocks row; no block allocated by the
+  // namenode has generation stamp 0 (GenerationStamp.GRANDFATHER_GENERATION_STAMP)
+  private static final long MISSING_NUM_BYTES = 0;
+  private static final long MISSING_GENERATION_STAMP = 0;
+
+  /**
+   * @return the numBytes and generationStamp of the block, or {0, 0} if the block has no row.
+   */
   public static Long[] getNumBytesAndStamp(final long blockId) {
-    Long[] result = new Long[2];
+    long[] cached = new long[2];
+    if (DatabaseBlockCache.getInstance()
+        .get(blockId, DatabaseBlockCache.NUM_BYTES, DatabaseBlockCache.GENERATION_STAMP, cached)) {
+      return new Long[] {cached[0], cached[1]};
+    }
+    return loadNumBytesAndStamp(blockId);
+  }
+
+  // numBytes and generationStamp are loaded together so that the second one
+  // is usually a cache hit
+  private static Long[] loadNumBytesAndStamp(final long blockId) {
+    Long[] result = new Long[] {MISSING_NUM_BYTES, MISSING_GENERATION_STAMP};
+    DatabaseBlockCache cache = DatabaseBlockCache.getInstance();
+    int version = cache.version(blockId);
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
@@ -137,6 +170,8 @@ public static Long[] getNumBytesAndStamp(final long blockId) {
       while (rs.next()) {
         result[0] = rs.getLong(1);
         result[1] = rs.getLong(2);
+        cache.fill(blockId, DatabaseBlockCache.NUM_BYTES, result[0], version);
+        cache.fill(blockId, DatabaseBlockCache.GENERATION_STAMP, result[1], version);
       }
       rs.close();
       pst.close();
@@ -145,22 +180,167 @@ public static Long[] getNumBytesAndStamp(final long blockId) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getNumBytesAndStamp [GET]: " + blockId);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getNumBytesAndStamp [GET]: " + blockId);
     }
     return result;
   }
 
+  /**
+   * Load the attributes of many blocks at once into {@link DatabaseBlockCache}, so that
+   * processing a block report reads the database once per chunk instead of once per block
+   * and field. The block2storage rows are also kept for the reads of the batch begun by {@link
+   * DatabaseStorage#beginBatch} on this thread, if any.
+   *
+   * <p>Only rows returned by the database are cached; a block without rows is looked up on its
+   * own later. A failed query is thrown to the caller rather than leaving the report to be diffed
+   * against a partial cache.
+   */
+  public static void batchLoadBlocks(final long[] blockIds) throws SQLException {
+    if (blockIds == null || blockIds.length == 0) {
+      return;
+    }
+    DatabaseBlockCache cache = DatabaseBlockCache.getInstance();
+    if (!cache.isEnabled() && !DatabaseStorage.isBatching()) {
+      return;
+    }
+    int[] versions = cache.versions();
+    long bcIdVersion = cache.bcIdVersion();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      DatabaseType env = Database.getType();
+      for (int from = 0; from < blockIds.length; from += BATCH_LOAD_SIZE) {
+        long[] chunk =
+            Arrays.copyOfRange(
+                blockIds, from, Math.min(blockIds.length, from + BATCH_LOAD_SIZE));
+        // block2storage rows of the chunk, by blockId and idx
+        Map<Long, TreeMap<Integer, String>> storages = new HashMap<>();
+        for (long blockId : chunk) {
+          storages.put(blockId, new TreeMap<Integer, String>());
+        }
+        if (env == DatabaseType.VOLT) {
+          VoltTable[] results;
+          try {
+            results = obj.callProcedure("BatchLoadBlocks", chunk).getResults();
+          } catch (Exception e) {
+            throw new SQLException("BatchLoadBlocks failed", e);
+          }
+          VoltTable result = results[0];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            long blockId = result.getLong(0);
+            cache.fill(blockId, DatabaseBlockCache.NUM_BYTES, result.getLong(1), versions);
+            cache.fill(
+                blockId, DatabaseBlockCache.GENERATION_STAMP, result.getLong(2), versions);
+            long replication = result.getLong(3);
+            if (!result.wasNull()) {
+              cache.fill(blockId, DatabaseBlockCache.REPLICATION, replication, versions);
+            }
+          }
+          result = results[1];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            cache.fillBcId(result.getLong(0), result.getLong(1), versions, bcIdVersion);
+          }
+          result = results[2];
+          result.resetRowPosition();
+          while (result.advanceRow()) {
+            storages.get(result.getLong(0)).put((int) result.getLong(1), result.getString(2));
+          }
+        } else {
+          Connection conn = obj.getConnection();
+          StringBuilder in = new StringBuilder("(");
+          for (int i = 0; i < chunk.length; ++i) {
+            in.append(i == 0 ? "?" : ", ?");
+          }
+          in.append(")");
+
+          String sql =
+              "SELECT blockId, numBytes, generationStamp, replication FROM datablocks WHERE blockId IN "
+                  + in
+                  + ";";
+          try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (int i = 0; i < chunk.length; ++i) {
+              pst.setLong(i + 1, chunk[i]);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+              while (rs.next()) {
+                long blockId = rs.getLong(1);
+                cache.fill(blockId, DatabaseBlockCache.NUM_BYTES, rs.getLong(2), versions);
+                cache.fill(blockId, DatabaseBlockCache.GENERATION_STAMP, rs.getLong(3), versions);
+                long replication = rs.getLong(4);
+                if (!rs.wasNull()) {
+                  cache.fill(blockId, DatabaseBlockCache.REPLICATION, replication, versions);
+                }
+              }
+            }
+          }
+
+          sql = "SELECT blockId, id FROM inode2block WHERE blockId IN " + in + ";";
+          try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (int i = 0; i < chunk.length; ++i) {
+              pst.setLong(i + 1, chunk[i]);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+              while (rs.next()) {
+                cache.fillBcId(rs.getLong(1), rs.getLong(2), versions, bcIdVersion);
+              }
+            }
+          }
+
+          sql = "SELECT blockId, idx, storageId FROM block2storage WHERE blockId IN " + in + ";";
+          try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (int i = 0; i < chunk.length; ++i) {
+              pst.setLong(i + 1, chunk[i]);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+              while (rs.next()) {
+                storages.get(rs.getLong(1)).put(rs.getInt(2), rs.getString(3));
+              }
+            }
+          }
+        }
+        for (Map.Entry<Long, TreeMap<Integer, String>> entry : storages.entrySet()) {
+          Set<String> storageIds = new HashSet<>(entry.getValue().values());
+          storageIds.remove(null);
+          cache.fill(entry.getKey(), DatabaseBlockCache.NUM_STORAGES, storageIds.size(), versions);
+        }
+        DatabaseStorage.loadBatch(storages);
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchLoadBlocks [GET]: " + blockIds.length + " blocks");
+    }
+  }
+
   public static long getNumBytes(final long blockId) {
-    return getAttribute(blockId, "numBytes");
+    long res = DatabaseBlockCache.getInstance().get(blockId, DatabaseBlockCache.NUM_BYTES);
+    if (res != DatabaseBlockCache.MISS) {
+      return res;
+    }
+    return loadNumBytesAndStamp(blockId)[0];
   }
 
   public static long getGenerationStamp(final long blockId) {
-    return getAttribute(blockId, "generationStamp");
+    long res = DatabaseBlockCache.getInstance().get(blockId, DatabaseBlockCache.GENERATION_STAMP);
+    if (res != DatabaseBlockCache.MISS) {
+      return res;
+    }
+    return loadNumBytesAndStamp(blockId)[1];
   }
 
   public static short getReplication(final long blockId) {
-    return getAttribute(blockId, "replication");
+    long res = DatabaseBlockCache.getInstance().get(blockId, DatabaseBlockCache.REPLICATION);
+    if (res != DatabaseBlockCache.MISS) {
+      return (short) res;
+    }
+    int version = DatabaseBlockCache.getInstance().version(blockId);
+    short replication = getAttribute(blockId, "replication");
+    DatabaseBlockCache.getInstance()
+        .fill(blockId, DatabaseBlockCache.REPLICATION, replication, version);
+    return replication;
   }
 
   public static void setBlockId(final long blockId, final long bid) {
@@ -177,8 +357,10 @@ public static void setBlockId(final long blockId, final long bid) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setBlockId [UPDATE]: (" + blockId + "," + bid + ")");
+    DatabaseBlockCache.getInstance().invalidate(blockId);
+    DatabaseBlockCache.getInstance().invalidate(bid);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setBlockId [UPDATE]: (" + blockId + "," + bid + ")");
     }
   }
 
@@ -196,8 +378,9 @@ public static void setNumBytes(final long blockId, final long numBytes) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setNumBytes [UPDATE]: (" + blockId + "," + numBytes + ")");
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.NUM_BYTES, numBytes);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setNumBytes [UPDATE]: (" + blockId + "," + numBytes + ")");
     }
   }
 
@@ -215,8 +398,10 @@ public static void setGenerationStamp(final long blockId, final long generationS
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("generationStamp [UPDATE]: (" + blockId + "," + generationStamp + ")");
+    DatabaseBlockCache.getInstance()
+        .put(blockId, DatabaseBlockCache.GENERATION_STAMP, generationStamp);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("generationStamp [UPDATE]: (" + blockId + "," + generationStamp + ")");
     }
   }
 
@@ -234,8 +419,9 @@ public static void setReplication(final long blockId, final short replication) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setReplication [UPDATE]: (" + blockId + "," + replication + ")");
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.REPLICATION, replication);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setReplication [UPDATE]: (" + blockId + "," + replication + ")");
     }
   }
 
@@ -252,9 +438,38 @@ public static void delete(final long blockId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidate(blockId);
+  }
+
+  public static void delete(final long[] blockIds) {
+    if (blockIds.length == 0) {
+      return;
+    }
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql = "DELETE FROM datablocks WHERE blockId = ?;";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      for (long blockId : blockIds) {
+        pst.setLong(1, blockId);
+        pst.addBatch();
+      }
+      pst.executeBatch();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    for (long blockId : blockIds) {
+      DatabaseBlockCache.getInstance().invalidate(blockId);
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("delete DataBlocks [UPDATE]: " + blockIds.length + " blocks");
+    }
   }
 
   public static void delete(final long nodeId, final int index) {
+    List<Long> blockIds = DatabaseINode2Block.getBlockIds(nodeId, index, index + 1);
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
@@ -271,15 +486,18 @@ public static void delete(final long nodeId, final int index) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("delete DateBlock/INode2Block [UPDATE]: (" + nodeId + "," + index + ")");
+    for (long blockId : blockIds) {
+      DatabaseBlockCache.getInstance().invalidate(blockId);
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("delete DateBlock/INode2Block [UPDATE]: (" + nodeId + "," + index + ")");
     }
   }
 
   public static void removeBlock(final long blockId) {
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -287,8 +505,8 @@ public static void removeBlock(final long blockId) {
         proc.setLong(1, blockId);
         ResultSet rs = proc.executeQuery();
         while (rs.next()) {
-          if (LOG.isInfoEnabled()) {
-            LOG.info("removeBlock Return: " + rs.getLong(1));
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("removeBlock Return: " + rs.getLong(1));
           }
         }
         rs.close();
@@ -310,12 +528,14 @@ public static void removeBlock(final long blockId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidate(blockId);
   }
 
   public static void removeAllBlocks(final long inodeId) {
+    List<Long> blockIds = DatabaseINode2Block.getBlockIds(inodeId, 0, Integer.MAX_VALUE);
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -323,8 +543,8 @@ public static void removeAllBlocks(final long inodeId) {
         proc.setLong(1, inodeId);
         ResultSet rs = proc.executeQuery();
         while (rs.next()) {
-          if (LOG.isInfoEnabled()) {
-            LOG.info("removeAllBlocks Return: " + rs.getLong(1));
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("removeAllBlocks Return: " + rs.getLong(1));
           }
         }
         rs.close();
@@ -348,6 +568,9 @@ public static void removeAllBlocks(final long inodeId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    for (long blockId : blockIds) {
+      DatabaseBlockCache.getInstance().invalidate(blockId);
+    }
   }
 
   public static long getTotalNumBytes(final long inodeId, final int length) {
@@ -373,8 +596,8 @@ public static long getTotalNumBytes(final long inodeId, final int length) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getTotalNumBytes: (" + inodeId + "," + size + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getTotalNumBytes: (" + inodeId + "," + size + ")");
     }
 
     return size;
@@ -394,8 +617,8 @@ public static void setECPolicyId(final long blockId, final byte ecPolicyId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setECPolicyId [UPDATE]: (" + blockId + "," + ecPolicyId + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setECPolicyId [UPDATE]: (" + blockId + "," + ecPolicyId + ")");
     }
   }
 
@@ -418,8 +641,8 @@ public static byte getECPolicyId(final long blockId) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getECPolicyId [GET]: (" + blockId + "," + ecId + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getECPolicyId [GET]: (" + blockId + "," + ecId + ")");
     }
     return ecId;
   }
@@ -441,8 +664,8 @@ public static void addStorage(final long blockId, final int index, final int blo
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("addStorage [UPDATE]: (" + blockId + "," + index + "," + blockIndex + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("addStorage [UPDATE]: (" + blockId + "," + index + "," + blockIndex + ")");
     }
   }
 
@@ -465,8 +688,8 @@ public static byte getStorageBlockIndex(final long blockId, final int index) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getStorageBlockIndex [GET]: (" + blockId + "," + index + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getStorageBlockIndex [GET]: (" + blockId + "," + index + ")");
     }
     return blockIndex;
   }
@@ -489,8 +712,8 @@ public static void setStorageBlockIndex(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setStorageBlockIndex [UPDATE]: (" + blockId + "," + index + "," + blockIndex + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setStorageBlockIndex [UPDATE]: (" + blockId + "," + index + "," + blockIndex + ")");
     }
   }
 }
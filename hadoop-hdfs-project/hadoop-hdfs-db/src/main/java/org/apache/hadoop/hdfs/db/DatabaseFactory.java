@@ -11,13 +11,21 @@
 
 public class DatabaseFactory extends BasePooledObjectFactory<DatabaseConnection> {
 
+  // comma-separated read servers, or null for the servers that take the writes
+  private final String readServers;
+
   public DatabaseFactory() {
+    this(null);
+  }
+
+  public DatabaseFactory(String readServers) {
     super();
+    this.readServers = readServers;
   }
 
   @Override
   public DatabaseConnection create() throws Exception {
-    return new DatabaseConnection();
+    return new DatabaseConnection(readServers);
   }
 
   /** Use the default PooledObject implementation. */
@@ -9,7 +9,9 @@
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -27,7 +29,8 @@ public class DatabaseINode {
 
   public DatabaseINode() {}
 
-  public class LoadINode {
+  /** One row of the inodes table, with the under-construction columns of inodeuc. */
+  public static class LoadINode {
     public final long parent;
     public final String parentName;
     public final long id;
@@ -36,8 +39,11 @@ public class LoadINode {
     public final long modificationTime;
     public final long accessTime;
     public final long header;
+    // null unless the inode has a row in inodeuc
+    public final String clientName;
+    public final String clientMachine;
 
-    LoadINode(
+    public LoadINode(
         long parent,
         String parentName,
         long id,
@@ -46,6 +52,20 @@ public class LoadINode {
         long modificationTime,
         long accessTime,
         long header) {
+      this(parent, parentName, id, name, permission, modificationTime, accessTime, header, null, null);
+    }
+
+    public LoadINode(
+        long parent,
+        String parentName,
+        long id,
+        String name,
+        long permission,
+        long modificationTime,
+        long accessTime,
+        long header,
+        String clientName,
+        String clientMachine) {
       this.parent = parent;
       this.parentName = parentName;
       this.id = id;
@@ -54,6 +74,8 @@ public class LoadINode {
       this.modificationTime = modificationTime;
       this.accessTime = accessTime;
       this.header = header;
+      this.clientName = clientName;
+      this.clientMachine = clientMachine;
     }
 
     long getParent() {
@@ -87,204 +109,115 @@ long getAccessTime() {
     long getHeader() {
       return header;
     }
+
+    String getClientName() {
+      return clientName;
+    }
+
+    String getClientMachine() {
+      return clientMachine;
+    }
   }
 
-  public LoadINode loadINode(final long id) {
-    LoadINode res = null;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("LoadINode", id).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res =
-                new LoadINode(
-                    result.getLong(0),
-                    result.getString(1),
-                    result.getLong(2),
-                    result.getString(3),
-                    result.getLong(4),
-                    result.getLong(5),
-                    result.getLong(6),
-                    result.getLong(7));
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        Connection conn = obj.getConnection();
-        String sql =
-            "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE id = ?;";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setLong(1, id);
-        ResultSet rs = pst.executeQuery();
-        while (rs.next()) {
-          res =
-              new LoadINode(
-                  rs.getLong(1),
-                  rs.getString(2),
-                  rs.getLong(3),
-                  rs.getString(4),
-                  rs.getLong(5),
-                  rs.getLong(6),
-                  rs.getLong(7),
-                  rs.getLong(8));
-        }
-        rs.close();
-        pst.close();
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
+  /** An inode of a subtree being deleted, with the blocks it owned. */
+  public static class ReclaimINode {
+    public final long id;
+    // 0 for a directory
+    public final long header;
+    public final boolean underConstruction;
+    public final List<Long> blockIds = new ArrayList<>();
+    // sum of the lengths of the blocks
+    public long numBytes = 0;
+
+    public ReclaimINode(long id, long header, boolean underConstruction) {
+      this.id = id;
+      this.header = header;
+      this.underConstruction = underConstruction;
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("Load INode [GET]: (" + id + ")");
+    public boolean isDirectory() {
+      return header == 0;
     }
-    return res;
   }
 
-  public LoadINode loadINode(final long parentId, final String childName) {
-    LoadINode res = null;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results =
-              obj.getVoltClient().callProcedure("LoadINodeV2", parentId, childName).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res =
-                new LoadINode(
-                    result.getLong(0),
-                    result.getString(1),
-                    result.getLong(2),
-                    result.getString(3),
-                    result.getLong(4),
-                    result.getLong(5),
-                    result.getLong(6),
-                    result.getLong(7));
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        Connection conn = obj.getConnection();
-        String sql =
-            "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE parent = ? AND name = ?;";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setLong(1, parentId);
-        pst.setString(2, childName);
-        ResultSet rs = pst.executeQuery();
-        while (rs.next()) {
-          res =
-              new LoadINode(
-                  rs.getLong(1),
-                  rs.getString(2),
-                  rs.getLong(3),
-                  rs.getString(4),
-                  rs.getLong(5),
-                  rs.getLong(6),
-                  rs.getLong(7),
-                  rs.getLong(8));
-        }
-        rs.close();
-        pst.close();
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
+  public LoadINode loadINode(final long id) {
+    LoadINode res = ReplicaReads.read(() -> Database.getInstance().getStore().loadINode(id));
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Load INode [GET]: (" + id + ")");
     }
+    return res;
+  }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("Load INode [GET]: (" + parentId + ", " + childName + ")");
+  public LoadINode loadINode(final long parentId, final String childName) {
+    LoadINode res =
+        ReplicaReads.read(() -> Database.getInstance().getStore().loadINode(parentId, childName));
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Load INode [GET]: (" + parentId + ", " + childName + ")");
     }
     return res;
   }
 
   public LoadINode loadINode(final String parentName, final String childName) {
-    LoadINode res = null;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results =
-              obj.getVoltClient().callProcedure("LoadINodeV3", parentName, childName).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res =
-                new LoadINode(
-                    result.getLong(0),
-                    result.getString(1),
-                    result.getLong(2),
-                    result.getString(3),
-                    result.getLong(4),
-                    result.getLong(5),
-                    result.getLong(6),
-                    result.getLong(7));
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else if (env.equals("IGNITE")) {
-        IgniteCache<BinaryObject, BinaryObject> inodesBinary = obj.getIgniteClient()
-          .cache("inodes").withKeepBinary();
-        BinaryObjectBuilder inodeKeyBuilder = obj.getIgniteClient().binary().builder("InodeKey");
-        BinaryObject inodeKey = inodeKeyBuilder
-          .setField("parentName", parentName)
-          .setField("name", childName)
-          .build();
-        BinaryObject inode = inodesBinary.get(inodeKey);
-        res = new LoadINode(
-          inode.field("parent"),
-          inode.field("parentName"),
-          inode.field("id"),
-          inode.field("name"),
-          inode.field("permission"),
-          inode.field("modificationTime"),
-          inode.field("accessTime"),
-          inode.field("header"));
-      } else {
-        Connection conn = obj.getConnection();
-        String sql =
-            "SELECT parent, parentName, id, name, permission, modificationTime, accessTime, header FROM inodes WHERE parentName = ? AND name = ?;";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setString(1, parentName);
-        pst.setString(2, childName);
-        ResultSet rs = pst.executeQuery();
-        while (rs.next()) {
-          res =
-              new LoadINode(
-                  rs.getLong(1),
-                  rs.getString(2),
-                  rs.getLong(3),
-                  rs.getString(4),
-                  rs.getLong(5),
-                  rs.getLong(6),
-                  rs.getLong(7),
-                  rs.getLong(8));
-        }
-        rs.close();
-        pst.close();
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
+    LoadINode res = ReplicaReads.read(
+        () -> Database.getInstance().getStore().loadINode(parentName, childName));
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Load INode [GET]: (" + parentName + ", " + childName + ")");
     }
+    return res;
+  }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("Load INode [GET]: (" + parentName + ", " + childName + ")");
+  private LoadINode toLoadINode(final VoltTable result) {
+    // procedures deployed before the uc columns were added only return the inode columns
+    boolean withUc = result.getColumnCount() > 8;
+    return new LoadINode(
+        result.getLong(0),
+        result.getString(1),
+        result.getLong(2),
+        result.getString(3),
+        result.getLong(4),
+        result.getLong(5),
+        result.getLong(6),
+        result.getLong(7),
+        withUc ? result.getString(8) : null,
+        withUc ? result.getString(9) : null);
+  }
+
+  private LoadINode toLoadINode(final VoltTable[] results) {
+    LoadINode res = null;
+    VoltTable result = results[0];
+    result.resetRowPosition();
+    while (result.advanceRow()) {
+      res = toLoadINode(result);
     }
     return res;
   }
 
+  public CompletableFuture<LoadINode> loadINodeAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("LoadINode", this::toLoadINode, () -> loadINode(id), id);
+  }
+
+  public CompletableFuture<LoadINode> loadINodeAsync(final long parentId, final String childName) {
+    return DatabaseAsyncClient.getInstance()
+        .call(
+            "LoadINodeV2",
+            this::toLoadINode,
+            () -> loadINode(parentId, childName),
+            parentId,
+            childName);
+  }
+
+  public CompletableFuture<LoadINode> loadINodeAsync(
+      final String parentName, final String childName) {
+    return DatabaseAsyncClient.getInstance()
+        .call(
+            "LoadINodeV3",
+            this::toLoadINode,
+            () -> loadINode(parentName, childName),
+            parentName,
+            childName);
+  }
+
   public static boolean checkInodeExistence(final long parentId, final String childName) {
     boolean exist = false;
     try {
@@ -307,8 +240,8 @@ public static boolean checkInodeExistence(final long parentId, final String chil
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("checkInodeExistence [GET]: (" + parentId + "," + childName + "," + exist + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("checkInodeExistence [GET]: (" + parentId + "," + childName + "," + exist + ")");
     }
     return exist;
   }
@@ -334,8 +267,8 @@ public static boolean checkInodeExistence(final long childId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("checkInodeExistence [GET]: (" + childId + "," + exist + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("checkInodeExistence [GET]: (" + childId + "," + exist + ")");
     }
     return exist;
   }
@@ -368,8 +301,8 @@ private static <T> void setAttribute(final long id, final String attrName, final
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info(attrName + " [UPDATE]: (" + id + "," + attrValue + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(attrName + " [UPDATE]: (" + id + "," + attrValue + ")");
     }
   }
 
@@ -396,8 +329,8 @@ private static <T> T getAttribute(final long id, final String attrName) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info(attrName + " [GET]: (" + id + "," + result + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(attrName + " [GET]: (" + id + "," + result + ")");
     }
 
     return result;
@@ -414,25 +347,24 @@ public static void insertInode(
       final String parentName) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(
-                  new NullCallback(),
-                  "InsertINode",
-                  id,
-                  pid,
-                  name,
-                  accessTime,
-                  modificationTime,
-                  permission,
-                  header,
-                  parentName);
+          obj.callProcedure(
+              new NullCallback(),
+              "InsertINode",
+              id,
+              pid,
+              name,
+              accessTime,
+              modificationTime,
+              permission,
+              header,
+              parentName);
         } catch (Exception e) {
           e.printStackTrace();
         }
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         IgniteCache<BinaryObject, BinaryObject> inodesBinary = obj.getIgniteClient()
           .cache("inodes").withKeepBinary();
         BinaryObjectBuilder inodeKeyBuilder = obj.getIgniteClient().binary().builder("InodeKey");
@@ -451,7 +383,10 @@ public static void insertInode(
           .setField("header", header, Long.class)
           .setField("permission", permission, Long.class)
           .build();
-        inodesBinary.put(inodeKey, inode);
+        obj.callIgnite("IgniteInsertINode", () -> {
+          inodesBinary.put(inodeKey, inode);
+          return null;
+        });
       } else {
         String sql =
             "INSERT INTO inodes("
@@ -492,9 +427,12 @@ public static void insertInode(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("insertInode: (" + id + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("insertInode: (" + id + ")");
     }
+    // sent without waiting for its transaction id
+    ReplicaReads.sent();
+    DatabaseAsyncClient.written();
   }
 
   // TODO: ignite
@@ -509,21 +447,20 @@ public static void renameInode(
       final String parentName) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(
-                  new NullCallback(),
-                  "RenameINode",
-                  id,
-                  pid,
-                  name,
-                  accessTime,
-                  modificationTime,
-                  permission,
-                  header,
-                  parentName);
+          obj.callProcedure(
+              new NullCallback(),
+              "RenameINode",
+              id,
+              pid,
+              name,
+              accessTime,
+              modificationTime,
+              permission,
+              header,
+              parentName);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -535,19 +472,22 @@ public static void renameInode(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("renameInode: (" + id + ")");
-      LOG.info(DatabaseUtils.getStackTrace());
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("renameInode: (" + id + ")");
+      LOG.trace(DatabaseUtils.getStackTrace());
     }
+    // sent without waiting for its transaction id
+    ReplicaReads.sent();
+    DatabaseAsyncClient.written();
   }
 
   public static void setAccessTime(final long id, final long accessTime) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetAccessTime", id, accessTime);
+          obj.callProcedure(new NullCallback(), "SetAccessTime", id, accessTime);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -564,19 +504,19 @@ public static void setAccessTime(final long id, final long accessTime) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("accessTime [UPDATE]: (" + id + "," + accessTime + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("accessTime [UPDATE]: (" + id + "," + accessTime + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void setModificationTime(final long id, final long modificationTime) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(new NullCallback(), "SetModificationTime", id, modificationTime);
+          obj.callProcedure(new NullCallback(), "SetModificationTime", id, modificationTime);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -593,19 +533,19 @@ public static void setModificationTime(final long id, final long modificationTim
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("modificationTime [UPDATE]: (" + id + "," + modificationTime + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("modificationTime [UPDATE]: (" + id + "," + modificationTime + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void updateModificationTime(final long id, final long childId) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(new NullCallback(), "UpdateModificationTime", id, childId);
+          obj.callProcedure(new NullCallback(), "UpdateModificationTime", id, childId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -624,9 +564,10 @@ public static void updateModificationTime(final long id, final long childId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("updateModificationTime [UPDATE]: (" + id + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("updateModificationTime [UPDATE]: (" + id + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   // (distributed) transaction
@@ -634,10 +575,10 @@ public static long setPermissions(final List<String> parents, final List<String>
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("SetPermissions",
+          VoltTable[] results = obj.callProcedure("SetPermissions",
             parents.toArray(new String[parents.size()]),
             names.toArray(new String[names.size()]),
             permission).getResults();
@@ -649,7 +590,7 @@ public static long setPermissions(final List<String> parents, final List<String>
         } catch (Exception e) {
           e.printStackTrace();
         }
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         Connection conn = obj.getConnection();
         String perm = String.valueOf(permission);
         String sql = "UPDATE inodes SET permission = " + perm + " WHERE parentName = ? and name = ?;";
@@ -668,39 +609,10 @@ public static long setPermissions(final List<String> parents, final List<String>
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("txnId: " + res + " permissions [UPDATE]: (" + permission + ")");
-    } 
-    return res;
-  }
-
-  public static long setPermissions(final String path, final long permission) {
-    long res = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("SetPermissionsV2",
-            path, permission).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res = result.getLong(0);
-          } 
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("txnId: " + res + " permissions [UPDATE v2]: (" + permission + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("txnId: " + res + " permissions [UPDATE]: (" + permission + ")");
     } 
+    DatabaseAsyncClient.written();
     return res;
   }
 
@@ -708,10 +620,10 @@ public static long setPermission(final long id, final long permission) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("SetPermission", id, permission).getResults();
+          VoltTable[] results = obj.callProcedure("SetPermission", id, permission).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -733,19 +645,21 @@ public static long setPermission(final long id, final long permission) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("txnId: " + res + " permission [UPDATE]: (" + id + "," + permission + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("txnId: " + res + " permission [UPDATE]: (" + id + "," + permission + ")");
     }
+    ReplicaReads.written(res > 0 ? Long.toString(res) : null);
+    DatabaseAsyncClient.written();
     return res;
   }
 
   public static void setHeader(final long id, final long header) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetHeader", id, header);
+          obj.callProcedure(new NullCallback(), "SetHeader", id, header);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -762,18 +676,19 @@ public static void setHeader(final long id, final long header) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("header [UPDATE]: (" + id + "," + header + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("header [UPDATE]: (" + id + "," + header + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void setParent(final long id, final long parent) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetParent", id, parent);
+          obj.callProcedure(new NullCallback(), "SetParent", id, parent);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -790,18 +705,19 @@ public static void setParent(final long id, final long parent) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("parent [UPDATE]: (" + id + "," + parent + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("parent [UPDATE]: (" + id + "," + parent + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void setParents(final long oldparent, final long newparent) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetParents", oldparent, newparent);
+          obj.callProcedure(new NullCallback(), "SetParents", oldparent, newparent);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -822,18 +738,19 @@ public static void setParents(final long oldparent, final long newparent) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("parent [UPDATE]: (childs," + oldparent + ") to " + "(childs," + newparent + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("parent [UPDATE]: (childs," + oldparent + ") to " + "(childs," + newparent + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void setName(final long id, final String name) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "SetName", id, name);
+          obj.callProcedure(new NullCallback(), "SetName", id, name);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -850,19 +767,20 @@ public static void setName(final long id, final String name) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("name [UPDATE]: (" + id + "," + name + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("name [UPDATE]: (" + id + "," + name + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static long getAccessTime(final long id) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetAccessTime", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetAccessTime", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -888,8 +806,8 @@ public static long getAccessTime(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("accessTime [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("accessTime [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -898,11 +816,11 @@ public static long getModificationTime(final long id) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetModificationTime", id).getResults();
+              obj.callProcedure("GetModificationTime", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -928,8 +846,8 @@ public static long getModificationTime(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("modificationTime [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("modificationTime [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -938,10 +856,10 @@ public static long getHeader(final long id) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetHeader", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetHeader", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -967,8 +885,8 @@ public static long getHeader(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("header [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("header [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -977,10 +895,10 @@ public static long getPermission(final long id) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetPermission", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetPermission", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1006,8 +924,8 @@ public static long getPermission(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("permission [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("permission [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -1016,10 +934,10 @@ public static long getParent(final long id) {
     long res = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetParent", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetParent", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1045,8 +963,8 @@ public static long getParent(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("parent [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("parent [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -1055,10 +973,10 @@ public static String getName(final long id) {
     String res = null;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetName", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetName", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1084,8 +1002,8 @@ public static String getName(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("name [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("name [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
@@ -1094,10 +1012,10 @@ public static String getParentName(final long id) {
     String res = null;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetParentName", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetParentName", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1123,21 +1041,60 @@ public static String getParentName(final long id) {
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("parent name [GET]: (" + id + "," + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("parent name [GET]: (" + id + "," + res + ")");
     }
     return res;
   }
 
+  public static CompletableFuture<Long> getAccessTimeAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetAccessTime", DatabaseAsyncClient.FIRST_LONG, () -> getAccessTime(id), id);
+  }
+
+  public static CompletableFuture<Long> getModificationTimeAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call(
+            "GetModificationTime",
+            DatabaseAsyncClient.FIRST_LONG,
+            () -> getModificationTime(id),
+            id);
+  }
+
+  public static CompletableFuture<Long> getHeaderAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetHeader", DatabaseAsyncClient.FIRST_LONG, () -> getHeader(id), id);
+  }
+
+  public static CompletableFuture<Long> getPermissionAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetPermission", DatabaseAsyncClient.FIRST_LONG, () -> getPermission(id), id);
+  }
+
+  public static CompletableFuture<Long> getParentAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetParent", DatabaseAsyncClient.FIRST_LONG, () -> getParent(id), id);
+  }
+
+  public static CompletableFuture<String> getNameAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetName", DatabaseAsyncClient.FIRST_STRING, () -> getName(id), id);
+  }
+
+  public static CompletableFuture<String> getParentNameAsync(final long id) {
+    return DatabaseAsyncClient.getInstance()
+        .call("GetParentName", DatabaseAsyncClient.FIRST_STRING, () -> getParentName(id), id);
+  }
+
   public static long getChild(final long parentId, final String childName) {
     long childId = -1;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetChild", parentId, childName).getResults();
+              obj.callProcedure("GetChild", parentId, childName).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1165,8 +1122,8 @@ public static long getChild(final long parentId, final String childName) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getChild: (" + childId + "," + parentId + "," + childName + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChild: (" + childId + "," + parentId + "," + childName + ")");
     }
 
     return childId;
@@ -1179,7 +1136,7 @@ public static List<Long> getChildIdsByPath(final long id, final String[] compone
       DatabaseConnection obj = Database.getInstance().getConnection();
       try {
         VoltTable[] results =
-            obj.getVoltClient().callProcedure("GetChildIdsByPath", id, components).getResults();
+            obj.callProcedure("GetChildIdsByPath", id, components).getResults();
         VoltTable result = results[0];
         result.resetRowPosition();
         while (result.advanceRow()) {
@@ -1192,8 +1149,8 @@ public static List<Long> getChildIdsByPath(final long id, final String[] compone
     } catch (Exception e) {
       e.printStackTrace();
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getChildIdsByPath: " + id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChildIdsByPath: " + id);
     }
 
     return res;
@@ -1203,11 +1160,11 @@ public static List<Long> getChildIdsByPath(final long id, final String[] compone
   public static void removeChild(final long id) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "RemoveChild", id);
+          obj.callProcedure(new NullCallback(), "RemoveChild", id);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1233,9 +1190,10 @@ public static void removeChild(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("removeChild: " + id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("removeChild: " + id);
     }
+    DatabaseAsyncClient.written();
   }
 
   public static List<String> getPathComponents(final long childId) {
@@ -1262,8 +1220,8 @@ public static List<String> getPathComponents(final long childId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getPathComponents: " + childId);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getPathComponents: " + childId);
     }
     return names;
   }
@@ -1297,8 +1255,8 @@ public static Pair<List<Long>, List<String>> getParentIdsAndPaths(final long chi
       System.err.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getParentIdsAndPaths: " + childId);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getParentIdsAndPaths: " + childId);
     }
 
     if (ids.size() != 0 || names.size() != 0) {
@@ -1333,8 +1291,8 @@ public static List<Long> getParentIds(final long childId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getParentIds: " + childId);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getParentIds: " + childId);
     }
     return parents;
   }
@@ -1363,8 +1321,8 @@ public static List<Long> getChildIds(final long childId) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getChildIds: " + childId);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChildIds: " + childId);
     }
     return childIds;
   }
@@ -1373,12 +1331,12 @@ public static List<Long> getChildrenIds(final long parentId) {
     List<Long> childIds = new ArrayList<>();
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
+      DatabaseType env = Database.getType();
 
-      if (env.equals("VOLT")) {
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetChildrenIds", parentId).getResults();
+              obj.callProcedure("GetChildrenIds", parentId).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1406,64 +1364,49 @@ public static List<Long> getChildrenIds(final long parentId) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getChildrenIds: (" + childIds + "," + parentId + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChildrenIds: (" + childIds + "," + parentId + ")");
     }
 
     return childIds;
   }
 
   public static List<String> getChildrenNames(final long parentId) {
-    List<String> childNames = new ArrayList<>();
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetChildrenNames", parentId).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            childNames.add(result.getString(0));
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        Connection conn = obj.getConnection();
-        // check the existence of node in Postgres
-        String sql = "SELECT name FROM inodes WHERE parent = ?;";
-        PreparedStatement pst = conn.prepareStatement(sql);
-        pst.setLong(1, parentId);
-        ResultSet rs = pst.executeQuery();
-        while (rs.next()) {
-          childNames.add(rs.getString(1));
-        }
-        rs.close();
-        pst.close();
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.out.println(ex.getMessage());
+    List<String> childNames =
+        ReplicaReads.read(() -> Database.getInstance().getStore().getChildrenNames(parentId));
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChildrenNames: (" + parentId + ")");
     }
+    return childNames;
+  }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getChildrenNames: (" + parentId + ")");
+  /**
+   * @return at most {@code limit} names of the children of {@code parentId} that sort after
+   *         {@code startAfter}, in name order.
+   */
+  public static List<String> getChildrenNamesPaged(
+      final long parentId, final String startAfter, final int limit) {
+    List<String> childNames = ReplicaReads.read(
+        () -> Database.getInstance().getStore().getChildrenNamesPaged(parentId, startAfter, limit));
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getChildrenNamesPaged: (" + parentId + "," + startAfter + "," + limit + ","
+          + childNames.size() + ")");
     }
-
     return childNames;
   }
 
+  /** @return the order of the names returned by {@link #getChildrenNamesPaged}. */
+  public static Comparator<String> getNameOrder() {
+    return Database.getInstance().getStore().getNameOrder();
+  }
+
   public static boolean addChild(final long childId, final String childName, final long parentId) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(new NullCallback(), "AddChild", childId, childName, parentId);
+          obj.callProcedure(new NullCallback(), "AddChild", childId, childName, parentId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1484,55 +1427,25 @@ public static boolean addChild(final long childId, final String childName, final
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("addChild: [OK] UPSERT (" + childId + "," + parentId + "," + childName + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("addChild: [OK] UPSERT (" + childId + "," + parentId + "," + childName + ")");
     }
+    DatabaseAsyncClient.written();
     return true;
   }
 
   public static long getINodesNum() {
-    long num = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      Connection conn = obj.getConnection();
-      String sql = "SELECT COUNT(id) FROM inodes;";
-      Statement st = conn.createStatement();
-      ResultSet rs = st.executeQuery(sql);
-      while (rs.next()) {
-        num = rs.getLong(1);
-      }
-      rs.close();
-      st.close();
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getINodesNum [GET]: (" + num + ")");
+    long num = Database.getInstance().getStore().getINodesNum();
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getINodesNum [GET]: (" + num + ")");
     }
-
     return num;
   }
 
   public static long getLastInodeId() {
-    long num = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      Connection conn = obj.getConnection();
-      String sql = "SELECT MAX(id) FROM inodes;";
-      Statement st = conn.createStatement();
-      ResultSet rs = st.executeQuery(sql);
-      while (rs.next()) {
-        num = rs.getLong(1);
-      }
-      rs.close();
-      st.close();
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getLastInodeId [GET]: (" + num + ")");
+    long num = Database.getInstance().getStore().getLastInodeId();
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getLastInodeId [GET]: (" + num + ")");
     }
     return num;
   }
@@ -1540,11 +1453,10 @@ public static long getLastInodeId() {
   public static void insertUc(final long id, final String clientName, final String clientMachine) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(new NullCallback(), "InsertUc", id, clientName, clientMachine);
+          obj.callProcedure(new NullCallback(), "InsertUc", id, clientName, clientMachine);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1562,20 +1474,21 @@ public static void insertUc(final long id, final String clientName, final String
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("insertUc [UPDATE]: (" + id + ", " + clientName + ", " + clientMachine + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("insertUc [UPDATE]: (" + id + ", " + clientName + ", " + clientMachine + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static Boolean checkUCExistence(final long id) {
     boolean exist = false;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("CheckUCExistence", id).getResults();
+              obj.callProcedure("CheckUCExistence", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1604,8 +1517,8 @@ public static Boolean checkUCExistence(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("checkUCExistence [GET]: (" + id + ", " + exist + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("checkUCExistence [GET]: (" + id + ", " + exist + ")");
     }
     return exist;
   }
@@ -1614,12 +1527,12 @@ public static String getUcClientName(final long id) {
     String name = null;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
+      DatabaseType env = Database.getType();
 
-      if (env.equals("VOLT")) {
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetUcClientName", id).getResults();
+              obj.callProcedure("GetUcClientName", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1644,8 +1557,8 @@ public static String getUcClientName(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getUcClientName [GET]: (" + id + ", " + name + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getUcClientName [GET]: (" + id + ", " + name + ")");
     }
     return name;
   }
@@ -1664,9 +1577,10 @@ public static void setUcClientName(final long id, final String clientName) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setUcClientName [UPDATE]: (" + id + ", " + clientName + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setUcClientName [UPDATE]: (" + id + ", " + clientName + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static String getUcClientMachine(final long id) {
@@ -1687,8 +1601,8 @@ public static String getUcClientMachine(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getUcClientMachine [GET]: (" + id + ", " + name + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getUcClientMachine [GET]: (" + id + ", " + name + ")");
     }
     return name;
   }
@@ -1706,19 +1620,20 @@ public static void setUcClientMachine(final long id, final String clientMachine)
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setUcClientMachine [UPDATE]: (" + id + ", " + clientMachine + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setUcClientMachine [UPDATE]: (" + id + ", " + clientMachine + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void removeINodeNoRecursive(final long id) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "RemoveINodeNoRecursive", id);
+          obj.callProcedure(new NullCallback(), "RemoveINodeNoRecursive", id);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1735,9 +1650,10 @@ public static void removeINodeNoRecursive(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("removeINodeNoRecursive: " + id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("removeINodeNoRecursive: " + id);
     }
+    DatabaseAsyncClient.written();
   }
 
   public static void removeUc(final long id) {
@@ -1753,9 +1669,10 @@ public static void removeUc(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("removeUc [UPDATE]: (" + id + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("removeUc [UPDATE]: (" + id + ")");
     }
+    DatabaseAsyncClient.written();
   }
 
   public static String getXAttrValue(final long id) {
@@ -1776,8 +1693,8 @@ public static String getXAttrValue(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getXAttrValue [GET]: (" + id + ", " + value + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getXAttrValue [GET]: (" + id + ", " + value + ")");
     }
     return value;
   }
@@ -1800,8 +1717,8 @@ public static String getXAttrName(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getXAttrName [GET]: (" + id + ", " + name + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getXAttrName [GET]: (" + id + ", " + name + ")");
     }
     return name;
   }
@@ -1824,8 +1741,8 @@ public static int getXAttrNameSpace(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getXAttrNameSpace [GET]: (" + id + ", " + ns + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getXAttrNameSpace [GET]: (" + id + ", " + ns + ")");
     }
     return ns;
   }
@@ -1872,8 +1789,8 @@ public List<XAttrInfo> getXAttrs(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getXAttrs [GET]: (" + id + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getXAttrs [GET]: (" + id + ")");
     }
     return xinfo;
   }
@@ -1882,11 +1799,11 @@ public static Boolean checkXAttrExistence(final long id) {
     boolean exist = false;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("CheckXAttrExistence", id).getResults();
+              obj.callProcedure("CheckXAttrExistence", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -1915,8 +1832,8 @@ public static Boolean checkXAttrExistence(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("checkXAttrExistence [GET]: (" + id + ", " + exist + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("checkXAttrExistence [GET]: (" + id + ", " + exist + ")");
     }
     return exist;
   }
@@ -1925,11 +1842,10 @@ public static void insertXAttr(
       final long id, final int namespace, final String name, final String value) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient()
-              .callProcedure(new NullCallback(), "InsertXAttr", id, namespace, name, value);
+          obj.callProcedure(new NullCallback(), "InsertXAttr", id, namespace, name, value);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -1948,8 +1864,8 @@ public static void insertXAttr(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info(
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(
           "insertXAttr [UPDATE]: (" + id + ", " + namespace + ", " + name + ", " + value + ")");
     }
   }
@@ -1967,16 +1883,16 @@ public static void removeXAttr(final long id) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("removeXAttr [UPDATE]: (" + id + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("removeXAttr [UPDATE]: (" + id + ")");
     }
   }
 
   public static void insertXAttrs(
       final long id, final List<Integer> ns, final List<String> namevals) {
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -1987,8 +1903,8 @@ public static void insertXAttrs(
             3, conn.createArrayOf("VARCHAR", namevals.toArray(new String[namevals.size()])));
         ResultSet rs = proc.executeQuery();
         while (rs.next()) {
-          if (LOG.isInfoEnabled()) {
-            LOG.info("insertXAttrs Return: " + rs.getLong(1));
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("insertXAttrs Return: " + rs.getLong(1));
           }
         }
         rs.close();
@@ -2013,201 +1929,92 @@ public static void insertXAttrs(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("insertXAttrs: " + id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("insertXAttrs: " + id);
     }
   }
 
-  public static long batchRemoveINodes(final List<String> paths) throws SQLException {
-    long res = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results = obj.getVoltClient()
-            .callProcedure(
-              "BatchRemoveINodes",
-              paths.toArray(new String[paths.size()])).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res = result.getLong(0);
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        // Connection conn = obj.getConnection();
-        // PreparedStatement pst = conn.prepareStatement(sql);
-        // pst.setLong(1, childId);
-        // pst.executeUpdate();
-        // pst.close();
-        // TODO: Support batch update in CockroachDB
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("batchRemoveINodes [UPDATE] -- txnID: " + res);
+  /** @return the log position of the batch, or null; see {@link MetadataStore}. */
+  public static String batchRemoveINodes(final List<String> paths) throws SQLException {
+    String res = Database.getInstance().getStore().removeINodes(paths);
+    ReplicaReads.written(res);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchRemoveINodes [UPDATE] -- txnID: " + res);
     }
+    DatabaseAsyncClient.written();
     return res;
   }
 
-  public static long batchRenameINodes(
-      final List<Long> longAttr,
-      final List<String> strAttr)
-      throws SQLException {
-    long res = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results = obj.getVoltClient()
-            .callProcedure(
-                "BatchRenameINodes",
-                longAttr.toArray(new Long[longAttr.size()]),
-                strAttr.toArray(new String[strAttr.size()])).getResults();
-          VoltTable result = results[0];
-          result.resetRowPosition();
-          while (result.advanceRow()) {
-            res = result.getLong(0);
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("BatchRenameINodes [UPDATE] -- txnID: " + res);
+  public static String batchRenameINodes(final List<LoadINode> inodes) throws SQLException {
+    String res = Database.getInstance().getStore().renameINodes(inodes);
+    ReplicaReads.written(res);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchRenameINodes [UPDATE] -- txnID: " + res);
     }
+    DatabaseAsyncClient.written();
     return res;
   }
 
-  // todo: ignite
-  public static long batchUpdateINodes(
-      final List<Long> longAttr,
-      final List<String> strAttr,
-      final List<Long> fileIds,
-      final List<String> fileAttr)
-      throws SQLException {
-    long res = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      // if (env.equals("VOLT")) {
-        // try {
-        //   VoltTable[] results = obj.getVoltClient()
-        //       .callProcedure(
-        //           "BatchUpdateINodes",
-        //           longAttr.toArray(new Long[longAttr.size()]),
-        //           strAttr.toArray(new String[strAttr.size()]),
-        //           fileIds.toArray(new Long[fileIds.size()]),
-        //           fileAttr.toArray(new String[fileAttr.size()])).getResults();
-        //   VoltTable result = results[0];
-        //   result.resetRowPosition();
-        //   while (result.advanceRow()) {
-        //     res = result.getLong(0);
-        //   }
-        // } catch (Exception e) {
-        //   e.printStackTrace();
-        // }
-      // } else {
-        int size = strAttr.size() / 2;
-        Connection conn = obj.getConnection();
-        String sql = "UPSERT INTO inodes("
-          + "parent, id, name, modificationTime, accessTime, permission, header, parentName"
-          + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?);";
-        PreparedStatement pst = conn.prepareStatement(sql);
-
-        for (int i = 0; i < size; ++i) {
-          int idx = i * 6;
-          int idy = i * 2;
-          pst.setLong(1, longAttr.get(idx));
-          pst.setLong(2, longAttr.get(idx + 1));
-          pst.setString(3, strAttr.get(idy));
-          pst.setLong(4, longAttr.get(idx + 2));
-          pst.setLong(5, longAttr.get(idx + 3));
-          pst.setLong(6, longAttr.get(idx + 4));
-          pst.setLong(7, longAttr.get(idx + 5));
-          pst.setString(8, strAttr.get(idy + 1));
-          pst.addBatch();
-        }
-        pst.executeBatch();
-        pst.close();
-      // }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
-    }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("batchUpdateINodes [UPDATE] -- txnID: " + res);
+  public static String batchUpdateINodes(final List<LoadINode> inodes) throws SQLException {
+    String res = Database.getInstance().getStore().updateINodes(inodes);
+    ReplicaReads.written(res);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchUpdateINodes [UPDATE] -- txnID: " + res);
     }
+    DatabaseAsyncClient.written();
     return res;
   }
 
-  // todo: ignite
-  public static long updateSubtree(final long dir_id, final long dest_id, final String old_parent_name,
-    final String new_parent_name, final long new_parent) {
-    long res = 0;
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          VoltTable[] results = obj.getVoltClient()
-              .callProcedure("UpdateSubtreeV2", dir_id, dest_id, old_parent_name,
-              new_parent_name, new_parent).getResults();
-              VoltTable result = results[0];
-              result.resetRowPosition();
-              while (result.advanceRow()) {
-                res = result.getLong(0);
-              }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
+  public static List<String> getSubtreePartitions(final String path) {
+    List<String> res = Database.getInstance().getStore().getSubtreePartitions(path);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getSubtreePartitions [GET]: (" + path + ", " + res.size() + ")");
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("txnId: " + res + " updateSubtree v2 [UPDATE]: " + dir_id);
+    return res;
+  }
+
+  public static List<ReclaimINode> reclaimPartition(final String parentName) throws SQLException {
+    List<ReclaimINode> res = Database.getInstance().getStore().reclaimPartition(parentName);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("reclaimPartition [GET]: (" + parentName + ", " + res.size() + ")");
     }
     return res;
   }
 
-  // todo: ignite
-  public static void setId(final long old_id, final long new_id, final String new_parent_name, final long new_parent) {
-    try {
-      DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
-        try {
-          obj.getVoltClient()
-              .callProcedure("SetId", old_id, new_id, new_parent_name, new_parent);
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      } else {
-        throw new SQLException("[UNSUPPORT] Invalid operation ...");
-      }
-      Database.getInstance().retConnection(obj);
-    } catch (SQLException ex) {
-      System.err.println(ex.getMessage());
+  public static void dropPartitionBlocks(final String parentName) throws SQLException {
+    Database.getInstance().getStore().dropPartitionBlocks(parentName);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("dropPartitionBlocks [UPDATE]: (" + parentName + ")");
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("setId [UPDATE]: (" + old_id + ", " + new_id + ")");
+  }
+
+  /**
+   * Rewrites one field of the permission word of inode {@code id} at {@code path} and of every
+   * inode below it; see {@link MetadataStore#setSubtreePermission}.
+   */
+  public static String setSubtreePermission(
+      final long id, final String path, final long keep, final long bits) throws SQLException {
+    String res = Database.getInstance().getStore().setSubtreePermission(id, path, keep, bits);
+    ReplicaReads.written(res);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setSubtreePermission [UPDATE]: (" + path + ", " + bits + ") -- txnID: " + res);
+    }
+    DatabaseAsyncClient.written();
+    return res;
+  }
+
+  /**
+   * Moves every inode below {@code oldPath} under {@code newPath}, keeping their ids; see
+   * {@link MetadataStore#renameSubtree}.
+   */
+  public static String renameSubtree(final String oldPath, final String newPath, final int chunkSize)
+      throws SQLException {
+    String res = Database.getInstance().getStore().renameSubtree(oldPath, newPath, chunkSize);
+    ReplicaReads.written(res);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("renameSubtree [UPDATE]: (" + oldPath + ", " + newPath + ") -- txnID: " + res);
     }
+    DatabaseAsyncClient.written();
+    return res;
   }
 }
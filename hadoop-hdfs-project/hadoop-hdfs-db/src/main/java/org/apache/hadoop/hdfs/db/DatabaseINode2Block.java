@@ -35,8 +35,9 @@ public static void insert(final long id, final long blockId, final int idx) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("INode2Block [insert]: (" + id + "," + blockId + "," + idx + ")");
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.BC_ID, id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("INode2Block [insert]: (" + id + "," + blockId + "," + idx + ")");
     }
   }
 
@@ -46,8 +47,8 @@ public static void insert(final long id, final List<Long> blockIds, final int in
     }
 
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -63,8 +64,8 @@ public static void insert(final long id, final List<Long> blockIds, final int in
 
         ResultSet rs = proc.executeQuery();
         while (rs.next()) {
-          if (LOG.isInfoEnabled()) {
-            LOG.info("INode2Block Insertion Return: " + rs.getLong(1));
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("INode2Block Insertion Return: " + rs.getLong(1));
           }
         }
         rs.close();
@@ -89,13 +90,16 @@ public static void insert(final long id, final List<Long> blockIds, final int in
         pst.close();
 
         Database.getInstance().retConnection(obj);
-        if (LOG.isInfoEnabled()) {
-          LOG.info("INode2Block [insert]: (" + sql + ")");
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("INode2Block [insert]: (" + sql + ")");
         }
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    for (Long blockId : blockIds) {
+      DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.BC_ID, id);
+    }
   }
 
   private static <T> void setAttribute(final long id, final String attrName, final T attrValue) {
@@ -126,8 +130,8 @@ private static <T> void setAttribute(final long id, final String attrName, final
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info(attrName + " [UPDATE]: (" + id + "," + attrValue + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(attrName + " [UPDATE]: (" + id + "," + attrValue + ")");
     }
   }
 
@@ -154,8 +158,8 @@ private static <T> T getAttribute(final long id, final String attrName) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info(attrName + " [GET]: (" + id + "," + result + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace(attrName + " [GET]: (" + id + "," + result + ")");
     }
 
     return result;
@@ -165,10 +169,10 @@ public static int getNumBlocks(final long id) {
     int num = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetNumBlocks", id).getResults();
+          VoltTable[] results = obj.callProcedure("GetNumBlocks", id).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -194,8 +198,8 @@ public static int getNumBlocks(final long id) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getNumBlocks: (" + id + "," + num + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getNumBlocks: (" + id + "," + num + ")");
     }
 
     return num;
@@ -220,15 +224,21 @@ public static int getLastBlockId(final long id) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getLastBlockId: (" + id + "," + blockId + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getLastBlockId: (" + id + "," + blockId + ")");
     }
 
     return blockId;
   }
 
   public static long getBcId(final long blockId) {
-    long id = 0;
+    long id = DatabaseBlockCache.getInstance().get(blockId, DatabaseBlockCache.BC_ID);
+    if (id != DatabaseBlockCache.MISS) {
+      return id;
+    }
+    int version = DatabaseBlockCache.getInstance().version(blockId);
+    long bcIdVersion = DatabaseBlockCache.getInstance().bcIdVersion();
+    id = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
@@ -242,8 +252,9 @@ public static long getBcId(final long blockId) {
       rs.close();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("getBcId: (" + blockId + "," + id + ")");
+      DatabaseBlockCache.getInstance().fillBcId(blockId, id, version, bcIdVersion);
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("getBcId: (" + blockId + "," + id + ")");
       }
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
@@ -266,8 +277,8 @@ public static long getSize() {
       rs.close();
       st.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("getSize: (" + size + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("getSize: (" + size + ")");
       }
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
@@ -278,6 +289,7 @@ public static long getSize() {
 
   public static void setBcIdViaBlkId(final long blockId, final long bcId) {
     setAttribute(blockId, "id", bcId);
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.BC_ID, bcId);
   }
 
   public static void setBcIdViaBcId(final long bcId, final long newBcId) {
@@ -291,23 +303,24 @@ public static void setBcIdViaBcId(final long bcId, final long newBcId) {
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("setBcIdViaBcId: (" + bcId + "," + newBcId + "," + sql + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("setBcIdViaBcId: (" + bcId + "," + newBcId + "," + sql + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidateBcIds(bcId);
   }
 
   public static List<Long> getBlockIds(final long inodeId) {
     List<Long> blockIds = new ArrayList<>();
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetBlockIds", inodeId).getResults();
+              obj.callProcedure("GetBlockIds", inodeId).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -333,8 +346,8 @@ public static List<Long> getBlockIds(final long inodeId) {
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getBlockIds: (" + inodeId + ", " + blockIds + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getBlockIds: (" + inodeId + ", " + blockIds + ")");
     }
     return blockIds;
   }
@@ -357,8 +370,8 @@ public static List<Long> getAllBlockIds() {
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getAllBlockIds: (" + blockIds + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getAllBlockIds: (" + blockIds + ")");
     }
     return blockIds;
   }
@@ -373,12 +386,13 @@ public static void deleteViaBlkId(final long blockId) {
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("deleteViaBlkId: (" + blockId + "," + sql + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("deleteViaBlkId: (" + blockId + "," + sql + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.BC_ID, 0);
   }
 
   public static void delete(final long nodeId, final int idx) {
@@ -392,21 +406,22 @@ public static void delete(final long nodeId, final int idx) {
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("delete: (" + nodeId + "," + idx + "," + sql + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("delete: (" + nodeId + "," + idx + "," + sql + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidateBcIds(nodeId);
   }
 
   public static void deleteViaBcId(final long nodeId) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure(new NullCallback(), "DeleteViaBcId", nodeId);
+          obj.callProcedure(new NullCallback(), "DeleteViaBcId", nodeId);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -419,12 +434,13 @@ public static void deleteViaBcId(final long nodeId) {
         pst.close();
       }
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("deleteViaBcId: (" + nodeId + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("deleteViaBcId: (" + nodeId + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidateBcIds(nodeId);
   }
 
   public static void truncate(final long nodeId, final int n) {
@@ -438,12 +454,13 @@ public static void truncate(final long nodeId, final int n) {
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("truncate: (" + nodeId + "," + n + "," + sql + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("truncate: (" + nodeId + "," + n + "," + sql + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidateBcIds(nodeId);
   }
 
   public static void setBlockId(final long nodeId, final int idx, final long blockId) {
@@ -458,12 +475,15 @@ public static void setBlockId(final long nodeId, final int idx, final long block
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("setBlockId: (" + nodeId + "," + blockId + "," + idx + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("setBlockId: (" + nodeId + "," + blockId + "," + idx + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    // the block it replaces is not known without a read, so the inode is dropped
+    DatabaseBlockCache.getInstance().invalidateBcIds(nodeId);
+    DatabaseBlockCache.getInstance().put(blockId, DatabaseBlockCache.BC_ID, nodeId);
   }
 
   public static int getBlockId(final long nodeId, final int idx) {
@@ -482,8 +502,8 @@ public static int getBlockId(final long nodeId, final int idx) {
       rs.close();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("getBlockId: (" + nodeId + "," + blockId + ")");
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("getBlockId: (" + nodeId + "," + blockId + ")");
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
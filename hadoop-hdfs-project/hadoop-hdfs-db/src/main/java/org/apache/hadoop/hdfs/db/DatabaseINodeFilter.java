@@ -0,0 +1,49 @@
+package org.apache.hadoop.hdfs.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Serialized membership filters of directory children, stored in the inodefilters table. */
+public class DatabaseINodeFilter {
+  static final Logger LOG = LoggerFactory.getLogger(DatabaseINodeFilter.class);
+
+  // the bits column is VARBINARY(1048576) in VoltDB
+  public static final int MAX_FILTER_BYTES = 1048576;
+
+  public DatabaseINodeFilter() {}
+
+  /** @return the filter stored for directory {@code id}, or null if there is none. */
+  public static byte[] getFilter(final long id) {
+    byte[] res = Database.getInstance().getStore().getFilter(id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("filter [GET]: (" + id + "," + (res == null ? -1 : res.length) + ")");
+    }
+    return res;
+  }
+
+  /**
+   * Stores the filter of directory {@code id}; filters over MAX_FILTER_BYTES are not stored. This
+   * is synchronous, so that it cannot be reordered with a later {@link #removeFilter}.
+   */
+  public static void setFilter(final long id, final byte[] bits) {
+    if (bits.length > MAX_FILTER_BYTES) {
+      removeFilter(id);
+      return;
+    }
+    Database.getInstance().getStore().setFilter(id, bits);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("filter [UPDATE]: (" + id + "," + bits.length + ")");
+    }
+  }
+
+  /**
+   * Drops the filter of directory {@code id}. This is synchronous: callers rely on the stored
+   * filter being gone before they change the directory's children.
+   */
+  public static void removeFilter(final long id) {
+    Database.getInstance().getStore().removeFilter(id);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("filter [DELETE]: (" + id + ")");
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsException;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the database calls, registered with the metrics system as the DatabaseMetrics
+ * source and so published through JMX.
+ *
+ * <p>For every stored procedure {@code P} there are PNumOps and PAvgTime (latency in
+ * microseconds), the latency quantiles P{interval}s{50,75,90,95,99}thPercentileLatency and
+ * PErrors. JDBC statements are named after their verb and table, e.g. JdbcSelectInodes, and
+ * Ignite calls after their cache operation or compute task, e.g. IgniteLoadINode or
+ * BatchUpdateINodes. PoolWait is the time taken to borrow a connection from the pool, with the
+ * same quantiles.
+ *
+ * <p>Quantiles are computed over FILESCALE_DB_METRICS_INTERVAL seconds (default 60); 0 turns
+ * them off.
+ */
+public class DatabaseMetrics implements MetricsSource {
+  static final Logger LOG = LoggerFactory.getLogger(DatabaseMetrics.class);
+
+  private static volatile DatabaseMetrics instance;
+
+  private final MetricsRegistry registry = new MetricsRegistry("DatabaseMetrics");
+  private final ConcurrentHashMap<String, Procedure> procedures = new ConcurrentHashMap<>();
+  private final int interval;
+
+  private final MutableRate poolWait;
+  private final MutableQuantiles poolWaitQuantiles;
+
+  private static final class Procedure {
+    final MutableRate latency;
+    final MutableQuantiles quantiles;
+    final MutableCounterLong errors;
+
+    Procedure(MutableRate latency, MutableQuantiles quantiles, MutableCounterLong errors) {
+      this.latency = latency;
+      this.quantiles = quantiles;
+      this.errors = errors;
+    }
+  }
+
+  private DatabaseMetrics() {
+    int seconds = 60;
+    String env = System.getenv("FILESCALE_DB_METRICS_INTERVAL");
+    if (env != null) {
+      seconds = Integer.parseInt(env);
+    }
+    interval = seconds;
+    registry.setContext("dfs");
+    poolWait = registry.newRate("PoolWait", "Time to borrow a connection, in microseconds", false);
+    poolWaitQuantiles = interval > 0
+        ? registry.newQuantiles("PoolWait" + interval + "s",
+            "Time to borrow a connection, in microseconds", "ops", "latency", interval)
+        : null;
+  }
+
+  public static DatabaseMetrics get() {
+    if (instance == null) {
+      synchronized (DatabaseMetrics.class) {
+        if (instance == null) {
+          DatabaseMetrics metrics = new DatabaseMetrics();
+          try {
+            DefaultMetricsSystem.instance().register(
+                "DatabaseMetrics", "Database calls of the namespace", metrics);
+          } catch (MetricsException e) {
+            LOG.warn("DatabaseMetrics not registered: " + e.getMessage());
+          }
+          instance = metrics;
+        }
+      }
+    }
+    return instance;
+  }
+
+  private Procedure procedure(String name) {
+    Procedure p = procedures.get(name);
+    if (p == null) {
+      p = procedures.computeIfAbsent(name, n -> new Procedure(
+          registry.newRate(n, n + " latency, in microseconds", false),
+          interval > 0
+              ? registry.newQuantiles(n + interval + "s", n + " latency, in microseconds",
+                  "ops", "latency", interval)
+              : null,
+          registry.newCounter(n + "Errors", n + " calls that failed", 0L)));
+    }
+    return p;
+  }
+
+  /** Records one call of {@code procedure} that took {@code nanos}. */
+  public void addCall(String procedure, long nanos, boolean ok) {
+    Procedure p = procedure(procedure);
+    long micros = nanos / 1000;
+    p.latency.add(micros);
+    if (p.quantiles != null) {
+      p.quantiles.add(micros);
+    }
+    if (!ok) {
+      p.errors.incr();
+    }
+  }
+
+  public void addPoolWait(long nanos) {
+    long micros = nanos / 1000;
+    poolWait.add(micros);
+    if (poolWaitQuantiles != null) {
+      poolWaitQuantiles.add(micros);
+    }
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+}
@@ -22,10 +22,10 @@ public static void insertEntries(
       final String[] namenodes, final String[] paths, final Long[] readonlys) {
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure("InsertMountEntries", namenodes, paths, readonlys);
+          obj.callProcedure("InsertMountEntries", namenodes, paths, readonlys);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -50,8 +50,8 @@ public static void insertEntries(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("insertEntries ...");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("insertEntries ...");
     }
   }
 
@@ -59,10 +59,10 @@ public static List<String> getAllNameNodes() {
     List<String> res = new ArrayList();
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("GetAllNameNodes").getResults();
+          VoltTable[] results = obj.callProcedure("GetAllNameNodes").getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -88,8 +88,8 @@ public static List<String> getAllNameNodes() {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getAllNameNodes ...");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getAllNameNodes ...");
     }
     return res;
   }
@@ -98,11 +98,11 @@ public static String getNameNode(String filePath) {
     String res = null;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("GetNameNode", filePath).getResults();
+              obj.callProcedure("GetNameNode", filePath).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -151,8 +151,8 @@ public static String getNameNode(String filePath) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getNameNode: (" + filePath + ", " + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getNameNode: (" + filePath + ", " + res + ")");
     }
     return res;
   }
@@ -161,11 +161,11 @@ public static Boolean isMountPoint(String filePath) {
     Boolean res = false;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("IsMountPoint", filePath).getResults();
+              obj.callProcedure("IsMountPoint", filePath).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -194,8 +194,8 @@ public static Boolean isMountPoint(String filePath) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("isMountPoint: (" + filePath + ", " + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("isMountPoint: (" + filePath + ", " + res + ")");
     }
     return res;
   }
@@ -204,11 +204,11 @@ public static Boolean isUnified(String filePath) {
     Boolean res = false;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
           VoltTable[] results =
-              obj.getVoltClient().callProcedure("IsUnified", filePath).getResults();
+              obj.callProcedure("IsUnified", filePath).getResults();
           VoltTable result = results[0];
           result.resetRowPosition();
           while (result.advanceRow()) {
@@ -237,8 +237,8 @@ public static Boolean isUnified(String filePath) {
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("isUnified: (" + filePath + ", " + res + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("isUnified: (" + filePath + ", " + res + ")");
     }
     return res;
   }
@@ -250,10 +250,10 @@ public static void dumpMountTable() {
       System.out.println("\t\t\t============================================");
       System.out.println("\t\t\t               Mount Table                  ");
       System.out.println("\t\t\t============================================");
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          VoltTable[] results = obj.getVoltClient().callProcedure("DumpMountTable").getResults();
+          VoltTable[] results = obj.callProcedure("DumpMountTable").getResults();
           VoltTable result = results[0];
           Object[][] tuples = new Object[result.getRowCount()][];
           String[] columnNames = {"NameNode", "Path", "ReadOnly"};
@@ -305,10 +305,10 @@ public static void loadEntries(
       final String[] namenodes, final String[] paths, final Long[] readonlys) {
     try {
       DatabaseConnection obj = new DatabaseConnection();
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         try {
-          obj.getVoltClient().callProcedure("InsertMountEntries", namenodes, paths, readonlys);
+          obj.callProcedure("InsertMountEntries", namenodes, paths, readonlys);
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -332,8 +332,8 @@ public static void loadEntries(
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
-    if (LOG.isInfoEnabled()) {
-      LOG.info("loadEntries ...");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("loadEntries ...");
     }
   }
 }
@@ -24,11 +24,11 @@ public static void setSecretManagerSummary(
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
       String sql = "";
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         sql =
             "UPSERT INTO hdfs(id, currentId, tokenSequenceNumber, numKeys, numTokens) VALUES(0, ?, ?, ?, ?);";
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         sql =
             "MERGE INTO hdfs(id, currentId, tokenSequenceNumber, numKeys, numTokens) VALUES(0, ?, ?, ?, ?);";
       } else {
@@ -41,7 +41,7 @@ public static void setSecretManagerSummary(
       pst.setInt(2, tokenSequenceNumber);
       pst.setInt(3, numKeys);
       pst.setInt(4, numTokens);
-      if (!env.equals("VOLT")) {
+      if (!env == DatabaseType.VOLT) {
         pst.setInt(5, currentId);
         pst.setInt(6, tokenSequenceNumber);
         pst.setInt(7, numKeys);
@@ -63,10 +63,10 @@ public static void setStringTableSummary(int numEntry, int maskBits) {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
       String sql = "";
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         sql = "UPSERT INTO hdfs(id, numEntry, maskBits) VALUES(0, ?, ?);";
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         sql = "MERGE INTO hdfs(id, numEntry, maskBits) VALUES(0, ?, ?);";
       } else {
         sql =
@@ -76,7 +76,7 @@ public static void setStringTableSummary(int numEntry, int maskBits) {
       PreparedStatement pst = conn.prepareStatement(sql);
       pst.setInt(1, numEntry);
       pst.setInt(2, maskBits);
-      if (!env.equals("VOLT")) {
+      if (!env == DatabaseType.VOLT) {
         pst.setInt(3, numEntry);
         pst.setInt(4, maskBits);
       }
@@ -143,8 +143,8 @@ public static void setStringTable(Integer[] ids, String[] strs) {
     }
 
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -162,7 +162,7 @@ public static void setStringTable(Integer[] ids, String[] strs) {
         rs.close();
         proc.close();
         Database.getInstance().retConnection(obj);
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
         String sql = "MERGE INTO stringtable(id, str) VALUES (?, ?);";
@@ -262,8 +262,8 @@ public static void setDelegationKeys(Integer[] ids, Long[] dates, String[] keys)
     }
 
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -282,7 +282,7 @@ public static void setDelegationKeys(Integer[] ids, Long[] dates, String[] keys)
         rs.close();
         proc.close();
         Database.getInstance().retConnection(obj);
-      } else if (env.equals("IGNITE")) {
+      } else if (env == DatabaseType.IGNITE) {
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
         String sql = "MERGE INTO delegationkeys(id, expiryDate, key) VALUES (?, ?, ?);";
@@ -347,8 +347,8 @@ public static void setPersistTokens(
     }
 
     try {
-      String env = System.getenv("DATABASE");
-      if (env.equals("VOLT")) {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
         // call a stored procedure
         DatabaseConnection obj = Database.getInstance().getConnection();
         Connection conn = obj.getConnection();
@@ -1,19 +1,367 @@
 package org.apache.hadoop.hdfs.db;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.voltdb.*;
+import org.voltdb.client.*;
+import org.apache.ignite.*;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.binary.BinaryObjectBuilder;
+import org.apache.hadoop.hdfs.db.ignite.BatchSetStorages;
+import org.apache.hadoop.hdfs.db.ignite.BatchUpdateBlocks;
 
 public class DatabaseStorage {
   static final Logger LOG = LoggerFactory.getLogger(DatabaseStorage.class);
 
+  // number of block2storage rows written per BatchUpdateBlocks or BatchSetStorages call
+  private static final int BATCH_UPDATE_SIZE = 1024;
+
+  /** The block2storage rows read and written while a block report is processed on a thread. */
+  private static final class Batch {
+    // rows loaded by DatabaseDatablock#batchLoadBlocks, by blockId and idx
+    final Map<Long, TreeMap<Integer, String>> loaded = new HashMap<>();
+    // deferred insertStorage calls, by blockId and idx
+    final Map<Long, TreeMap<Integer, String>> inserts = new LinkedHashMap<>();
+    // deferred setStorage calls on rows not inserted in this batch, by blockId and idx
+    final Map<Long, TreeMap<Integer, String>> updates = new LinkedHashMap<>();
+  }
+
+  private static final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
+  /**
+   * Defer block2storage writes issued by the current thread until {@link #flushBatch()}.
+   * Reads on the same thread see the deferred writes.
+   */
+  public static void beginBatch() {
+    if (batch.get() == null) {
+      batch.set(new Batch());
+    }
+  }
+
+  /**
+   * Write all deferred block2storage updates of the current thread in bulk.
+   *
+   * @throws SQLException if a batch failed; some of the updates may have been written.
+   */
+  public static void flushBatch() throws SQLException {
+    Batch pending = batch.get();
+    if (pending == null) {
+      return;
+    }
+    batch.remove();
+    try {
+      if (!pending.inserts.isEmpty()) {
+        Rows rows = new Rows(pending.inserts);
+        batchUpdateStorages(rows.blockIds, rows.idxs, rows.storageIds);
+      }
+      if (!pending.updates.isEmpty()) {
+        Rows rows = new Rows(pending.updates);
+        batchSetStorages(rows.blockIds, rows.idxs, rows.storageIds);
+      }
+    } finally {
+      // also after a failure, as the rows of a failed batch are unknown
+      for (Long blockId : pending.inserts.keySet()) {
+        DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
+      }
+      for (Long blockId : pending.updates.keySet()) {
+        DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
+      }
+    }
+  }
+
+  // deferred rows flattened into the parameter arrays of a batch call
+  private static final class Rows {
+    final long[] blockIds;
+    final int[] idxs;
+    final String[] storageIds;
+
+    Rows(Map<Long, TreeMap<Integer, String>> rows) {
+      int size = 0;
+      for (TreeMap<Integer, String> storages : rows.values()) {
+        size += storages.size();
+      }
+      blockIds = new long[size];
+      idxs = new int[size];
+      storageIds = new String[size];
+      int i = 0;
+      for (Map.Entry<Long, TreeMap<Integer, String>> entry : rows.entrySet()) {
+        for (Map.Entry<Integer, String> storage : entry.getValue().entrySet()) {
+          blockIds[i] = entry.getKey();
+          idxs[i] = storage.getKey();
+          storageIds[i] = storage.getValue();
+          ++i;
+        }
+      }
+    }
+  }
+
+  /** @return true if block2storage writes of the current thread are being deferred. */
+  static boolean isBatching() {
+    return batch.get() != null;
+  }
+
+  /**
+   * Keeps the block2storage rows of blocks loaded in bulk, by blockId and idx, for the reads of
+   * the batch of the current thread; a block without rows maps to an empty map.
+   */
+  static void loadBatch(final Map<Long, TreeMap<Integer, String>> rows) {
+    Batch pending = batch.get();
+    if (pending != null) {
+      pending.loaded.putAll(rows);
+    }
+  }
+
+  private static TreeMap<Integer, String> rowsOf(
+      final Map<Long, TreeMap<Integer, String>> rows, final long blockId) {
+    TreeMap<Integer, String> storages = rows.get(blockId);
+    if (storages == null) {
+      storages = new TreeMap<>();
+      rows.put(blockId, storages);
+    }
+    return storages;
+  }
+
+  private static boolean deferInsert(final long blockId, final int idx, final String storageId) {
+    Batch pending = batch.get();
+    if (pending == null) {
+      return false;
+    }
+    rowsOf(pending.inserts, blockId).put(idx, storageId);
+    TreeMap<Integer, String> updates = pending.updates.get(blockId);
+    if (updates != null) {
+      updates.remove(idx);
+    }
+    DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
+    return true;
+  }
+
+  private static boolean deferUpdate(final long blockId, final int idx, final String storageId) {
+    Batch pending = batch.get();
+    if (pending == null) {
+      return false;
+    }
+    TreeMap<Integer, String> inserts = pending.inserts.get(blockId);
+    if (inserts != null && inserts.containsKey(idx)) {
+      inserts.put(idx, storageId);
+    } else {
+      rowsOf(pending.updates, blockId).put(idx, storageId);
+    }
+    DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
+    return true;
+  }
+
+  /**
+   * @return the storages of a block as the batch of the current thread sees them, that is its
+   *     rows with the deferred writes applied; null if there is no batch, or if the batch has
+   *     neither loaded nor written the block.
+   */
+  private static TreeMap<Integer, String> batchedStorages(final long blockId) {
+    Batch pending = batch.get();
+    if (pending == null) {
+      return null;
+    }
+    TreeMap<Integer, String> inserts = pending.inserts.get(blockId);
+    TreeMap<Integer, String> updates = pending.updates.get(blockId);
+    TreeMap<Integer, String> loaded = pending.loaded.get(blockId);
+    if (loaded == null && inserts == null && updates == null) {
+      return null;
+    }
+    TreeMap<Integer, String> storages =
+        (loaded != null) ? new TreeMap<>(loaded) : loadStorages(blockId);
+    if (inserts != null) {
+      storages.putAll(inserts);
+    }
+    if (updates != null) {
+      // an UPDATE of a row that does not exist changes nothing
+      for (Map.Entry<Integer, String> update : updates.entrySet()) {
+        if (storages.containsKey(update.getKey())) {
+          storages.put(update.getKey(), update.getValue());
+        }
+      }
+    }
+    return storages;
+  }
+
+  // rows of a block the batch did not load in bulk
+  private static TreeMap<Integer, String> loadStorages(final long blockId) {
+    TreeMap<Integer, String> storages = new TreeMap<>();
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      Connection conn = obj.getConnection();
+      String sql = "SELECT idx, storageId FROM block2storage WHERE blockId = ?;";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setLong(1, blockId);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        storages.put(rs.getInt(1), rs.getString(2));
+      }
+      rs.close();
+      pst.close();
+      Database.getInstance().retConnection(obj);
+    } catch (SQLException ex) {
+      System.err.println(ex.getMessage());
+    }
+    return storages;
+  }
+
+  public static long batchUpdateStorages(
+      final long[] blockIds, final int[] idxs, final String[] storageIds) throws SQLException {
+    long res = 0;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
+        try {
+          for (int from = 0; from < blockIds.length; from += BATCH_UPDATE_SIZE) {
+            int to = Math.min(blockIds.length, from + BATCH_UPDATE_SIZE);
+            VoltTable[] results =
+                obj.callProcedure(
+                    "BatchUpdateBlocks",
+                    Arrays.copyOfRange(blockIds, from, to),
+                    Arrays.copyOfRange(idxs, from, to),
+                    Arrays.copyOfRange(storageIds, from, to))
+                .getResults();
+            VoltTable result = results[0];
+            result.resetRowPosition();
+            while (result.advanceRow()) {
+              res = result.getLong(0);
+            }
+          }
+        } catch (IOException | ProcCallException e) {
+          throw new SQLException("block2storage batch failed", e);
+        }
+      } else if (env == DatabaseType.IGNITE) {
+        Map<BinaryObject, BinaryObject> map = new HashMap<>();
+        for (int i = 0; i < blockIds.length; ++i) {
+          BinaryObjectBuilder keyBuilder = obj.getIgniteClient().binary().builder("Block2storageKey");
+          BinaryObject key = keyBuilder
+            .setField("blockId", blockIds[i], Long.class)
+            .setField("idx", idxs[i], Integer.class)
+            .build();
+          BinaryObjectBuilder valueBuilder = obj.getIgniteClient().binary().builder("Block2storage");
+          BinaryObject value = valueBuilder.setField("storageId", storageIds[i], String.class).build();
+          map.put(key, value);
+        }
+        IgniteCompute compute = obj.getIgniteClient().compute();
+        obj.callIgnite("BatchUpdateBlocks", () -> compute.apply(new BatchUpdateBlocks(), map));
+      } else {
+        Connection conn = obj.getConnection();
+        String sql =
+            "INSERT INTO block2storage(blockId, idx, storageId) VALUES (?, ?, ?)"
+                + " ON CONFLICT(blockId, idx) DO UPDATE SET storageId = EXCLUDED.storageId;";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        for (int i = 0; i < blockIds.length; ++i) {
+          pst.setLong(1, blockIds[i]);
+          pst.setInt(2, idxs[i]);
+          if (storageIds[i] != null) {
+            pst.setString(3, storageIds[i]);
+          } else {
+            pst.setNull(3, Types.VARCHAR);
+          }
+          pst.addBatch();
+        }
+        pst.executeBatch();
+        pst.close();
+      }
+    } catch (IgniteException e) {
+      throw new SQLException("block2storage batch failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchUpdateStorages [UPDATE]: " + blockIds.length + " rows -- txnID: " + res);
+    }
+    return res;
+  }
+
+  /** Sets the storageId of the existing rows (blockIds[i], idxs[i]); missing rows are skipped. */
+  public static long batchSetStorages(
+      final long[] blockIds, final int[] idxs, final String[] storageIds) throws SQLException {
+    long res = 0;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      DatabaseType env = Database.getType();
+      if (env == DatabaseType.VOLT) {
+        try {
+          for (int from = 0; from < blockIds.length; from += BATCH_UPDATE_SIZE) {
+            int to = Math.min(blockIds.length, from + BATCH_UPDATE_SIZE);
+            VoltTable[] results =
+                obj.callProcedure(
+                    "BatchSetStorages",
+                    Arrays.copyOfRange(blockIds, from, to),
+                    Arrays.copyOfRange(idxs, from, to),
+                    Arrays.copyOfRange(storageIds, from, to))
+                .getResults();
+            VoltTable result = results[0];
+            result.resetRowPosition();
+            while (result.advanceRow()) {
+              res = result.getLong(0);
+            }
+          }
+        } catch (IOException | ProcCallException e) {
+          throw new SQLException("block2storage batch failed", e);
+        }
+      } else if (env == DatabaseType.IGNITE) {
+        Map<BinaryObject, BinaryObject> map = new HashMap<>();
+        for (int i = 0; i < blockIds.length; ++i) {
+          BinaryObjectBuilder keyBuilder = obj.getIgniteClient().binary().builder("Block2storageKey");
+          BinaryObject key = keyBuilder
+            .setField("blockId", blockIds[i], Long.class)
+            .setField("idx", idxs[i], Integer.class)
+            .build();
+          BinaryObjectBuilder valueBuilder = obj.getIgniteClient().binary().builder("Block2storage");
+          BinaryObject value = valueBuilder.setField("storageId", storageIds[i], String.class).build();
+          map.put(key, value);
+        }
+        IgniteCompute compute = obj.getIgniteClient().compute();
+        obj.callIgnite("BatchSetStorages", () -> compute.apply(new BatchSetStorages(), map));
+      } else {
+        Connection conn = obj.getConnection();
+        String sql = "UPDATE block2storage SET storageId = ? WHERE blockId = ? and idx = ?;";
+        PreparedStatement pst = conn.prepareStatement(sql);
+        for (int i = 0; i < blockIds.length; ++i) {
+          if (storageIds[i] != null) {
+            pst.setString(1, storageIds[i]);
+          } else {
+            pst.setNull(1, Types.VARCHAR);
+          }
+          pst.setLong(2, blockIds[i]);
+          pst.setInt(3, idxs[i]);
+          pst.addBatch();
+        }
+        pst.executeBatch();
+        pst.close();
+      }
+    } catch (IgniteException e) {
+      throw new SQLException("block2storage batch failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("batchSetStorages [UPDATE]: " + blockIds.length + " rows -- txnID: " + res);
+    }
+    return res;
+  }
+
   public static void insertStorage(final long blockId, final int idx, final String storageId) {
+    if (deferInsert(blockId, idx, storageId)) {
+      return;
+    }
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
@@ -29,15 +377,27 @@ public static void insertStorage(final long blockId, final int idx, final String
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("insertStorage: (" + blockId + "," + idx + "," + storageId + "): " + sql);
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("insertStorage: (" + blockId + "," + idx + "," + storageId + "): " + sql);
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
   }
 
   public static int getNumStorages(final long blockId) {
+    TreeMap<Integer, String> batched = batchedStorages(blockId);
+    if (batched != null) {
+      Set<String> storageIds = new HashSet<>(batched.values());
+      storageIds.remove(null);
+      return storageIds.size();
+    }
+    long cached = DatabaseBlockCache.getInstance().get(blockId, DatabaseBlockCache.NUM_STORAGES);
+    if (cached != DatabaseBlockCache.MISS) {
+      return (int) cached;
+    }
+    int version = DatabaseBlockCache.getInstance().version(blockId);
     int num = 0;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
@@ -52,18 +412,24 @@ public static int getNumStorages(final long blockId) {
       rs.close();
       pst.close();
       Database.getInstance().retConnection(obj);
+      DatabaseBlockCache.getInstance()
+          .fill(blockId, DatabaseBlockCache.NUM_STORAGES, num, version);
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getNumStorages: (" + blockId + "," + num + ")");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getNumStorages: (" + blockId + "," + num + ")");
     }
 
     return num;
   }
 
   public static List<String> getStorageIds(final long blockId) {
+    TreeMap<Integer, String> batched = batchedStorages(blockId);
+    if (batched != null) {
+      return new ArrayList<String>(batched.values());
+    }
     List<String> storageIds = new ArrayList<String>();
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
@@ -82,14 +448,18 @@ public static List<String> getStorageIds(final long blockId) {
       System.out.println(ex.getMessage());
     }
 
-    if (LOG.isInfoEnabled()) {
-      LOG.info("getStorageIds: (" + blockId + "," + storageIds + "): ");
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("getStorageIds: (" + blockId + "," + storageIds + "): ");
     }
 
     return storageIds;
   }
 
   public static String getStorageId(final long blockId, final int idx) {
+    TreeMap<Integer, String> batched = batchedStorages(blockId);
+    if (batched != null) {
+      return batched.get(idx);
+    }
     String storageId = null;
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
@@ -105,8 +475,8 @@ public static String getStorageId(final long blockId, final int idx) {
       rs.close();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("getStorageId: (" + blockId + "," + idx + "," + storageId + "): " + sql);
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("getStorageId: (" + blockId + "," + idx + "," + storageId + "): " + sql);
       }
     } catch (SQLException ex) {
       System.out.println(ex.getMessage());
@@ -116,6 +486,9 @@ public static String getStorageId(final long blockId, final int idx) {
   }
 
   public static void setStorage(final long blockId, final int idx, final String storageId) {
+    if (deferUpdate(blockId, idx, storageId)) {
+      return;
+    }
     try {
       DatabaseConnection obj = Database.getInstance().getConnection();
       Connection conn = obj.getConnection();
@@ -131,11 +504,12 @@ public static void setStorage(final long blockId, final int idx, final String st
       pst.executeUpdate();
       pst.close();
       Database.getInstance().retConnection(obj);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("setStorage: (" + storageId + "," + blockId + "," + idx + "): " + sql);
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("setStorage: (" + storageId + "," + blockId + "," + idx + "): " + sql);
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
     }
+    DatabaseBlockCache.getInstance().invalidate(blockId, DatabaseBlockCache.NUM_STORAGES);
   }
 }
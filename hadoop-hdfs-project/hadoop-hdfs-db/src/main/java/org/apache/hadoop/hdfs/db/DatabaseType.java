@@ -0,0 +1,35 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.util.Arrays;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** The database that holds the namespace, chosen once when {@link Database} starts. */
+public enum DatabaseType {
+  VOLT,
+  IGNITE,
+  COCKROACH,
+  POSTGRES,
+  // inode tables kept in namenode memory, for benchmarks and tests of the namespace alone; the
+  // block, storage, mount and token tables have no store then
+  MEMORY;
+
+  /**
+   * @return the type named {@code name}, ignoring case; Postgres if it is null or empty, or,
+   *         with a warning, if it names no type.
+   */
+  public static DatabaseType of(String name) {
+    if (name == null || name.trim().isEmpty()) {
+      return POSTGRES;
+    }
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      Logger log = LoggerFactory.getLogger(DatabaseType.class);
+      log.warn("Unknown database " + name + ", expected one of " + Arrays.toString(values())
+          + "; using " + POSTGRES);
+      return POSTGRES;
+    }
+  }
+}
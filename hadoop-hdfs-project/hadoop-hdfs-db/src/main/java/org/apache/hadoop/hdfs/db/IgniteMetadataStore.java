@@ -0,0 +1,291 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.apache.hadoop.hdfs.db.ignite.BatchRemoveINodes;
+import org.apache.hadoop.hdfs.db.ignite.BatchRenameINodes;
+import org.apache.hadoop.hdfs.db.ignite.BatchUpdateINodes;
+import org.apache.hadoop.hdfs.db.ignite.RenamePayload;
+import org.apache.hadoop.hdfs.db.ignite.RenameSubtreeINodes;
+import org.apache.hadoop.hdfs.db.ignite.SetSubtreePermission;
+import org.apache.hadoop.hdfs.db.ignite.SubtreePermissionPayload;
+import org.apache.ignite.*;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.binary.BinaryObjectBuilder;
+import org.apache.ignite.cluster.ClusterNode;
+import org.apache.ignite.lang.IgniteClosure;
+
+/**
+ * {@link MetadataStore} over Ignite. Key lookups and batch writes use the binary caches and the
+ * compute tasks in {@link org.apache.hadoop.hdfs.db.ignite}; queries by column other than the key
+ * go through the thin JDBC driver. A batch write by key runs as one transaction, on the node
+ * that owns its keys if they all live on one node.
+ */
+public class IgniteMetadataStore extends JdbcMetadataStore {
+
+  IgniteMetadataStore() {}
+
+  @Override
+  public DatabaseType getType() {
+    return DatabaseType.IGNITE;
+  }
+
+  @Override
+  protected String childrenNamesPagedSql() {
+    // Ignite's SQL engine has no COLLATE; it compares strings as String.compareTo does
+    return "SELECT name FROM inodes WHERE parent = ? AND name > ? ORDER BY name LIMIT ?;";
+  }
+
+  @Override
+  public Comparator<String> getNameOrder() {
+    return Comparator.naturalOrder();
+  }
+
+  private static BinaryObject inodeKey(Ignite ignite, String parentName, String name) {
+    BinaryObjectBuilder inodeKeyBuilder = ignite.binary().builder("InodeKey");
+    return inodeKeyBuilder.setField("parentName", parentName).setField("name", name).build();
+  }
+
+  private static BinaryObject inodeValue(Ignite ignite, LoadINode inode) {
+    BinaryObjectBuilder inodeBuilder = ignite.binary().builder("INode");
+    return inodeBuilder
+        .setField("id", inode.id, Long.class)
+        .setField("parent", inode.parent, Long.class)
+        .setField("parentName", inode.parentName)
+        .setField("name", inode.name)
+        .setField("accessTime", inode.accessTime, Long.class)
+        .setField("modificationTime", inode.modificationTime, Long.class)
+        .setField("header", inode.header, Long.class)
+        .setField("permission", inode.permission, Long.class)
+        .build();
+  }
+
+  private static BinaryObject filterKey(Ignite ignite, long id) {
+    BinaryObjectBuilder keyBuilder = ignite.binary().builder("InodeFiltersKey");
+    return keyBuilder.setField("id", id, Long.class).build();
+  }
+
+  @Override
+  public LoadINode loadINode(final String parentName, final String name) {
+    LoadINode res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      res = obj.callIgnite("IgniteLoadINode", () -> {
+        IgniteCache<BinaryObject, BinaryObject> inodesBinary =
+            ignite.cache("inodes").withKeepBinary();
+        BinaryObject inode = inodesBinary.get(inodeKey(ignite, parentName, name));
+        if (inode == null) {
+          return null;
+        }
+        long id = inode.field("id");
+        IgniteCache<BinaryObject, BinaryObject> ucBinary =
+            ignite.cache("inodeuc").withKeepBinary();
+        BinaryObject ucKey = ignite.binary().builder("InodeUcKey").setField("id", id).build();
+        BinaryObject uc = ucBinary.get(ucKey);
+        return new LoadINode(
+            inode.field("parent"),
+            inode.field("parentName"),
+            id,
+            inode.field("name"),
+            inode.field("permission"),
+            inode.field("modificationTime"),
+            inode.field("accessTime"),
+            inode.field("header"),
+            uc != null ? uc.field("clientName") : null,
+            uc != null ? uc.field("clientMachine") : null);
+      });
+    } catch (Exception e) {
+      LOG.warn("loadINode " + parentName + " " + name + " failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  /**
+   * Runs {@code task} on {@code payload}, the rows of {@code keys}, as one transaction. If every
+   * key lives on one node the task runs on that node, so the rows are written where they live;
+   * otherwise it runs on any node, since splitting the batch by owner would commit each part on
+   * its own.
+   *
+   * @return the WAL pointer returned by the task.
+   */
+  private static <P> String applyOnOwner(DatabaseConnection obj,
+      Collection<BinaryObject> keys, P payload, IgniteClosure<P, String> task) {
+    Ignite ignite = obj.getIgniteClient();
+    Map<ClusterNode, Collection<BinaryObject>> owners =
+        ignite.<BinaryObject>affinity("inodes").mapKeysToNodes(keys);
+    IgniteCompute compute = owners.size() == 1
+        ? ignite.compute(ignite.cluster().forNode(owners.keySet().iterator().next()))
+        : ignite.compute();
+    return apply(obj, compute, task, payload);
+  }
+
+  /** Runs {@code task} on {@code payload}, recorded in {@link DatabaseMetrics} by task name. */
+  private static <P> String apply(
+      DatabaseConnection obj, IgniteCompute compute, IgniteClosure<P, String> task, P payload) {
+    return obj.callIgnite(task.getClass().getSimpleName(), () -> compute.apply(task, payload));
+  }
+
+  @Override
+  public String updateINodes(final List<LoadINode> inodes) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      Map<BinaryObject, BinaryObject> map = new HashMap<>();
+      for (LoadINode inode : inodes) {
+        map.put(inodeKey(ignite, inode.parentName, inode.name), inodeValue(ignite, inode));
+      }
+      return applyOnOwner(obj, map.keySet(), map, new BatchUpdateINodes());
+    } catch (IgniteException e) {
+      throw new SQLException("BatchUpdateINodes failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public String renameINodes(final List<LoadINode> inodes) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      List<BinaryObject> list = new ArrayList<>(inodes.size());
+      for (LoadINode inode : inodes) {
+        list.add(inodeValue(ignite, inode));
+      }
+      return apply(obj, ignite.compute(), new BatchRenameINodes(), list);
+    } catch (IgniteException e) {
+      throw new SQLException("BatchRenameINodes failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public String removeINodes(final List<String> paths) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      // the task removes the rows of the paths themselves, by key; the rows
+      // below them are found by parentName, which only SQL can do
+      String sql = "DELETE FROM inodes WHERE parentName = ? OR parentName LIKE ? ESCAPE '\\';";
+      PreparedStatement pst = obj.getConnection().prepareStatement(sql);
+      for (String path : paths) {
+        pst.setString(1, path);
+        pst.setString(2, likePrefix(path + "/"));
+        pst.addBatch();
+      }
+      pst.executeBatch();
+      pst.close();
+
+      Ignite ignite = obj.getIgniteClient();
+      Set<BinaryObject> keys = new HashSet<>();
+      for (String path : paths) {
+        int idx = path.lastIndexOf('/');
+        String parentName = (idx == 0) ? "/" : path.substring(0, idx);
+        keys.add(inodeKey(ignite, parentName, path.substring(idx + 1)));
+      }
+      return applyOnOwner(obj, keys, keys, new BatchRemoveINodes());
+    } catch (IgniteException e) {
+      throw new SQLException("BatchRemoveINodes failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public String renameSubtree(final String oldPath, final String newPath, final int chunkSize)
+      throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      // the key holds parentName, so rows are moved by the server, a chunk at a time
+      Ignite ignite = obj.getIgniteClient();
+      return apply(obj, ignite.compute(),
+          new RenameSubtreeINodes(), new RenamePayload(oldPath, newPath, chunkSize));
+    } catch (IgniteException e) {
+      throw new SQLException("RenameSubtreeINodes failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public String setSubtreePermission(
+      final long id, final String path, final long keep, final long bits) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      return apply(obj, ignite.compute(),
+          new SetSubtreePermission(), new SubtreePermissionPayload(id, path, keep, bits));
+    } catch (IgniteException e) {
+      throw new SQLException("SetSubtreePermission failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public byte[] getFilter(final long id) {
+    byte[] res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      IgniteCache<BinaryObject, BinaryObject> filters =
+          ignite.cache("inodefilters").withKeepBinary();
+      BinaryObject value =
+          obj.callIgnite("IgniteGetINodeFilter", () -> filters.get(filterKey(ignite, id)));
+      if (value != null) {
+        res = value.field("bits");
+      }
+    } catch (Exception e) {
+      LOG.warn("getFilter " + id + " failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  @Override
+  public void setFilter(final long id, final byte[] bits) {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      IgniteCache<BinaryObject, BinaryObject> filters =
+          ignite.cache("inodefilters").withKeepBinary();
+      BinaryObjectBuilder valueBuilder = ignite.binary().builder("InodeFilters");
+      BinaryObject value = valueBuilder.setField("bits", bits, byte[].class).build();
+      obj.callIgnite("IgniteSetINodeFilter", () -> {
+        filters.put(filterKey(ignite, id), value);
+        return null;
+      });
+    } catch (Exception e) {
+      LOG.warn("setFilter " + id + " failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public void removeFilter(final long id) {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Ignite ignite = obj.getIgniteClient();
+      IgniteCache<BinaryObject, BinaryObject> filters =
+          ignite.cache("inodefilters").withKeepBinary();
+      obj.callIgnite("IgniteRemoveINodeFilter", () -> filters.remove(filterKey(ignite, id)));
+    } catch (Exception e) {
+      LOG.warn("removeFilter " + id + " failed", e);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.apache.hadoop.hdfs.db.DatabaseINode.ReclaimINode;
+
+/**
+ * {@link MetadataStore} that keeps the inode rows in namenode memory, selected with
+ * DATABASE=MEMORY. Nothing survives a restart; it lets benchmarks and tests run the namespace
+ * code without a database.
+ *
+ * <p>Only the inode tables are kept. The block, storage, mount and token tables are still read
+ * and written through the database connection, which MEMORY does not open, so operations that
+ * reach them, such as allocating a block or reporting blocks, fail with an
+ * IllegalStateException. Workloads on the namespace alone, such as the mkdirs operation of
+ * NNThroughputBenchmark, run without a database.
+ *
+ * <p>Rows are kept sorted by full path, so the rows below a path are one range of the map. Reads
+ * do not lock; writes, which come from the single write-behind flusher and from subtree write
+ * backs, are serialized on the store.
+ */
+public class InMemoryMetadataStore implements MetadataStore {
+  private final ConcurrentSkipListMap<String, LoadINode> rows = new ConcurrentSkipListMap<>();
+  private final ConcurrentHashMap<Long, String> paths = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, ConcurrentSkipListSet<String>> children =
+      new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, byte[]> filters = new ConcurrentHashMap<>();
+  private final AtomicLong lastId = new AtomicLong();
+  private final AtomicLong version = new AtomicLong();
+
+  InMemoryMetadataStore() {}
+
+  @Override
+  public DatabaseType getType() {
+    return DatabaseType.MEMORY;
+  }
+
+  private static String pathOf(String parentName, String name) {
+    if (parentName == null || parentName.equals(" ")) {
+      // the root
+      return "/";
+    }
+    return parentName.equals("/") ? "/" + name : parentName + "/" + name;
+  }
+
+  @Override
+  public LoadINode loadINode(final long id) {
+    String path = paths.get(id);
+    return path == null ? null : rows.get(path);
+  }
+
+  @Override
+  public LoadINode loadINode(final long parentId, final String name) {
+    String parentPath = paths.get(parentId);
+    return parentPath == null ? null : rows.get(pathOf(parentPath, name));
+  }
+
+  @Override
+  public LoadINode loadINode(final String parentName, final String name) {
+    return rows.get(pathOf(parentName, name));
+  }
+
+  @Override
+  public List<String> getChildrenNames(final long parentId) {
+    NavigableSet<String> names = children.get(parentId);
+    return names == null ? new ArrayList<>() : new ArrayList<>(names);
+  }
+
+  @Override
+  public List<String> getChildrenNamesPaged(
+      final long parentId, final String startAfter, final int limit) {
+    NavigableSet<String> names = children.get(parentId);
+    if (names == null) {
+      return new ArrayList<>();
+    }
+    List<String> page = new ArrayList<>(Math.min(limit, 1024));
+    for (String name : names.tailSet(startAfter, false)) {
+      if (page.size() >= limit) {
+        break;
+      }
+      page.add(name);
+    }
+    return page;
+  }
+
+  @Override
+  public Comparator<String> getNameOrder() {
+    return Comparator.naturalOrder();
+  }
+
+  @Override
+  public long getINodesNum() {
+    return rows.size();
+  }
+
+  @Override
+  public long getLastInodeId() {
+    return lastId.get();
+  }
+
+  private void put(LoadINode inode) {
+    String path = pathOf(inode.parentName, inode.name);
+    LoadINode prev = rows.put(path, inode);
+    if (prev != null && prev.id != inode.id) {
+      paths.remove(prev.id, path);
+    }
+    paths.put(inode.id, path);
+    if (!path.equals("/")) {
+      children.computeIfAbsent(inode.parent, k -> new ConcurrentSkipListSet<>()).add(inode.name);
+    }
+    lastId.accumulateAndGet(inode.id, Math::max);
+  }
+
+  private void remove(String path, LoadINode inode) {
+    if (!rows.remove(path, inode)) {
+      return;
+    }
+    paths.remove(inode.id, path);
+    NavigableSet<String> names = children.get(inode.parent);
+    if (names != null) {
+      names.remove(inode.name);
+    }
+  }
+
+  @Override
+  public synchronized String updateINodes(final List<LoadINode> inodes) {
+    for (LoadINode inode : inodes) {
+      put(inode);
+    }
+    return Long.toString(version.incrementAndGet());
+  }
+
+  @Override
+  public synchronized String renameINodes(final List<LoadINode> inodes) {
+    for (LoadINode inode : inodes) {
+      String path = paths.get(inode.id);
+      if (path != null) {
+        remove(path, rows.get(path));
+      }
+    }
+    for (LoadINode inode : inodes) {
+      put(inode);
+    }
+    return Long.toString(version.incrementAndGet());
+  }
+
+  @Override
+  public synchronized String removeINodes(final List<String> targets) {
+    for (String path : targets) {
+      String prefix = path.endsWith("/") ? path : path + "/";
+      // '0' follows '/', so this range holds every path below the prefix
+      Map<String, LoadINode> below =
+          rows.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + "0", false);
+      for (Map.Entry<String, LoadINode> e : new ArrayList<>(below.entrySet())) {
+        remove(e.getKey(), e.getValue());
+        children.remove(e.getValue().id);
+      }
+      LoadINode inode = rows.get(path);
+      if (inode != null) {
+        remove(path, inode);
+        children.remove(inode.id);
+      }
+    }
+    return Long.toString(version.incrementAndGet());
+  }
+
+  @Override
+  public synchronized String renameSubtree(
+      final String oldPath, final String newPath, final int chunkSize) {
+    String prefix = oldPath + "/";
+    Map<String, LoadINode> below = rows.subMap(prefix, true, oldPath + "0", false);
+    for (Map.Entry<String, LoadINode> e : new ArrayList<>(below.entrySet())) {
+      LoadINode inode = e.getValue();
+      remove(e.getKey(), inode);
+      put(new LoadINode(
+          inode.parent,
+          newPath + inode.parentName.substring(oldPath.length()),
+          inode.id,
+          inode.name,
+          inode.permission,
+          inode.modificationTime,
+          inode.accessTime,
+          inode.header,
+          inode.clientName,
+          inode.clientMachine));
+    }
+    return Long.toString(version.incrementAndGet());
+  }
+
+  private LoadINode withPermission(LoadINode inode, long permission) {
+    return new LoadINode(
+        inode.parent,
+        inode.parentName,
+        inode.id,
+        inode.name,
+        permission,
+        inode.modificationTime,
+        inode.accessTime,
+        inode.header,
+        inode.clientName,
+        inode.clientMachine);
+  }
+
+  @Override
+  public synchronized String setSubtreePermission(
+      final long id, final String path, final long keep, final long bits) {
+    LoadINode top = loadINode(id);
+    if (top != null) {
+      put(withPermission(top, (top.permission & keep) | bits));
+    }
+    String prefix = path.equals("/") ? path : path + "/";
+    Map<String, LoadINode> below =
+        rows.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + "0", false);
+    for (LoadINode inode : new ArrayList<>(below.values())) {
+      put(withPermission(inode, (inode.permission & keep) | bits));
+    }
+    return Long.toString(version.incrementAndGet());
+  }
+
+  @Override
+  public List<String> getSubtreePartitions(final String path) {
+    TreeSet<String> partitions = new TreeSet<>();
+    for (LoadINode inode : rows.subMap(path + "/", true, path + "0", false).values()) {
+      partitions.add(inode.parentName);
+    }
+    return new ArrayList<>(partitions);
+  }
+
+  @Override
+  public List<ReclaimINode> reclaimPartition(final String parentName) {
+    // blocks are not kept in memory, see storesBlocks
+    List<ReclaimINode> inodes = new ArrayList<>();
+    LoadINode parent = rows.get(parentName);
+    NavigableSet<String> names = parent == null ? null : children.get(parent.id);
+    if (names == null) {
+      return inodes;
+    }
+    for (String name : names) {
+      LoadINode inode = rows.get(pathOf(parentName, name));
+      if (inode != null) {
+        inodes.add(new ReclaimINode(inode.id, inode.header, inode.clientName != null));
+      }
+    }
+    return inodes;
+  }
+
+  @Override
+  public void dropPartitionBlocks(final String parentName) {}
+
+  @Override
+  public boolean storesBlocks() {
+    return false;
+  }
+
+  @Override
+  public byte[] getFilter(final long id) {
+    return filters.get(id);
+  }
+
+  @Override
+  public void setFilter(final long id, final byte[] bits) {
+    filters.put(id, bits);
+  }
+
+  @Override
+  public void removeFilter(final long id) {
+    filters.remove(id);
+  }
+
+  @Override
+  public String getAppliedOffset() {
+    return null;
+  }
+}
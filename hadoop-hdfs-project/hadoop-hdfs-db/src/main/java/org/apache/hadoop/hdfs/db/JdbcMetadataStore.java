@@ -0,0 +1,522 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.apache.hadoop.hdfs.db.DatabaseINode.ReclaimINode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** {@link MetadataStore} over plain SQL, for Postgres and CockroachDB. */
+public class JdbcMetadataStore implements MetadataStore {
+  static final Logger LOG = LoggerFactory.getLogger(JdbcMetadataStore.class);
+
+  private static final String LOAD_INODE =
+      "SELECT i.parent, i.parentName, i.id, i.name, i.permission, i.modificationTime,"
+          + " i.accessTime, i.header, u.clientName, u.clientMachine"
+          + " FROM inodes i LEFT JOIN inodeuc u ON i.id = u.id";
+
+  JdbcMetadataStore() {}
+
+  @Override
+  public DatabaseType getType() {
+    return Database.getType();
+  }
+
+  @Override
+  public LoadINode loadINode(final long id) {
+    LoadINode res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement(LOAD_INODE + " WHERE i.id = ?;");
+      pst.setLong(1, id);
+      res = toLoadINode(pst);
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("loadINode failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  @Override
+  public LoadINode loadINode(final long parentId, final String name) {
+    LoadINode res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst =
+          conn.prepareStatement(LOAD_INODE + " WHERE i.parent = ? AND i.name = ?;");
+      pst.setLong(1, parentId);
+      pst.setString(2, name);
+      res = toLoadINode(pst);
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("loadINode failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  @Override
+  public LoadINode loadINode(final String parentName, final String name) {
+    LoadINode res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst =
+          conn.prepareStatement(LOAD_INODE + " WHERE i.parentName = ? AND i.name = ?;");
+      pst.setString(1, parentName);
+      pst.setString(2, name);
+      res = toLoadINode(pst);
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("loadINode failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  private static LoadINode toLoadINode(PreparedStatement pst) throws SQLException {
+    LoadINode res = null;
+    ResultSet rs = pst.executeQuery();
+    while (rs.next()) {
+      res =
+          new LoadINode(
+              rs.getLong(1),
+              rs.getString(2),
+              rs.getLong(3),
+              rs.getString(4),
+              rs.getLong(5),
+              rs.getLong(6),
+              rs.getLong(7),
+              rs.getLong(8),
+              rs.getString(9),
+              rs.getString(10));
+    }
+    rs.close();
+    return res;
+  }
+
+  @Override
+  public List<String> getChildrenNames(final long parentId) {
+    List<String> childNames = new ArrayList<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement("SELECT name FROM inodes WHERE parent = ?;");
+      pst.setLong(1, parentId);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        childNames.add(rs.getString(1));
+      }
+      rs.close();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("getChildrenNames failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return childNames;
+  }
+
+  @Override
+  public List<String> getChildrenNamesPaged(
+      final long parentId, final String startAfter, final int limit) {
+    List<String> childNames = new ArrayList<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement(childrenNamesPagedSql());
+      pst.setLong(1, parentId);
+      pst.setString(2, startAfter);
+      pst.setInt(3, limit);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        childNames.add(rs.getString(1));
+      }
+      rs.close();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("getChildrenNamesPaged failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return childNames;
+  }
+
+  /**
+   * @return the query of a page of child names. The names are compared bytewise, whatever the
+   *         collation of the database, so that the order is {@link #CODE_POINT_ORDER}.
+   */
+  protected String childrenNamesPagedSql() {
+    return "SELECT name FROM inodes WHERE parent = ? AND name COLLATE \"C\" > ?"
+        + " ORDER BY name COLLATE \"C\" LIMIT ?;";
+  }
+
+  // the byte order of names in UTF-8, in which Postgres compares them under COLLATE "C" and
+  // VoltDB compares them always; unlike String.compareTo, it sorts the characters outside the
+  // basic multilingual plane last
+  protected static final Comparator<String> CODE_POINT_ORDER =
+      (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+          int x = a.codePointAt(i);
+          int y = b.codePointAt(j);
+          if (x != y) {
+            return Integer.compare(x, y);
+          }
+          i += Character.charCount(x);
+          j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+      };
+
+  @Override
+  public Comparator<String> getNameOrder() {
+    return CODE_POINT_ORDER;
+  }
+
+  @Override
+  public long getINodesNum() {
+    return queryLong("SELECT COUNT(id) FROM inodes;");
+  }
+
+  @Override
+  public long getLastInodeId() {
+    return queryLong("SELECT MAX(id) FROM inodes;");
+  }
+
+  private static long queryLong(final String sql) {
+    long num = 0;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      Statement st = conn.createStatement();
+      ResultSet rs = st.executeQuery(sql);
+      while (rs.next()) {
+        num = rs.getLong(1);
+      }
+      rs.close();
+      st.close();
+    } catch (SQLException ex) {
+      LOG.warn("queryLong failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return num;
+  }
+
+  /** @return the statement that inserts or replaces one inode row, keyed by (parentName, name). */
+  protected String upsertINodeSql() {
+    return "INSERT INTO inodes("
+        + "parent, id, name, modificationTime, accessTime, permission, header, parentName"
+        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT(parentName, name) DO UPDATE SET"
+        + " parent = excluded.parent, id = excluded.id,"
+        + " modificationTime = excluded.modificationTime, accessTime = excluded.accessTime,"
+        + " permission = excluded.permission, header = excluded.header;";
+  }
+
+  private static void addINodeBatch(PreparedStatement pst, List<LoadINode> inodes)
+      throws SQLException {
+    for (LoadINode inode : inodes) {
+      pst.setLong(1, inode.parent);
+      pst.setLong(2, inode.id);
+      pst.setString(3, inode.name);
+      pst.setLong(4, inode.modificationTime);
+      pst.setLong(5, inode.accessTime);
+      pst.setLong(6, inode.permission);
+      pst.setLong(7, inode.header);
+      pst.setString(8, inode.parentName);
+      pst.addBatch();
+    }
+  }
+
+  @Override
+  public String updateINodes(final List<LoadINode> inodes) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      PreparedStatement pst = obj.getConnection().prepareStatement(upsertINodeSql());
+      addINodeBatch(pst, inodes);
+      pst.executeBatch();
+      pst.close();
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return null;
+  }
+
+  @Override
+  public String renameINodes(final List<LoadINode> inodes) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    Connection conn = obj.getConnection();
+    try {
+      conn.setAutoCommit(false);
+      PreparedStatement delete = conn.prepareStatement("DELETE FROM inodes WHERE id = ?;");
+      for (LoadINode inode : inodes) {
+        delete.setLong(1, inode.id);
+        delete.addBatch();
+      }
+      delete.executeBatch();
+      delete.close();
+      PreparedStatement pst = conn.prepareStatement(upsertINodeSql());
+      addINodeBatch(pst, inodes);
+      pst.executeBatch();
+      pst.close();
+      conn.commit();
+    } catch (SQLException ex) {
+      conn.rollback();
+      throw ex;
+    } finally {
+      conn.setAutoCommit(true);
+      Database.getInstance().retConnection(obj);
+    }
+    return null;
+  }
+
+  @Override
+  public String removeINodes(final List<String> paths) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String sql = "DELETE FROM inodes WHERE (parentName = ? AND name = ?)"
+          + " OR parentName = ? OR parentName LIKE ? ESCAPE '\\';";
+      PreparedStatement pst = obj.getConnection().prepareStatement(sql);
+      for (String path : paths) {
+        int idx = path.lastIndexOf('/');
+        pst.setString(1, (idx == 0) ? "/" : path.substring(0, idx));
+        pst.setString(2, path.substring(idx + 1));
+        pst.setString(3, path);
+        pst.setString(4, likePrefix(path + "/"));
+        pst.addBatch();
+      }
+      pst.executeBatch();
+      pst.close();
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return null;
+  }
+
+  @Override
+  public String renameSubtree(final String oldPath, final String newPath, final int chunkSize)
+      throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      // one statement, so the subtree moves in one transaction whatever its size
+      String sql = "UPDATE inodes SET parentName = CAST(? AS VARCHAR) || SUBSTR(parentName, ?)"
+          + " WHERE parentName = ? OR parentName LIKE ? ESCAPE '\\';";
+      PreparedStatement pst = obj.getConnection().prepareStatement(sql);
+      pst.setString(1, newPath);
+      pst.setInt(2, oldPath.length() + 1);
+      pst.setString(3, oldPath);
+      pst.setString(4, likePrefix(oldPath + "/"));
+      pst.executeUpdate();
+      pst.close();
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return null;
+  }
+
+  @Override
+  public String setSubtreePermission(
+      final long id, final String path, final long keep, final long bits) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      String sql = "UPDATE inodes SET permission = (permission & ?) | ?"
+          + " WHERE id = ? OR parentName = ? OR parentName LIKE ? ESCAPE '\\';";
+      PreparedStatement pst = obj.getConnection().prepareStatement(sql);
+      pst.setLong(1, keep);
+      pst.setLong(2, bits);
+      pst.setLong(3, id);
+      pst.setString(4, path);
+      pst.setString(5, likePrefix(path.equals("/") ? path : path + "/"));
+      int updated = pst.executeUpdate();
+      pst.close();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("setSubtreePermission: " + path + " -- " + updated + " rows");
+      }
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return null;
+  }
+
+  @Override
+  public List<String> getSubtreePartitions(final String path) {
+    List<String> partitions = new ArrayList<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      String sql = "SELECT DISTINCT parentName FROM inodes"
+          + " WHERE parentName = ? OR parentName LIKE ? ESCAPE '\\';";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setString(1, path);
+      pst.setString(2, likePrefix(path + "/"));
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        partitions.add(rs.getString(1));
+      }
+      rs.close();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("getSubtreePartitions failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return partitions;
+  }
+
+  protected static final String RECLAIM_PARTITION =
+      "SELECT i.id, i.header, u.id, b.blockId, d.numBytes FROM inodes i"
+          + " LEFT JOIN inodeuc u ON i.id = u.id"
+          + " LEFT JOIN inode2block b ON i.id = b.id"
+          + " LEFT JOIN datablocks d ON b.blockId = d.blockId"
+          + " WHERE i.parentName = ?;";
+
+  /** Adds one row of {@link #RECLAIM_PARTITION}; a null block id is reported as 0. */
+  protected static void addReclaimRow(Map<Long, ReclaimINode> inodes,
+      long id, long header, boolean underConstruction, long blockId, long numBytes) {
+    ReclaimINode inode = inodes.get(id);
+    if (inode == null) {
+      inode = new ReclaimINode(id, header, underConstruction);
+      inodes.put(id, inode);
+    }
+    if (blockId != 0) {
+      inode.blockIds.add(blockId);
+      inode.numBytes += numBytes;
+    }
+  }
+
+  @Override
+  public List<ReclaimINode> reclaimPartition(final String parentName) throws SQLException {
+    Map<Long, ReclaimINode> inodes = new LinkedHashMap<>();
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement(RECLAIM_PARTITION);
+      pst.setString(1, parentName);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        rs.getLong(3);
+        boolean uc = !rs.wasNull();
+        addReclaimRow(inodes, rs.getLong(1), rs.getLong(2), uc, rs.getLong(4), rs.getLong(5));
+      }
+      rs.close();
+      pst.close();
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return new ArrayList<>(inodes.values());
+  }
+
+  @Override
+  public void dropPartitionBlocks(final String parentName) throws SQLException {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      PreparedStatement pst = obj.getConnection().prepareStatement(
+          "DELETE FROM inode2block WHERE id IN (SELECT id FROM inodes WHERE parentName = ?);");
+      pst.setString(1, parentName);
+      pst.executeUpdate();
+      pst.close();
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public boolean storesBlocks() {
+    return true;
+  }
+
+  /** @return a LIKE pattern matching the strings that start with {@code prefix}. */
+  static String likePrefix(String prefix) {
+    StringBuilder sb = new StringBuilder(prefix.length() + 8);
+    for (int i = 0; i < prefix.length(); ++i) {
+      char c = prefix.charAt(i);
+      if (c == '\\' || c == '%' || c == '_') {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    return sb.append('%').toString();
+  }
+
+  @Override
+  public byte[] getFilter(final long id) {
+    byte[] res = null;
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement("SELECT bits FROM inodefilters WHERE id = ?;");
+      pst.setLong(1, id);
+      ResultSet rs = pst.executeQuery();
+      while (rs.next()) {
+        res = rs.getBytes(1);
+      }
+      rs.close();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("getFilter failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+    return res;
+  }
+
+  @Override
+  public void setFilter(final long id, final byte[] bits) {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      String sql = "INSERT INTO inodefilters(id, bits) VALUES (?, ?) "
+          + "ON CONFLICT(id) DO UPDATE SET bits = ?;";
+      PreparedStatement pst = conn.prepareStatement(sql);
+      pst.setLong(1, id);
+      pst.setBytes(2, bits);
+      pst.setBytes(3, bits);
+      pst.executeUpdate();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("setFilter failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public void removeFilter(final long id) {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      Connection conn = obj.getConnection();
+      PreparedStatement pst = conn.prepareStatement("DELETE FROM inodefilters WHERE id = ?;");
+      pst.setLong(1, id);
+      pst.executeUpdate();
+      pst.close();
+    } catch (SQLException ex) {
+      LOG.warn("removeFilter failed", ex);
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  @Override
+  public String getAppliedOffset() throws SQLException {
+    // neither a replication slot's LSN nor an Ignite WAL pointer is ordered against the offsets
+    // returned by the writes, so reads stay on the primaries
+    return null;
+  }
+}
@@ -0,0 +1,114 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.apache.hadoop.hdfs.db.DatabaseINode.ReclaimINode;
+
+/**
+ * Access to the inode tables on the namespace hot path: inode loads, child listings, the
+ * write-behind batches and the directory filters.
+ *
+ * <p>One store is created by {@link Database} for the database chosen when it starts, and is
+ * reached through {@link Database#getStore()}; callers do not branch on the database type.
+ *
+ * <p>Inode rows are keyed by (parentName, name); the root is stored with parentName " ". The
+ * batch writes return the position of the write in the database's log (a VoltDB transaction id
+ * or an Ignite WAL pointer), or null if the database has none, and throw if the batch failed.
+ */
+public interface MetadataStore {
+
+  DatabaseType getType();
+
+  /** @return the inode {@code id} with its under-construction columns, or null. */
+  LoadINode loadINode(long id);
+
+  LoadINode loadINode(long parentId, String name);
+
+  LoadINode loadINode(String parentName, String name);
+
+  List<String> getChildrenNames(long parentId);
+
+  /**
+   * @return at most {@code limit} names of the children of {@code parentId} that sort after
+   *         {@code startAfter}, in the order of {@link #getNameOrder}.
+   */
+  List<String> getChildrenNamesPaged(long parentId, String startAfter, int limit);
+
+  /**
+   * @return the order in which the database compares child names, which callers merging names
+   *         of their own into a page of {@link #getChildrenNamesPaged} must sort by.
+   */
+  Comparator<String> getNameOrder();
+
+  long getINodesNum();
+
+  long getLastInodeId();
+
+  /** Inserts the inode rows, or replaces the rows with the same (parentName, name). */
+  String updateINodes(List<LoadINode> inodes) throws SQLException;
+
+  /** Replaces the rows with the same ids as {@code inodes}, which have moved. */
+  String renameINodes(List<LoadINode> inodes) throws SQLException;
+
+  /** Deletes the inodes at {@code paths} and every inode below them. */
+  String removeINodes(List<String> paths) throws SQLException;
+
+  /**
+   * Moves every inode below {@code oldPath} under {@code newPath} by rewriting the parentName
+   * prefix of their rows; ids, names and attributes are kept. The row of {@code oldPath} itself
+   * is not touched. A store that cannot move the whole subtree in one statement moves at most
+   * {@code chunkSize} rows per transaction, so the subtree is never held in memory at once.
+   *
+   * <p>A chunked move is not atomic: a failure or a crash part way leaves the subtree split
+   * between both paths. Each chunk only takes rows still below {@code oldPath}, so calling this
+   * again with the same paths completes the move, and calling it with the paths swapped undoes
+   * it.
+   */
+  String renameSubtree(String oldPath, String newPath, int chunkSize) throws SQLException;
+
+  /**
+   * Sets {@code permission = (permission & keep) | bits} on inode {@code id}, which is at
+   * {@code path}, and on every inode below it, in one transaction. {@code keep} clears the
+   * mode, group or user field of the permission word and {@code bits} holds its new value, so a
+   * recursive chmod or chown is a single statement however the subtree is partitioned.
+   */
+  String setSubtreePermission(long id, String path, long keep, long bits) throws SQLException;
+
+  /**
+   * @return the distinct parentName of the rows below {@code path}, that is the partitions a
+   *         recursive operation on {@code path} touches.
+   */
+  List<String> getSubtreePartitions(String path);
+
+  /**
+   * Reads the inodes with parentName {@code parentName}, with the ids and total length of their
+   * blocks, in one query. Used by a recursive delete before the inode rows themselves are
+   * removed; it does not change the database, so it can be called again after a failure.
+   */
+  List<ReclaimINode> reclaimPartition(String parentName) throws SQLException;
+
+  /** Deletes the inode2block rows of the inodes with parentName {@code parentName}. */
+  void dropPartitionBlocks(String parentName) throws SQLException;
+
+  /**
+   * @return false if the block tables are not kept by this store, so {@link #reclaimPartition}
+   *         reports no blocks and a recursive delete collects them from the inodes instead.
+   */
+  boolean storesBlocks();
+
+  /** @return the filter stored for directory {@code id}, or null if there is none. */
+  byte[] getFilter(long id);
+
+  void setFilter(long id, byte[] bits);
+
+  void removeFilter(long id);
+
+  /**
+   * @return the walOffset up to which the read server behind the connection this thread borrows
+   *         has applied the writes, comparable with the walOffsets returned by the writes above;
+   *         null if this store cannot tell, in which case no read is routed to a read server.
+   */
+  String getAppliedOffset() throws SQLException;
+}
@@ -0,0 +1,171 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes namespace reads to the read-only servers in VOLTDB_READ_SERVERS or IGNITE_READ_SERVERS
+ * (comma-separated hosts), so that stat and listing storms do not queue behind the writes on the
+ * partition masters.
+ *
+ * <p>A namenode operation picks the consistency of its reads with {@link #begin}. STRONG reads,
+ * the default, go to the servers that take the writes. BOUNDED reads, every one of them in the
+ * operation including the ancestors loaded to resolve its path, go to a read server only if the
+ * read servers have applied the last walOffset acknowledged to this namenode when the operation
+ * began, so a bounded read never misses a write of this namenode. What the read servers have
+ * applied is asked of the store ({@link MetadataStore#getAppliedOffset}) at most every
+ * FILESCALE_REPLICA_PROBE_MS (default 100); a store that cannot tell keeps every read strong.
+ *
+ * <p>Only the batch writes return a walOffset. The asynchronous single-row writes do not, so for
+ * FILESCALE_REPLICA_LAG_MS (default 1000) after one is sent every read is strong. Only the reads
+ * wrapped in {@link #read} are routed; writes always go to the primary servers.
+ */
+public final class ReplicaReads {
+  static final Logger LOG = LoggerFactory.getLogger(ReplicaReads.class);
+
+  /** Consistency of the database reads of an operation. */
+  public enum Consistency {
+    STRONG,
+    BOUNDED;
+
+    /** @return the consistency named {@code name}, ignoring case; STRONG if it is null or empty. */
+    public static Consistency of(String name) {
+      if (name == null || name.trim().isEmpty()) {
+        return STRONG;
+      }
+      return valueOf(name.trim().toUpperCase());
+    }
+  }
+
+  private static final long LAG_NANOS = envMillis("FILESCALE_REPLICA_LAG_MS", 1000) * 1000000L;
+  private static final long PROBE_NANOS =
+      envMillis("FILESCALE_REPLICA_PROBE_MS", 100) * 1000000L;
+  private static final long UNKNOWN = Long.MIN_VALUE;
+
+  private static long envMillis(String name, long def) {
+    String env = System.getenv(name);
+    return env == null ? def : Long.parseLong(env);
+  }
+
+  // the highest walOffset acknowledged to this namenode
+  private static final AtomicLong lastWritten = new AtomicLong(UNKNOWN);
+  // System.nanoTime() of the last write sent without a walOffset
+  private static volatile long lastUnacknowledged = System.nanoTime() - LAG_NANOS;
+  // the walOffset the read servers have applied as last probed, UNKNOWN if they cannot tell
+  private static volatile long applied = UNKNOWN;
+  private static final AtomicLong lastProbe = new AtomicLong(System.nanoTime() - PROBE_NANOS);
+
+  private static final class Scope {
+    final Consistency consistency;
+    // lastWritten when the operation began
+    final long offset;
+
+    Scope(Consistency consistency, long offset) {
+      this.consistency = consistency;
+      this.offset = offset;
+    }
+  }
+
+  private static final ThreadLocal<Scope> scope = new ThreadLocal<>();
+  // set while a routed read borrows its connection
+  private static final ThreadLocal<Boolean> onReplica = new ThreadLocal<>();
+
+  private ReplicaReads() {}
+
+  /**
+   * Sets the consistency of the reads of this thread until the matching {@link #end}.
+   *
+   * @return the previous setting, to pass to {@link #end}.
+   */
+  public static Object begin(Consistency consistency) {
+    Scope prev = scope.get();
+    scope.set(new Scope(consistency, lastWritten.get()));
+    return prev;
+  }
+
+  public static void end(Object prev) {
+    if (prev == null) {
+      scope.remove();
+    } else {
+      scope.set((Scope) prev);
+    }
+  }
+
+  /** @return true if the connection being borrowed by this thread may be a read server's. */
+  static boolean onReplica() {
+    return onReplica.get() != null;
+  }
+
+  /** Runs {@code read} against a read server if the consistency of this thread allows it. */
+  static <T> T read(Supplier<T> read) {
+    if (!routable()) {
+      return read.get();
+    }
+    onReplica.set(Boolean.TRUE);
+    try {
+      return read.get();
+    } finally {
+      onReplica.remove();
+    }
+  }
+
+  private static boolean routable() {
+    Scope s = scope.get();
+    if (s == null || s.consistency != Consistency.BOUNDED || !Database.hasReadServers()) {
+      return false;
+    }
+    long now = System.nanoTime();
+    if (now - lastUnacknowledged < LAG_NANOS) {
+      return false;
+    }
+    long offset = appliedOffset(now);
+    return offset != UNKNOWN && offset >= s.offset;
+  }
+
+  private static long appliedOffset(long now) {
+    long last = lastProbe.get();
+    if (now - last >= PROBE_NANOS && lastProbe.compareAndSet(last, now)) {
+      long probed = UNKNOWN;
+      onReplica.set(Boolean.TRUE);
+      try {
+        probed = parse(Database.getInstance().getStore().getAppliedOffset());
+      } catch (SQLException e) {
+        LOG.warn("Cannot tell what the read servers have applied, reading from the primaries", e);
+      } finally {
+        onReplica.remove();
+      }
+      applied = probed;
+    }
+    return applied;
+  }
+
+  private static long parse(String walOffset) {
+    if (walOffset == null) {
+      return UNKNOWN;
+    }
+    try {
+      return Long.parseLong(walOffset);
+    } catch (NumberFormatException e) {
+      // e.g. an Ignite WAL pointer, which is not ordered across nodes
+      return UNKNOWN;
+    }
+  }
+
+  /** Records a write acknowledged with {@code walOffset}, or sent without one if it is null. */
+  static void written(String walOffset) {
+    long offset = parse(walOffset);
+    if (offset == UNKNOWN || offset <= 0) {
+      sent();
+    } else {
+      lastWritten.accumulateAndGet(offset, Math::max);
+    }
+  }
+
+  /** Records a write whose walOffset is not known. */
+  static void sent() {
+    lastUnacknowledged = System.nanoTime();
+  }
+}
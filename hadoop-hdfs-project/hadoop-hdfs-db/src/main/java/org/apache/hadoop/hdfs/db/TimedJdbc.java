@@ -0,0 +1,122 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Wraps a JDBC connection so that every statement it runs is recorded in {@link DatabaseMetrics},
+ * as the VoltDB procedure calls are. A statement is named after its verb and first table, e.g.
+ * {@code SELECT name FROM inodes ...} is JdbcSelectInodes, so that statements built with their
+ * values inline still share a name; a batch of plain statements is JdbcBatch.
+ */
+final class TimedJdbc {
+
+  private TimedJdbc() {}
+
+  static Connection wrap(Connection connection) {
+    return (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+        new ConnectionHandler(connection));
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+    private final Connection connection;
+
+    ConnectionHandler(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object res = TimedJdbc.invoke(connection, method, args);
+      Class<?> type = method.getReturnType();
+      if (type == Statement.class || type == PreparedStatement.class
+          || type == CallableStatement.class) {
+        String name = (args != null && args.length > 0 && args[0] instanceof String)
+            ? nameOf((String) args[0]) : null;
+        return Proxy.newProxyInstance(
+            type.getClassLoader(), new Class<?>[] {type},
+            new StatementHandler((Statement) res, name));
+      }
+      return res;
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+    // the name of a prepared statement; null for a plain one
+    private final String name;
+
+    StatementHandler(Statement statement, String name) {
+      this.statement = statement;
+      this.name = name;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (!method.getName().startsWith("execute")) {
+        return TimedJdbc.invoke(statement, method, args);
+      }
+      String call = name;
+      if (args != null && args.length > 0 && args[0] instanceof String) {
+        call = nameOf((String) args[0]);
+      } else if (call == null) {
+        call = "JdbcBatch";
+      }
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+        Object res = TimedJdbc.invoke(statement, method, args);
+        ok = true;
+        return res;
+      } finally {
+        DatabaseMetrics.get().addCall(call, System.nanoTime() - start, ok);
+      }
+    }
+  }
+
+  /** @return Jdbc, the verb and the first table of {@code sql}, e.g. JdbcSelectInodes. */
+  static String nameOf(String sql) {
+    String[] words = sql.trim().split("[\\s(),;]+");
+    StringBuilder sb = new StringBuilder("Jdbc");
+    if (words.length == 0) {
+      return sb.toString();
+    }
+    appendWord(sb, words[0]);
+    for (int i = 0; i < words.length - 1; ++i) {
+      String word = words[i].toUpperCase(Locale.ROOT);
+      if (word.equals("FROM") || word.equals("INTO") || (i == 0 && word.equals("UPDATE"))) {
+        appendWord(sb, words[i + 1]);
+        break;
+      }
+    }
+    return sb.toString();
+  }
+
+  // appends the letters and digits of word, capitalized
+  private static void appendWord(StringBuilder sb, String word) {
+    boolean first = true;
+    for (int i = 0; i < word.length(); ++i) {
+      char c = word.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        sb.append(first ? Character.toUpperCase(c) : Character.toLowerCase(c));
+        first = false;
+      }
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package org.apache.hadoop.hdfs.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.apache.hadoop.hdfs.db.DatabaseINode.ReclaimINode;
+import org.voltdb.*;
+import org.voltdb.client.*;
+
+/**
+ * {@link MetadataStore} over the VoltDB stored procedures in filescale_init/voltdb. Upserts go
+ * through the VoltDB JDBC driver, which batches them without a procedure of their own.
+ */
+public class VoltMetadataStore extends JdbcMetadataStore {
+
+  VoltMetadataStore() {}
+
+  @Override
+  public DatabaseType getType() {
+    return DatabaseType.VOLT;
+  }
+
+  private static VoltTable call(String procedure, Object... params) throws Exception {
+    DatabaseConnection obj = Database.getInstance().getConnection();
+    try {
+      return obj.callProcedure(procedure, params).getResults()[0];
+    } finally {
+      Database.getInstance().retConnection(obj);
+    }
+  }
+
+  private static LoadINode load(String procedure, Object... params) {
+    LoadINode res = null;
+    try {
+      VoltTable result = call(procedure, params);
+      // procedures deployed before the uc columns were added only return the inode columns
+      boolean withUc = result.getColumnCount() > 8;
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        res =
+            new LoadINode(
+                result.getLong(0),
+                result.getString(1),
+                result.getLong(2),
+                result.getString(3),
+                result.getLong(4),
+                result.getLong(5),
+                result.getLong(6),
+                result.getLong(7),
+                withUc ? result.getString(8) : null,
+                withUc ? result.getString(9) : null);
+      }
+    } catch (Exception e) {
+      LOG.warn(procedure + " failed", e);
+    }
+    return res;
+  }
+
+  private static List<String> names(String procedure, Object... params) {
+    List<String> names = new ArrayList<>();
+    try {
+      VoltTable result = call(procedure, params);
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        names.add(result.getString(0));
+      }
+    } catch (Exception e) {
+      LOG.warn(procedure + " failed", e);
+    }
+    return names;
+  }
+
+  /** @return the transaction id returned by a batch procedure, or null if it returned none. */
+  private static String batch(String procedure, Object... params) throws SQLException {
+    long res = 0;
+    try {
+      VoltTable result = call(procedure, params);
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        res = result.getLong(0);
+      }
+    } catch (Exception e) {
+      throw new SQLException(procedure + " failed", e);
+    }
+    return res > 0 ? Long.toString(res) : null;
+  }
+
+  @Override
+  public LoadINode loadINode(final long id) {
+    return load("LoadINode", id);
+  }
+
+  @Override
+  public LoadINode loadINode(final long parentId, final String name) {
+    return load("LoadINodeV2", parentId, name);
+  }
+
+  @Override
+  public LoadINode loadINode(final String parentName, final String name) {
+    return load("LoadINodeV3", parentName, name);
+  }
+
+  @Override
+  public List<String> getChildrenNames(final long parentId) {
+    return names("GetChildrenNames", parentId);
+  }
+
+  @Override
+  public List<String> getChildrenNamesPaged(
+      final long parentId, final String startAfter, final int limit) {
+    return names("GetChildrenNamesPaged", parentId, startAfter, limit);
+  }
+
+  @Override
+  protected String upsertINodeSql() {
+    return "UPSERT INTO inodes("
+        + "parent, id, name, modificationTime, accessTime, permission, header, parentName"
+        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?);";
+  }
+
+  @Override
+  public String renameINodes(final List<LoadINode> inodes) throws SQLException {
+    long[] longAttr = new long[inodes.size() * 6];
+    String[] strAttr = new String[inodes.size() * 2];
+    for (int i = 0; i < inodes.size(); ++i) {
+      LoadINode inode = inodes.get(i);
+      int idx = i * 6;
+      int idy = i * 2;
+      longAttr[idx] = inode.parent;
+      longAttr[idx + 1] = inode.id;
+      longAttr[idx + 2] = inode.modificationTime;
+      longAttr[idx + 3] = inode.accessTime;
+      longAttr[idx + 4] = inode.permission;
+      longAttr[idx + 5] = inode.header;
+      strAttr[idy] = inode.name;
+      strAttr[idy + 1] = inode.parentName;
+    }
+    return batch("BatchRenameINodes", longAttr, strAttr);
+  }
+
+  @Override
+  public String removeINodes(final List<String> paths) throws SQLException {
+    return batch("BatchRemoveINodes", (Object) paths.toArray(new String[paths.size()]));
+  }
+
+  @Override
+  public String renameSubtree(final String oldPath, final String newPath, final int chunkSize)
+      throws SQLException {
+    // parentName is the partition column, so each row is deleted and inserted again; a chunk
+    // per call keeps each transaction within VoltDB's limits, so the move is not atomic (see
+    // MetadataStore#renameSubtree)
+    long txnId = 0;
+    long moved;
+    do {
+      moved = 0;
+      try {
+        VoltTable result = call("RenameSubtree", oldPath, newPath, chunkSize);
+        result.resetRowPosition();
+        while (result.advanceRow()) {
+          moved = result.getLong(0);
+          txnId = result.getLong(1);
+        }
+      } catch (Exception e) {
+        throw new SQLException("RenameSubtree failed", e);
+      }
+    } while (moved >= chunkSize);
+    return txnId > 0 ? Long.toString(txnId) : null;
+  }
+
+  @Override
+  public String setSubtreePermission(
+      final long id, final String path, final long keep, final long bits) throws SQLException {
+    long txnId = 0;
+    try {
+      VoltTable result = call("SetSubtreePermission", id, path, keep, bits);
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("setSubtreePermission: " + path + " -- " + result.getLong(0) + " rows");
+        }
+        txnId = result.getLong(1);
+      }
+    } catch (Exception e) {
+      throw new SQLException("SetSubtreePermission failed", e);
+    }
+    return txnId > 0 ? Long.toString(txnId) : null;
+  }
+
+  @Override
+  public List<String> getSubtreePartitions(final String path) {
+    return names("GetSubtreePartitions", path);
+  }
+
+  @Override
+  public List<ReclaimINode> reclaimPartition(final String parentName) throws SQLException {
+    Map<Long, ReclaimINode> inodes = new LinkedHashMap<>();
+    try {
+      VoltTable result = call("ReclaimPartition", parentName);
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        result.getLong(2);
+        boolean uc = !result.wasNull();
+        long blockId = result.getLong(3);
+        if (result.wasNull()) {
+          blockId = 0;
+        }
+        long numBytes = result.getLong(4);
+        if (result.wasNull()) {
+          numBytes = 0;
+        }
+        addReclaimRow(inodes, result.getLong(0), result.getLong(1), uc, blockId, numBytes);
+      }
+    } catch (Exception e) {
+      throw new SQLException("ReclaimPartition failed", e);
+    }
+    return new ArrayList<>(inodes.values());
+  }
+
+  @Override
+  public void dropPartitionBlocks(final String parentName) throws SQLException {
+    try {
+      call("DropPartitionBlocks", parentName);
+    } catch (Exception e) {
+      throw new SQLException("DropPartitionBlocks failed", e);
+    }
+  }
+
+  @Override
+  public byte[] getFilter(final long id) {
+    byte[] res = null;
+    try {
+      VoltTable result = call("GetINodeFilter", id);
+      result.resetRowPosition();
+      while (result.advanceRow()) {
+        res = result.getVarbinary(0);
+      }
+    } catch (Exception e) {
+      LOG.warn("getFilter failed", e);
+    }
+    return res;
+  }
+
+  @Override
+  public void setFilter(final long id, final byte[] bits) {
+    try {
+      call("SetINodeFilter", id, bits);
+    } catch (Exception e) {
+      LOG.warn("setFilter failed", e);
+    }
+  }
+
+  @Override
+  public void removeFilter(final long id) {
+    try {
+      call("RemoveINodeFilter", id);
+    } catch (Exception e) {
+      LOG.warn("removeFilter failed", e);
+    }
+  }
+
+  // 2008-01-01T00:00:00Z, the origin of the timestamps in VoltDB transaction ids
+  private static final long VOLT_EPOCH_MS = 1199145600000L;
+
+  @Override
+  public String getAppliedOffset() throws SQLException {
+    // a read server is a DR replica: the oldest transaction it has applied from any partition
+    // bounds the transaction ids, that is the walOffsets of the batches, it has applied
+    long applied = Long.MAX_VALUE;
+    try {
+      DatabaseConnection obj = Database.getInstance().getConnection();
+      VoltTable[] results;
+      try {
+        results = obj.callProcedure("@Statistics", "DRCONSUMER", 0).getResults();
+      } finally {
+        Database.getInstance().retConnection(obj);
+      }
+      VoltTable partitions = results[results.length - 1];
+      partitions.resetRowPosition();
+      while (partitions.advanceRow()) {
+        applied = Math.min(applied, partitions.getLong("LAST_APPLIED_TIMESTAMP"));
+      }
+    } catch (Exception e) {
+      throw new SQLException("@Statistics DRCONSUMER failed", e);
+    }
+    if (applied == Long.MAX_VALUE || applied <= 0) {
+      return null;
+    }
+    // microseconds to the highest transaction id of the previous millisecond
+    return Long.toString(((applied / 1000 - VOLT_EPOCH_MS) << 23) - 1);
+  }
+}
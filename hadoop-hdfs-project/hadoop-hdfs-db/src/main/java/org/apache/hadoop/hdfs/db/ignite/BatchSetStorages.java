@@ -0,0 +1,29 @@
+package org.apache.hadoop.hdfs.db.ignite;
+
+import java.util.Map;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.lang.IgniteClosure;
+import org.apache.ignite.internal.IgniteEx;
+import org.apache.ignite.internal.processors.cache.persistence.wal.FileWriteAheadLogManager;
+import org.apache.ignite.resources.IgniteInstanceResource;
+import org.apache.ignite.binary.BinaryObject;
+
+public class BatchSetStorages implements IgniteClosure<Map<BinaryObject, BinaryObject>, String> {
+
+    @IgniteInstanceResource
+    private Ignite ignite;
+
+    @Override
+    public String apply(Map<BinaryObject, BinaryObject> map) {
+        IgniteCache<BinaryObject, BinaryObject> storagesBinary = ignite.cache("block2storage").withKeepBinary();
+        // only the rows that exist are changed, as by an UPDATE
+        for (Map.Entry<BinaryObject, BinaryObject> entry : map.entrySet()) {
+            storagesBinary.replace(entry.getKey(), entry.getValue());
+        }
+
+        FileWriteAheadLogManager walMgr = (FileWriteAheadLogManager)(
+            ((IgniteEx)ignite).context().cache().context().wal());
+        return walMgr.lastWritePointer().toString();
+    }
+}
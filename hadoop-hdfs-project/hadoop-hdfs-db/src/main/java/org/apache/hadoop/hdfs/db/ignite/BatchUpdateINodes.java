@@ -13,6 +13,9 @@
 import org.apache.ignite.binary.BinaryObject;
 import org.apache.ignite.binary.BinaryObjectBuilder;
 import org.apache.ignite.cache.query.SqlFieldsQuery;
+import org.apache.ignite.transactions.Transaction;
+import org.apache.ignite.transactions.TransactionConcurrency;
+import org.apache.ignite.transactions.TransactionIsolation;
 
 public class BatchUpdateINodes implements IgniteClosure<Map<BinaryObject, BinaryObject>, String> {
 
@@ -22,7 +25,12 @@ public class BatchUpdateINodes implements IgniteClosure<Map<BinaryObject, Binary
     @Override
     public String apply(Map<BinaryObject, BinaryObject> map) {
         IgniteCache<BinaryObject, BinaryObject> inodesBinary = ignite.cache("inodes").withKeepBinary();
-        inodesBinary.putAll(map);
+        // one transaction, whichever nodes own the keys
+        try (Transaction tx = ignite.transactions().txStart(
+                TransactionConcurrency.PESSIMISTIC, TransactionIsolation.REPEATABLE_READ)) {
+            inodesBinary.putAll(map);
+            tx.commit();
+        }
 
         FileWriteAheadLogManager walMgr = (FileWriteAheadLogManager)(
             ((IgniteEx)ignite).context().cache().context().wal());
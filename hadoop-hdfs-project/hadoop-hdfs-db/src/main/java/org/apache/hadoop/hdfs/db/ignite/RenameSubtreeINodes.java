@@ -5,12 +5,9 @@
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Map;
-import javax.cache.Cache;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
-import org.apache.ignite.cache.query.ScanQuery;
 import org.apache.ignite.lang.IgniteClosure;
-import org.apache.ignite.lang.IgniteBiPredicate;
 import org.apache.ignite.internal.IgniteEx;
 import org.apache.ignite.internal.processors.cache.persistence.wal.FileWriteAheadLogManager;
 import org.apache.ignite.resources.IgniteInstanceResource;
@@ -34,57 +31,54 @@ public class RenameSubtreeINodes implements IgniteClosure<RenamePayload, String>
     @Override
     public String apply(RenamePayload payload) {
         IgniteCache<BinaryObject, BinaryObject> inodesBinary = ignite.cache("inodes").withKeepBinary();
-        
-        Transaction tx = ignite.transactions().txStart(
-            TransactionConcurrency.PESSIMISTIC, TransactionIsolation.SERIALIZABLE);
-        
-        // 1. query subtree inodes
-        List<Cache.Entry<BinaryObject, BinaryObject>> result;
-        ScanQuery<BinaryObject, BinaryObject> scanAddress = new ScanQuery<>(
-            new IgniteBiPredicate<BinaryObject, BinaryObject>() {
-                @Override
-                public boolean apply(BinaryObject binaryKey, BinaryObject binaryObject) {
-                    return ((String)binaryKey.field("parentName")).startsWith(payload.old_parent_name);
-                }
+        BinaryObjectBuilder inodeKeyBuilder = ignite.binary().builder("InodeKey");
+
+        // the subtree is moved payload.limit rows at a time, one transaction per chunk, so
+        // neither the result set nor the transaction grows with the subtree; the move as a whole
+        // is not atomic, but running it again picks up the rows left under old_path
+        String like = payload.old_path.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+            + "/%";
+        SqlFieldsQuery query = new SqlFieldsQuery(
+            "SELECT parentName, name FROM inodes WHERE parentName = ? OR parentName LIKE ? ESCAPE '\\' LIMIT ?;")
+            .setArgs(payload.old_path, like, payload.limit);
+        while (true) {
+            // 1. query the next chunk of the subtree
+            List<List<?>> rows = inodesBinary.query(query).getAll();
+            if (rows.isEmpty()) {
+                break;
+            }
+            Set<BinaryObject> keys = new HashSet<>();
+            for (List<?> row : rows) {
+                keys.add(inodeKeyBuilder
+                    .setField("parentName", (String)row.get(0))
+                    .setField("name", (String)row.get(1))
+                    .build());
             }
-        );
-        result = inodesBinary.query(scanAddress).getAll();
 
-        // 2. update subtree inodes
-        Set<BinaryObject> keys = new HashSet<>();
-        Map<BinaryObject, BinaryObject> map = new HashMap<>();
-        BinaryObjectBuilder inodeKeyBuilder = ignite.binary().builder("InodeKey");
-        for (Cache.Entry<BinaryObject, BinaryObject> entry : result) {
-            BinaryObject inodeValue = entry.getValue();
-            long id = inodeValue.field("id");
-            if (payload.dir_id == id) {
-                inodeValue = inodeValue.toBuilder()
-                    .setField("parentName", payload.new_parent_name)
-                    .setField("parent", payload.new_parent)
-                    .setField("id", (long)inodeValue.field("id") + payload.dest_id)
-                    .build();
-            } else {
-                inodeValue = inodeValue.toBuilder()
-                    .setField("parentName", payload.new_parent_name
-                        + ((String)inodeValue.field("parentName")).substring(payload.old_parent_name.length()))
-                    .setField("parent", (long)inodeValue.field("parent") + payload.dest_id)
-                    .setField("id", (long)inodeValue.field("id") + payload.dest_id)
+            // 2. move it: ids, names and attributes are kept, only the parentName prefix changes
+            Transaction tx = ignite.transactions().txStart(
+                TransactionConcurrency.PESSIMISTIC, TransactionIsolation.SERIALIZABLE);
+            Map<BinaryObject, BinaryObject> map = new HashMap<>();
+            for (Map.Entry<BinaryObject, BinaryObject> entry : inodesBinary.getAll(keys).entrySet()) {
+                BinaryObject inodeValue = entry.getValue();
+                String parentName = payload.new_path
+                    + ((String)inodeValue.field("parentName")).substring(payload.old_path.length());
+                inodeValue = inodeValue.toBuilder().setField("parentName", parentName).build();
+                BinaryObject inodeNewKey = inodeKeyBuilder
+                    .setField("parentName", parentName)
+                    .setField("name", (String)inodeValue.field("name"))
                     .build();
+                map.put(inodeNewKey, inodeValue);
             }
+            inodesBinary.removeAll(keys);
+            inodesBinary.putAll(map);
+            tx.commit();
+            tx.close();
 
-            BinaryObject inodeNewKey = inodeKeyBuilder
-                .setField("parentName", (String)inodeValue.field("parentName"))
-                .setField("name", (String)inodeValue.field("name"))
-                .build();
-            keys.add(entry.getKey());
-            map.put(inodeNewKey, inodeValue);
+            if (rows.size() < payload.limit) {
+                break;
+            }
         }
-        // 3. write new inodes to DB
-        inodesBinary.removeAll(keys);
-        inodesBinary.putAll(map);
-
-        tx.commit();
-        tx.close();
 
         // return WAL pointer
         FileWriteAheadLogManager walMgr = (FileWriteAheadLogManager)(
@@ -0,0 +1,34 @@
+package org.apache.hadoop.hdfs.db.ignite;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.lang.IgniteClosure;
+import org.apache.ignite.internal.IgniteEx;
+import org.apache.ignite.internal.processors.cache.persistence.wal.FileWriteAheadLogManager;
+import org.apache.ignite.resources.IgniteInstanceResource;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.query.SqlFieldsQuery;
+
+// Sets permission = (permission & keep) | bits on an inode and every inode below it. The update
+// is one distributed DML statement, so each node rewrites the rows of its own partitions.
+public class SetSubtreePermission implements IgniteClosure<SubtreePermissionPayload, String> {
+
+    @IgniteInstanceResource
+    private Ignite ignite;
+
+    @Override
+    public String apply(SubtreePermissionPayload payload) {
+        IgniteCache<BinaryObject, BinaryObject> inodesBinary = ignite.cache("inodes").withKeepBinary();
+
+        String prefix = payload.path.equals("/") ? payload.path : payload.path + "/";
+        String like = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        inodesBinary.query(new SqlFieldsQuery(
+            "UPDATE inodes SET permission = BITOR(BITAND(permission, ?), ?)"
+            + " WHERE id = ? OR parentName = ? OR parentName LIKE ? ESCAPE '\\'")
+            .setArgs(payload.keep, payload.bits, payload.id, payload.path, like)).getAll();
+
+        FileWriteAheadLogManager walMgr = (FileWriteAheadLogManager)(
+            ((IgniteEx)ignite).context().cache().context().wal());
+        return walMgr.lastWritePointer().toString();
+    }
+}
@@ -0,0 +1,15 @@
+package org.apache.hadoop.hdfs.db.ignite;
+
+public class SubtreePermissionPayload {
+    public long id;
+    public String path;
+    public long keep;
+    public long bits;
+
+    public SubtreePermissionPayload(long id, String path, long keep, long bits) {
+        this.id = id;
+        this.path = path;
+        this.keep = keep;
+        this.bits = bits;
+    }
+}
@@ -20,6 +20,31 @@ public class ProxyConfig {
     public static final int RPC_PORT_DEFAULT = 65212;
     public static final String MAX_CONCURRENT_REQUEST_PER_FS = "dfs.nnproxy.max.concurrent.request-per-fs";
     public static final long MAX_CONCURRENT_REQUEST_PER_FS_DEFAULT = 1637;
+    public static final String LIMITER_INITIAL_LIMIT = "dfs.nnproxy.limiter.initial-limit";
+    public static final int LIMITER_INITIAL_LIMIT_DEFAULT = 64;
+    public static final String LIMITER_MIN_LIMIT = "dfs.nnproxy.limiter.min-limit";
+    public static final int LIMITER_MIN_LIMIT_DEFAULT = 8;
+    public static final String LIMITER_MAX_WAIT_MS = "dfs.nnproxy.limiter.max-wait-ms";
+    public static final long LIMITER_MAX_WAIT_MS_DEFAULT = 500L;
+    public static final String LIMITER_PRIORITY_USERS = "dfs.nnproxy.limiter.priority-users";
+    public static final String METADATA_CACHE_ENABLED = "dfs.nnproxy.metadata-cache.enabled";
+    public static final boolean METADATA_CACHE_ENABLED_DEFAULT = false;
+    public static final String METADATA_CACHE_TTL_MS = "dfs.nnproxy.metadata-cache.ttl-ms";
+    public static final long METADATA_CACHE_TTL_MS_DEFAULT = 1000L;
+    public static final String METADATA_CACHE_MAX_ENTRIES = "dfs.nnproxy.metadata-cache.max-entries";
+    public static final long METADATA_CACHE_MAX_ENTRIES_DEFAULT = 100000L;
+    public static final String ASYNC_FORWARDING = "dfs.nnproxy.async-forwarding.enabled";
+    public static final boolean ASYNC_FORWARDING_DEFAULT = false;
+    public static final String ASYNC_MAX_IN_FLIGHT = "dfs.nnproxy.async-forwarding.max-in-flight";
+    public static final int ASYNC_MAX_IN_FLIGHT_DEFAULT = 16384;
+    public static final String ASYNC_COMPLETER_THREADS = "dfs.nnproxy.async-forwarding.completer-threads";
+    public static final int ASYNC_COMPLETER_THREADS_DEFAULT = 4;
+    public static final String LEASE_TRACKING_EXPIRE_MS = "dfs.nnproxy.lease.tracking.expire-ms";
+    public static final long LEASE_TRACKING_EXPIRE_MS_DEFAULT = 3600 * 1000L;
+    public static final String LEASE_RENEW_COALESCE_MS = "dfs.nnproxy.lease.renew.coalesce-ms";
+    public static final long LEASE_RENEW_COALESCE_MS_DEFAULT = 1000L;
+    public static final String LEASE_RENEW_THREADS = "dfs.nnproxy.lease.renew.threads";
+    public static final int LEASE_RENEW_THREADS_DEFAULT = 64;
     public static final String CACHE_REGISTRY_RELOAD_INTERVAL_MS = "dfs.nnproxy.cache.registry.reload-interval-ms";
     public static final long CACHE_REGISTRY_RELOAD_INTERVAL_MS_DEFAULT = 300 * 1000L;
     public static final String SUPERUSER = "dfs.nnproxy.superuser";
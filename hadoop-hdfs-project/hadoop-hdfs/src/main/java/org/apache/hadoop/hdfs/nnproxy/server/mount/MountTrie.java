@@ -0,0 +1,196 @@
+package org.apache.hadoop.hdfs.nnproxy.server.mount;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager.MountEntry;
+
+/**
+ * Immutable trie over the path components of the mount points, for longest-prefix matching.
+ *
+ * <p>A mount table is turned into a new trie when it changes, and {@link MountsManager} publishes
+ * it with one volatile write, so lookups never lock and always see one whole table. The children
+ * of a node are kept in sorted arrays and found by binary search on a region of the path, so a
+ * lookup walks at most one node per component and allocates nothing.
+ */
+@InterfaceAudience.Private
+final class MountTrie {
+
+  static final class Node {
+    // sorted by name, children[i] is the child named names[i]
+    final String[] names;
+    final Node[] children;
+    // the mounts of this path, or null if it is not a mount point
+    final MountEntry[] entries;
+    final boolean hasMountBelow;
+
+    Node(String[] names, Node[] children, MountEntry[] entries) {
+      this.names = names;
+      this.children = children;
+      this.entries = entries;
+      boolean below = false;
+      for (Node child : children) {
+        below |= child.entries != null || child.hasMountBelow;
+      }
+      this.hasMountBelow = below;
+    }
+
+    /** @return the child named {@code path[from, to)}, or null. */
+    Node child(String path, int from, int to) {
+      int lo = 0;
+      int hi = names.length - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int c = compare(names[mid], path, from, to);
+        if (c < 0) {
+          lo = mid + 1;
+        } else if (c > 0) {
+          hi = mid - 1;
+        } else {
+          return children[mid];
+        }
+      }
+      return null;
+    }
+
+    // the order of String.compareTo, against a region of path
+    private static int compare(String name, String path, int from, int to) {
+      int len = to - from;
+      int n = Math.min(name.length(), len);
+      for (int k = 0; k < n; ++k) {
+        int c = name.charAt(k) - path.charAt(from + k);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return name.length() - len;
+    }
+  }
+
+  private final Node root;
+
+  private MountTrie(Node root) {
+    this.root = root;
+  }
+
+  private static final class Builder {
+    final TreeMap<String, Builder> children = new TreeMap<>();
+    final List<MountEntry> entries = new ArrayList<>();
+
+    Node build() {
+      String[] names = new String[children.size()];
+      Node[] nodes = new Node[children.size()];
+      int i = 0;
+      for (Map.Entry<String, Builder> e : children.entrySet()) {
+        names[i] = e.getKey();
+        nodes[i] = e.getValue().build();
+        ++i;
+      }
+      MountEntry[] mounted = entries.isEmpty() ? null : entries.toArray(new MountEntry[0]);
+      return new Node(names, nodes, mounted);
+    }
+  }
+
+  static MountTrie build(List<MountEntry> entries) {
+    Builder root = new Builder();
+    for (MountEntry entry : entries) {
+      Builder node = root;
+      for (String name : entry.mountPoint.split("/")) {
+        if (!name.isEmpty()) {
+          node = node.children.computeIfAbsent(name, k -> new Builder());
+        }
+      }
+      node.entries.add(entry);
+    }
+    return new MountTrie(root.build());
+  }
+
+  /** @return the end of the component of {@code path} that starts at {@code from}. */
+  private static int componentEnd(String path, int from) {
+    int end = path.indexOf('/', from);
+    return end < 0 ? path.length() : end;
+  }
+
+  /**
+   * @return the mount entry with the longest mount point that is {@code path} or one of its
+   *     ancestors, the first in the mount table if several namenodes mount it; null if there is
+   *     none.
+   */
+  MountEntry resolve(String path) {
+    MountEntry[] best = owners(path);
+    return best == null ? null : best[0];
+  }
+
+  /**
+   * @return the mount entry with the longest mount point that is {@code path} or one of its
+   *     ancestors, picked at random if several namenodes mount it; null if there is none.
+   */
+  MountEntry resolveAny(String path) {
+    MountEntry[] best = owners(path);
+    if (best == null) {
+      return null;
+    }
+    return best.length == 1 ? best[0] : best[ThreadLocalRandom.current().nextInt(best.length)];
+  }
+
+  /**
+   * @return the entries of the longest mount point that is {@code path} or one of its ancestors,
+   *     one per namenode that mounts it; null if there is none.
+   */
+  MountEntry[] owners(String path) {
+    Node node = root;
+    MountEntry[] best = root.entries;
+    int len = path.length();
+    int i = 0;
+    while (i < len) {
+      if (path.charAt(i) == '/') {
+        ++i;
+        continue;
+      }
+      int end = componentEnd(path, i);
+      node = node.child(path, i, end);
+      if (node == null) {
+        break;
+      }
+      if (node.entries != null) {
+        best = node.entries;
+      }
+      i = end;
+    }
+    return best;
+  }
+
+  /** @return the node of exactly {@code path}, or null if no mount point is at or below it. */
+  Node find(String path) {
+    Node node = root;
+    int len = path.length();
+    int i = 0;
+    while (i < len && node != null) {
+      if (path.charAt(i) == '/') {
+        ++i;
+        continue;
+      }
+      int end = componentEnd(path, i);
+      node = node.child(path, i, end);
+      i = end;
+    }
+    return node;
+  }
+
+  /** Adds the mount entries at or below {@code node} to {@code out}. */
+  static void collect(Node node, List<MountEntry> out) {
+    if (node.entries != null) {
+      for (MountEntry entry : node.entries) {
+        out.add(entry);
+      }
+    }
+    if (node.hasMountBelow) {
+      for (Node child : node.children) {
+        collect(child, out);
+      }
+    }
+  }
+}
@@ -5,6 +5,7 @@
 import dnl.utils.text.table.TextTable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.curator.framework.CuratorFramework;
@@ -64,8 +65,9 @@ public String toString() {
   ImmutableList<String> allFs;
   MountEntry root;
   NodeCache nodeCache;
-  Map<String, List<MountEntry>> lookupMap;
-  Random rand;
+  // published last when a table is installed, so a reader of it sees the fields above
+  volatile MountTrie trie;
+  final List<Consumer<String>> moveListeners = new CopyOnWriteArrayList<>();
 
   @VisibleForTesting protected volatile boolean installed;
 
@@ -107,7 +109,6 @@ protected void serviceInit(Configuration conf) throws Exception {
             sessionTimeout,
             connectionTimeout,
             new ExponentialBackoffRetry(retryBaseSleep, maxRetries));
-    rand = new Random();
     installed = false;
   }
 
@@ -119,81 +120,69 @@ public ImmutableList<String> getAllFs() {
     return allFs;
   }
 
+  /**
+   * Resolves {@code path} to the namenode of its longest mount point; if several namenodes mount
+   * it, to the one listed first in the mount table.
+   */
   public String resolve(String path) {
-    ImmutableList<MountEntry> entries = this.mounts;
-    MountEntry chosen = null;
-    for (MountEntry entry : entries) {
-      if (path == null
-          || !(path.startsWith(entry.mountPoint + "/") || path.equals(entry.mountPoint))) {
-        continue;
-      }
-      if (chosen == null || chosen.mountPoint.length() < entry.mountPoint.length()) {
-        chosen = entry;
-      }
-    }
+    MountEntry chosen = path == null ? null : trie.resolve(path);
     if (chosen == null) {
       chosen = root;
     }
     return chosen.fsUri;
   }
 
+  /**
+   * @return the mount points below {@code path}, with the host of their namenode, and {@code path}
+   *     itself with the hosts of the namenodes that serve it, as they cache its inodes too.
+   */
   public Set<Pair<String, String>> resolveSubPaths(String path) {
     Set<Pair<String, String>> subPaths = new HashSet<>();
-    ImmutableList<MountEntry> entries = this.mounts;
-    for (MountEntry entry: entries) {
-      if (entry.mountPoint.startsWith(path)) {
-        subPaths.add(Pair.of(entry.mountPoint, entry.fsUri.replace("hdfs://","").split(":")[0]));
-      }
+    MountEntry[] owners = trie.owners(path);
+    if (owners == null) {
+      owners = root == null ? new MountEntry[0] : new MountEntry[] {root};
+    }
+    for (MountEntry owner : owners) {
+      subPaths.add(Pair.of(path, host(owner)));
+    }
+    MountTrie.Node node = trie.find(path);
+    if (node == null) {
+      return subPaths;
+    }
+    List<MountEntry> entries = new ArrayList<>();
+    MountTrie.collect(node, entries);
+    for (MountEntry entry : entries) {
+      subPaths.add(Pair.of(entry.mountPoint, host(entry)));
     }
     return subPaths;
   }
 
+  private static String host(MountEntry entry) {
+    return entry.fsUri.replace("hdfs://", "").split(":")[0];
+  }
+
   public String resolveForBench(String path) {
     String parent = "";
     if (path.charAt(49) == '/')
       parent = path.substring(0, 49);
     else
       parent = path.substring(0, 50);
-    return this.lookupMap.get(parent).get(0).fsUri;
+    return trie.find(parent).entries[0].fsUri;
   }
 
+  /**
+   * Resolves {@code path} to the namenode of its longest mount point, walking the mount trie one
+   * component at a time without allocating. If several namenodes mount it, one is picked at
+   * random, so that requests are spread across them.
+   */
   public String resolveOpt(String path) {
-    MountEntry chosen = null;
-    if (path == null) {
-      chosen = root;
-    } else {
-      chosen = resolveParentPath(path, path);
-      if (chosen == null) {
-        StringBuilder seg = new StringBuilder(path.length());
-        seg.append(path);
-        for (int i = path.length() - 1; i >= 0; i--) {
-          if (path.charAt(i) == '/') {
-            seg.setLength(i);
-            MountEntry entry = resolveParentPath(seg.toString(), path);
-            if (entry != null) {
-              chosen = entry;
-              break;
-            }
-          }
-        }
-      }
-    }
+    MountEntry chosen = path == null ? null : trie.resolveAny(path);
     if (chosen == null) {
       chosen = root;
     }
     return chosen.fsUri;
   }
 
-  private MountEntry resolveParentPath(String parent, String path) {
-    Map<String, List<MountEntry>> entries = this.lookupMap;
-    List<MountEntry> mounts = entries.get(parent);
-    if (mounts == null) {
-      LOG.debug("resolve not found");
-      return null;
-    }
-    return mounts.get(rand.nextInt(mounts.size()));
-  }
-
   /**
    * Determine whether given path is exactly a valid mount point
    *
@@ -201,13 +190,8 @@ private MountEntry resolveParentPath(String parent, String path) {
    * @return
    */
   public boolean isMountPoint(String path) {
-    ImmutableList<MountEntry> entries = this.mounts;
-    for (MountEntry entry : entries) {
-      if (entry.mountPoint.equals(path)) {
-        return true;
-      }
-    }
-    return false;
+    MountTrie.Node node = trie.find(path);
+    return node != null && node.entries != null;
   }
 
   /**
@@ -218,18 +202,45 @@ public boolean isMountPoint(String path) {
    * @return
    */
   public boolean isUnified(String path) {
-    String prefix = path + "/";
-    ImmutableList<MountEntry> entries = this.mounts;
-    for (MountEntry entry : entries) {
-      if (entry.mountPoint.startsWith(prefix)) {
-        return false;
+    MountTrie.Node node = trie.find(path);
+    return node == null || !node.hasMountBelow;
+  }
+
+  /**
+   * Adds a listener that is told the mount points whose namenodes changed when a new mount table
+   * is installed, e.g. after {@link #repartition}.
+   */
+  public void addMoveListener(Consumer<String> listener) {
+    moveListeners.add(listener);
+  }
+
+  /** @return the mount points that are in only one of the tables, or on other namenodes. */
+  static Set<String> movedMountPoints(List<MountEntry> before, List<MountEntry> after) {
+    Map<String, Set<String>> old = new HashMap<>();
+    for (MountEntry entry : before) {
+      old.computeIfAbsent(entry.mountPoint, k -> new HashSet<>()).add(entry.fsUri);
+    }
+    Map<String, Set<String>> now = new HashMap<>();
+    for (MountEntry entry : after) {
+      now.computeIfAbsent(entry.mountPoint, k -> new HashSet<>()).add(entry.fsUri);
+    }
+    Set<String> moved = new HashSet<>();
+    for (Map.Entry<String, Set<String>> e : old.entrySet()) {
+      if (!e.getValue().equals(now.get(e.getKey()))) {
+        moved.add(e.getKey());
+      }
+    }
+    for (String mountPoint : now.keySet()) {
+      if (!old.containsKey(mountPoint)) {
+        moved.add(mountPoint);
       }
     }
-    return true;
+    return moved;
   }
 
   protected void installMountTable(List<MountEntry> entries) {
     LOG.info("Installed mount table: " + entries);
+    List<MountEntry> previous = this.mounts;
     List<String> fs = new ArrayList<>();
     for (MountEntry entry : entries) {
       if (entry.mountPoint.equals("/")) {
@@ -241,8 +252,15 @@ protected void installMountTable(List<MountEntry> entries) {
     }
     this.allFs = ImmutableList.copyOf(fs);
     this.mounts = ImmutableList.copyOf(entries);
-    this.lookupMap = buildLookupMap(entries);
+    this.trie = MountTrie.build(entries);
     this.installed = true;
+    if (previous != null && !moveListeners.isEmpty()) {
+      for (String mountPoint : movedMountPoints(previous, entries)) {
+        for (Consumer<String> listener : moveListeners) {
+          listener.accept(mountPoint);
+        }
+      }
+    }
   }
 
   protected List<MountEntry> parseMountTable(String mounts) {
@@ -360,7 +378,7 @@ public void repartition(String mounts) throws Exception {
         boolean repartPoint = (cols.length > 2) ? true : false;
         if (repartPoint) {
           // find the old mount point
-          String oldUri = this.lookupMap.get(mPoint).get(0).fsUri;
+          String oldUri = trie.find(mPoint).entries[0].fsUri;
 
           // update the local cache in the old destination (NameNode)
           try {
@@ -385,20 +403,4 @@ public void repartition(String mounts) throws Exception {
       framework.setData().forPath(zkMountTablePath, mounts.getBytes());
     }
   }
-
-  protected Map<String, List<MountEntry>> buildLookupMap(List<MountEntry> entries) {
-    Map<String, List<MountEntry>> lookupMap = new HashMap<>();
-    for (MountEntry entry : entries) {
-      List<MountEntry> mounts = lookupMap.get(entry.mountPoint);
-      if (mounts == null) {
-        mounts = new ArrayList<>();
-        lookupMap.put(entry.mountPoint, mounts);
-      }
-      mounts.add(entry);
-      if (entry.mountPoint.equals("/")) {
-        lookupMap.put("", mounts);
-      }
-    }
-    return lookupMap;
-  }
 }
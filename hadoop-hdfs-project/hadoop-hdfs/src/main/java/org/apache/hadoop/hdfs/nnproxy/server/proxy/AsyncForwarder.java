@@ -0,0 +1,234 @@
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Message;
+import com.google.protobuf.ServiceException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.nnproxy.server.exception.WrappedExecutionException;
+import org.apache.hadoop.hdfs.nnproxy.server.quota.AdaptiveLimiter;
+import org.apache.hadoop.hdfs.nnproxy.server.upstream.UpstreamManager;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolPB;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
+import org.apache.hadoop.ipc.ProtobufRpcEngineCallback;
+import org.apache.hadoop.ipc.ProxyRpcServerException;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos;
+import org.apache.hadoop.util.concurrent.AsyncGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwards client calls to the upstream namenodes without holding a handler for the round trip.
+ *
+ * <p>The handler of a call routes it, sends the request upstream with the RPC client in
+ * asynchronous mode ({@link Client#setAsynchronousMode}), registers the call for a deferred
+ * response and returns to take the next call. When the RPC client has read the namenode's
+ * response, it completes the call's future ({@link Client#getAsyncRpcCompletion}), which hands
+ * the call to one of a few completer threads (dfs.nnproxy.async-forwarding.completer-threads,
+ * default 4); the completer sends the response, or error, back to the client. Nothing polls the
+ * calls in flight, so a few handlers can keep thousands of them in flight across the namenodes.
+ *
+ * <p>Only namenodes addressed by host and port are forwarded to. An HA nameservice needs the
+ * failover of the synchronous proxies, so the calls on its paths are not forwarded here.
+ *
+ * <p>Calls in flight hold a permit of the {@link AdaptiveLimiter} of their namenode and count
+ * against the active requests that {@link RpcInvocationProxy#shutdown} waits for.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class AsyncForwarder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncForwarder.class);
+
+    /** Sends a request to an upstream namenode. */
+    public interface Request {
+        void send(ClientNamenodeProtocolPB upstream) throws ServiceException;
+    }
+
+    /** Runs on a completer thread when the namenode has answered a forwarded call. */
+    public interface Completion {
+        /**
+         * @param response the response of the namenode, or null if the call failed.
+         */
+        void done(Message response);
+    }
+
+    private static class InFlight {
+        final AsyncGet<Message, Exception> response;
+        final ProtobufRpcEngineCallback callback;
+        final AdaptiveLimiter limiter;
+        final long start;
+        final String method;
+        final Completion completion;
+
+        InFlight(AsyncGet<Message, Exception> response, ProtobufRpcEngineCallback callback,
+                 AdaptiveLimiter limiter, long start, String method, Completion completion) {
+            this.response = response;
+            this.callback = callback;
+            this.limiter = limiter;
+            this.start = start;
+            this.method = method;
+            this.completion = completion;
+        }
+    }
+
+    final RpcInvocationProxy invocationProxy;
+    final Router router;
+    final UpstreamManager upstreamManager;
+    final ExecutorService completers;
+    final AtomicInteger inFlight;
+
+    public AsyncForwarder(RpcInvocationProxy invocationProxy) {
+        this.invocationProxy = invocationProxy;
+        this.router = invocationProxy.protocolHandler.router;
+        this.upstreamManager = invocationProxy.protocolHandler.upstreamManager;
+        int threads = invocationProxy.conf.getInt(ProxyConfig.ASYNC_COMPLETER_THREADS,
+                ProxyConfig.ASYNC_COMPLETER_THREADS_DEFAULT);
+        this.completers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("nnproxy-async-completer-%d").build());
+        this.inFlight = new AtomicInteger();
+    }
+
+    /** Stops once every call in flight has been answered. */
+    public void shutdown() {
+        try {
+            synchronized (inFlight) {
+                while (inFlight.get() > 0) {
+                    inFlight.wait(100);
+                }
+            }
+            completers.shutdown();
+            completers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends {@code request} to the namenode that {@code src} is mounted on, and defers the
+     * response of the current call until that namenode answers. Must be called by the handler
+     * of the call, which then returns null.
+     *
+     * @return false, with nothing sent, if the namenode is an HA nameservice; the handler then
+     *         serves the call itself.
+     */
+    public boolean forward(String method, String src, Request request) throws ServiceException {
+        return forward(method, src, request, null);
+    }
+
+    /**
+     * As {@link #forward(String, String, Request)}, running {@code completion}, if not null, when
+     * the namenode has answered.
+     */
+    public boolean forward(String method, String src, Request request, Completion completion)
+            throws ServiceException {
+        if (invocationProxy.isShuttingDown) {
+            throw new ServiceException(new StandbyException("Proxy is shutting down"));
+        }
+        UpstreamManager.Upstream upstream;
+        String fs;
+        try {
+            fs = router.resolve(src);
+            upstream = router.getUpstream(fs);
+        } catch (WrappedExecutionException e) {
+            throw new ServiceException(e.getCause());
+        }
+        if (upstream.rpcProxy == null) {
+            return false;
+        }
+
+        AdaptiveLimiter limiter = upstreamManager.getLimiter(fs);
+        long start;
+        try {
+            start = limiter.acquire(Server.getRemoteUser().getUserName());
+        } catch (StandbyException e) {
+            throw new ServiceException(e);
+        }
+
+        invocationProxy.setupClientAddress();
+        AsyncGet<Message, Exception> response;
+        CompletableFuture<Void> done;
+        boolean async = Client.isAsynchronousMode();
+        Client.setAsynchronousMode(true);
+        try {
+            request.send(upstream.rpcProxy);
+            response = ProtobufRpcEngine.getAsyncReturnMessage();
+            done = Client.getAsyncRpcCompletion();
+        } catch (ServiceException | RuntimeException e) {
+            limiter.release(start, false, e);
+            NNProxy.proxyMetrics.failedOps.incr();
+            LOG.error("Error forwarding " + src + " to " + fs, e);
+            throw e;
+        } finally {
+            Client.setAsynchronousMode(async);
+        }
+        invocationProxy.activeRequests.incrementAndGet();
+        inFlight.incrementAndGet();
+        InFlight call = new InFlight(
+                response, ProtobufRpcEngine.Server.registerForDeferredResponse(), limiter, start,
+                method, completion);
+        // completed on the connection's reader thread, which must not send the response itself
+        done.thenRun(() -> completers.execute(() -> finish(call)));
+        return true;
+    }
+
+    private void finish(InFlight call) {
+        Exception error = null;
+        Message response = null;
+        try {
+            response = call.response.get(0, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            error = e;
+        }
+        try {
+            if (call.completion != null) {
+                call.completion.done(response);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error completing " + call.method, e);
+        }
+        try {
+            if (error == null) {
+                call.callback.setResponse(response);
+                NNProxy.proxyMetrics.successOps.incr();
+            } else {
+                NNProxy.proxyMetrics.failedOps.incr();
+                call.callback.error(toClientError(error));
+            }
+        } finally {
+            call.limiter.release(call.start, true, error);
+            NNProxy.proxyMetrics.addCallLatency(call.method, System.nanoTime() - call.start);
+            invocationProxy.activeRequests.decrementAndGet();
+            if (inFlight.decrementAndGet() == 0) {
+                synchronized (inFlight) {
+                    inFlight.notifyAll();
+                }
+            }
+        }
+    }
+
+    // a RemoteException is passed to the client untouched, as RpcInvocationProxy does
+    static Throwable toClientError(Throwable t) {
+        if (t instanceof RemoteException) {
+            RemoteException remoteException = (RemoteException) t;
+            return new ProxyRpcServerException(
+                    RpcHeaderProtos.RpcResponseHeaderProto.RpcStatusProto.ERROR,
+                    remoteException.getErrorCode(),
+                    remoteException.getClassName(),
+                    remoteException.getMessage());
+        }
+        return t;
+    }
+}
@@ -0,0 +1,221 @@
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import com.google.protobuf.RpcController;
+import com.google.protobuf.ServiceException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.*;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsFileStatusProto;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.ipc.Server;
+
+import java.io.IOException;
+
+/**
+ * Serves the calls on a single path with {@link AsyncForwarder}: the request is sent to the
+ * namenode as the client encoded it and the namenode's response is sent back as is, so nothing
+ * is translated and no handler waits for the namenode. The other calls go through
+ * {@link ClientProtocol} and the proxy handler as before; they are either answered by the proxy
+ * itself, span mount points, or are the calls that open a file for writing.
+ *
+ * <p>The overridden methods return null, which defers the response of the call, unless the
+ * path is on a namenode that is not forwarded to asynchronously (see
+ * {@link AsyncForwarder#forward}); the call is then served through {@link ClientProtocol}.
+ * With the {@link MetadataCache} enabled, getFileInfo is answered from it when it can, and the
+ * calls that change a path invalidate it when the namenode has answered.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class AsyncForwardingTranslatorPB extends ClientNamenodeProtocolServerSideTranslatorPB {
+
+    final AsyncForwarder forwarder;
+    // null if the cache is disabled
+    final MetadataCache cache;
+    final LeaseTracker leaseTracker;
+
+    public AsyncForwardingTranslatorPB(ClientProtocol server, AsyncForwarder forwarder)
+            throws IOException {
+        super(server);
+        this.forwarder = forwarder;
+        this.cache = forwarder.invocationProxy.protocolHandler.metadataCache;
+        this.leaseTracker = forwarder.invocationProxy.protocolHandler.leaseTracker;
+    }
+
+    // drops what a call changed from the cache once the namenode has answered it
+    private AsyncForwarder.Completion invalidation(String method, String src) {
+        return cache == null ? null : response -> cache.onCall(method, new Object[]{src});
+    }
+
+    @Override
+    public GetBlockLocationsResponseProto getBlockLocations(
+            RpcController controller, GetBlockLocationsRequestProto req) throws ServiceException {
+        if (forwarder.forward("getBlockLocations", req.getSrc(),
+                upstream -> upstream.getBlockLocations(null, req))) {
+            return null;
+        }
+        return super.getBlockLocations(controller, req);
+    }
+
+    @Override
+    public SetReplicationResponseProto setReplication(
+            RpcController controller, SetReplicationRequestProto req) throws ServiceException {
+        if (forwarder.forward("setReplication", req.getSrc(),
+                upstream -> upstream.setReplication(null, req),
+                invalidation("setReplication", req.getSrc()))) {
+            return null;
+        }
+        return super.setReplication(controller, req);
+    }
+
+    @Override
+    public SetPermissionResponseProto setPermission(
+            RpcController controller, SetPermissionRequestProto req) throws ServiceException {
+        if (forwarder.forward("setPermission", req.getSrc(),
+                upstream -> upstream.setPermission(null, req),
+                invalidation("setPermission", req.getSrc()))) {
+            return null;
+        }
+        return super.setPermission(controller, req);
+    }
+
+    @Override
+    public SetOwnerResponseProto setOwner(
+            RpcController controller, SetOwnerRequestProto req) throws ServiceException {
+        if (forwarder.forward("setOwner", req.getSrc(),
+                upstream -> upstream.setOwner(null, req),
+                invalidation("setOwner", req.getSrc()))) {
+            return null;
+        }
+        return super.setOwner(controller, req);
+    }
+
+    @Override
+    public CompleteResponseProto complete(
+            RpcController controller, CompleteRequestProto req) throws ServiceException {
+        final AsyncForwarder.Completion invalidation = invalidation("complete", req.getSrc());
+        if (forwarder.forward("complete", req.getSrc(),
+                upstream -> upstream.complete(null, req),
+                response -> {
+                    if (response != null && ((CompleteResponseProto) response).getResult()) {
+                        leaseTracker.close(
+                                req.getClientName(), forwarder.router.resolve(req.getSrc()));
+                    }
+                    if (invalidation != null) {
+                        invalidation.done(response);
+                    }
+                })) {
+            return null;
+        }
+        return super.complete(controller, req);
+    }
+
+    @Override
+    public DeleteResponseProto delete(
+            RpcController controller, DeleteRequestProto req) throws ServiceException {
+        if (forwarder.forward("delete", req.getSrc(),
+                upstream -> upstream.delete(null, req),
+                invalidation("delete", req.getSrc()))) {
+            return null;
+        }
+        return super.delete(controller, req);
+    }
+
+    @Override
+    public MkdirsResponseProto mkdirs(
+            RpcController controller, MkdirsRequestProto req) throws ServiceException {
+        if (forwarder.forward("mkdirs", req.getSrc(),
+                upstream -> upstream.mkdirs(null, req),
+                invalidation("mkdirs", req.getSrc()))) {
+            return null;
+        }
+        return super.mkdirs(controller, req);
+    }
+
+    @Override
+    public GetListingResponseProto getListing(
+            RpcController controller, GetListingRequestProto req) throws ServiceException {
+        if (forwarder.forward("getListing", req.getSrc(), upstream -> upstream.getListing(null, req))) {
+            return null;
+        }
+        return super.getListing(controller, req);
+    }
+
+    @Override
+    public GetFileInfoResponseProto getFileInfo(
+            RpcController controller, GetFileInfoRequestProto req) throws ServiceException {
+        if (cache == null) {
+            if (forwarder.forward("getFileInfo", req.getSrc(),
+                    upstream -> upstream.getFileInfo(null, req))) {
+                return null;
+            }
+            return super.getFileInfo(controller, req);
+        }
+        long start = System.nanoTime();
+        String src = req.getSrc();
+        String user = Server.getRemoteUser().getUserName();
+        HdfsFileStatus status = cache.getFileInfo(user, src);
+        if (status != null) {
+            GetFileInfoResponseProto response = GetFileInfoResponseProto.newBuilder()
+                    .setFs(PBHelperClient.convert(status)).build();
+            NNProxy.proxyMetrics.addCallLatency("getFileInfo", System.nanoTime() - start);
+            return response;
+        }
+        long gen = cache.generation();
+        if (forwarder.forward("getFileInfo", src, upstream -> upstream.getFileInfo(null, req),
+                response -> {
+                    if (response != null && ((GetFileInfoResponseProto) response).hasFs()) {
+                        HdfsFileStatusProto fs = ((GetFileInfoResponseProto) response).getFs();
+                        cache.putFileInfo(user, src, PBHelperClient.convert(fs), gen);
+                    }
+                })) {
+            return null;
+        }
+        return super.getFileInfo(controller, req);
+    }
+
+    @Override
+    public GetContentSummaryResponseProto getContentSummary(
+            RpcController controller, GetContentSummaryRequestProto req) throws ServiceException {
+        if (forwarder.forward("getContentSummary", req.getPath(),
+                upstream -> upstream.getContentSummary(null, req))) {
+            return null;
+        }
+        return super.getContentSummary(controller, req);
+    }
+
+    @Override
+    public FsyncResponseProto fsync(
+            RpcController controller, FsyncRequestProto req) throws ServiceException {
+        if (forwarder.forward("fsync", req.getSrc(),
+                upstream -> upstream.fsync(null, req),
+                invalidation("fsync", req.getSrc()))) {
+            return null;
+        }
+        return super.fsync(controller, req);
+    }
+
+    @Override
+    public SetTimesResponseProto setTimes(
+            RpcController controller, SetTimesRequestProto req) throws ServiceException {
+        if (forwarder.forward("setTimes", req.getSrc(),
+                upstream -> upstream.setTimes(null, req),
+                invalidation("setTimes", req.getSrc()))) {
+            return null;
+        }
+        return super.setTimes(controller, req);
+    }
+
+    @Override
+    public IsFileClosedResponseProto isFileClosed(
+            RpcController controller, IsFileClosedRequestProto req) throws ServiceException {
+        if (forwarder.forward("isFileClosed", req.getSrc(),
+                upstream -> upstream.isFileClosed(null, req))) {
+            return null;
+        }
+        return super.isFileClosed(controller, req);
+    }
+}
@@ -0,0 +1,232 @@
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renews client leases only on the namenodes where the client is writing.
+ *
+ * <p>The files a client has open are counted per namenode: up when it creates or appends to a
+ * file through the proxy, down when it completes one. A namenode the client still has files open
+ * on is never forgotten; one it has none open on is forgotten once the client has not written to
+ * it for {@link ProxyConfig#LEASE_TRACKING_EXPIRE_MS}, and a client that has neither written nor
+ * renewed for that long is forgotten entirely. A renewal goes to the tracked namenodes in
+ * parallel. The tracked set may miss files a client opened before the proxy started, so a client
+ * first seen renewing rather than writing, or first seen within
+ * {@link ProxyConfig#LEASE_TRACKING_EXPIRE_MS} of the proxy starting, renews on every namenode
+ * until it is forgotten. A renewal repeated by a client within
+ * {@link ProxyConfig#LEASE_RENEW_COALESCE_MS} of the last one is answered without going upstream.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class LeaseTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaseTracker.class);
+
+    final Router router;
+    final long expireNanos;
+    final long coalesceNanos;
+    final long startNanos;
+    final ExecutorService executor;
+    final Map<String, Lease> leases;
+    final AtomicLong lastPrune;
+
+    static class Lease {
+        final Map<String, FsLease> fss = new ConcurrentHashMap<>();
+        // the client may hold leases the proxy has not seen it take
+        final boolean partial;
+        // System.nanoTime() the client last wrote or renewed
+        volatile long seen;
+        // System.nanoTime() of the last renewal that went upstream, 0 if none
+        volatile long renewed;
+
+        Lease(boolean partial, long now) {
+            this.partial = partial;
+            this.seen = now;
+        }
+    }
+
+    static class FsLease {
+        final AtomicInteger open = new AtomicInteger();
+        // System.nanoTime() the client last wrote to the namenode
+        volatile long written;
+    }
+
+    public LeaseTracker(Configuration conf, Router router) {
+        this.router = router;
+        this.expireNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+                ProxyConfig.LEASE_TRACKING_EXPIRE_MS, ProxyConfig.LEASE_TRACKING_EXPIRE_MS_DEFAULT));
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+                ProxyConfig.LEASE_RENEW_COALESCE_MS, ProxyConfig.LEASE_RENEW_COALESCE_MS_DEFAULT));
+        int threads = conf.getInt(
+                ProxyConfig.LEASE_RENEW_THREADS, ProxyConfig.LEASE_RENEW_THREADS_DEFAULT);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("nnproxy-lease-renewer-%d").build());
+        this.leases = new ConcurrentHashMap<>();
+        this.startNanos = System.nanoTime();
+        this.lastPrune = new AtomicLong(startNanos);
+    }
+
+    private Lease lease(String clientName, boolean renewing, long now) {
+        return leases.computeIfAbsent(clientName,
+                k -> new Lease(renewing || now - startNanos < expireNanos, now));
+    }
+
+    private FsLease write(String clientName, String fs, long now) {
+        Lease lease = lease(clientName, false, now);
+        lease.seen = now;
+        FsLease fsLease = lease.fss.computeIfAbsent(fs, k -> new FsLease());
+        fsLease.written = now;
+        return fsLease;
+    }
+
+    /**
+     * Records that {@code clientName} opened a file on {@code fs}.
+     */
+    void open(String clientName, String fs) {
+        open(clientName, fs, System.nanoTime());
+    }
+
+    void open(String clientName, String fs, long now) {
+        write(clientName, fs, now).open.incrementAndGet();
+        prune(now);
+    }
+
+    /**
+     * Records that {@code clientName} wrote to a file it has open on {@code fs}.
+     */
+    void record(String clientName, String fs) {
+        long now = System.nanoTime();
+        write(clientName, fs, now);
+        prune(now);
+    }
+
+    /**
+     * Records that {@code clientName} closed a file on {@code fs}.
+     */
+    void close(String clientName, String fs) {
+        close(clientName, fs, System.nanoTime());
+    }
+
+    void close(String clientName, String fs, long now) {
+        // files opened before the proxy started were never counted
+        write(clientName, fs, now).open.getAndUpdate(n -> n > 0 ? n - 1 : 0);
+    }
+
+    // forgets the namenodes of clients that stopped writing, e.g. clients that went away
+    void prune(long now) {
+        long last = lastPrune.get();
+        if (now - last < expireNanos || !lastPrune.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, Lease> e : leases.entrySet()) {
+            Lease lease = e.getValue();
+            if (now - lease.seen >= expireNanos) {
+                // the namenodes have recovered the leases of a client that stopped renewing
+                leases.remove(e.getKey(), lease);
+            } else {
+                expire(lease, now);
+            }
+        }
+    }
+
+    private void expire(Lease lease, long now) {
+        lease.fss.values().removeIf(f -> f.open.get() == 0 && now - f.written >= expireNanos);
+    }
+
+    /**
+     * @return the namenodes {@code clientName} has to renew its lease on, or null if it renewed
+     * within the coalescing window.
+     */
+    Collection<String> renewTargets(String clientName, Collection<String> allFs, long now) {
+        Lease lease = lease(clientName, true, now);
+        if (lease.renewed != 0 && now - lease.renewed < coalesceNanos) {
+            return null;
+        }
+        lease.seen = now;
+        expire(lease, now);
+        if (lease.partial || lease.fss.isEmpty()) {
+            return allFs;
+        }
+        return new ArrayList<>(lease.fss.keySet());
+    }
+
+    void renewLease(String clientName, Collection<String> allFs) throws IOException {
+        long now = System.nanoTime();
+        Collection<String> fss = renewTargets(clientName, allFs, now);
+        if (fss == null) {
+            return;
+        }
+        prune(now);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Renewing lease of " + clientName + " on " + fss);
+        }
+
+        // the upstreams are per remote user, which is only known on the handler thread; renewals
+        // bypass the limiters, a lease lost while queued fails the writes of the client
+        List<ClientProtocol> upstreams = new ArrayList<>(fss.size());
+        for (String fs : fss) {
+            upstreams.add(router.getUnlimitedProtocol(fs));
+        }
+        if (upstreams.size() == 1) {
+            upstreams.get(0).renewLease(clientName);
+        } else {
+            final String clientAddress = Server.getRemoteAddress();
+            List<Future<Void>> futures = new ArrayList<>(upstreams.size());
+            for (final ClientProtocol upstream : upstreams) {
+                futures.add(executor.submit(() -> {
+                    Client.setClientAddress(clientAddress);
+                    upstream.renewLease(clientName);
+                    return null;
+                }));
+            }
+            IOException error = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause() : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted renewing lease of " + clientName, e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+        Lease lease = leases.get(clientName);
+        if (lease != null) {
+            lease.renewed = now;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
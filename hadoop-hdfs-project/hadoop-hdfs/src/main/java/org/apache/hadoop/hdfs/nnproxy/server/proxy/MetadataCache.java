@@ -0,0 +1,229 @@
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FsServerDefaults;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of the {@link HdfsFileStatus} of paths and of the server defaults, so that
+ * repeated stat calls are answered by the proxy.
+ *
+ * <p>A status is cached per (path, user): the namenode checks the permissions of the caller, so
+ * a status is only served to the user whose call read it. Entries are kept in one map sorted by
+ * path, so the entries of a path, or of everything below it, are one range of the map.
+ *
+ * <p>A status is kept for {@link ProxyConfig#METADATA_CACHE_TTL_MS}, and at most
+ * {@link ProxyConfig#METADATA_CACHE_MAX_ENTRIES} are kept, the oldest going first. The calls that
+ * change a path through this proxy drop it when they complete, and delete, rename and concat also
+ * drop whatever is cached below it. A status read that overlaps an invalidation is not cached, so
+ * a read cannot put back a status from before a change. Files open for writing, from create or
+ * append to complete, are not cached since their length changes. A change of the mount table
+ * drops everything below the mount points that moved. Changes made through other proxies, or
+ * directly on the namenodes, are seen once the TTL runs out.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class MetadataCache {
+
+    // calls whose first argument is a path they change
+    static final Set<String> PATH_MUTATIONS = ImmutableSet.of(
+            "create", "append", "complete", "fsync", "truncate", "mkdirs", "setReplication",
+            "setPermission", "setOwner", "setTimes", "setStoragePolicy", "unsetStoragePolicy",
+            "setErasureCodingPolicy", "unsetErasureCodingPolicy", "modifyAclEntries",
+            "removeAclEntries", "removeDefaultAcl", "removeAcl", "setAcl", "createEncryptionZone",
+            "satisfyStoragePolicy");
+    // calls whose path arguments are subtrees they change
+    static final Set<String> SUBTREE_MUTATIONS = ImmutableSet.of(
+            "delete", "rename", "rename2", "concat");
+
+    static final class Entry {
+        final String key;
+        final HdfsFileStatus status;
+        final long expiry;
+
+        Entry(String key, HdfsFileStatus status, long expiry) {
+            this.key = key;
+            this.status = status;
+            this.expiry = expiry;
+        }
+    }
+
+    final long ttlNanos;
+    final long maxEntries;
+    // path + '\0' + user -> status; '\0' sorts before any character of a path, so the entries
+    // of a path come right before the entries below it
+    final ConcurrentSkipListMap<String, Entry> statuses = new ConcurrentSkipListMap<>();
+    // entries in the order they were put, which is also the order they expire in; entries
+    // invalidated or overwritten since stay until they reach the head
+    final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+    // the entries in statuses, which are counted against maxEntries
+    final AtomicLong live = new AtomicLong();
+    // files open for writing, forgotten after the lease hard limit if never completed
+    final Cache<String, Boolean> open;
+    final AtomicLong generation;
+    volatile FsServerDefaults serverDefaults;
+    volatile long serverDefaultsExpiry;
+
+    public MetadataCache(Configuration conf) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+                ProxyConfig.METADATA_CACHE_TTL_MS, ProxyConfig.METADATA_CACHE_TTL_MS_DEFAULT));
+        this.maxEntries = conf.getLong(ProxyConfig.METADATA_CACHE_MAX_ENTRIES,
+                ProxyConfig.METADATA_CACHE_MAX_ENTRIES_DEFAULT);
+        this.open = CacheBuilder.newBuilder()
+                .expireAfterWrite(HdfsConstants.LEASE_HARDLIMIT_PERIOD, TimeUnit.MILLISECONDS)
+                .build();
+        this.generation = new AtomicLong();
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.getBoolean(
+                ProxyConfig.METADATA_CACHE_ENABLED, ProxyConfig.METADATA_CACHE_ENABLED_DEFAULT);
+    }
+
+    static String key(String user, String path) {
+        return path + '\0' + user;
+    }
+
+    /**
+     * @return the status of {@code path} cached for {@code user}, or null.
+     */
+    public HdfsFileStatus getFileInfo(String user, String path) {
+        Entry entry = statuses.get(key(user, path));
+        if (entry != null && System.nanoTime() - entry.expiry >= 0) {
+            drop(entry);
+            entry = null;
+        }
+        if (entry != null) {
+            NNProxy.proxyMetrics.addCacheHit("getFileInfo");
+            return entry.status;
+        }
+        NNProxy.proxyMetrics.addCacheMiss("getFileInfo");
+        return null;
+    }
+
+    /**
+     * @return the generation to pass to {@link #putFileInfo} for a status read that starts now.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the status of {@code path} read for {@code user} by a call that started at
+     * {@code gen}, unless a path was invalidated since.
+     */
+    public void putFileInfo(String user, String path, HdfsFileStatus status, long gen) {
+        if (status == null || open.getIfPresent(path) != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Entry entry = new Entry(key(user, path), status, now + ttlNanos);
+        live.incrementAndGet();
+        if (statuses.put(entry.key, entry) != null) {
+            // the overwritten entry is no longer live
+            live.decrementAndGet();
+        }
+        if (generation.get() != gen) {
+            drop(entry);
+            return;
+        }
+        order.add(entry);
+        expire(now);
+    }
+
+    // drops the oldest entries while they are no longer live, have expired or there are too many
+    private void expire(long now) {
+        Entry head;
+        while ((head = order.peek()) != null
+                && (live.get() > maxEntries || now - head.expiry >= 0
+                        || statuses.get(head.key) != head)) {
+            if (order.remove(head)) {
+                drop(head);
+            }
+        }
+    }
+
+    // removes entry from statuses, if it is still there
+    private void drop(Entry entry) {
+        if (statuses.remove(entry.key, entry)) {
+            live.decrementAndGet();
+        }
+    }
+
+    private void dropRange(String from, String to) {
+        for (Entry entry : statuses.subMap(from, to).values()) {
+            drop(entry);
+        }
+    }
+
+    public FsServerDefaults getServerDefaults() {
+        FsServerDefaults defaults = serverDefaults;
+        if (defaults != null && System.nanoTime() - serverDefaultsExpiry < 0) {
+            NNProxy.proxyMetrics.addCacheHit("getServerDefaults");
+            return defaults;
+        }
+        NNProxy.proxyMetrics.addCacheMiss("getServerDefaults");
+        return null;
+    }
+
+    public void putServerDefaults(FsServerDefaults defaults) {
+        serverDefaultsExpiry = System.nanoTime() + ttlNanos;
+        serverDefaults = defaults;
+    }
+
+    /**
+     * Drops what {@code method}, called with {@code args}, may have changed. Called once the call
+     * has completed, whether it failed or not.
+     */
+    public void onCall(String method, Object[] args) {
+        if (PATH_MUTATIONS.contains(method)) {
+            String path = (String) args[0];
+            if (method.equals("create") || method.equals("append")) {
+                open.put(path, Boolean.TRUE);
+            } else if (method.equals("complete")) {
+                open.invalidate(path);
+            }
+            invalidate(path);
+        } else if (SUBTREE_MUTATIONS.contains(method)) {
+            for (Object arg : args) {
+                if (arg instanceof String) {
+                    invalidateSubtree((String) arg);
+                } else if (arg instanceof String[]) {
+                    for (String path : (String[]) arg) {
+                        invalidateSubtree(path);
+                    }
+                }
+            }
+        } else if (method.equals("createSymlink")) {
+            invalidate((String) args[1]);
+        }
+    }
+
+    /** Drops the status of {@code path} cached for every user. */
+    public void invalidate(String path) {
+        generation.incrementAndGet();
+        dropRange(path + '\0', path + '\1');
+    }
+
+    /** Drops {@code path} and everything cached below it, for every user. */
+    public void invalidateSubtree(String path) {
+        invalidate(path);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        // '0' follows '/', so this range holds every path below the prefix
+        dropRange(prefix, prefix.substring(0, prefix.length() - 1) + "0");
+    }
+}
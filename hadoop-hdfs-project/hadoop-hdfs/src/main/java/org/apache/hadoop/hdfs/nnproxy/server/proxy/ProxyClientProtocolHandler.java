@@ -26,6 +26,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.token.Token;
 import org.slf4j.Logger;
@@ -42,6 +43,9 @@ public class ProxyClientProtocolHandler implements ClientProtocol {
   final Configuration conf;
   final UpstreamManager upstreamManager;
   final Router router;
+  final LeaseTracker leaseTracker;
+  // null if the cache is disabled
+  final MetadataCache metadataCache;
 
   public ProxyClientProtocolHandler(
       NNProxy nnProxy, Configuration conf, UpstreamManager upstreamManager) {
@@ -49,6 +53,13 @@ public ProxyClientProtocolHandler(
     this.conf = conf;
     this.upstreamManager = upstreamManager;
     this.router = new Router(nnProxy, conf, upstreamManager);
+    this.leaseTracker = new LeaseTracker(conf, router);
+    if (MetadataCache.isEnabled(conf)) {
+      this.metadataCache = new MetadataCache(conf);
+      nnProxy.getMounts().addMoveListener(metadataCache::invalidateSubtree);
+    } else {
+      this.metadataCache = null;
+    }
   }
 
   void ensureCanRename(String path) throws IOException {
@@ -72,7 +83,15 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
 
   @Override
   public FsServerDefaults getServerDefaults() throws IOException {
-    return router.getRoot().upstream.getServerDefaults();
+    if (metadataCache == null) {
+      return router.getRoot().upstream.getServerDefaults();
+    }
+    FsServerDefaults defaults = metadataCache.getServerDefaults();
+    if (defaults == null) {
+      defaults = router.getRoot().upstream.getServerDefaults();
+      metadataCache.putServerDefaults(defaults);
+    }
+    return defaults;
   }
 
   @Override
@@ -88,16 +107,19 @@ public HdfsFileStatus create(
       String ecPolicyName)
       throws IOException {
     RouteInfo routeInfo = router.route(src);
-    return routeInfo.upstream.create(
-        routeInfo.realPath,
-        masked,
-        clientName,
-        flag,
-        createParent,
-        replication,
-        blockSize,
-        supportedVersions,
-        ecPolicyName);
+    HdfsFileStatus status =
+        routeInfo.upstream.create(
+            routeInfo.realPath,
+            masked,
+            clientName,
+            flag,
+            createParent,
+            replication,
+            blockSize,
+            supportedVersions,
+            ecPolicyName);
+    leaseTracker.open(clientName, routeInfo.fs);
+    return status;
   }
 
   @Override
@@ -141,6 +163,8 @@ public void setOwner(String src, String username, String groupname)
   public void abandonBlock(ExtendedBlock b, long fileId, String src, String holder)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
     RouteInfo routeInfo = router.route(src);
+    // the file stays open for the client to add another block
+    leaseTracker.record(holder, routeInfo.fs);
     routeInfo.upstream.abandonBlock(b, fileId, routeInfo.realPath, holder);
   }
 
@@ -173,7 +197,11 @@ public boolean complete(String src, String clientName, ExtendedBlock last, long
       throws AccessControlException, FileNotFoundException, SafeModeException,
           UnresolvedLinkException, IOException {
     RouteInfo routeInfo = router.route(src);
-    return routeInfo.upstream.complete(routeInfo.realPath, clientName, last, fileId);
+    boolean completed = routeInfo.upstream.complete(routeInfo.realPath, clientName, last, fileId);
+    if (completed) {
+      leaseTracker.close(clientName, routeInfo.fs);
+    }
+    return completed;
   }
 
   @Override
@@ -285,10 +313,7 @@ public SnapshottableDirectoryStatus[] getSnapshottableDirListing() throws IOExce
 
   @Override
   public void renewLease(String clientName) throws AccessControlException, IOException {
-    // currently, just renew lease on all namenodes
-    for (String fs : nnProxy.getMounts().getAllFs()) {
-      router.getProtocol(fs).renewLease(clientName);
-    }
+    leaseTracker.renewLease(clientName, nnProxy.getMounts().getAllFs());
   }
 
   @Override
@@ -376,8 +401,19 @@ public void setBalancerBandwidth(long bandwidth) throws IOException {
   @Override
   public HdfsFileStatus getFileInfo(String src)
       throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-    RouteInfo routeInfo = router.route(src);
-    return routeInfo.upstream.getFileInfo(routeInfo.realPath);
+    if (metadataCache == null) {
+      RouteInfo routeInfo = router.route(src);
+      return routeInfo.upstream.getFileInfo(routeInfo.realPath);
+    }
+    String user = Server.getRemoteUser().getUserName();
+    HdfsFileStatus status = metadataCache.getFileInfo(user, src);
+    if (status == null) {
+      long gen = metadataCache.generation();
+      RouteInfo routeInfo = router.route(src);
+      status = routeInfo.upstream.getFileInfo(routeInfo.realPath);
+      metadataCache.putFileInfo(user, src, status, gen);
+    }
+    return status;
   }
 
   @Override
@@ -799,6 +835,7 @@ public LocatedBlock addBlock(
       EnumSet<AddBlockFlag> addBlockFlags)
       throws IOException {
     RouteInfo routeInfo = router.route(src);
+    leaseTracker.record(clientName, routeInfo.fs);
     return routeInfo.upstream.addBlock(
         routeInfo.realPath,
         clientName,
@@ -826,6 +863,8 @@ public LastBlockWithStatus append(
       String src, final String clientName, final EnumSetWritable<CreateFlag> flag)
       throws IOException {
     RouteInfo routeInfo = router.route(src);
-    return routeInfo.upstream.append(routeInfo.realPath, clientName, flag);
+    LastBlockWithStatus block = routeInfo.upstream.append(routeInfo.realPath, clientName, flag);
+    leaseTracker.open(clientName, routeInfo.fs);
+    return block;
   }
 }
@@ -10,10 +10,13 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.apache.hadoop.metrics2.impl.MsInfo.ProcessName;
 import static org.apache.hadoop.metrics2.impl.MsInfo.SessionId;
 
@@ -32,6 +35,12 @@ public class ProxyMetrics {
     public MutableCounterLong successOps;
     @Metric
     public MutableCounterLong failedOps;
+    // <method>NumOps and <method>AvgTime, in microseconds, per client call
+    @Metric("Latency of the client calls")
+    MutableRatesWithAggregation callLatency;
+
+    final ConcurrentHashMap<String, MutableCounterLong> cacheHits = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, MutableCounterLong> cacheMisses = new ConcurrentHashMap<>();
 
     JvmMetrics jvmMetrics = null;
 
@@ -40,6 +49,29 @@ public class ProxyMetrics {
         registry.tag(ProcessName, processName).tag(SessionId, sessionId);
     }
 
+    public void addCallLatency(String method, long nanos) {
+        callLatency.add(method, nanos / 1000);
+    }
+
+    /** The hit rate of a method is {@code <method>CacheHits / (hits + <method>CacheMisses)}. */
+    public void addCacheHit(String method) {
+        counter(cacheHits, method, "CacheHits").incr();
+    }
+
+    public void addCacheMiss(String method) {
+        counter(cacheMisses, method, "CacheMisses").incr();
+    }
+
+    private MutableCounterLong counter(
+            ConcurrentHashMap<String, MutableCounterLong> counters, String method, String suffix) {
+        MutableCounterLong counter = counters.get(method);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(method, m -> registry.newCounter(
+                    m + suffix, m + " calls answered by the proxy cache or not", 0L));
+        }
+        return counter;
+    }
+
     public static ProxyMetrics create(Configuration conf) {
         String sessionId = conf.get(DFSConfigKeys.DFS_METRICS_SESSION_ID_KEY);
         String processName = "NNPROXY";
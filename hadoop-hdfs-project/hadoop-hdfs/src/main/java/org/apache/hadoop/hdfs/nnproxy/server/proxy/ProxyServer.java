@@ -34,6 +34,7 @@ public class ProxyServer {
     RPC.Server rpcServer;
     InetSocketAddress rpcAddress;
     ClientProtocol protocol;
+    AsyncForwarder asyncForwarder;
 
     public ProxyServer(NNProxy nnProxy, Configuration conf, InvocationHandler invocationHandler) {
         this.nnProxy = nnProxy;
@@ -53,7 +54,15 @@ public void start() throws IOException {
                 new Class[]{ClientProtocol.class},
                 this.invocationHandler);
 
-        ClientNamenodeProtocolPB proxy = new ClientNamenodeProtocolServerSideTranslatorPB(this.protocol);
+        ClientNamenodeProtocolPB proxy;
+        if (conf.getBoolean(ProxyConfig.ASYNC_FORWARDING, ProxyConfig.ASYNC_FORWARDING_DEFAULT)
+                && invocationHandler instanceof RpcInvocationProxy) {
+            this.asyncForwarder = new AsyncForwarder((RpcInvocationProxy) invocationHandler);
+            proxy = new AsyncForwardingTranslatorPB(this.protocol, asyncForwarder);
+            LOG.info("Forwarding path calls asynchronously");
+        } else {
+            proxy = new ClientNamenodeProtocolServerSideTranslatorPB(this.protocol);
+        }
         BlockingService clientNNPbService = ClientNamenodeProtocolProtos.ClientNamenodeProtocol.
                 newReflectiveBlockingService(proxy);
 
@@ -84,6 +93,9 @@ public void join() throws InterruptedException {
 
     public void shutdown() {
         this.rpcServer.stop();
+        if (asyncForwarder != null) {
+            asyncForwarder.shutdown();
+        }
     }
 }
 
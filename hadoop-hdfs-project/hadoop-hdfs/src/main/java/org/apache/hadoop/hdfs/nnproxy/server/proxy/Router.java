@@ -2,6 +2,7 @@
 
 import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
 import org.apache.hadoop.hdfs.nnproxy.server.exception.WrappedExecutionException;
+import org.apache.hadoop.hdfs.nnproxy.server.quota.AdaptiveLimiter;
 import org.apache.hadoop.hdfs.nnproxy.server.upstream.UpstreamManager;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -12,12 +13,17 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * This routes path or blockPoolId to backend NameNode corresponding to mount table.
+ *
+ * <p>A call takes a permit from the {@link AdaptiveLimiter} of every namenode it is routed to, once
+ * per namenode, and gives them back with {@link #releasePermits} when it is done.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Stable
@@ -32,6 +38,19 @@ public class Router {
     final Configuration conf;
     final UpstreamManager upstreamManager;
 
+    static final class Permit {
+        final AdaptiveLimiter limiter;
+        final long start;
+
+        Permit(AdaptiveLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+    }
+
+    // the permits taken by the call on this handler thread
+    private static final ThreadLocal<List<Permit>> permits = ThreadLocal.withInitial(ArrayList::new);
+
     public Router(NNProxy nnProxy, Configuration conf, UpstreamManager upstreamManager) {
         this.nnProxy = nnProxy;
         this.conf = conf;
@@ -43,6 +62,14 @@ ClientProtocol getUpstreamProtocol(String user, String fs) throws ExecutionExcep
     }
 
     RouteInfo route(String path) throws IOException {
+        String fs = resolve(path);
+        return new RouteInfo(getProtocol(fs), path, fs);
+    }
+
+    /**
+     * @return the namenode that {@code path} is mounted on.
+     */
+    String resolve(String path) {
         String logicalPath = path;
         Matcher mch = TRASH_PATTERN.matcher(path);
         if (mch.find()) {
@@ -57,10 +84,24 @@ RouteInfo route(String path) throws IOException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Resolved: " + path + " -> " + fs + path);
         }
-        return new RouteInfo(getProtocol(fs), path, fs);
+        return fs;
     }
 
     ClientProtocol getProtocol(String fs) throws IOException {
+        String user = Server.getRemoteUser().getUserName();
+        acquire(user, fs);
+        try {
+            return getUpstreamProtocol(user, fs);
+        } catch (ExecutionException e) {
+            throw new WrappedExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * As {@link #getProtocol}, without taking a permit: for calls that must not wait behind the
+     * others, such as lease renewals, whose loss fails the writes of the client.
+     */
+    ClientProtocol getUnlimitedProtocol(String fs) {
         try {
             return getUpstreamProtocol(Server.getRemoteUser().getUserName(), fs);
         } catch (ExecutionException e) {
@@ -68,6 +109,47 @@ ClientProtocol getProtocol(String fs) throws IOException {
         }
     }
 
+    void acquire(String user, String fs) throws IOException {
+        AdaptiveLimiter limiter = upstreamManager.getLimiter(fs);
+        List<Permit> held = permits.get();
+        for (Permit permit : held) {
+            if (permit.limiter == limiter) {
+                return;
+            }
+        }
+        held.add(new Permit(limiter, limiter.acquire(user)));
+    }
+
+    /**
+     * Gives back the permits taken by the call on this thread, which failed with {@code error}
+     * or succeeded if it is null.
+     */
+    static void releasePermits(Throwable error) {
+        List<Permit> held = permits.get();
+        if (held.isEmpty()) {
+            return;
+        }
+        if (error == null) {
+            NNProxy.proxyMetrics.successOps.incr();
+        } else {
+            NNProxy.proxyMetrics.failedOps.incr();
+        }
+        // the latency of a call is only that of its namenode if it went to one
+        boolean sample = held.size() == 1;
+        for (Permit permit : held) {
+            permit.limiter.release(permit.start, sample, error);
+        }
+        held.clear();
+    }
+
+    UpstreamManager.Upstream getUpstream(String fs) {
+        try {
+            return upstreamManager.getUpstream(Server.getRemoteUser().getUserName(), fs);
+        } catch (ExecutionException e) {
+            throw new WrappedExecutionException(e.getCause());
+        }
+    }
+
     RouteInfo getRoot() throws IOException {
         return route("/");
     }
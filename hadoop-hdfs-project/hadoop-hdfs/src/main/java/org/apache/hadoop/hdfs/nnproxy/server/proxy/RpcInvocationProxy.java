@@ -46,11 +46,14 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Throwabl
         if (isShuttingDown) {
             throw new StandbyException("Proxy is shutting down");
         }
+        Throwable error = null;
+        long start = System.nanoTime();
         try {
             activeRequests.incrementAndGet();
             setupClientAddress();
             return method.invoke(protocolHandler, args);
         } catch (InvocationTargetException e) {
+            error = e.getCause();
             LOG.error("Error handling client", e);
             if (e.getCause() instanceof RemoteException) {
                 // needs to pass RemoteException to client untouched
@@ -64,13 +67,21 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Throwabl
                 throw e.getCause();
             }
         } catch (WrappedExecutionException e) {
+            error = e.getCause();
             LOG.error("Error handling client", e);
             throw e.getCause();
         } catch (Exception e) {
+            error = e;
             // log errors here otherwise no trace is left on server side
             LOG.error("Error handling client", e);
             throw e;
         } finally {
+            // the permits taken when the call was routed
+            Router.releasePermits(error);
+            if (protocolHandler.metadataCache != null) {
+                protocolHandler.metadataCache.onCall(method.getName(), args);
+            }
+            NNProxy.proxyMetrics.addCallLatency(method.getName(), System.nanoTime() - start);
             activeRequests.decrementAndGet();
         }
     }
@@ -91,5 +102,6 @@ public void shutdown() {
             }
             LOG.info("Waiting for all requests to finish... " + activeRequests.get() + " left");
         }
+        protocolHandler.leaseTracker.shutdown();
     }
 }
@@ -0,0 +1,264 @@
+package org.apache.hadoop.hdfs.nnproxy.server.quota;
+
+import com.google.protobuf.ServiceException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.net.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the requests in flight to one upstream namenode, with a limit that follows its latency.
+ *
+ * <p>The limit follows the gradient of the namenode's latency. The latency of the calls is
+ * averaged over windows of at least {@link #WINDOW_NANOS} and {@link #MIN_WINDOW_SAMPLES} calls,
+ * so a mix of cheap and expensive methods reads as one latency, and each window is compared with
+ * a baseline that follows the window latency over about {@link #BASELINE_WINDOWS} windows. While
+ * a window is within {@link #TOLERANCE} of the baseline the limit heads for its square root above
+ * itself, if it is in use; above that it heads for the limit scaled by the ratio, by half at most.
+ * Each window moves the limit {@link #SMOOTHING} of the way. A call the namenode turns
+ * away as overloaded (StandbyException, RetriableException or a timeout) cuts the limit by
+ * {@link #BACKOFF}, at most once per {@link #BACKOFF_INTERVAL_NANOS}. The limit stays within
+ * {@link ProxyConfig#LIMITER_MIN_LIMIT} and {@link ProxyConfig#MAX_CONCURRENT_REQUEST_PER_FS}.
+ *
+ * <p>A request over the limit waits for a permit, for at most
+ * {@link ProxyConfig#LIMITER_MAX_WAIT_MS}, before it is rejected with a StandbyException. The
+ * waiting requests are queued per user and granted round robin across users, those of the
+ * superuser and of {@link ProxyConfig#LIMITER_PRIORITY_USERS} before all others, so one busy user
+ * does not starve the rest.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class AdaptiveLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final int MIN_WINDOW_SAMPLES = 10;
+    static final int BASELINE_WINDOWS = 600;
+    static final double TOLERANCE = 1.5;
+    // the share of each window's estimate in the limit, to damp the noise of a single window
+    static final double SMOOTHING = 0.2;
+    static final double BACKOFF = 0.9;
+    static final long BACKOFF_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final int HIGH = 0;
+    static final int NORMAL = 1;
+
+    static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        volatile boolean granted;
+    }
+
+    final String fs;
+    final int minLimit;
+    final int maxLimit;
+    final long maxWaitNanos;
+    final Set<String> priorityUsers;
+
+    // all below guarded by this
+    double limit;
+    int inFlight;
+    long windowStart = System.nanoTime();
+    long windowRtt;
+    int windowSamples;
+    int windowMaxInFlight;
+    // 0 until the first window
+    double baselineRtt;
+    long lastBackoff = System.nanoTime() - BACKOFF_INTERVAL_NANOS;
+    // per priority: user -> waiting requests, users in the order they are served
+    final LinkedHashMap<String, ArrayDeque<Waiter>>[] queues;
+    int waiting;
+
+    @SuppressWarnings("unchecked")
+    public AdaptiveLimiter(String fs, Configuration conf) {
+        this.fs = fs;
+        this.maxLimit = (int) conf.getLong(
+                ProxyConfig.MAX_CONCURRENT_REQUEST_PER_FS, ProxyConfig.MAX_CONCURRENT_REQUEST_PER_FS_DEFAULT);
+        this.minLimit = Math.min(maxLimit,
+                conf.getInt(ProxyConfig.LIMITER_MIN_LIMIT, ProxyConfig.LIMITER_MIN_LIMIT_DEFAULT));
+        this.limit = Math.max(minLimit, Math.min(maxLimit,
+                conf.getInt(ProxyConfig.LIMITER_INITIAL_LIMIT, ProxyConfig.LIMITER_INITIAL_LIMIT_DEFAULT)));
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(
+                conf.getLong(ProxyConfig.LIMITER_MAX_WAIT_MS, ProxyConfig.LIMITER_MAX_WAIT_MS_DEFAULT));
+        Set<String> users = new HashSet<>(conf.getTrimmedStringCollection(ProxyConfig.LIMITER_PRIORITY_USERS));
+        users.add(conf.get(ProxyConfig.SUPERUSER, ProxyConfig.SUPERUSER_DEFAULT));
+        this.priorityUsers = Collections.unmodifiableSet(users);
+        this.queues = new LinkedHashMap[]{new LinkedHashMap<>(), new LinkedHashMap<>()};
+    }
+
+    /**
+     * Takes a permit for a request of {@code user}, waiting for one if the namenode is at its
+     * limit.
+     *
+     * @return the time the permit was granted, to pass to {@link #release}.
+     * @throws StandbyException if no permit was granted in time.
+     */
+    public long acquire(String user) throws StandbyException {
+        Waiter waiter;
+        synchronized (this) {
+            if (waiting == 0 && inFlight < (int) limit) {
+                ++inFlight;
+                return System.nanoTime();
+            }
+            waiter = new Waiter();
+            queues[priorityOf(user)].computeIfAbsent(user, k -> new ArrayDeque<>()).add(waiter);
+            ++waiting;
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (!waiter.granted) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            LockSupport.parkNanos(this, left);
+        }
+        if (!waiter.granted) {
+            synchronized (this) {
+                if (!waiter.granted) {
+                    remove(user, waiter);
+                    NNProxy.proxyMetrics.throttledOps.incr();
+                    throw new StandbyException("Too many requests to " + fs
+                            + " (" + inFlight + "/" + (int) limit + "), try later");
+                }
+            }
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns a permit taken at {@code start}.
+     *
+     * @param sample whether the time since {@code start} is the latency of one upstream call.
+     * @param error what the call failed with, or null.
+     */
+    public void release(long start, boolean sample, Throwable error) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            --inFlight;
+            if (error != null && isOverload(error)) {
+                backoff(now);
+            } else if (sample) {
+                update(now - start, now);
+            }
+            grant();
+        }
+    }
+
+    private int priorityOf(String user) {
+        return priorityUsers.contains(user) ? HIGH : NORMAL;
+    }
+
+    void update(long rtt, long now) {
+        windowRtt += Math.max(rtt, 1);
+        // the permit of this call is already back
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight + 1);
+        if (++windowSamples < MIN_WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        double rttNow = (double) windowRtt / windowSamples;
+        boolean inUse = windowMaxInFlight >= limit / 2;
+        windowRtt = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+        windowStart = now;
+
+        if (baselineRtt == 0) {
+            baselineRtt = rttNow;
+        } else {
+            baselineRtt += (rttNow - baselineRtt) / BASELINE_WINDOWS;
+            if (baselineRtt > 2 * rttNow) {
+                // the namenode got faster, do not wait for the baseline to follow
+                baselineRtt *= 0.95;
+            }
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRtt / rttNow));
+        if (gradient == 1.0 && !inUse) {
+            // only grow a limit that is in use, or it drifts up while the namenode is idle
+            return;
+        }
+        double estimate = limit * gradient + Math.sqrt(limit);
+        if (gradient < 1.0) {
+            // no headroom while the namenode is queueing
+            estimate = limit * gradient;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit,
+                limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+    private void backoff(long now) {
+        if (now - lastBackoff < BACKOFF_INTERVAL_NANOS) {
+            return;
+        }
+        lastBackoff = now;
+        limit = Math.max(minLimit, limit * BACKOFF);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Backing off " + fs + " to " + (int) limit + " requests");
+        }
+    }
+
+    // hands the free permits to the waiting requests, round robin across the users of a priority
+    private void grant() {
+        while (waiting > 0 && inFlight < (int) limit) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> queue =
+                    queues[HIGH].isEmpty() ? queues[NORMAL] : queues[HIGH];
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = queue.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> next = it.next();
+            String user = next.getKey();
+            ArrayDeque<Waiter> waiters = next.getValue();
+            Waiter waiter = waiters.poll();
+            it.remove();
+            if (!waiters.isEmpty()) {
+                // to the back of the line
+                queue.put(user, waiters);
+            }
+            --waiting;
+            ++inFlight;
+            waiter.granted = true;
+            LockSupport.unpark(waiter.thread);
+        }
+    }
+
+    private void remove(String user, Waiter waiter) {
+        LinkedHashMap<String, ArrayDeque<Waiter>> queue = queues[priorityOf(user)];
+        ArrayDeque<Waiter> waiters = queue.get(user);
+        if (waiters != null && waiters.remove(waiter)) {
+            --waiting;
+            if (waiters.isEmpty()) {
+                queue.remove(user);
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code t} says the namenode is overloaded.
+     */
+    public static boolean isOverload(Throwable t) {
+        if (t instanceof ServiceException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof RemoteException) {
+            String className = ((RemoteException) t).getClassName();
+            return StandbyException.class.getName().equals(className)
+                    || RetriableException.class.getName().equals(className);
+        }
+        return t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException;
+    }
+}
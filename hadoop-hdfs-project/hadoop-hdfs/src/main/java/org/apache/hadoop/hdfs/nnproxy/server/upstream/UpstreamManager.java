@@ -2,32 +2,35 @@
 
 import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
 import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
-import org.apache.hadoop.hdfs.nnproxy.server.quota.ThrottleInvocationHandler;
-import com.google.common.base.Function;
+import org.apache.hadoop.hdfs.nnproxy.server.quota.AdaptiveLimiter;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.HAUtilClient;
 import org.apache.hadoop.hdfs.NameNodeProxies;
 import org.apache.hadoop.hdfs.NameNodeProxiesClient;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolPB;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.SaslRpcServer;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 @InterfaceAudience.Private
 @InterfaceStability.Stable
@@ -38,21 +41,34 @@ public class UpstreamManager {
     final NNProxy nnProxy;
     final Configuration conf;
     final LoadingCache<UpstreamTicket, Upstream> upstreamCache;
-    final long maxConrruentRequestPerFs;
-    final Map<String, AtomicLong> fsRequests;
+    final Map<String, AdaptiveLimiter> limiters;
+    final boolean asyncForwarding;
 
     public static class Upstream {
         public final ClientProtocol protocol;
         public final NameNodeProxiesClient.ProxyAndInfo<ClientProtocol> proxyAndInfo;
         public final NameNodeProxiesClient.ProxyAndInfo<NamenodeProtocol> nnProxyAndInfo;
+        /**
+         * Protobuf proxy without retries for asynchronous forwarding; null if it is disabled or
+         * the upstream is an HA nameservice, which needs the failover of {@link #protocol}.
+         */
+        public final ClientNamenodeProtocolPB rpcProxy;
         public volatile int fsIndex;
 
         public Upstream(ClientProtocol protocol,
                         NameNodeProxiesClient.ProxyAndInfo<ClientProtocol> proxyAndInfo,
                         NameNodeProxiesClient.ProxyAndInfo<NamenodeProtocol> nnProxyAndInfo) {
+            this(protocol, proxyAndInfo, nnProxyAndInfo, null);
+        }
+
+        public Upstream(ClientProtocol protocol,
+                        NameNodeProxiesClient.ProxyAndInfo<ClientProtocol> proxyAndInfo,
+                        NameNodeProxiesClient.ProxyAndInfo<NamenodeProtocol> nnProxyAndInfo,
+                        ClientNamenodeProtocolPB rpcProxy) {
             this.protocol = protocol;
             this.proxyAndInfo = proxyAndInfo;
             this.nnProxyAndInfo = nnProxyAndInfo;
+            this.rpcProxy = rpcProxy;
         }
 
         public int getFsIndex() {
@@ -97,8 +113,13 @@ public UpstreamManager(NNProxy nnProxy, Configuration conf) {
         this.conf = conf;
         final long cacheExpire =
                 conf.getLong(ProxyConfig.USER_PROXY_EXPIRE_MS, ProxyConfig.USER_PROXY_EXPIRE_MS_DEFAULT);
-        maxConrruentRequestPerFs =
-                conf.getLong(ProxyConfig.MAX_CONCURRENT_REQUEST_PER_FS, ProxyConfig.MAX_CONCURRENT_REQUEST_PER_FS_DEFAULT);
+        asyncForwarding =
+                conf.getBoolean(ProxyConfig.ASYNC_FORWARDING, ProxyConfig.ASYNC_FORWARDING_DEFAULT);
+        if (asyncForwarding) {
+            // the limit of asynchronous calls is per RPC client, which all upstreams share
+            conf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+                    conf.getInt(ProxyConfig.ASYNC_MAX_IN_FLIGHT, ProxyConfig.ASYNC_MAX_IN_FLIGHT_DEFAULT));
+        }
         this.upstreamCache = CacheBuilder.<UpstreamTicket, Upstream>newBuilder()
                 .expireAfterAccess(cacheExpire, TimeUnit.MILLISECONDS)
                 .build(new CacheLoader<UpstreamTicket, Upstream>() {
@@ -107,22 +128,7 @@ public Upstream load(UpstreamTicket ticket) throws Exception {
                         return makeUpstream(ticket);
                     }
                 });
-        this.fsRequests = new ConcurrentHashMap<>();
-    }
-
-    synchronized <T> T wrapWithThrottle(final String key, final T underlying, final Class<T> xface) {
-        if (!fsRequests.containsKey(key)) {
-            fsRequests.put(key, new AtomicLong(0L));
-        }
-        final Function<Method, AtomicLong> counterGetter = new Function<Method, AtomicLong>() {
-            @Override
-            public AtomicLong apply(Method method) {
-                return fsRequests.get(key);
-            }
-        };
-        ThrottleInvocationHandler throttleHandler = new ThrottleInvocationHandler(underlying, counterGetter, maxConrruentRequestPerFs);
-        return (T) Proxy.newProxyInstance(this.getClass().getClassLoader(),
-                new Class[]{xface}, throttleHandler);
+        this.limiters = new ConcurrentHashMap<>();
     }
 
     synchronized Upstream makeUpstream(UpstreamTicket ticket) throws IOException {
@@ -137,7 +143,24 @@ synchronized Upstream makeUpstream(UpstreamTicket ticket) throws IOException {
         NameNodeProxiesClient.ProxyAndInfo nnProxyAndInfo = NameNodeProxies.createProxy(conf, fsUri, NamenodeProtocol.class);
         LOG.info("New upstream: " + ticket.user + "@" + ticket.fs);
         ClientProtocol clientProtocol = (ClientProtocol) proxyAndInfo.getProxy();
-        return new Upstream(wrapWithThrottle(ticket.fs, clientProtocol, ClientProtocol.class), proxyAndInfo, nnProxyAndInfo);
+        ClientNamenodeProtocolPB rpcProxy = null;
+        if (asyncForwarding && HAUtilClient.isLogicalUri(conf, fsUri)) {
+            LOG.info("Not forwarding asynchronously to the HA nameservice " + ticket.fs);
+        } else if (asyncForwarding) {
+            RPC.setProtocolEngine(conf, ClientNamenodeProtocolPB.class, ProtobufRpcEngine.class);
+            rpcProxy = RPC.getProxy(ClientNamenodeProtocolPB.class,
+                    RPC.getProtocolVersion(ClientNamenodeProtocolPB.class),
+                    DFSUtilClient.getNNAddress(fsUri), UserGroupInformation.getCurrentUser(), conf,
+                    NetUtils.getDefaultSocketFactory(conf));
+        }
+        return new Upstream(clientProtocol, proxyAndInfo, nnProxyAndInfo, rpcProxy);
+    }
+
+    /**
+     * @return the limiter of the requests in flight to {@code fs}, shared by all users.
+     */
+    public AdaptiveLimiter getLimiter(String fs) {
+        return limiters.computeIfAbsent(fs, k -> new AdaptiveLimiter(k, conf));
     }
 
     public Upstream getUpstream(String user, String fs) throws ExecutionException {
@@ -24,6 +24,7 @@
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -2606,20 +2607,39 @@ public boolean processReport(final DatanodeID nodeID,
         }
       }
 
-      if (storageInfo.getBlockReportCount() == 0) {
-        // The first block report can be processed a lot more efficiently than
-        // ordinary block reports.  This shortens restart times.
-        blockLog.info("BLOCK* processReport 0x{}: Processing first "
-            + "storage report for {} from datanode {}",
-            strBlockReportId,
-            storageInfo.getStorageID(),
-            nodeID.getDatanodeUuid());
-        processFirstBlockReport(storageInfo, newReport);
-      } else {
-        // Block reports for provided storage are not
-        // maintained by DN heartbeats
-        if (!StorageType.PROVIDED.equals(storageInfo.getStorageType())) {
-          invalidatedBlocks = processReport(storageInfo, newReport, context);
+      // Read the metadata of every reported block in bulk and apply the
+      // resulting storage changes in bulk, rather than once per replica.
+      DatabaseStorage.beginBatch();
+      boolean processed = false;
+      try {
+        prefetchReportedBlocks(newReport);
+        if (storageInfo.getBlockReportCount() == 0) {
+          // The first block report can be processed a lot more efficiently than
+          // ordinary block reports.  This shortens restart times.
+          blockLog.info("BLOCK* processReport 0x{}: Processing first "
+              + "storage report for {} from datanode {}",
+              strBlockReportId,
+              storageInfo.getStorageID(),
+              nodeID.getDatanodeUuid());
+          processFirstBlockReport(storageInfo, newReport);
+        } else {
+          // Block reports for provided storage are not
+          // maintained by DN heartbeats
+          if (!StorageType.PROVIDED.equals(storageInfo.getStorageType())) {
+            invalidatedBlocks = processReport(storageInfo, newReport, context);
+          }
+        }
+        processed = true;
+      } finally {
+        try {
+          DatabaseStorage.flushBatch();
+        } catch (SQLException e) {
+          // the storages of the report are not all written: the datanode must send it again
+          if (processed) {
+            throw new IOException(
+                "Failed to write the storages of a block report", e);
+          }
+          LOG.warn("Failed to write the storages of a failed block report", e);
         }
       }
       storageInfo.receivedBlockReport();
@@ -2824,6 +2844,38 @@ public void markBlockReplicasAsCorrupt(Block oldBlock,
     }
   }
 
+  /**
+   * Load the database state of all blocks in a report into the block cache
+   * with one bulk query per chunk, so that diffing the report against the
+   * namespace does not go to the database for every replica. A failed load
+   * aborts the report, since diffing against missing rows would invalidate
+   * replicas of blocks that do exist.
+   */
+  private void prefetchReportedBlocks(BlockListAsLongs report)
+      throws IOException {
+    if (report == null || report.getNumberOfBlocks() == 0) {
+      return;
+    }
+    long[] blockIds = new long[report.getNumberOfBlocks()];
+    int i = 0;
+    for (BlockReportReplica replica : report) {
+      if (i == blockIds.length) {
+        break;
+      }
+      long replicaID = replica.getBlockId();
+      if (BlockIdManager.isStripedBlockID(replicaID)) {
+        replicaID = BlockIdManager.convertToStripedID(replicaID);
+      }
+      blockIds[i++] = replicaID;
+    }
+    try {
+      DatabaseDatablock.batchLoadBlocks(
+          i == blockIds.length ? blockIds : Arrays.copyOf(blockIds, i));
+    } catch (SQLException e) {
+      throw new IOException("Failed to load the blocks of a block report", e);
+    }
+  }
+
   /**
    * processFirstBlockReport is intended only for processing "initial" block
    * reports, the first block report received from a DN after it registers.
@@ -4372,12 +4424,31 @@ public long getTotalBlocks() {
 
   public void removeBlock(BlockInfo block) {
     assert namesystem.hasWriteLock();
+    removeBlock(block, true);
+  }
+
+  /**
+   * Remove a group of blocks, as {@link #removeBlock(BlockInfo)} does, but
+   * delete their rows from the database in one batch.
+   */
+  public void removeBlocks(List<BlockInfo> blocks) {
+    assert namesystem.hasWriteLock();
+    long[] blockIds = new long[blocks.size()];
+    int n = 0;
+    for (BlockInfo block : blocks) {
+      removeBlock(block, false);
+      blockIds[n++] = block.getBlockId();
+    }
+    DatabaseDatablock.delete(blockIds);
+  }
+
+  private void removeBlock(BlockInfo block, boolean deleteRow) {
     // No need to ACK blocks that are being removed entirely
     // from the namespace, since the removal of the associated
     // file already removes them from the block map below.
     block.setNumBytes(BlockCommand.NO_ACK);
     addToInvalidates(block);
-    removeBlockFromMap(block);
+    removeBlockFromMap(block, deleteRow);
     // Remove the block from pendingReconstruction and neededReconstruction
     pendingReconstruction.remove(block);
     neededReconstruction.remove(block, LowRedundancyBlocks.LEVEL);
@@ -4612,11 +4683,15 @@ public int numCorruptReplicas(Block block) {
   }
 
   public void removeBlockFromMap(BlockInfo block) {
+    removeBlockFromMap(block, true);
+  }
+
+  private void removeBlockFromMap(BlockInfo block, boolean deleteRow) {
     for(DatanodeStorageInfo info : blocksMap.getStorages(block)) {
       excessRedundancyMap.remove(info.getDatanodeDescriptor(), block);
     }
 
-    blocksMap.removeBlock(block);
+    blocksMap.removeBlock(block, deleteRow);
     // If block is removed from blocksMap remove it from corruptReplicasMap
     corruptReplicas.removeFromCorruptReplicasMap(block);
   }
@@ -63,6 +63,15 @@ BlockInfo addBlockCollection(BlockInfo b, BlockCollection bc) {
    * and remove all data-node locations associated with the block.
    */
   void removeBlock(BlockInfo block) {
+    removeBlock(block, true);
+  }
+
+  /**
+   * Like {@link #removeBlock(BlockInfo)}; the datablocks row is kept if
+   * {@code deleteRow} is false, for callers that delete the rows of many
+   * blocks in one batch.
+   */
+  void removeBlock(BlockInfo block, boolean deleteRow) {
     if (block == null) {
       return;
     }
@@ -77,7 +86,9 @@ void removeBlock(BlockInfo block) {
         removeBlock(dn, block); // remove from the list and wipe the location
       }
     }
-    DatabaseDatablock.delete(block.getBlockId());
+    if (deleteRow) {
+      DatabaseDatablock.delete(block.getBlockId());
+    }
   }
 
   /**
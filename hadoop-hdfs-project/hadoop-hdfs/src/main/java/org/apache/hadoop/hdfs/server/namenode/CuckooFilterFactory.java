@@ -1,53 +1,38 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
-import org.apache.commons.pool2.BasePooledObjectFactory;
-import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.impl.DefaultPooledObject;
-
 import org.apache.hadoop.hdfs.cuckoofilter4j.*;
 import org.apache.hadoop.hdfs.cuckoofilter4j.Utils.Algorithm;
 import com.google.common.hash.Funnels;
 import java.nio.charset.Charset;
 
-public class CuckooFilterFactory extends BasePooledObjectFactory<CuckooFilter<CharSequence>> {
-  public CuckooFilterFactory() {
-    super();
-  }
-
-  @Override
-  public CuckooFilter<CharSequence> create() throws Exception {
-    int childNums = 1024;
-    String nums = System.getenv("FILESCALE_FILES_PER_DIRECTORY");
-    if (nums != null) {
-      childNums = Integer.parseInt(nums);
-    }
-    return new CuckooFilter.Builder<CharSequence>(Funnels.stringFunnel(Charset.defaultCharset()), childNums)
-      .withFalsePositiveRate(0.001).withHashAlgorithm(Algorithm.xxHash64).build();
-  }
-
-  /** Use the default PooledObject implementation. */
-  @Override
-  public PooledObject<CuckooFilter<CharSequence>> wrap(CuckooFilter<CharSequence> filter) {
-    return new DefaultPooledObject<CuckooFilter<CharSequence>>(filter);
-  }
-
-  @Override
-  public PooledObject<CuckooFilter<CharSequence>> makeObject() throws Exception {
-    return super.makeObject();
-  }
-
-  @Override
-  public void activateObject(PooledObject<CuckooFilter<CharSequence>> pooledObject) throws Exception {
-    super.activateObject(pooledObject);
-  }
-
-  @Override
-  public boolean validateObject(PooledObject<CuckooFilter<CharSequence>> pooledObject) {
-    return true;
+/**
+ * Builds the cuckoo filters that back {@link INodeDirectoryFilter}.
+ *
+ * <p>FILESCALE_FILTER_FPP sets the false positive rate (default 0.001) and
+ * FILESCALE_FILTER_CONCURRENCY the largest expected concurrency of one filter (default 16). Small
+ * filters get proportionally fewer bucket locks, as most directories are small.
+ */
+public class CuckooFilterFactory {
+  private static final double fpp;
+  private static final int concurrency;
+
+  static {
+    String rate = System.getenv("FILESCALE_FILTER_FPP");
+    fpp = (rate == null) ? 0.001 : Double.parseDouble(rate);
+    String segments = System.getenv("FILESCALE_FILTER_CONCURRENCY");
+    concurrency = (segments == null) ? 16 : Integer.parseInt(segments);
   }
 
-  @Override
-  public void destroyObject(PooledObject<CuckooFilter<CharSequence>> pooledObject) throws Exception {
-    super.destroyObject(pooledObject);
+  private CuckooFilterFactory() {}
+
+  /** @return an empty filter with room for at least {@code maxKeys} names. */
+  public static CuckooFilter<CharSequence> create(long maxKeys) {
+    return new CuckooFilter.Builder<CharSequence>(
+            Funnels.stringFunnel(Charset.defaultCharset()), Math.max(maxKeys, 2))
+        .withFalsePositiveRate(fpp)
+        .withHashAlgorithm(Algorithm.xxHash64)
+        .withExpectedConcurrency(
+            (int) Math.min(concurrency, Long.highestOneBit(Math.max(maxKeys >> 8, 1))))
+        .build();
   }
 }
@@ -58,6 +58,8 @@ public class EditsDoubleBuffer {
   private TxnBuffer bufCurrent; // current buffer for writing
   private TxnBuffer bufReady; // buffer ready for flushing
   private final int initBufferSize;
+  private static final boolean SYNC_DB =
+      Boolean.parseBoolean(System.getenv("FILESCALE_SYNC_EDITS_TO_DB"));
 
   public EditsDoubleBuffer(int defaultBufferSize) {
     initBufferSize = defaultBufferSize;
@@ -102,8 +104,11 @@ public void setReadyToFlush() {
    */
   public void flushTo(OutputStream out) throws IOException {
     bufReady.writeTo(out); // write data to file
-    // We want to separate logging and metadata flush 
-    // bufReady.syncDB();  // write data to database
+    // We want to separate logging and metadata flush: the write-behind log
+    // persists the inodes; FILESCALE_SYNC_EDITS_TO_DB also writes them here
+    if (SYNC_DB) {
+      bufReady.syncDB();  // write data to database
+    }
     bufReady.reset();   // erase all data in the buffer
   }
   
@@ -170,82 +175,66 @@ public void writeOp(FSEditLogOp op) throws IOException {
       numTxns++;
     }
 
-    // public void syncDB() {
-    //   byte[] buf = this.getData();
-    //   byte[] remainingRawEdits = Arrays.copyOfRange(buf, 0, this.size());
-    //   ByteArrayInputStream bis = new ByteArrayInputStream(remainingRawEdits);
-    //   DataInputStream dis = new DataInputStream(bis);
-    //   FSEditLogLoader.PositionTrackingInputStream tracker =
-    //       new FSEditLogLoader.PositionTrackingInputStream(bis);
-    //   FSEditLogOp.Reader reader = FSEditLogOp.Reader.create(dis, tracker,
-    //       NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
-    //   FSEditLogOp op;
-    //   LOG.info("The edits buffer is " + size() + " bytes long with " + numTxns +
-    //       " unflushed transactions.");
-    //   try {
-    //     List<Long> longAttr = new ArrayList<>();
-    //     List<String> strAttr = new ArrayList<>();
-  
-    //     List<Long> fileIds = new ArrayList<>();
-    //     List<String> fileAttr = new ArrayList<>();
-
-    //     List<Long> removeIds = new ArrayList<>();
-    //     while ((op = reader.readOp(false)) != null) {
-    //       if (op.getOpCode() == OP_ADD || op.getOpCode() == OP_MKDIR) {
-    //         INode inode;
-    //         if (op.getOpCode() == OP_ADD) {
-    //           AddOp addop = (AddOp)op;
-    //           inode = INodeKeyedObjects.getCache().getIfPresent(Long.class, addop.getInodeId());
-    //         } else {
-    //           MkdirOp mkdirop = (MkdirOp)op;
-    //           inode = INodeKeyedObjects.getCache().getIfPresent(Long.class, mkdirop.getInodeId());              
-    //         }
-    //         strAttr.add(inode.getLocalName());
-    //         longAttr.add(inode.getParentId());
-    //         longAttr.add(inode.getId());
-    //         longAttr.add(inode.getModificationTime());
-    //         longAttr.add(inode.getAccessTime());
-    //         longAttr.add(inode.getPermissionLong());
-    //         if (inode.isDirectory()) {
-    //           longAttr.add(0L);
-    //         } else {
-    //           longAttr.add(inode.asFile().getHeaderLong());
-    //           FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-    //           if (uc != null) {
-    //             fileIds.add(inode.getId());
-    //             fileAttr.add(uc.getClientName(inode.getId()));
-    //             fileAttr.add(uc.getClientMachine(inode.getId()));
-    //           }
-    //         }
-    //       } else if (op.getOpCode() == OP_DELETE) {
-    //         DeleteOp deleteop = (DeleteOp)op;
-    //         removeIds.add(deleteop.getInodeId());
-    //       }
-    //     }
+    /**
+     * Writes the inodes created and deleted by the ops in this buffer to the database. The
+     * created inodes are found in the inode cache by id; one that has been evicted since was
+     * written back on eviction and is skipped.
+     */
+    public void syncDB() {
+      byte[] buf = this.getData();
+      byte[] remainingRawEdits = Arrays.copyOfRange(buf, 0, this.size());
+      ByteArrayInputStream bis = new ByteArrayInputStream(remainingRawEdits);
+      DataInputStream dis = new DataInputStream(bis);
+      FSEditLogLoader.PositionTrackingInputStream tracker =
+          new FSEditLogLoader.PositionTrackingInputStream(bis);
+      FSEditLogOp.Reader reader = FSEditLogOp.Reader.create(dis, tracker,
+          NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+      FSEditLogOp op;
+      try {
+        List<DatabaseINode.LoadINode> rows = new ArrayList<>();
+        List<String> removePaths = new ArrayList<>();
+        while ((op = reader.readOp(false)) != null) {
+          if (op.getOpCode() == OP_ADD || op.getOpCode() == OP_MKDIR) {
+            long id = (op.getOpCode() == OP_ADD)
+                ? ((AddOp) op).getInodeId() : ((MkdirOp) op).getInodeId();
+            INode inode = INodeKeyedObjects.getCache().getIfPresent(Long.class, id);
+            if (inode != null) {
+              rows.add(INodeWriteBehindLog.toRow(inode));
+            }
+          } else if (op.getOpCode() == OP_DELETE) {
+            removePaths.add(((DeleteOp) op).path);
+          }
+        }
 
-    //     // Sync create files in DB
-    //     try {
-    //       if (strAttr.size() > 0) {
-    //         DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr);
-    //       }
-    //     } catch (Exception e) {
-    //       e.printStackTrace();
-    //     }
+        // Sync create files in DB
+        try {
+          if (rows.size() > 0) {
+            String offset = DatabaseINode.batchUpdateINodes(rows);
+            if (offset != null) {
+              INodeKeyedObjects.setWalOffset(offset);
+            }
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
 
-    //     // Sync delete files in DB
-    //     try {
-    //       if (removeIds.size() > 0) {
-    //         DatabaseINode.batchRemoveINodes(removeIds);
-    //       }
-    //     } catch (Exception e) {
-    //       e.printStackTrace();
-    //     }
-    //   } catch (IOException ioe) {
-    //     // If any exceptions, print raw bytes and stop.
-    //     LOG.warn("Unable to sync remaining ops. Remaining raw bytes: " +
-    //         Hex.encodeHexString(remainingRawEdits), ioe);
-    //   }
-    // }
+        // Sync delete files in DB
+        try {
+          if (removePaths.size() > 0) {
+            String offset = DatabaseINode.batchRemoveINodes(removePaths);
+            if (offset != null) {
+              INodeKeyedObjects.setWalOffset(offset);
+            }
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      } catch (IOException ioe) {
+        // If any exceptions, print raw bytes and stop.
+        LOG.warn("Unable to sync remaining ops. Remaining raw bytes: " +
+            Hex.encodeHexString(remainingRawEdits), ioe);
+      }
+    }
     
     @Override
     public DataOutputBuffer reset() {
@@ -57,15 +57,24 @@ static FileStatus setPermission(
       throw new InvalidPathException(src);
     }
     INodesInPath iip;
+    INodeWithAdditionalFields subtree;
     fsd.writeLock();
     try {
       iip = fsd.resolvePath(pc, src, DirOp.WRITE);
       fsd.checkOwner(pc, iip);
-      unprotectedSetPermission(fsd, iip, permission);
+      subtree = subtreeOf(fsd, iip);
+      if (subtree != null) {
+        // one database transaction over the subtree, logged as a SetPermissionsMP op
+        subtree.setPermissionRecursive(permission, iip.getLatestSnapshotId());
+      } else {
+        unprotectedSetPermission(fsd, iip, permission);
+      }
     } finally {
       fsd.writeUnlock();
     }
-    fsd.getEditLog().logSetPermissions(iip.getPath(), permission);
+    if (subtree == null) {
+      fsd.getEditLog().logSetPermissions(iip.getPath(), permission);
+    }
     return fsd.getAuditFileInfo(iip);
   }
 
@@ -90,7 +99,12 @@ static FileStatus setOwner(
               "User " + pc.getUser() + " does not belong to " + group);
         }
       }
-      unprotectedSetOwner(fsd, iip, username, group);
+      INodeWithAdditionalFields subtree = subtreeOf(fsd, iip);
+      if (subtree != null) {
+        subtree.setOwnerRecursive(username, group, iip.getLatestSnapshotId());
+      } else {
+        unprotectedSetOwner(fsd, iip, username, group);
+      }
     } finally {
       fsd.writeUnlock();
     }
@@ -98,6 +112,21 @@ static FileStatus setOwner(
     return fsd.getAuditFileInfo(iip);
   }
 
+  /**
+   * @return the last inode of {@code iip} if a change of its permission or owner applies to its
+   *     whole subtree, that is if it is a directory on a namenode that does not serve the whole
+   *     namespace; otherwise null.
+   */
+  private static INodeWithAdditionalFields subtreeOf(FSDirectory fsd, INodesInPath iip)
+      throws FileNotFoundException {
+    final INode inode = FSDirectory.resolveLastINode(iip);
+    if (fsd.isLocalNN() || !inode.isDirectory()
+        || !(inode instanceof INodeWithAdditionalFields)) {
+      return null;
+    }
+    return (INodeWithAdditionalFields) inode;
+  }
+
   static FileStatus setTimes(
       FSDirectory fsd, FSPermissionChecker pc, String src, long mtime,
       long atime) throws IOException {
@@ -23,6 +23,9 @@
 import org.apache.hadoop.fs.PathIsNotEmptyDirectoryException;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.namenode.FSDirectory.DirOp;
 import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
 import org.apache.hadoop.hdfs.server.namenode.INode.ReclaimContext;
@@ -32,14 +35,23 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.CURRENT_STATE_ID;
 import static org.apache.hadoop.util.Time.now;
 
 class FSDirDeleteOp {
+  private static final int RECLAIM_MAX_RETRIES =
+      System.getenv("FILESCALE_RECLAIM_MAX_RETRIES") == null ? 3
+          : Integer.parseInt(System.getenv("FILESCALE_RECLAIM_MAX_RETRIES"));
+
   /**
    * Delete the target directory and collect the blocks under it
    *
@@ -52,6 +64,20 @@ class FSDirDeleteOp {
   static long delete(FSDirectory fsd, INodesInPath iip,
       BlocksMapUpdateInfo collectedBlocks, List<INode> removedINodes,
       List<Long> removedUCFiles, long mtime) throws IOException {
+    return delete(fsd, iip, collectedBlocks, removedINodes, removedUCFiles,
+        mtime, null);
+  }
+
+  /**
+   * As {@link #delete(FSDirectory, INodesInPath, BlocksMapUpdateInfo, List,
+   * List, long)}, with the subtree of the target directory if it was already
+   * read, or null.
+   */
+  private static long delete(FSDirectory fsd, INodesInPath iip,
+      BlocksMapUpdateInfo collectedBlocks, List<INode> removedINodes,
+      List<Long> removedUCFiles, long mtime,
+      Map<String, List<DatabaseINode.ReclaimINode>> subtree)
+      throws IOException {
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* FSDirectory.delete: " + iip.getPath());
     }
@@ -65,7 +91,7 @@ static long delete(FSDirectory fsd, INodesInPath iip,
         ReclaimContext context = new ReclaimContext(
             fsd.getBlockStoragePolicySuite(), collectedBlocks, removedINodes,
             removedUCFiles);
-        if (unprotectedDelete(fsd, iip, context, mtime)) {
+        if (unprotectedDelete(fsd, iip, context, mtime, subtree)) {
           filesRemoved = context.quotaDelta().getNsDelta();
         }
         fsd.updateReplicationFactor(context.collectedBlocks()
@@ -94,19 +120,26 @@ static long delete(FSDirectory fsd, INodesInPath iip,
    * @param recursive boolean true to apply to all sub-directories recursively
    * @param logRetryCache whether to record RPC ids in editlog for retry cache
    *          rebuilding
+   * @param prefetched the subtree read by {@link #prefetchSubtree}, or null
    * @return blocks collected from the deleted path
    * @throws IOException
    */
   static BlocksMapUpdateInfo delete(
       FSNamesystem fsn, FSPermissionChecker pc, String src, boolean recursive,
-      boolean logRetryCache) throws IOException {
+      boolean logRetryCache, PrefetchedSubtree prefetched) throws IOException {
     FSDirectory fsd = fsn.getFSDirectory();
 
     if (FSDirectory.isExactReservedName(src)) {
       throw new InvalidPathException(src);
     }
 
+    // taken before the path is resolved for writing, which marks it changed
+    Map<String, List<DatabaseINode.ReclaimINode>> subtree =
+        prefetched == null ? null : prefetched.take();
     final INodesInPath iip = fsd.resolvePath(pc, src, DirOp.WRITE_LINK);
+    if (subtree != null && !prefetched.isOf(iip)) {
+      subtree = null;
+    }
     if (fsd.isPermissionEnabled()) {
       fsd.checkPermission(pc, iip, false, null, FsAction.WRITE, null,
                           FsAction.ALL, true);
@@ -119,7 +152,97 @@ static BlocksMapUpdateInfo delete(
       checkProtectedDescendants(fsd, iip);
     }
 
-    return deleteInternal(fsn, iip, logRetryCache);
+    return deleteInternal(fsn, iip, logRetryCache, subtree);
+  }
+
+  /**
+   * The subtree of a directory to delete, read from the database by
+   * {@link #prefetchSubtree} before the namesystem lock is taken. It is only
+   * used if the directory is still the target of the delete and nothing was
+   * written at, below or above it since it was read.
+   */
+  static final class PrefetchedSubtree {
+    private final FSDirectory fsd;
+    private final FSDirectory.SubtreeWatch watch;
+    private final long id;
+    private final Map<String, List<DatabaseINode.ReclaimINode>> partitions;
+
+    private PrefetchedSubtree(FSDirectory fsd, FSDirectory.SubtreeWatch watch,
+        long id, Map<String, List<DatabaseINode.ReclaimINode>> partitions) {
+      this.fsd = fsd;
+      this.watch = watch;
+      this.id = id;
+      this.partitions = partitions;
+    }
+
+    /**
+     * Stops watching the subtree. Must be called with the namesystem write
+     * lock held.
+     * @return the subtree, or null if it changed since it was read
+     */
+    private Map<String, List<DatabaseINode.ReclaimINode>> take() {
+      close();
+      return watch.changed ? null : partitions;
+    }
+
+    private boolean isOf(INodesInPath iip) {
+      INode target = iip.getLastINode();
+      return target != null && target.getId() == id
+          && iip.getPath().equals(watch.path);
+    }
+
+    /** Stops watching the subtree, if {@link #take} did not. */
+    void close() {
+      fsd.unwatchSubtree(watch);
+    }
+  }
+
+  /**
+   * Reads the subtree of {@code src} for a recursive delete, with
+   * {@link #readSubtree}, before the namesystem write lock is taken, so that
+   * the reads and their retries do not hold up the other operations.
+   * @return the subtree, or null if {@code src} is not a directory whose
+   *         subtree is reclaimed from the database; the caller must
+   *         {@link PrefetchedSubtree#close} it
+   * @throws IOException if the subtree could not be read
+   */
+  static PrefetchedSubtree prefetchSubtree(FSNamesystem fsn,
+      FSPermissionChecker pc, String src, boolean recursive)
+      throws IOException {
+    if (!recursive || FSDirectory.isExactReservedName(src)
+        || !Database.getInstance().getStore().storesBlocks()) {
+      return null;
+    }
+    FSDirectory fsd = fsn.getFSDirectory();
+    FSDirectory.SubtreeWatch watch;
+    INode target;
+    fsn.readLock();
+    try {
+      INodesInPath iip = fsd.resolvePath(pc, src, DirOp.READ_LINK);
+      target = iip.getLastINode();
+      if (target == null || iip.length() <= 1
+          || !reclaimsFromDatabase(target, iip.getLatestSnapshotId())
+          || !fsd.isNonEmptyDirectory(iip)) {
+        return null;
+      }
+      // the delete itself checks the permissions and reports the errors
+      if (fsd.isPermissionEnabled()) {
+        fsd.checkPermission(pc, iip, false, null, FsAction.WRITE, null,
+                            FsAction.ALL, true);
+      }
+      watch = fsd.watchSubtree(iip.getPath());
+    } catch (IOException e) {
+      return null;
+    } finally {
+      fsn.readUnlock("delete");
+    }
+    try {
+      return new PrefetchedSubtree(fsd, watch, target.getId(),
+          readSubtree(target.getPath()));
+    } catch (IOException | RuntimeException e) {
+      fsd.unwatchSubtree(watch);
+      throw e;
+    }
   }
 
   /**
@@ -149,7 +272,7 @@ static void deleteForEditLog(FSDirectory fsd, INodesInPath iip, long mtime)
     boolean filesRemoved = unprotectedDelete(fsd, iip,
         new ReclaimContext(fsd.getBlockStoragePolicySuite(),
             collectedBlocks, removedINodes, removedUCFiles),
-        mtime);
+        mtime, null);
     fsn.removeSnapshottableDirs(snapshottableDirs);
 
     if (filesRemoved) {
@@ -176,6 +299,13 @@ static void deleteForEditLog(FSDirectory fsd, INodesInPath iip, long mtime)
   static BlocksMapUpdateInfo deleteInternal(
       FSNamesystem fsn, INodesInPath iip, boolean logRetryCache)
       throws IOException {
+    return deleteInternal(fsn, iip, logRetryCache, null);
+  }
+
+  private static BlocksMapUpdateInfo deleteInternal(
+      FSNamesystem fsn, INodesInPath iip, boolean logRetryCache,
+      Map<String, List<DatabaseINode.ReclaimINode>> subtree)
+      throws IOException {
     assert fsn.hasWriteLock();
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.delete: " + iip.getPath());
@@ -188,8 +318,8 @@ static BlocksMapUpdateInfo deleteInternal(
 
     long mtime = now();
     // Unlink the target directory from directory tree
-    long filesRemoved = delete(
-        fsd, iip, collectedBlocks, removedINodes, removedUCFiles, mtime);
+    long filesRemoved = delete(fsd, iip, collectedBlocks, removedINodes,
+        removedUCFiles, mtime, subtree);
     if (filesRemoved < 0) {
       return null;
     }
@@ -233,10 +363,16 @@ private static boolean deleteAllowed(final INodesInPath iip) {
    * @param iip the inodes resolved from the path
    * @param reclaimContext used to collect blocks and inodes to be removed
    * @param mtime the time the inode is removed
+   * @param prefetched the subtree of the target directory if it was read
+   *        before the lock was taken, or null
    * @return true if there are inodes deleted
+   * @throws IOException if the blocks of a directory could not be read from
+   *         the database; the namespace is left unchanged then
    */
   private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
-      ReclaimContext reclaimContext, long mtime) {
+      ReclaimContext reclaimContext, long mtime,
+      Map<String, List<DatabaseINode.ReclaimINode>> prefetched)
+      throws IOException {
     assert fsd.hasWriteLock();
 
     // check if target node exists
@@ -249,6 +385,14 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
     final int latestSnapshot = iip.getLatestSnapshotId();
     targetNode.recordModification(latestSnapshot);
 
+    // read the subtree of a directory before it leaves the namespace, so
+    // that a failure leaves it in place
+    Map<String, List<DatabaseINode.ReclaimINode>> subtree = null;
+    if (reclaimsFromDatabase(targetNode, latestSnapshot)) {
+      subtree = prefetched != null
+          ? prefetched : readSubtree(targetNode.getPath());
+    }
+
     // Remove the node from the namespace
     long removed = fsd.removeLastINode(iip);
     if (removed == -1) {
@@ -261,12 +405,19 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
 
     // collect block and update quota
     if (!targetNode.isInLatestSnapshot(latestSnapshot)) {
-      targetNode.destroyAndCollectBlocks(reclaimContext);
+      if (subtree != null) {
+        reclaimSubtree(targetNode.asDirectory(), subtree, reclaimContext);
+      } else {
+        targetNode.destroyAndCollectBlocks(reclaimContext);
+      }
     } else {
       targetNode.cleanSubtree(reclaimContext, CURRENT_STATE_ID, latestSnapshot);
     }
 
-    INodeKeyedObjects.getRemoveSet().add(targetNode.getPath());
+    INodeKeyedObjects.getWriteBehindLog().remove(targetNode.getPath());
+    if (targetNode.isDirectory()) {
+      DatabaseINodeFilter.removeFilter(targetNode.getId());
+    }
     INodeKeyedObjects.getCache().invalidate(targetNode.getPath());
 
     if (NameNode.stateChangeLog.isDebugEnabled()) {
@@ -276,6 +427,145 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
     return true;
   }
 
+  // true if the subtree of a deleted directory is read by readSubtree
+  private static boolean reclaimsFromDatabase(INode targetNode,
+      int latestSnapshot) {
+    return !targetNode.isInLatestSnapshot(latestSnapshot)
+        && targetNode.isDirectory()
+        && targetNode.asDirectory().getDirectoryWithSnapshotFeature() == null
+        && Database.getInstance().getStore().storesBlocks();
+  }
+
+  /**
+   * Read the inodes below a directory being deleted, with their blocks, from
+   * the database instead of walking them. The subtree is read one parentName
+   * partition at a time, in parallel. The reads do not change the database,
+   * so a partition that fails is read again, up to
+   * FILESCALE_RECLAIM_MAX_RETRIES times (default 3); if it still fails the
+   * delete fails before anything is removed. A client delete reads it with
+   * {@link #prefetchSubtree}, without the namesystem lock; it is read here,
+   * under the lock, only if the subtree changed in between.
+   */
+  private static Map<String, List<DatabaseINode.ReclaimINode>> readSubtree(
+      String path) throws IOException {
+    // rows still in the write-behind log would be missed by the queries
+    INodeKeyedObjects.getWriteBehindLog().flush();
+
+    Map<String, List<DatabaseINode.ReclaimINode>> subtree = new HashMap<>();
+    List<String> pending = DatabaseINode.getSubtreePartitions(path);
+    long backoffMs = 100;
+    for (int attempt = 0; ; attempt++) {
+      Map<String, CompletableFuture<List<DatabaseINode.ReclaimINode>>> futures =
+          new HashMap<>();
+      for (final String parentName : pending) {
+        futures.put(parentName, CompletableFuture.supplyAsync(() -> {
+          try {
+            return DatabaseINode.reclaimPartition(parentName);
+          } catch (SQLException e) {
+            throw new CompletionException(e);
+          }
+        }, Database.getInstance().getExecutorService()));
+      }
+      List<String> failed = new ArrayList<>();
+      Throwable cause = null;
+      for (Map.Entry<String, CompletableFuture<List<DatabaseINode.ReclaimINode>>> e
+          : futures.entrySet()) {
+        try {
+          subtree.put(e.getKey(), e.getValue().join());
+        } catch (CompletionException ex) {
+          failed.add(e.getKey());
+          cause = ex.getCause();
+        }
+      }
+      if (failed.isEmpty()) {
+        return subtree;
+      }
+      if (attempt >= RECLAIM_MAX_RETRIES) {
+        throw new IOException("Failed to read " + failed.size()
+            + " partitions below " + path + " after " + attempt + " retries",
+            cause);
+      }
+      NameNode.stateChangeLog.warn("DIR* FSDirectory.unprotectedDelete: "
+          + "failed to read " + failed.size() + " partitions below " + path
+          + ", retrying in " + backoffMs + "ms", cause);
+      try {
+        Thread.sleep(backoffMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while deleting " + path, e);
+      }
+      backoffMs *= 2;
+      pending = failed;
+    }
+  }
+
+  /**
+   * Collect the blocks and the quota of a directory being deleted from the
+   * subtree read by {@link #readSubtree}, then drop the inode2block rows of
+   * its partitions. The inode rows themselves are removed afterwards through
+   * the write-behind log. A partition whose inode2block rows cannot be dropped
+   * only leaves rows of removed inodes behind: its blocks are collected all
+   * the same.
+   */
+  private static void reclaimSubtree(INodeDirectory dir,
+      Map<String, List<DatabaseINode.ReclaimINode>> subtree,
+      ReclaimContext reclaimContext) {
+    final String path = dir.getPath();
+    long nsDelta = 1;
+    long ssDelta = 0;
+    for (List<DatabaseINode.ReclaimINode> inodes : subtree.values()) {
+      for (DatabaseINode.ReclaimINode inode : inodes) {
+        nsDelta++;
+        if (inode.isDirectory()) {
+          DatabaseINodeFilter.removeFilter(inode.id);
+          continue;
+        }
+        boolean striped = INodeFile.HeaderFormat.isStriped(inode.header);
+        // a striped file is charged for its data bytes only
+        ssDelta += striped ? inode.numBytes
+            : inode.numBytes * INodeFile.HeaderFormat.getReplication(inode.header);
+        if (reclaimContext.collectedBlocks != null) {
+          for (long blockId : inode.blockIds) {
+            Block b = Block.existing(blockId);
+            reclaimContext.collectedBlocks.addDeleteBlock(striped
+                ? new BlockInfoStriped(b) : new BlockInfoContiguous(b));
+          }
+        }
+        if (inode.underConstruction && reclaimContext.removedUCFiles != null) {
+          reclaimContext.removedUCFiles.add(inode.id);
+        }
+      }
+    }
+
+    List<CompletableFuture<Void>> drops = new ArrayList<>(subtree.size());
+    for (final String parentName : subtree.keySet()) {
+      drops.add(CompletableFuture.runAsync(() -> {
+        try {
+          DatabaseINode.dropPartitionBlocks(parentName);
+        } catch (SQLException e) {
+          throw new CompletionException(e);
+        }
+      }, Database.getInstance().getExecutorService()));
+    }
+    for (CompletableFuture<Void> drop : drops) {
+      try {
+        drop.join();
+      } catch (CompletionException e) {
+        NameNode.stateChangeLog.warn("DIR* FSDirectory.unprotectedDelete: "
+            + "failed to drop the inode2block rows below " + path, e.getCause());
+      }
+    }
+
+    reclaimContext.quotaDelta().add(new QuotaCounts.Builder()
+        .nameSpace(nsDelta).storageSpace(ssDelta).build());
+    if (dir.getAclFeature() != null) {
+      AclStorage.removeAclFeature(dir.getAclFeature());
+    }
+    reclaimContext.removedINodes.add(dir);
+    INodeKeyedObjects.getChildIndex().detach(dir.getId());
+    INodeKeyedObjects.invalidateSubtree(path);
+  }
+
   /**
    * Throw if the given directory has any non-empty protected descendants
    * (including itself).
@@ -20,18 +20,13 @@
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileStatus;
-import org.apache.hadoop.fs.ParentNotDirectoryException;
-import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.DFSUtil;
-import org.apache.hadoop.hdfs.protocol.AclException;
-import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.server.namenode.FSDirectory.DirOp;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
-import org.apache.hadoop.security.AccessControlException;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
 import java.io.IOException;
@@ -150,9 +145,7 @@ private static INodesInPath createParentDirectories(FSDirectory fsd,
 
   static void mkdirForEditLog(FSDirectory fsd, long inodeId, String src,
       PermissionStatus permissions, List<AclEntry> aclEntries, long timestamp)
-      throws QuotaExceededException, UnresolvedLinkException, AclException,
-      FileAlreadyExistsException, ParentNotDirectoryException,
-      AccessControlException {
+      throws IOException {
     assert fsd.hasWriteLock();
     INodesInPath iip = fsd.getINodesInPath(src, DirOp.WRITE_LINK);
     final byte[] localName = iip.getLastLocalName();
@@ -202,7 +195,7 @@ private static PermissionStatus addImplicitUwx(PermissionStatus parentPerm,
   private static INodesInPath unprotectedMkdir(FSDirectory fsd, long inodeId,
       INodesInPath parent, byte[] name, PermissionStatus permission,
       List<AclEntry> aclEntries, long timestamp)
-      throws QuotaExceededException, AclException, FileAlreadyExistsException {
+      throws IOException {
     assert fsd.hasWriteLock();
     assert parent.getLastINode() != null;
     if (!parent.getLastINode().isDirectory()) {
@@ -212,6 +205,7 @@ private static INodesInPath unprotectedMkdir(FSDirectory fsd, long inodeId,
 
     INodeDirectory dir = new INodeDirectory(parent.getLastINode(), inodeId, name,
       permission, timestamp, parent.getPath());
+    dir.initEmptyChildrenList();
     INodeKeyedObjects.getCache().put(dir.getPath(), dir);
 
     INodesInPath iip =
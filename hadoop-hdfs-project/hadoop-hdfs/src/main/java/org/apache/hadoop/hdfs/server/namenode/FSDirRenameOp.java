@@ -675,7 +675,7 @@ long removeDst() {
       return removedNum;
     }
 
-    INodesInPath addSourceToDestination() {
+    INodesInPath addSourceToDestination() throws IOException {
       final INode dstParent = dstParentIIP.getLastINode();
       final byte[] dstChildName = dstIIP.getLastLocalName();
       final INode toDst;
@@ -696,7 +696,7 @@ void updateMtimeAndLease(long timestamp) {
       dstParent.updateModificationTime(timestamp, dstIIP.getLatestSnapshotId());
     }
 
-    void restoreSource() {
+    void restoreSource() throws IOException {
       // Rename failed - restore src
       final INode oldSrcChild = srcChild;
       // put it back
@@ -724,7 +724,7 @@ void restoreSource() {
       }
     }
 
-    void restoreDst(BlockStoragePolicySuite bsps) {
+    void restoreDst(BlockStoragePolicySuite bsps) throws IOException {
       Preconditions.checkState(oldDstChild != null);
       final INodeDirectory dstParent = dstParentIIP.getLastINode().asDirectory();
       if (dstParent.isWithSnapshot()) {
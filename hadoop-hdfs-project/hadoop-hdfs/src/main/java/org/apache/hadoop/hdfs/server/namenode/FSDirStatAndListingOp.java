@@ -28,6 +28,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.QuotaUsage;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.db.ReplicaReads;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
@@ -45,15 +46,37 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import static org.apache.hadoop.util.Time.now;
 
 class FSDirStatAndListingOp {
+  // consistency of the database reads of getFileInfo and getListing, strong
+  // or bounded; see ReplicaReads
+  private static final ReplicaReads.Consistency STAT_CONSISTENCY =
+      ReplicaReads.Consistency.of(System.getenv("FILESCALE_STAT_CONSISTENCY"));
+  private static final ReplicaReads.Consistency LISTING_CONSISTENCY =
+      ReplicaReads.Consistency.of(System.getenv("FILESCALE_LISTING_CONSISTENCY"));
+
   static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
       final String srcArg, byte[] startAfter, boolean needLocation)
       throws IOException {
+    Object prev = ReplicaReads.begin(LISTING_CONSISTENCY);
+    try {
+      return doGetListingInt(fsd, pc, srcArg, startAfter, needLocation);
+    } finally {
+      ReplicaReads.end(prev);
+    }
+  }
+
+  private static DirectoryListing doGetListingInt(FSDirectory fsd,
+      FSPermissionChecker pc, final String srcArg, byte[] startAfter,
+      boolean needLocation) throws IOException {
     final INodesInPath iip = fsd.resolvePath(pc, srcArg, DirOp.READ);
 
     // Get file name when startAfter is an INodePath.  This is not the
@@ -80,7 +103,13 @@ static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
       }
       isSuperUser = pc.isSuperUser();
     }
-    return getListing(fsd, iip, startAfter, needLocation, isSuperUser);
+    // the files of a listing are read once; keep them out of the inode cache
+    INodeKeyedObjects.beginScan();
+    try {
+      return getListing(fsd, iip, startAfter, needLocation, isSuperUser);
+    } finally {
+      INodeKeyedObjects.endScan();
+    }
   }
 
   /**
@@ -99,6 +128,18 @@ static DirectoryListing getListingInt(FSDirectory fsd, FSPermissionChecker pc,
   static HdfsFileStatus getFileInfo(FSDirectory fsd, FSPermissionChecker pc,
       String srcArg, boolean resolveLink, boolean needLocation,
       boolean needBlockToken) throws IOException {
+    Object prev = ReplicaReads.begin(STAT_CONSISTENCY);
+    try {
+      return doGetFileInfo(fsd, pc, srcArg, resolveLink, needLocation,
+          needBlockToken);
+    } finally {
+      ReplicaReads.end(prev);
+    }
+  }
+
+  private static HdfsFileStatus doGetFileInfo(FSDirectory fsd,
+      FSPermissionChecker pc, String srcArg, boolean resolveLink,
+      boolean needLocation, boolean needBlockToken) throws IOException {
     DirOp dirOp = resolveLink ? DirOp.READ : DirOp.READ_LINK;
     final INodesInPath iip;
     if (pc.isSuperUser()) {
@@ -135,7 +176,12 @@ static ContentSummary getContentSummary(
     }
     // getContentSummaryInt() call will check access (if enabled) when
     // traversing all sub directories.
-    return getContentSummaryInt(fsd, pc, iip);
+    INodeKeyedObjects.beginScan();
+    try {
+      return getContentSummaryInt(fsd, pc, iip);
+    } finally {
+      INodeKeyedObjects.endScan();
+    }
   }
 
   /**
@@ -248,6 +294,10 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
       }
 
       final INodeDirectory dirInode = targetNode.asDirectory();
+      if (snapshot == Snapshot.CURRENT_STATE_ID) {
+        return getPagedListing(fsd, iip, dirInode, startAfter, needLocation,
+            includeStoragePolicy, parentStoragePolicy);
+      }
       final ReadOnlyList<INode> contents = dirInode.getChildrenList(snapshot);
       int startChild = INodeDirectory.nextChild(contents, startAfter);
       int totalNumChildren = contents.size();
@@ -286,6 +336,104 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
     }
   }
 
+  /**
+   * Lists the current children of {@code dirInode} after {@code startAfter}, reading their names
+   * one page at a time, so that listing a large directory only touches the children returned.
+   * The remaining entry count of the result is 1 if there may be more children and 0 if not;
+   * counting them exactly would mean reading them all.
+   */
+  private static DirectoryListing getPagedListing(FSDirectory fsd,
+      INodesInPath iip, INodeDirectory dirInode, byte[] startAfter,
+      boolean needLocation, boolean includeStoragePolicy,
+      byte parentStoragePolicy) throws IOException {
+    final int lsLimit = fsd.getLsLimit();
+    final ChildrenIterator children = new ChildrenIterator(fsd, dirInode,
+        DFSUtil.bytes2String(startAfter), lsLimit);
+    int locationBudget = lsLimit;
+    List<HdfsFileStatus> listing = new ArrayList<>();
+    while (listing.size() < lsLimit && locationBudget > 0
+        && children.hasNext()) {
+      INode child = children.next();
+      byte childStoragePolicy = (includeStoragePolicy && !child.isSymlink())
+          ? getStoragePolicyID(child.getLocalStoragePolicyID(),
+                               parentStoragePolicy)
+          : parentStoragePolicy;
+      HdfsFileStatus status = createFileStatus(fsd, iip, child,
+          childStoragePolicy, needLocation, false);
+      listing.add(status);
+      if (status instanceof HdfsLocatedFileStatus) {
+        // Once we hit lsLimit locations, stop.
+        LocatedBlocks blks = ((HdfsLocatedFileStatus)status).getLocatedBlocks();
+        locationBudget -= (blks == null) ? 0 :
+            blks.locatedBlockCount() * status.getReplication();
+      }
+    }
+    return new DirectoryListing(
+        listing.toArray(new HdfsFileStatus[listing.size()]),
+        children.hasNext() ? 1 : 0);
+  }
+
+  /**
+   * Iterates over the current children of a directory in name order,
+   * fetching their names in pages from
+   * {@link INodeDirectory#getChildrenNamesAfter}. The first page holds one
+   * name more than a listing returns, so that whether more children follow
+   * is known without another fetch.
+   */
+  private static class ChildrenIterator implements Iterator<INode> {
+    private final FSDirectory fsd;
+    private final INodeDirectory dir;
+    private final String dirPath;
+    private final int pageSize;
+    private Iterator<String> page;
+    private String lastName;
+    private boolean exhausted = false;
+    private INode next = null;
+
+    ChildrenIterator(FSDirectory fsd, INodeDirectory dir, String startAfter,
+        int pageSize) {
+      this.fsd = fsd;
+      this.dir = dir;
+      this.dirPath = dir.getPath();
+      this.pageSize = pageSize;
+      this.lastName = startAfter;
+      fetch(pageSize + 1);
+    }
+
+    private void fetch(int limit) {
+      List<String> names = dir.getChildrenNamesAfter(lastName, limit);
+      exhausted = names.size() < limit;
+      page = names.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (!page.hasNext()) {
+          if (exhausted) {
+            return false;
+          }
+          fetch(pageSize);
+          continue;
+        }
+        lastName = page.next();
+        // a child removed since its name was read is skipped
+        next = fsd.getInode(dirPath, lastName);
+      }
+      return true;
+    }
+
+    @Override
+    public INode next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      INode child = next;
+      next = null;
+      return child;
+    }
+  }
+
   /**
    * Get a listing of all the snapshots of a snapshottable directory
    */
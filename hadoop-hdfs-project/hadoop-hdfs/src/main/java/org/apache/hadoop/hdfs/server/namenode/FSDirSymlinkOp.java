@@ -19,12 +19,10 @@
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.InvalidPathException;
-import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.DFSUtil;
-import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.server.namenode.FSDirectory.DirOp;
 
 import java.io.IOException;
@@ -84,7 +82,7 @@ static FileStatus createSymlinkInt(
   static INodeSymlink unprotectedAddSymlink(FSDirectory fsd, INodesInPath iip,
       byte[] localName, long id, String target, long mtime, long atime,
       PermissionStatus perm)
-      throws UnresolvedLinkException, QuotaExceededException {
+      throws IOException {
     assert fsd.hasWriteLock();
     final INodeSymlink symlink = new INodeSymlink(id, null, perm, mtime, atime,
         target);
@@ -81,6 +81,7 @@
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -99,12 +100,6 @@
 import org.apache.hadoop.hdfs.db.*;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
-import org.apache.hadoop.hdfs.cuckoofilter4j.*;
-import org.apache.hadoop.hdfs.cuckoofilter4j.Utils.Algorithm;
-import com.google.common.hash.Funnels;
-import java.nio.charset.Charset;
-import org.apache.commons.pool2.impl.GenericObjectPool;
-
 /**
  * Both FSDirectory and FSNamesystem manage the state of the namespace.
  * FSDirectory is a pure in-memory data structure, all of whose operations
@@ -191,6 +186,9 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
 
+  // the subtrees being read by deletes outside the lock
+  private final List<SubtreeWatch> subtreeWatches = new CopyOnWriteArrayList<>();
+
   private final boolean isPermissionEnabled;
   private final boolean isPermissionContentSummarySubAccess;
   /**
@@ -228,8 +226,6 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   // will be bypassed
   private HashSet<String> usersToBypassExtAttrProvider = null;
 
-  private GenericObjectPool<CuckooFilter<CharSequence>> pool;
-
   // FIXME(gangliao): singleton pattern for Database
   // may cause problem for HDFS Federation
   // https://hortonworks.com/blog/an-introduction-to-hdfs-federation/
@@ -437,58 +433,12 @@ public enum DirOp {
         }
       }
     }
-
-    // initFilterPool();
   }
 
   public boolean isLocalNN() {
     return localNN;
   }
 
-  public CuckooFilter<CharSequence> borrowFilter() {
-    CuckooFilter<CharSequence> filter = null;
-    try {
-      filter = pool.borrowObject();
-    } catch (Exception e) {
-      System.err.println("Failed to borrow a filter object : " + e.getMessage());
-      e.printStackTrace();
-      System.exit(-1);
-    }
-    return filter;
-  }
-
-  public void returnFilter(CuckooFilter<CharSequence> filter) {
-    // make sure the object is returned to the pool
-    if (null != filter) {
-      pool.returnObject(filter);
-    }
-  }
-
-  // A helper method to initialize the pool using the config and object-factory.
-  private void initFilterPool() {
-    try {
-      // We use the GenericObjectPool implementation of Object Pool as this suffices for most needs.
-      // When we create the object pool, we need to pass the Object Factory class that would be
-      // responsible for creating the objects.
-      // Also pass the config to the pool while creation.
-      pool = new GenericObjectPool<CuckooFilter<CharSequence>>(new CuckooFilterFactory());
-      String num = System.getenv("FILESCALE_FILTER_NUMBER");
-      if (num == null) {
-        pool.setMaxTotal(100000);
-      } else {
-        pool.setMaxTotal(Integer.parseInt(num));
-      }
-
-      pool.setMinIdle(1000);
-      pool.setMaxIdle(100000);
-      pool.setBlockWhenExhausted(false);
-      pool.preparePool();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(-1);
-    }
-  }
-
   private void initUsersToBypassExtProvider(Configuration conf) {
     String[] bypassUsers = conf.getTrimmedStrings(
         DFSConfigKeys.DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_BYPASS_USERS_KEY,
@@ -811,6 +761,9 @@ public INodesInPath resolvePath(FSPermissionChecker pc, String src,
       }
       throw pnde;
     }
+    if (dirOp != DirOp.READ && dirOp != DirOp.READ_LINK) {
+      subtreeWritten(iip.getPath());
+    }
     return iip;
   }
 
@@ -832,10 +785,60 @@ INodesInPath resolvePath(FSPermissionChecker pc, String src, long fileId)
       } else {
         iip = INodesInPath.fromINode(inode);
       }
+      subtreeWritten(iip.getPath());
     }
     return iip;
   }
 
+  /**
+   * A directory whose subtree is read outside the namesystem lock, see
+   * {@link FSDirDeleteOp#prefetchSubtree}. It is marked changed when an
+   * operation resolves a path for writing at, below or above the directory.
+   */
+  static final class SubtreeWatch {
+    final String path;
+    volatile boolean changed;
+
+    SubtreeWatch(String path) {
+      this.path = path;
+    }
+
+    private boolean covers(String p) {
+      return isAncestorOrSelf(path, p) || isAncestorOrSelf(p, path);
+    }
+
+    private static boolean isAncestorOrSelf(String dir, String p) {
+      return p.startsWith(dir) && (p.length() == dir.length()
+          || dir.endsWith("/") || p.charAt(dir.length()) == '/');
+    }
+  }
+
+  /**
+   * Marks the subtree of {@code path} changed by every later write under it.
+   * Must be called with the namesystem lock held, so that no write is missed
+   * between the read that the watch guards and the watch itself.
+   */
+  SubtreeWatch watchSubtree(String path) {
+    SubtreeWatch watch = new SubtreeWatch(path);
+    subtreeWatches.add(watch);
+    return watch;
+  }
+
+  void unwatchSubtree(SubtreeWatch watch) {
+    subtreeWatches.remove(watch);
+  }
+
+  private void subtreeWritten(String path) {
+    if (subtreeWatches.isEmpty()) {
+      return;
+    }
+    for (SubtreeWatch watch : subtreeWatches) {
+      if (watch.covers(path)) {
+        watch.changed = true;
+      }
+    }
+  }
+
   // this method can be removed after IIP is used more extensively
   static String resolvePath(String src,
       FSDirectory fsd) throws FileNotFoundException {
@@ -1239,7 +1242,7 @@ public EnumCounters<StorageType> getStorageTypeDeltas(byte storagePolicyID,
    */
   INodesInPath addINode(INodesInPath existing, INode child,
                         FsPermission modes)
-      throws QuotaExceededException, UnresolvedLinkException {
+      throws IOException {
     cacheName(child);
     writeLock();
     try {
@@ -1393,7 +1396,7 @@ private void copyINodeDefaultAcl(INode child, FsPermission modes) {
    */
   @VisibleForTesting
   public INodesInPath addLastINode(INodesInPath existing, INode inode, String name,
-      FsPermission modes, boolean checkQuota) throws QuotaExceededException {
+      FsPermission modes, boolean checkQuota) throws IOException {
     assert existing.getLastINode() != null &&
         existing.getLastINode().isDirectory();
 
@@ -1443,7 +1446,8 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode, String name
     return INodesInPath.append(existing, inode, inode.getLocalNameBytes());
   }
 
-  INodesInPath addLastINodeNoQuotaCheck(INodesInPath existing, INode i, String name) {
+  INodesInPath addLastINodeNoQuotaCheck(INodesInPath existing, INode i, String name)
+      throws IOException {
     try {
       // All callers do not have create modes to pass.
       return addLastINode(existing, i, name, null, false);
@@ -667,6 +667,8 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
+    // Journal the inode deltas of this thread before the call is acked.
+    INodeKeyedObjects.getWriteBehindLog().sync();
     // Fetch the transactionId of this thread.
     logSync(myTransactionId.get().txid);
   }
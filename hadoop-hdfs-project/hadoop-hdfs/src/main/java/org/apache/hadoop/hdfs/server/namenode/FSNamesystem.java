@@ -757,6 +757,10 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
    */
   FSNamesystem(Configuration conf, FSImage fsImage, boolean ignoreRetryCache)
       throws IOException {
+    // the database is chosen before anything below can reach it
+    String store = conf.getTrimmed(DFSConfigKeys.DFS_NAMENODE_METADATA_STORE_KEY, "");
+    Database.init(store.isEmpty() ? System.getenv("DATABASE") : store);
+    LOG.info("Metadata store: " + Database.getType());
     provider = DFSUtil.createKeyProviderCryptoExtension(conf);
     LOG.info("KeyProvider: " + provider);
     if (conf.getBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY,
@@ -937,8 +941,6 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
       close();
       throw re;
     }
-
-    Database.init();
   }
 
   @VisibleForTesting
@@ -3220,19 +3222,25 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     BlocksMapUpdateInfo toRemovedBlocks = null;
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
+    // the database reads of a large subtree are done without the lock
+    final FSDirDeleteOp.PrefetchedSubtree subtree = isInSafeMode() ? null
+        : FSDirDeleteOp.prefetchSubtree(this, pc, src, recursive);
     writeLock();
     boolean ret = false;
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot delete " + src);
       toRemovedBlocks = FSDirDeleteOp.delete(
-          this, pc, src, recursive, logRetryCache);
+          this, pc, src, recursive, logRetryCache, subtree);
       ret = toRemovedBlocks != null;
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
       writeUnlock(operationName);
+      if (subtree != null) {
+        subtree.close();
+      }
     }
 
     getEditLog().logSync();
@@ -3262,15 +3270,20 @@ FSPermissionChecker getPermissionChecker()
   void removeBlocks(BlocksMapUpdateInfo blocks) {
     List<BlockInfo> toDeleteList = blocks.getToDeleteList();
     Iterator<BlockInfo> iter = toDeleteList.iterator();
+    List<BlockInfo> batch = new ArrayList<>(
+        Math.min(blockDeletionIncrement, toDeleteList.size()));
     while (iter.hasNext()) {
+      for (int i = 0; i < blockDeletionIncrement && iter.hasNext(); i++) {
+        batch.add(iter.next());
+      }
       writeLock();
       try {
-        for (int i = 0; i < blockDeletionIncrement && iter.hasNext(); i++) {
-          blockManager.removeBlock(iter.next());
-        }
+        // one database batch per increment
+        blockManager.removeBlocks(batch);
       } finally {
         writeUnlock("removeBlocks");
       }
+      batch.clear();
     }
   }
   
@@ -4421,6 +4434,82 @@ private long getCorrectTransactionsSinceLastLogRoll() {
   public long getLastWrittenTransactionId() {
     return getEditLog().getLastWrittenTxIdWithoutLock();
   }
+
+  @Metric({"BlockCacheHits", "Number of block attribute lookups served " +
+      "from the block cache"})
+  public long getBlockCacheHits() {
+    return DatabaseBlockCache.getInstance().getHitCount();
+  }
+
+  @Metric({"BlockCacheMisses", "Number of block attribute lookups that " +
+      "went to the database"})
+  public long getBlockCacheMisses() {
+    return DatabaseBlockCache.getInstance().getMissCount();
+  }
+
+  @Metric({"BlockCacheHitRate", "Hit rate of the block attribute cache"})
+  public double getBlockCacheHitRate() {
+    return DatabaseBlockCache.getInstance().getHitRate();
+  }
+
+  @Metric({"ChildIndexHits", "Number of child lookups served from the " +
+      "(parent id, name) index"})
+  public long getChildIndexHits() {
+    return INodeKeyedObjects.getChildIndex().getHitCount();
+  }
+
+  @Metric({"ChildIndexMisses", "Number of child lookups that missed the " +
+      "(parent id, name) index"})
+  public long getChildIndexMisses() {
+    return INodeKeyedObjects.getChildIndex().getMissCount();
+  }
+
+  @Metric({"WriteBehindQueueLength", "Number of inode deltas waiting to " +
+      "be written to the database"})
+  public int getWriteBehindQueueLength() {
+    return INodeKeyedObjects.getWriteBehindLog().getQueueLength();
+  }
+
+  @Metric({"WriteBehindCoalesced", "Number of inode deltas merged into a " +
+      "later delta of the same path"})
+  public long getWriteBehindCoalesced() {
+    return INodeKeyedObjects.getWriteBehindLog().getCoalescedCount();
+  }
+
+  @Metric({"WriteBehindStalls", "Number of handler waits on a full " +
+      "write-behind queue"})
+  public long getWriteBehindStalls() {
+    return INodeKeyedObjects.getWriteBehindLog().getStallCount();
+  }
+
+  @Metric({"WriteBehindFlushes", "Number of write-behind group commits"})
+  public long getWriteBehindFlushes() {
+    return INodeKeyedObjects.getWriteBehindLog().getFlushCount();
+  }
+
+  @Metric({"WriteBehindLastBatchSize", "Number of inode deltas in the last " +
+      "write-behind group commit"})
+  public int getWriteBehindLastBatchSize() {
+    return INodeKeyedObjects.getWriteBehindLog().getLastBatchSize();
+  }
+
+  @Metric({"WriteBehindAvgBatchSize", "Average number of inode deltas per " +
+      "write-behind group commit"})
+  public double getWriteBehindAvgBatchSize() {
+    return INodeKeyedObjects.getWriteBehindLog().getAverageBatchSize();
+  }
+
+  @Metric({"WriteBehindFlushLagMicros", "Time in microseconds the oldest " +
+      "change of the last group commit waited to be written"})
+  public long getWriteBehindFlushLagMicros() {
+    return INodeKeyedObjects.getWriteBehindLog().getLastFlushLagMicros();
+  }
+
+  @Metric({"WriteBehindMaxFlushLagMicros", "Largest write-behind flush lag " +
+      "in microseconds"})
+  public long getWriteBehindMaxFlushLagMicros() {
+    return INodeKeyedObjects.getWriteBehindLog().getMaxFlushLagMicros();
+  }
   
   @Metric({"LastCheckpointTime",
       "Time in milliseconds since the epoch of the last checkpoint"})
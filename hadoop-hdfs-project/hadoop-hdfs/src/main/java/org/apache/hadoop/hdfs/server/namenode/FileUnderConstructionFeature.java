@@ -50,6 +50,26 @@ public void updateFileUnderConstruction(final long id) {
     }, Database.getInstance().getExecutorService());
   }
 
+  /** Fill in the client fields that have not been set from a loaded inode row. */
+  void hydrate(final String clientName, final String clientMachine) {
+    if (this.clientName == null) {
+      this.clientName = clientName;
+    }
+    if (this.clientMachine == null) {
+      this.clientMachine = clientMachine;
+    }
+  }
+
+  /** @return the client name if it is in memory, without loading it. */
+  String peekClientName() {
+    return clientName;
+  }
+
+  /** @return the client machine if it is in memory, without loading it. */
+  String peekClientMachine() {
+    return clientMachine;
+  }
+
   public String getClientName(final long id) {
     if (this.clientName == null) {
       this.clientName = DatabaseINode.getUcClientName(id);
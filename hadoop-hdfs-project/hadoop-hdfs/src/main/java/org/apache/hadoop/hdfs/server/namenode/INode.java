@@ -273,8 +273,8 @@ public final boolean isInLatestSnapshot(final int latestSnapshotId) {
   
   /** @return true if the given inode is an ancestor directory of this inode. */
   public final boolean isAncestorDirectory(final INodeDirectory dir) {
-    String env = System.getenv("DATABASE");
-    if (env.equals("VOLT") || env.equals("POSTGRES")) {
+    DatabaseType env = Database.getType();
+    if (env == DatabaseType.VOLT || env == DatabaseType.POSTGRES) {
       List<Long> parents = DatabaseINode.getParentIds(getId());
       if (parents.contains(dir.getId())) {
         return true;
@@ -608,8 +608,8 @@ public String getFullPathName() {
       return Path.SEPARATOR;
     }
 
-    String env = System.getenv("DATABASE");
-    if (env.equals("VOLT") || env.equals("POSTGRES")) {
+    DatabaseType env = Database.getType();
+    if (env == DatabaseType.VOLT || env == DatabaseType.POSTGRES) {
       List<String> names = DatabaseINode.getPathComponents(getId());
       String fullname = "";
       for (int i = 0; i < names.size(); ++i) {
@@ -641,8 +641,8 @@ public String getFullPathName() {
 
   public byte[][] getPathComponents() {
     byte[][] components = null;
-    String env = System.getenv("DATABASE");
-    if (env.equals("VOLT") || env.equals("POSTGRES")) {
+    DatabaseType env = Database.getType();
+    if (env == DatabaseType.VOLT || env == DatabaseType.POSTGRES) {
       List<String> names = DatabaseINode.getPathComponents(getId());
       components = new byte[names.size()][];
       for (int i = 0; i < names.size(); ++i) {
@@ -695,18 +695,46 @@ public String toDetailString() {
 
   public final long getParentId() {
     if (parent == -1L) {
-      parent = DatabaseINode.getParent(getId()); 
+      loadRow();
+      if (parent == -1L) {
+        parent = DatabaseINode.LONG_NULL;
+      }
     }
     return parent;
   }
 
   public final String getParentName() {
     if (parentName == null) {
-      parentName = DatabaseINode.getParentName(getId()); 
+      loadRow();
     }
     return parentName;
   }
 
+  /**
+   * Load the whole row of this inode with one database call and fill in every
+   * field that has not been set yet, so that later getters are served from
+   * memory.
+   */
+  final void loadRow() {
+    DatabaseINode.LoadINode node = new DatabaseINode().loadINode(getId());
+    if (node != null) {
+      hydrate(node);
+    }
+  }
+
+  /**
+   * Copy the unset fields from a loaded row. Fields that are already set are
+   * kept since they may hold updates that are not yet written back.
+   */
+  void hydrate(DatabaseINode.LoadINode node) {
+    if (parent == -1L) {
+      parent = node.parent;
+    }
+    if (parentName == null) {
+      parentName = node.parentName;
+    }
+  }
+
 
   /** @return the parent directory */
   public final INodeDirectory getParent() {
@@ -718,7 +746,10 @@ public final INodeDirectory getParent() {
       INode dir = INodeKeyedObjects.getCache().getIfPresent(getParentName()); 
       if (dir == null) {
         dir = new INodeDirectory(id);
-        DatabaseINode.LoadINode node = new DatabaseINode().loadINode(id);
+        DatabaseINode.LoadINode node = INodeKeyedObjects.getEvicted(getParentName());
+        if (node == null) {
+          node = new DatabaseINode().loadINode(id);
+        }
         byte[] name = (node.name != null && node.name.length() > 0) ? DFSUtil.string2Bytes(node.name) : null;
         dir
           .asDirectory()
@@ -0,0 +1,171 @@
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index of cached inodes keyed by (parent id, local name bytes), layered over the path-keyed
+ * inode cache of {@link INodeKeyedObjects}.
+ *
+ * <p>Path resolution walks the components of {@link INodesInPath} one level at a time; looking a
+ * child up here needs neither the parent's path nor the child's name as a String, and a hit does
+ * not allocate. The index only holds inodes that are also in the inode cache: it is kept in step
+ * with the cache through {@link #onCacheWrite} and {@link #onCacheDelete}.
+ *
+ * <p>Each entry links to the entry of its parent directory. {@link #detach} marks a directory's
+ * entry as detached in O(1), which makes every entry below it a miss; such entries are dropped
+ * lazily when they are next looked up.
+ */
+public class INodeChildIndex {
+
+  private static final class Key {
+    long parentId;
+    byte[] name;
+    int hash;
+
+    Key() {}
+
+    Key(long parentId, byte[] name) {
+      set(parentId, name);
+    }
+
+    Key set(long parentId, byte[] name) {
+      this.parentId = parentId;
+      this.name = name;
+      this.hash = 31 * Long.hashCode(parentId) + Arrays.hashCode(name);
+      return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hash == other.hash && parentId == other.parentId && Arrays.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Node {
+    final Key key;
+    final INode inode;
+    final Node parent;
+    volatile boolean detached = false;
+
+    Node(Key key, INode inode, Node parent) {
+      this.key = key;
+      this.inode = inode;
+      this.parent = parent;
+    }
+
+    boolean isAttached() {
+      for (Node n = this; n != null; n = n.parent) {
+        if (n.detached) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final ConcurrentHashMap<Key, Node> children = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, Node> byId = new ConcurrentHashMap<>();
+  private final ThreadLocal<Key> probe = ThreadLocal.withInitial(Key::new);
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  INodeChildIndex() {}
+
+  /** @return the cached child {@code name} of directory {@code parentId}, or null. */
+  public INode get(long parentId, byte[] name) {
+    Key key = probe.get().set(parentId, name);
+    Node node = children.get(key);
+    key.name = null;
+    if (node != null) {
+      if (node.isAttached()) {
+        hits.increment();
+        return node.inode;
+      }
+      remove(node);
+    }
+    misses.increment();
+    return null;
+  }
+
+  /** Adds {@code child}, which the caller has just taken from the inode cache. */
+  public void put(INodeDirectory parent, INode child) {
+    byte[] name = child.getLocalNameBytes();
+    if (name == null) {
+      return;
+    }
+    Node node = new Node(new Key(parent.getId(), name), child, byId.get(parent.getId()));
+    Node prev = children.put(node.key, node);
+    if (prev != null && prev != node) {
+      byId.remove(prev.inode.getId(), prev);
+    }
+    byId.put(child.getId(), node);
+  }
+
+  /** Drops the entry of {@code inode}, if it is the one indexed. */
+  public void remove(INode inode) {
+    Node node = byId.get(inode.getId());
+    if (node != null && node.inode == inode) {
+      remove(node);
+    }
+  }
+
+  private void remove(Node node) {
+    children.remove(node.key, node);
+    byId.remove(node.inode.getId(), node);
+  }
+
+  /**
+   * Detaches directory {@code id} and everything indexed below it, for renames and mount
+   * repartitioning that change the paths of a whole subtree.
+   */
+  public void detach(long id) {
+    Node node = byId.get(id);
+    if (node != null) {
+      node.detached = true;
+      remove(node);
+    }
+  }
+
+  void onCacheWrite(INode inode) {
+    if (inode == null) {
+      return;
+    }
+    Node node = byId.get(inode.getId());
+    if (node != null && node.inode != inode) {
+      remove(node);
+    }
+  }
+
+  void onCacheDelete(INode inode) {
+    if (inode != null) {
+      remove(inode);
+    }
+  }
+
+  public int size() {
+    return children.size();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+}
@@ -22,20 +22,24 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.charset.Charset;
+import java.sql.SQLException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.Queue;
-import java.util.LinkedList;
+import java.util.PriorityQueue;
 import java.util.Set;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.hadoop.fs.PathIsNotDirectoryException;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.XAttr;
@@ -64,11 +68,6 @@
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.hdfs.db.*;
 
-import org.apache.hadoop.hdfs.cuckoofilter4j.*;
-import org.apache.hadoop.hdfs.cuckoofilter4j.Utils.Algorithm;
-
-import com.google.common.hash.Funnels;
-
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.security.AccessControlException;
@@ -85,13 +84,6 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.ipc.RPC;
 
-import org.apache.ignite.*;
-import org.apache.ignite.lang.IgniteClosure;
-import org.apache.ignite.binary.BinaryObject;
-import org.apache.ignite.binary.BinaryObjectBuilder;
-import org.apache.hadoop.hdfs.db.ignite.BatchUpdateINodes;
-import org.apache.hadoop.hdfs.db.ignite.RenamePayload;
-import org.apache.hadoop.hdfs.db.ignite.RenameSubtreeINodes;
 
 /**
  * Directory INode class.
@@ -118,9 +110,23 @@ public static INodeDirectory valueOf(INode inode, Object path
 
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
+  // Child names. Until childrenLoaded is set, this only holds the names added since the
+  // directory was loaded, and removedChildren the names removed since then.
   private HashSet<String> children = new HashSet<>();
+  private HashSet<String> removedChildren = new HashSet<>();
+  private boolean childrenLoaded = false;
+
+  private volatile INodeDirectoryFilter filter;
 
-  // public CuckooFilter<CharSequence> filter;
+  // filters of evicted directories, by id, until the filter writer has stored them
+  private static final ConcurrentHashMap<Long, INodeDirectoryFilter> unstoredFilters =
+      new ConcurrentHashMap<>();
+  private static final ExecutorService filterWriter =
+      Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "INodeDirectoryFilterWriter");
+        t.setDaemon(true);
+        return t;
+      });
 
   /** constructor */
   public INodeDirectory(long id, byte[] name, PermissionStatus permissions,
@@ -128,12 +134,146 @@ public INodeDirectory(long id, byte[] name, PermissionStatus permissions,
     super(id, name, permissions, mtime, 0L, 0L, parentName);
   }
 
-  // public CuckooFilter<CharSequence> getFilter() {
-  //   if (filter == null) {
-  //     filter = FSDirectory.getInstance().borrowFilter();
-  //   }
-  //   return filter;
-  // }
+  /**
+   * @return the filter over this directory's child names, read from the database or, if none is
+   *         stored there, built from the child names.
+   */
+  public INodeDirectoryFilter getFilter() {
+    INodeDirectoryFilter f = filter;
+    if (f == null) {
+      synchronized (this) {
+        f = filter;
+        if (f == null) {
+          // evicted with a filter that is not stored yet
+          f = unstoredFilters.get(getId());
+          if (f == null && !childrenLoaded) {
+            byte[] bits = DatabaseINodeFilter.getFilter(getId());
+            if (bits != null) {
+              f = INodeDirectoryFilter.fromBytes(bits);
+            }
+          }
+          if (f == null) {
+            f = INodeDirectoryFilter.build(getCurrentChildrenList2());
+          }
+          filter = f;
+        }
+      }
+    }
+    return f;
+  }
+
+  /**
+   * @return the filter, about to be changed. The copy in the database is dropped first, so that
+   *         a crash cannot leave a filter behind that misses a child.
+   */
+  private INodeDirectoryFilter getMutableFilter() {
+    INodeDirectoryFilter f = getFilter();
+    synchronized (f) {
+      // a queued write would store the filter without the change about to be made
+      unstoredFilters.remove(getId(), f);
+      if (f.isStored()) {
+        DatabaseINodeFilter.removeFilter(getId());
+        f.setStored(false);
+      }
+    }
+    if (f.needsRebuild()) {
+      f = INodeDirectoryFilter.build(getCurrentChildrenList2());
+      filter = f;
+    }
+    return f;
+  }
+
+  /**
+   * Queues the filter to be written back to the database, if it changed; called on cache
+   * eviction, so the filter is serialized and written on the filter writer thread instead. Until
+   * it is stored, the directory loaded again takes the queued filter over.
+   */
+  public void persistFilter() {
+    final INodeDirectoryFilter f = filter;
+    if (f != null && !f.isStored()) {
+      final long id = getId();
+      unstoredFilters.put(id, f);
+      filterWriter.execute(() -> writeFilter(id, f));
+    }
+  }
+
+  private static void writeFilter(long id, INodeDirectoryFilter f) {
+    synchronized (f) {
+      if (!unstoredFilters.remove(id, f)) {
+        // taken over and changed since, or replaced by a later eviction
+        return;
+      }
+      try {
+        DatabaseINodeFilter.setFilter(id, f.toBytes());
+        f.setStored(true);
+      } catch (IOException e) {
+        LOG.warn("Cannot persist the filter of directory " + id + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /** Waits for the filters queued by {@link #persistFilter} to be written. */
+  @VisibleForTesting
+  static void awaitFilterWrites() throws Exception {
+    filterWriter.submit(() -> { }).get();
+  }
+
+  /** Marks a directory that was just created as having no children, so nothing is read back. */
+  public void initEmptyChildrenList() {
+    children = new HashSet<>();
+    removedChildren = new HashSet<>();
+    childrenLoaded = true;
+    filter = INodeDirectoryFilter.build(children);
+  }
+
+  /**
+   * @return false if this directory has no child {@code name}; true if it has, or if the filter
+   *         matches a name that is still on its way to the database.
+   */
+  public boolean hasChild(String name) {
+    if (!getFilter().mightContain(name)) {
+      return false;
+    }
+    if (childrenLoaded || children.contains(name)) {
+      return children.contains(name);
+    }
+    if (removedChildren.contains(name)) {
+      return false;
+    }
+    return FSDirectory.getInstance().getInode(getPath(), name) != null;
+  }
+
+  @VisibleForTesting
+  void addChildName(String name) {
+    INodeDirectoryFilter f = getMutableFilter();
+    children.add(name);
+    if (!childrenLoaded) {
+      removedChildren.remove(name);
+    }
+    f.put(name);
+  }
+
+  // the filter must be taken before the name is dropped, as taking it may rebuild it from the
+  // current children and only names that were put may be deleted
+  @VisibleForTesting
+  boolean removeChildName(String name) {
+    INodeDirectoryFilter f = getMutableFilter();
+    boolean known = children.remove(name);
+    if (known) {
+      f.delete(name);
+    }
+    if (!childrenLoaded) {
+      // callers only remove children that exist
+      removedChildren.add(name);
+      if (!known) {
+        // but it may never have been put, and deleting it could drop the fingerprint of another
+        // child, so it is only counted towards a rebuild
+        f.skipDelete();
+      }
+      return true;
+    }
+    return known;
+  }
 
   public void updateINodeDirectory() {
     super.updateINode(0L);
@@ -184,7 +324,6 @@ public INodeDirectory(INode parent, long id, byte[] name, PermissionStatus permi
   // Note: only used by the loader of image file
   public INodeDirectory(long id) {
     super(id);
-    // FIXME: filter should be recovered from zookeeper or db.
   }
 
   /**
@@ -198,7 +337,10 @@ public INodeDirectory(long id) {
   public INodeDirectory(INodeDirectory other, boolean adopt,
       Feature... featuresToCopy) {
     super(other);
-    // filter = other.filter.copy();
+    this.children = other.children;
+    this.removedChildren = other.removedChildren;
+    this.childrenLoaded = other.childrenLoaded;
+    this.filter = other.filter;
     final ReadOnlyList<INode> children = other.getCurrentChildrenList();
     if (adopt && children != null) {
       for (INode child : children) {
@@ -541,7 +683,19 @@ public INode getChild(byte[] name, int snapshotId) {
     DirectoryWithSnapshotFeature sf;
     if (snapshotId == Snapshot.CURRENT_STATE_ID
         || (sf = getDirectoryWithSnapshotFeature()) == null) {
-      return FSDirectory.getInstance().getInode(this.getPath(), DFSUtil.bytes2String(name));
+      INodeChildIndex index = INodeKeyedObjects.getChildIndex();
+      INode child = index.get(getId(), name);
+      if (child == null) {
+        child = FSDirectory.getInstance().getInode(this.getPath(), DFSUtil.bytes2String(name));
+        if (child != null) {
+          index.put(this, child);
+          // the child may have left the inode cache meanwhile
+          if (INodeKeyedObjects.getCache().getIfPresent(child.getPath()) != child) {
+            index.remove(child);
+          }
+        }
+      }
+      return child;
     }
 
     return sf.getChild(this, name, snapshotId);
@@ -589,22 +743,103 @@ public ReadOnlyList<INode> getChildrenList(final int snapshotId) {
   }
 
   public HashSet<String> getCurrentChildrenList2() {
-    if (children.isEmpty()) {
-      children = new HashSet<>();
+    if (!childrenLoaded) {
+      // taken before the read, so that a child on its way to the database is in one or the other
+      Map<String, Boolean> unwritten =
+          INodeKeyedObjects.getWriteBehindLog().getUnwrittenChildren(getPath());
+      HashSet<String> names = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
+      for (Map.Entry<String, Boolean> e : unwritten.entrySet()) {
+        if (e.getValue()) {
+          names.add(e.getKey());
+        } else {
+          names.remove(e.getKey());
+        }
+      }
+      names.removeAll(removedChildren);
+      names.addAll(children);
+      children = names;
+      removedChildren = new HashSet<>();
+      childrenLoaded = true;
     }
     return children;
   }
 
+  /**
+   * Forgets the child names and the filter; both are read back from the database on their first
+   * use.
+   */
   public void resetCurrentChildrenList() {
-    children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
-  }  
+    children = new HashSet<>();
+    removedChildren = new HashSet<>();
+    childrenLoaded = false;
+    filter = null;
+  }
 
-  private ReadOnlyList<INode> getCurrentChildrenList() {
-    if (children.isEmpty()) {
-      children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
+  /**
+   * Returns one page of child names, for listings that must not load every child of a large
+   * directory. Unless the names are already in memory, only the page is read from the database,
+   * merged with the names added and removed here since the directory was loaded.
+   *
+   * @param startAfter the name to list after; "" for the first page
+   * @param limit the largest number of names to return
+   * @return the names after {@code startAfter}, in the order the database compares names in
+   */
+  public List<String> getChildrenNamesAfter(String startAfter, int limit) {
+    // the pages are cut in the database's order, so the names merged here must sort the same
+    Comparator<String> order = DatabaseINode.getNameOrder();
+    if (childrenLoaded) {
+      return firstNamesAfter(children, startAfter, limit, order);
+    }
+    // fetch enough rows to fill the page even if names removed here are among them
+    int fetch = limit + removedChildren.size();
+    List<String> page = DatabaseINode.getChildrenNamesPaged(getId(), startAfter, fetch);
+    // once the page is cut short, names past its last row may still be in the database
+    String last = (page.size() < fetch) ? null : page.get(page.size() - 1);
+    TreeSet<String> names = new TreeSet<>(order);
+    for (String name : page) {
+      if (!removedChildren.contains(name)) {
+        names.add(name);
+      }
+    }
+    for (String name : children) {
+      if (order.compare(name, startAfter) > 0
+          && (last == null || order.compare(name, last) <= 0)) {
+        names.add(name);
+      }
+    }
+    List<String> res = new ArrayList<>(Math.min(names.size(), limit));
+    for (String name : names) {
+      if (res.size() == limit) {
+        break;
+      }
+      res.add(name);
     }
+    return res;
+  }
+
+  private static List<String> firstNamesAfter(
+      Set<String> names, String startAfter, int limit, Comparator<String> order) {
+    // max-heap of the smallest names seen so far
+    PriorityQueue<String> heap = new PriorityQueue<>(order.reversed());
+    for (String name : names) {
+      if (order.compare(name, startAfter) <= 0) {
+        continue;
+      }
+      if (heap.size() < limit) {
+        heap.add(name);
+      } else if (order.compare(name, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(name);
+      }
+    }
+    List<String> res = new ArrayList<>(heap);
+    res.sort(order);
+    return res;
+  }
+
+  private ReadOnlyList<INode> getCurrentChildrenList() {
     List<INode> childs = new ArrayList<>(DEFAULT_FILES_PER_DIRECTORY);
-    for (String cname : children) {
+    for (String cname : getCurrentChildrenList2()) {
       INode child = FSDirectory.getInstance().getInode(getPath(), cname);
       if (child != null) {
         childs.add(child);
@@ -657,10 +892,7 @@ public boolean removeChild(INode child, int latestSnapshotId) {
    * @return true if the child is removed; false if the child is not found.
    */
   public boolean removeChild(final INode child) {
-    if (children.isEmpty()) {
-      return true;
-    }
-    return children.remove(child.getLocalName());
+    return removeChildName(child.getLocalName());
   }
 
   /**
@@ -676,13 +908,7 @@ public boolean removeChild(final INode child) {
   public boolean addChild(INode node, final boolean setModTime,
       final int latestSnapshotId) {
 
-    // if (getFilter().mightContain(String.valueOf(getId()) + node.getLocalName())) {
-    //   if (DatabaseINode.checkInodeExistence(getId(), node.getLocalName())) {
-    //     return false;
-    //   }
-    // }
-
-    if (getCurrentChildrenList2().contains(node.getLocalName())) {
+    if (hasChild(node.getLocalName())) {
       return false;
     }
 
@@ -713,40 +939,61 @@ private final String getOldPath(String oldParent, String oldName) {
     return path;
   }
 
-  public void localRename(INode node, String oldName, String oldParent, String newParent) {
-    // String name = DFSUtil.bytes2String(node.getLocalNameBytes());
-    String oldPath = getOldPath(oldParent, oldName);
-    int skip_id = oldParent.length();
-    Long old_id = node.getId();
-    if (node.isDirectory()) {
-      Queue<ImmutablePair<String, String>> q = new LinkedList<>();
-      q.add(new ImmutablePair<>(oldParent, oldName));
+  // rows moved per transaction by stores that move a subtree in chunks
+  private static final int RENAME_CHUNK_SIZE;
+  static {
+    int chunk = 5000;
+    String chunkStr = System.getenv("FILESCALE_RENAME_CHUNK_SIZE");
+    if (chunkStr != null) {
+      chunk = Integer.parseInt(chunkStr);
+    }
+    RENAME_CHUNK_SIZE = chunk;
+  }
 
-      ImmutablePair<String, String> id = null;
-      while ((id = q.poll()) != null) {
-        INode child = FSDirectory.getInstance().getInode(id.getLeft(), id.getRight());   
-        if (child != null) {
-          if (child.isDirectory()) {
-            HashSet<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
-            for (String cname : childNames) {
-              if (child.getId() == old_id) {
-                q.add(new ImmutablePair<>(getOldPath(oldParent, oldName), cname));
-              } else {
-                q.add(new ImmutablePair<>(child.getPath(), cname));
-              }
-            }
-          }
+  /**
+   * Moves a renamed directory and everything below it in the database without loading the
+   * subtree. Pending deltas are drained first so that no row is left behind under the old path,
+   * the cached subtree is dropped, and the store rewrites the parentName prefix of the rows
+   * below {@code oldPath}. Ids do not change, so children are still found by parent id. The row
+   * of the directory itself is moved last, through the write-behind log.
+   *
+   * <p>If the store fails, the rows it already moved are moved back and the failure is thrown
+   * before the cache or the write-behind log is touched, so the subtree stays at {@code oldPath}.
+   */
+  private void renameSubtree(INode node, String oldPath) throws IOException {
+    String newPath = node.getPath();
+    INodeKeyedObjects.getChildIndex().detach(node.getId());
+    INodeKeyedObjects.getWriteBehindLog().flush();
 
-          if (child.getId() != old_id) {
-            child.setParent(child.getParentId() + 40000000);
-            child.setParentName(newParent + child.getParentName().substring(skip_id));
-          }
-          child.setId(child.getId() + 40000000);
+    INodeKeyedObjects.invalidateSubtree(oldPath);
 
-          INodeKeyedObjects.getCache().put(child.getPath(), child);
-          INodeKeyedObjects.getRenameSet().add(child.getPath());
-        }
+    String offset;
+    try {
+      offset = DatabaseINode.renameSubtree(oldPath, newPath, RENAME_CHUNK_SIZE);
+    } catch (SQLException e) {
+      try {
+        // a store that moves the subtree in chunks may have moved some of them
+        DatabaseINode.renameSubtree(newPath, oldPath, RENAME_CHUNK_SIZE);
+      } catch (SQLException undo) {
+        LOG.error("The rows below " + oldPath + " are split between it and " + newPath
+            + "; moving " + oldPath + " to " + newPath + " again completes the move", undo);
       }
+      throw new IOException("Failed to move the subtree of " + oldPath + " to " + newPath, e);
+    }
+    if (offset != null) {
+      INodeKeyedObjects.setWalOffset(offset);
+    }
+
+    INodeKeyedObjects.getCache().invalidate(oldPath);
+    INodeKeyedObjects.getCache().put(newPath, node);
+    INodeKeyedObjects.getWriteBehindLog().rename(newPath, node);
+  }
+
+  public void localRename(INode node, String oldName, String oldParent, String newParent)
+      throws IOException {
+    String oldPath = getOldPath(oldParent, oldName);
+    if (node.isDirectory()) {
+      renameSubtree(node, oldPath);
     } else {
       INodeFile inode = node.asFile().copyINodeFile();
 
@@ -754,7 +1001,7 @@ public void localRename(INode node, String oldName, String oldParent, String new
       INodeKeyedObjects.getCache()
           .put(inode.getPath(), inode);
 
-      INodeKeyedObjects.getRenameSet().add(inode.getPath());
+      INodeKeyedObjects.getWriteBehindLog().rename(inode.getPath(), inode);
     }
   }
 
@@ -875,191 +1122,36 @@ void update_subtree_v2(Set<INode> renameSet, String nameNodeAddress) {
     }
   }
 
-  void update_subtree(Set<INode> renameSet) {
-    String database = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    BinaryObjectBuilder inodeKeyBuilder = null;
-    if (database.equals("IGNITE")) {
-      inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-    }
-
-    List<Long> longAttr = new ArrayList<>();
-    List<String> strAttr = new ArrayList<>();
-
-    List<Long> fileIds = new ArrayList<>();
-    List<String> fileAttr = new ArrayList<>();
-
-    Map<BinaryObject, BinaryObject> map = new HashMap<>();
-    Iterator<INode> iterator = renameSet.iterator();
-    while (iterator.hasNext()) {
-      INode inode = iterator.next();
-      if (inode == null) continue;
-      if (database.equals("VOLT")) {
-        strAttr.add(inode.getLocalName());
-        if (inode.getId() == 16385) {
-          strAttr.add(" ");
-        } else {
-          strAttr.add(inode.getParentName());
-        }
-        longAttr.add(inode.getParentId());
-        longAttr.add(inode.getId());
-        longAttr.add(inode.getModificationTime());
-        longAttr.add(inode.getAccessTime());
-        longAttr.add(inode.getPermissionLong());
-        if (inode.isDirectory()) {
-          longAttr.add(0L);
-        } else {
-          longAttr.add(inode.asFile().getHeaderLong());
-          FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-          if (uc != null) {
-            fileIds.add(inode.getId());
-            fileAttr.add(uc.getClientName(inode.getId()));
-            fileAttr.add(uc.getClientMachine(inode.getId()));
-          }
-        }
-      } else if (database.equals("IGNITE")) {
-        BinaryObject inodeKey = inodeKeyBuilder.setField("parentName", inode.getParentName()).setField("name", inode.getLocalName()).build();
-        BinaryObjectBuilder inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-        long header = 0L;
-        if (inode.isFile()) {
-          header = inode.asFile().getHeaderLong();
-        } 
-        String parentName = " ";
-        if (inode.getId() != 16385) {
-          parentName = inode.getParentName();
-        }
-        BinaryObject inodeValue = inodeBuilder
-          .setField("id", inode.getId(), Long.class)
-          .setField("parent", inode.getParentId(), Long.class)
-          .setField("parentName", parentName)
-          .setField("name", inode.getLocalName())
-          .setField("accessTime", inode.getAccessTime(), Long.class)
-          .setField("modificationTime", inode.getModificationTime(), Long.class)
-          .setField("header", header, Long.class)
-          .setField("permission", inode.getPermissionLong(), Long.class)
-          .build();
-        map.put(inodeKey, inodeValue);
-      }
-      iterator.remove();
-    }
-    try {
-      if (database.equals("VOLT") && strAttr.size() > 0) {
-        INodeKeyedObjects.setWalOffset(DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr));
-      } else if (database.equals("IGNITE") && map.size() > 0) {
-        IgniteCompute compute = conn.getIgniteClient().compute();
-        INodeKeyedObjects.setWalOffset(
-          compute.apply(new BatchUpdateINodes(), map)
-        );
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    Database.getInstance().retConnection(conn);
-  }
-
-  public void remoteRename(INode node, String oldName, String oldParent, String newParent, String address) {
-    int skip_id = oldParent.length();
-    Long old_id = node.getId();
+  public void remoteRename(INode node, String oldName, String oldParent, String newParent,
+      String address) throws IOException {
+    String oldPath = getOldPath(oldParent, oldName);
     if (node.isDirectory()) {
-      Queue<ImmutablePair<String, String>> q = new LinkedList<>();
-      q.add(new ImmutablePair<>(oldParent, oldName));
-
-      // log: delete the old directory
-      // FSDirectory.getInstance()
-      //   .getEditLog()
-      //   .logDelete(null, old_id, node.getModificationTime(), true);
-
-      ImmutablePair<String, String> id = null;
-      Set<INode> renameSet = new HashSet<>();
-
-      long dirtyCount = 100000;
-      String dirtyCountStr = System.getenv("FILESCALE_DIRTY_OBJECT_NUM");
-      String database = System.getenv("DATABASE");
-      if (dirtyCountStr != null) {
-        dirtyCount = Long.parseLong(dirtyCountStr);
-      }
-      long count = 0;
-      while ((id = q.poll()) != null) {
-        if (dirtyCount == 0) break;
-        INode child = FSDirectory.getInstance().getInode(id.getLeft(), id.getRight());   
-        if (child != null) {
-          if (child.isDirectory()) {
-            HashSet<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
-            for (String cname : childNames) {
-              if (child.getId() == old_id) {
-                q.add(new ImmutablePair<>(getOldPath(oldParent, oldName), cname));
-              } else {
-                q.add(new ImmutablePair<>(child.getPath(), cname));
-              }
-            }
-          }
-
-          if (child.getId() != old_id) {
-            renameSet.add(child);
-          }
-          count++;
-          INodeKeyedObjects.getCache().invalidate(child.getPath());
-          if (count == dirtyCount) {
-            // write back to db
-            update_subtree(renameSet);
-            break;
-          }
-        }
-      }
-      if (count < dirtyCount && renameSet.size() > 0) {
-        update_subtree(renameSet);
-        // update_subtree_v2(renameSet, address);
-      }
-
       String start = INodeKeyedObjects.getWalOffset();
-      if (database.equals("VOLT")) {
-        INodeKeyedObjects.setWalOffset(DatabaseINode.updateSubtree(old_id, 40000000,
-          oldParent, "/nnThroughputBenchmark/rename", node.getParentId())
-        );
-      } else if (database.equals("IGNITE")) {
-        DatabaseConnection conn = Database.getInstance().getConnection();
-        IgniteCompute compute = conn.getIgniteClient().compute();
-        INodeKeyedObjects.setWalOffset(
-          compute.apply(new RenameSubtreeINodes(), new RenamePayload(old_id, 40000000,
-            oldParent, "/nnThroughputBenchmark/rename", node.getParentId()))
-        );
-        Database.getInstance().retConnection(conn);
-      }
-      // try{
-      //   Thread.sleep(2); // 2 ms
-      // } catch (Exception e) {
-      //   e.printStackTrace();
-      // }
+      renameSubtree(node, oldPath);
       String end = INodeKeyedObjects.getWalOffset();
       FSDirectory.getInstance()
         .getEditLog()
-        .logRenameMP("/nnThroughputBenchmark/create", "/nnThroughputBenchmark/rename",
-        getModificationTime(), false, start, end);
+        .logRenameMP(oldPath, node.getPath(), getModificationTime(), false, start, end);
     } else {
       // log: delete old file
       FSDirectory.getInstance()
         .getEditLog()
-        .logDelete(null, old_id, node.getModificationTime(), true);
+        .logDelete(null, node.getId(), node.getModificationTime(), true);
 
-      node.setId(old_id + 40000000);
       // log: create new file
       FSDirectory.getInstance()
         .getEditLog()
         .logOpenFile(null, (INodeFile)node, true, true);
 
-      // CompletableFuture.runAsync(() -> {
-        // stored procedure: 1 DML statements
-        DatabaseINode.setId(old_id, old_id + 40000000, newParent, node.getParentId());
-      // }, Database.getInstance().getExecutorService());
-
-      // invalidate old node
-      INodeKeyedObjects.getCache().invalidate(oldParent + oldName);
+      INodeKeyedObjects.getCache().invalidate(oldPath);
+      INodeKeyedObjects.getCache().put(node.getPath(), node);
+      INodeKeyedObjects.getWriteBehindLog().rename(node.getPath(), node);
     }
   }
 
   public boolean addChild(INode node) {
     node.setParent(getId());
-    children.add(node.getLocalName());
+    addChildName(node.getLocalName());
     if (node.getGroupName() == null) {
       node.setGroup(getGroupName());
     }
@@ -1069,7 +1161,7 @@ public boolean addChild(INode node) {
   // for rename inode
   public boolean addChild(
       INode node, final String name, final boolean setModTime,
-      final int latestSnapshotId, final String existingPath) {
+      final int latestSnapshotId, final String existingPath) throws IOException {
 
     if (isInLatestSnapshot(latestSnapshotId)) {
       // create snapshot feature if necessary
@@ -1081,32 +1173,42 @@ public boolean addChild(
     }
 
     INode inode = node;
-    // getFilter().put(String.valueOf(getId()) + name);
-    getCurrentChildrenList2().add(name);
+    addChildName(name);
     if (node.getParentId() != getId() || !node.getLocalName().equals(name)) {
-      node.getParent().getCurrentChildrenList2().remove(node.getLocalName());
-      // node.getParent().getFilter().delete(String.valueOf(node.getParentId()) + node.getLocalName());
+      node.getParent().removeChildName(node.getLocalName());
 
+      long oldParentId = node.getParentId();
       String oldParent = node.getParentName();
       String oldName = node.getLocalName();
+      byte[] oldNameBytes = node.getLocalNameBytes();
       node.setParent(getId());
       node.setParentName(getPath());
       node.setLocalName(DFSUtil.string2Bytes(name));
       String newParent = node.getParentName();
 
-      // get mount point from zookeeper
-      if (FSDirectory.getInstance().isLocalNN()) {
-        localRename(node, oldName, oldParent, newParent);
-      } else {
-        String[] address = new String[2];
-        try {
-          String mpoint = FSDirectory.getInstance().getMountsManager().resolve(existingPath);
-          LOG.info(existingPath + " : " + mpoint);
-          address = mpoint.replace("hdfs://","").split(":");
-        } catch (Exception e) {
-          e.printStackTrace();
+      try {
+        // get mount point from zookeeper
+        if (FSDirectory.getInstance().isLocalNN()) {
+          localRename(node, oldName, oldParent, newParent);
+        } else {
+          String[] address = new String[2];
+          try {
+            String mpoint = FSDirectory.getInstance().getMountsManager().resolve(existingPath);
+            LOG.info(existingPath + " : " + mpoint);
+            address = mpoint.replace("hdfs://","").split(":");
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+          remoteRename(node, oldName, oldParent, newParent, address[0]);
         }
-        remoteRename(node, oldName, oldParent, newParent, address[0]);
+      } catch (IOException e) {
+        // the database still holds the node at its old path; the caller puts
+        // it back under its old parent
+        removeChildName(name);
+        node.setParent(oldParentId);
+        node.setParentName(oldParent);
+        node.setLocalName(oldNameBytes);
+        throw e;
       }
     }
 
@@ -1177,9 +1279,7 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
   private QuotaCounts computeDirectoryQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, QuotaCounts counts, boolean useCache,
       int lastSnapshotId) {
-    if (children.isEmpty()) {
-      children = new HashSet<>(DatabaseINode.getChildrenNames(getId()));
-    }
+    HashSet<String> children = getCurrentChildrenList2();
     if (!children.isEmpty()) {
       for (String cname : children) {
         INode child = FSDirectory.getInstance().getInode(getPath(), cname);
@@ -1329,6 +1429,7 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
   /** Set the children list to null. */
   public void clearChildren() {
     this.children = null;
+    this.filter = null;
   }
 
   @Override
@@ -0,0 +1,172 @@
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.hdfs.cuckoofilter4j.CuckooFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Membership filter over the child names of one directory, used to answer negative lookups
+ * without reading the directory's children from the database.
+ *
+ * <p>A cuckoo filter cannot be resized in place, so this is a chain of filters. A directory
+ * starts with a small filter (FILESCALE_FILTER_INITIAL_CAPACITY names, default 64, or twice the
+ * number of children it is built from) and, once the newest filter passes its load limit, a
+ * filter of twice the capacity is appended. Growing copies the chain and publishes it through a
+ * volatile field, so lookups never wait for it; within a filter, puts and lookups are made safe
+ * by the filter's own segmented bucket locks.
+ *
+ * <p>A name is deleted from the filter only while the chain holds a single filter: with several,
+ * the filter that matches a name may not be the one it was put in, and deleting the wrong
+ * fingerprint would hide another child. Such deletions are counted instead, and the directory
+ * rebuilds its filter once they, or the chain, grow too large. So are the deletions of names
+ * the directory does not know to have been put.
+ */
+public class INodeDirectoryFilter {
+  static final Logger LOG = LoggerFactory.getLogger(INodeDirectoryFilter.class);
+
+  private static final int INITIAL_CAPACITY;
+  // a filter this full gets a successor instead of more names
+  private static final double MAX_LOAD_FACTOR = 0.9;
+  private static final int MAX_CHAIN_LENGTH = 4;
+
+  static {
+    String capacity = System.getenv("FILESCALE_FILTER_INITIAL_CAPACITY");
+    INITIAL_CAPACITY = (capacity == null) ? 64 : Integer.parseInt(capacity);
+  }
+
+  private volatile CuckooFilter<CharSequence>[] chain;
+  private final AtomicLong stale;
+  // whether the database holds the current state of this filter
+  private volatile boolean stored = false;
+
+  private INodeDirectoryFilter(CuckooFilter<CharSequence>[] chain, long stale) {
+    this.chain = chain;
+    this.stale = new AtomicLong(stale);
+  }
+
+  /** @return a filter holding {@code names}, with room for as many again. */
+  @SuppressWarnings("unchecked")
+  public static INodeDirectoryFilter build(Collection<String> names) {
+    CuckooFilter<CharSequence>[] chain = new CuckooFilter[] {
+        CuckooFilterFactory.create(Math.max(INITIAL_CAPACITY, 2L * names.size()))};
+    INodeDirectoryFilter filter = new INodeDirectoryFilter(chain, 0);
+    for (String name : names) {
+      filter.put(name);
+    }
+    return filter;
+  }
+
+  public boolean mightContain(String name) {
+    for (CuckooFilter<CharSequence> f : chain) {
+      if (f.mightContain(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void put(String name) {
+    CuckooFilter<CharSequence>[] c = chain;
+    CuckooFilter<CharSequence> last = c[c.length - 1];
+    if (last.getLoadFactor() < MAX_LOAD_FACTOR && last.put(name)) {
+      return;
+    }
+    grow(c, name);
+  }
+
+  private synchronized void grow(CuckooFilter<CharSequence>[] seen, String name) {
+    CuckooFilter<CharSequence>[] c = chain;
+    CuckooFilter<CharSequence> last = c[c.length - 1];
+    if (c != seen && last.getLoadFactor() < MAX_LOAD_FACTOR && last.put(name)) {
+      // another thread grew the chain first
+      return;
+    }
+    CuckooFilter<CharSequence> next = CuckooFilterFactory.create(2 * last.getActualCapacity());
+    next.put(name);
+    CuckooFilter<CharSequence>[] grown = Arrays.copyOf(c, c.length + 1);
+    grown[c.length] = next;
+    chain = grown;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Directory filter grown to " + grown.length + " filters, capacity "
+          + next.getActualCapacity());
+    }
+  }
+
+  /** Forgets {@code name}, which must have been put before. */
+  public void delete(String name) {
+    CuckooFilter<CharSequence>[] c = chain;
+    if (c.length == 1 && c[0].delete(name)) {
+      return;
+    }
+    stale.incrementAndGet();
+  }
+
+  /** Counts the deletion of a name that may not have been put, without deleting it. */
+  public void skipDelete() {
+    stale.incrementAndGet();
+  }
+
+  /** @return true if the filter should be rebuilt from the directory's current children. */
+  public boolean needsRebuild() {
+    CuckooFilter<CharSequence>[] c = chain;
+    return c.length > MAX_CHAIN_LENGTH || stale.get() > getCount() / 2;
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (CuckooFilter<CharSequence> f : chain) {
+      count += f.getCount();
+    }
+    return count;
+  }
+
+  public boolean isStored() {
+    return stored;
+  }
+
+  public void setStored(boolean stored) {
+    this.stored = stored;
+  }
+
+  public byte[] toBytes() throws IOException {
+    CuckooFilter<CharSequence>[] c = chain;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeLong(stale.get());
+      out.writeInt(c.length);
+      for (CuckooFilter<CharSequence> f : c) {
+        out.writeObject(f);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /** @return the filter serialized by {@link #toBytes}, or null if it cannot be read. */
+  @SuppressWarnings("unchecked")
+  public static INodeDirectoryFilter fromBytes(byte[] bytes) {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      long stale = in.readLong();
+      CuckooFilter<CharSequence>[] chain = new CuckooFilter[in.readInt()];
+      for (int i = 0; i < chain.length; ++i) {
+        chain[i] = (CuckooFilter<CharSequence>) in.readObject();
+      }
+      if (chain.length == 0) {
+        return null;
+      }
+      INodeDirectoryFilter filter = new INodeDirectoryFilter(chain, stale);
+      filter.stored = true;
+      return filter;
+    } catch (IOException | ClassNotFoundException e) {
+      LOG.warn("Cannot read directory filter: " + e.getMessage());
+      return null;
+    }
+  }
+}
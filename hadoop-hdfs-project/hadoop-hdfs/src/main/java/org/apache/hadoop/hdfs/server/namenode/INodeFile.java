@@ -94,7 +94,10 @@ public static INodeFile valueOf(INode inode, String path, boolean acceptNull)
         pathComponents = fsd.resolveComponents(pathComponents, fsd);
         String parentStr = DFSUtil.byteArray2PathString(pathComponents, 0, pathComponents.length - 1);
         String childStr = DFSUtil.byteArray2PathString(pathComponents, pathComponents.length - 1, 1);
-        DatabaseINode.LoadINode node = new DatabaseINode().loadINode(parentStr, childStr);
+        DatabaseINode.LoadINode node = INodeKeyedObjects.getEvicted(path);
+        if (node == null) {
+          node = new DatabaseINode().loadINode(parentStr, childStr);
+        }
         if (node == null) throw new FileNotFoundException("File does not exist: " + parentStr + ", " + childStr);
         byte[] name = (node.name != null && node.name.length() > 0) ? DFSUtil.string2Bytes(node.name) : null;
         if (node.header != 0L) {
@@ -126,7 +129,7 @@ public static INodeFile valueOf(INode inode, String path, boolean acceptNull)
                   node.parentName);
           inode.asDirectory().resetCurrentChildrenList();
         }
-        INodeKeyedObjects.getCache().put(path, inode);
+        INodeKeyedObjects.admit(path, inode);
       }
     }
     if (!inode.isFile()) {
@@ -685,7 +688,7 @@ private void setFileReplication(short replication) {
         ~HeaderFormat.MAX_REDUNDANCY) | replication;
     header = HeaderFormat.BLOCK_LAYOUT_AND_REDUNDANCY.BITS.
         combine(layoutRedundancy, head);
-    INodeKeyedObjects.getUpdateSet().add(getPath());
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   /** Set the replication factor of this file. */
@@ -737,7 +740,7 @@ public byte getStoragePolicyID() {
   private void setStoragePolicyID(byte storagePolicyId) {
     header = HeaderFormat.STORAGE_POLICY_ID.BITS.combine(storagePolicyId,
       getHeaderLong());
-    INodeKeyedObjects.getUpdateSet().add(getPath()); 
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   public final void setStoragePolicyID(byte storagePolicyId,
@@ -779,14 +782,25 @@ public BlockType getBlockType() {
   @Override // INodeFileAttributes
   public long getHeaderLong() {
     if (header == -1L) {
-      header = DatabaseINode.getHeader(getId());
+      loadRow();
     }
     return header;
   }
 
+  @Override
+  void hydrate(DatabaseINode.LoadINode node) {
+    super.hydrate(node);
+    if (header == -1L) {
+      header = node.header;
+    }
+    if (uc != null) {
+      uc.hydrate(node.clientName, node.clientMachine);
+    }
+  }
+
   public void setHeaderLong(long header) {
     this.header = header;
-    INodeKeyedObjects.getUpdateSet().add(getPath());
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   /** @return the blocks of the file. */
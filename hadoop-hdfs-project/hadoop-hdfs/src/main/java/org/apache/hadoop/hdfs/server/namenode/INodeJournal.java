@@ -0,0 +1,365 @@
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, memory-mapped journal of the deltas held by {@link INodeWriteBehindLog}.
+ *
+ * <p>Every delta is written here before the operation that produced it returns to the client, so
+ * changes that were acknowledged but not yet written to the database survive a namenode crash.
+ * On startup the entries past the last checkpoint are replayed into the database.
+ *
+ * <p>The journal is a directory of fixed-size segment files, each mapped into memory and filled
+ * with length-prefixed entries. The length of an entry is stored after its body, so a torn entry
+ * reads as the end of the segment. A small checkpoint file holds the sequence number up to which
+ * every delta has reached the database, together with the wal offset the database returned for
+ * it; closed segments entirely below the checkpoint are deleted.
+ *
+ * <p>The journal is enabled by setting INODE_JOURNAL_DIR. INODE_JOURNAL_SEGMENT_SIZE sets the
+ * segment size in bytes (default 64 MB), and INODE_JOURNAL_FORCE=true forces the mapped pages to
+ * disk on every sync rather than leaving them to the page cache.
+ */
+public class INodeJournal {
+  static final Logger LOG = LoggerFactory.getLogger(INodeJournal.class);
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String CHECKPOINT = "checkpoint";
+  private static final int CHECKPOINT_SIZE = 4096;
+
+  /** One journaled delta: the path and, unless it is a remove, the full inode row. */
+  static final class Entry {
+    long seq;
+    INodeWriteBehindLog.Op op;
+    boolean removeFirst;
+    String path;
+    long parent;
+    long id;
+    long modificationTime;
+    long accessTime;
+    long permission;
+    long header;
+    String name;
+    String parentName;
+    String clientName;
+    String clientMachine;
+
+    static Entry of(long seq, INodeWriteBehindLog.Op op, boolean removeFirst, String path,
+        INode inode) {
+      Entry e = new Entry();
+      e.seq = seq;
+      e.op = op;
+      e.removeFirst = removeFirst;
+      e.path = path;
+      if (op == INodeWriteBehindLog.Op.REMOVE) {
+        return e;
+      }
+      e.parent = inode.getParentId();
+      e.id = inode.getId();
+      e.modificationTime = inode.getModificationTime();
+      e.accessTime = inode.getAccessTime();
+      e.permission = inode.getPermissionLong();
+      e.name = inode.getLocalName();
+      e.parentName = inode.getParentName();
+      if (inode.isFile()) {
+        e.header = inode.asFile().getHeaderLong();
+        FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
+        if (uc != null) {
+          e.clientName = uc.getClientName(e.id);
+          e.clientMachine = uc.getClientMachine(e.id);
+        }
+      }
+      return e;
+    }
+
+    boolean isUnderConstruction() {
+      return clientName != null;
+    }
+  }
+
+  private static final class Segment {
+    final File file;
+    final MappedByteBuffer buf;
+    long maxSeq = 0;
+
+    Segment(File file, MappedByteBuffer buf) {
+      this.file = file;
+      this.buf = buf;
+    }
+  }
+
+  private final File dir;
+  private final int segmentSize;
+  private final boolean force;
+  private final MappedByteBuffer checkpoint;
+  private final List<Segment> closed = new ArrayList<>();
+  private Segment current = null;
+  private long nextSegment = 0;
+  private long checkpointSeq = 0;
+  private long lastSeq = 0;
+
+  INodeJournal(File dir, int segmentSize, boolean force) throws IOException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.force = force;
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create journal directory " + dir);
+    }
+    this.checkpoint = map(new File(dir, CHECKPOINT), CHECKPOINT_SIZE);
+  }
+
+  /** @return the journal configured by INODE_JOURNAL_DIR, or null if it is not set. */
+  static INodeJournal open() {
+    String path = System.getenv("INODE_JOURNAL_DIR");
+    if (path == null) {
+      return null;
+    }
+    int size = 64 << 20;
+    String sizeStr = System.getenv("INODE_JOURNAL_SEGMENT_SIZE");
+    if (sizeStr != null) {
+      size = Integer.parseInt(sizeStr);
+    }
+    boolean force = Boolean.parseBoolean(System.getenv("INODE_JOURNAL_FORCE"));
+    try {
+      return new INodeJournal(new File(path), size, force);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(-1);
+    }
+    return null;
+  }
+
+  private static MappedByteBuffer map(File file, int size) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      if (raf.length() < size) {
+        raf.setLength(size);
+      }
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  /**
+   * Reads the entries written after the last checkpoint, in sequence order. Must be called once,
+   * before any append.
+   */
+  synchronized List<Entry> recover() throws IOException {
+    checkpointSeq = checkpoint.getLong(0);
+    lastSeq = checkpointSeq;
+    List<Entry> entries = new ArrayList<>();
+    for (File file : listSegments()) {
+      nextSegment = Math.max(nextSegment, segmentNumber(file) + 1);
+      MappedByteBuffer buf;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      }
+      Segment segment = new Segment(file, null);
+      while (buf.remaining() >= 4) {
+        int len = buf.getInt(buf.position());
+        if (len <= 0 || len > buf.remaining() - 4) {
+          break;
+        }
+        int start = buf.position() + 4;
+        buf.position(start);
+        Entry e = read(buf);
+        buf.position(start + len);
+        segment.maxSeq = Math.max(segment.maxSeq, e.seq);
+        lastSeq = Math.max(lastSeq, e.seq);
+        if (e.seq > checkpointSeq) {
+          entries.add(e);
+        }
+      }
+      closed.add(segment);
+    }
+    entries.sort(Comparator.comparingLong(e -> e.seq));
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Inode journal " + dir + ": checkpoint " + checkpointSeq + " ("
+          + readWalOffset() + "), " + entries.size() + " entries to replay");
+    }
+    rotate();
+    return entries;
+  }
+
+  /** Largest sequence number found in the journal or its checkpoint. */
+  synchronized long getLastSeq() {
+    return lastSeq;
+  }
+
+  synchronized void append(Entry e) {
+    byte[] body = encode(e);
+    if (current.buf.remaining() < body.length + 8) {
+      if (body.length + 8 > segmentSize) {
+        LOG.error("Journal entry of " + body.length + " bytes exceeds the segment size");
+        return;
+      }
+      rotate();
+    }
+    MappedByteBuffer buf = current.buf;
+    int pos = buf.position();
+    buf.position(pos + 4);
+    buf.put(body);
+    // the length goes in last so that a torn entry terminates the segment
+    buf.putInt(pos, body.length);
+    current.maxSeq = Math.max(current.maxSeq, e.seq);
+  }
+
+  /** Makes the appended entries durable against a machine crash, if configured to. */
+  void sync() {
+    if (force) {
+      MappedByteBuffer buf;
+      synchronized (this) {
+        buf = current.buf;
+      }
+      buf.force();
+    }
+  }
+
+  /**
+   * Records that every delta up to {@code seq} has been written to the database, and deletes the
+   * closed segments that hold nothing newer.
+   */
+  synchronized void checkpoint(long seq, String walOffset) {
+    if (seq <= checkpointSeq) {
+      return;
+    }
+    byte[] offset = (walOffset == null ? "" : walOffset).getBytes(StandardCharsets.UTF_8);
+    int len = Math.min(offset.length, CHECKPOINT_SIZE - 12);
+    checkpoint.position(12);
+    checkpoint.put(offset, 0, len);
+    checkpoint.putInt(8, len);
+    checkpoint.putLong(0, seq);
+    checkpointSeq = seq;
+
+    Iterator<Segment> it = closed.iterator();
+    while (it.hasNext()) {
+      Segment segment = it.next();
+      if (segment.maxSeq <= seq) {
+        if (!segment.file.delete()) {
+          LOG.warn("Cannot delete journal segment " + segment.file);
+        }
+        it.remove();
+      }
+    }
+  }
+
+  private String readWalOffset() {
+    int len = checkpoint.getInt(8);
+    byte[] offset = new byte[Math.max(0, Math.min(len, CHECKPOINT_SIZE - 12))];
+    for (int i = 0; i < offset.length; ++i) {
+      offset[i] = checkpoint.get(12 + i);
+    }
+    return new String(offset, StandardCharsets.UTF_8);
+  }
+
+  private void rotate() {
+    if (current != null) {
+      if (force) {
+        current.buf.force();
+      }
+      closed.add(current);
+    }
+    File file = new File(dir, SEGMENT_PREFIX + nextSegment++);
+    try {
+      current = new Segment(file, map(file, segmentSize));
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(-1);
+    }
+  }
+
+  private List<File> listSegments() {
+    File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX));
+    if (files == null) {
+      return new ArrayList<>();
+    }
+    Arrays.sort(files, Comparator.comparingLong(INodeJournal::segmentNumber));
+    return Arrays.asList(files);
+  }
+
+  private static long segmentNumber(File file) {
+    return Long.parseLong(file.getName().substring(SEGMENT_PREFIX.length()));
+  }
+
+  private static byte[] encode(Entry e) {
+    byte[] path = bytes(e.path);
+    byte[] name = bytes(e.name);
+    byte[] parentName = bytes(e.parentName);
+    byte[] clientName = bytes(e.clientName);
+    byte[] clientMachine = bytes(e.clientMachine);
+    int size = 8 + 1 + 1 + 4 + path.length;
+    boolean row = e.op != INodeWriteBehindLog.Op.REMOVE;
+    if (row) {
+      size += 6 * 8 + 4 * 4 + name.length + parentName.length + clientName.length
+          + clientMachine.length;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(size);
+    buf.putLong(e.seq);
+    buf.put((byte) e.op.ordinal());
+    buf.put((byte) (e.removeFirst ? 1 : 0));
+    putString(buf, path, e.path);
+    if (row) {
+      buf.putLong(e.parent);
+      buf.putLong(e.id);
+      buf.putLong(e.modificationTime);
+      buf.putLong(e.accessTime);
+      buf.putLong(e.permission);
+      buf.putLong(e.header);
+      putString(buf, name, e.name);
+      putString(buf, parentName, e.parentName);
+      putString(buf, clientName, e.clientName);
+      putString(buf, clientMachine, e.clientMachine);
+    }
+    return buf.array();
+  }
+
+  private static Entry read(ByteBuffer buf) {
+    Entry e = new Entry();
+    e.seq = buf.getLong();
+    e.op = INodeWriteBehindLog.Op.values()[buf.get()];
+    e.removeFirst = buf.get() != 0;
+    e.path = getString(buf);
+    if (e.op != INodeWriteBehindLog.Op.REMOVE) {
+      e.parent = buf.getLong();
+      e.id = buf.getLong();
+      e.modificationTime = buf.getLong();
+      e.accessTime = buf.getLong();
+      e.permission = buf.getLong();
+      e.header = buf.getLong();
+      e.name = getString(buf);
+      e.parentName = getString(buf);
+      e.clientName = getString(buf);
+      e.clientMachine = getString(buf);
+    }
+    return e;
+  }
+
+  private static byte[] bytes(String s) {
+    return (s == null) ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void putString(ByteBuffer buf, byte[] bytes, String s) {
+    buf.putInt(s == null ? -1 : bytes.length);
+    buf.put(bytes);
+  }
+
+  private static String getString(ByteBuffer buf) {
+    int len = buf.getInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[len];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
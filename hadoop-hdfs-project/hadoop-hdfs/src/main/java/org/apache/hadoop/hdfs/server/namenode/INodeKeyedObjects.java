@@ -6,6 +6,7 @@
 import com.github.benmanes.caffeine.cache.*;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.annotations.VisibleForTesting;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -19,13 +20,11 @@
 import org.apache.hadoop.hdfs.db.Database;
 import org.apache.hadoop.hdfs.db.DatabaseINode;
 import org.apache.hadoop.hdfs.db.DatabaseConnection;
-import org.apache.hadoop.hdfs.db.ignite.BatchRenameINodes;
-import org.apache.hadoop.hdfs.db.ignite.BatchRemoveINodes;
-import org.apache.hadoop.hdfs.db.ignite.BatchUpdateINodes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.ignite.*;
 import org.apache.ignite.lang.IgniteClosure;
@@ -36,18 +35,18 @@ public class INodeKeyedObjects {
   private static IndexedCache<String, INode> cache;
   private static Cache<String, String> move;
 
-  private static Set<String> concurrentUpdateSet;
-  private static Set<String> concurrentRenameSet;
-  private static Set<String> concurrentRemoveSet;
-  private static long preRemoveSize = 0;
-  private static long preRenameSize = 0;
-  private static long preUpdateSize = 0;
+  private static volatile INodeWriteBehindLog writeBehindLog;
+  private static final INodeChildIndex childIndex = new INodeChildIndex();
+  // second-level tier of evicted inodes, or null if FILESCALE_OFFHEAP_CACHE_MB is not set
+  private static final INodeOffHeapTier offHeap = INodeOffHeapTier.fromEnv();
+
+  // scan scopes entered by the thread, see beginScan
+  private static final ThreadLocal<int[]> scanDepth = ThreadLocal.withInitial(() -> new int[1]);
+  private static final LongAdder scanBypass = new LongAdder();
 
   // gloabal unique ID (VoltDB)
   private static AtomicReference<String> walOffset = new AtomicReference<String>();
 
-  private static ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-
   static final Logger LOG = LoggerFactory.getLogger(INodeKeyedObjects.class);
 
   INodeKeyedObjects() {}
@@ -64,467 +63,68 @@ public static void setWalOffset(Long id) {
     walOffset.set(Long.toString(id));
   }
 
-  public static Set<String> getUpdateSet() {
-    if (concurrentUpdateSet == null) {
-      ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
-      concurrentUpdateSet = map.newKeySet();
+  public static INodeWriteBehindLog getWriteBehindLog() {
+    if (writeBehindLog == null) {
+      synchronized (INodeKeyedObjects.class) {
+        if (writeBehindLog == null) {
+          INodeWriteBehindLog log = new INodeWriteBehindLog();
+          log.start();
+          writeBehindLog = log;
+        }
+      }
     }
-    return concurrentUpdateSet;
+    return writeBehindLog;
   }
 
-  public static Set<String> getRemoveSet() {
-    if (concurrentRemoveSet == null) {
-      ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
-      concurrentRemoveSet = map.newKeySet();
-    }
-    return concurrentRemoveSet;
+  public static INodeChildIndex getChildIndex() {
+    return childIndex;
   }
 
-  public static Set<String> getRenameSet() {
-    if (concurrentRenameSet == null) {
-      ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
-      concurrentRenameSet = map.newKeySet();
-    }
-    return concurrentRenameSet;
+  /**
+   * Marks the calling thread as running a scan (a content summary, a listing or fsck) until the
+   * matching {@link #endScan}. Scopes nest.
+   */
+  public static void beginScan() {
+    scanDepth.get()[0]++;
   }
 
-  private static void insertToDB() {
-    if (concurrentUpdateSet == null) {
-      return;
-    }
-    int i = 0;
-    final int num = 1024;
-    long updateSize = concurrentUpdateSet.size();
-    String env = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    if (updateSize >= num) {
-      Iterator<String> iterator = concurrentUpdateSet.iterator();
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Sync update files/directories from cache to database.");
-      }
-
-      List<Long> longAttr = new ArrayList<>();
-      List<String> strAttr = new ArrayList<>();
-
-      List<Long> fileIds = new ArrayList<>();
-      List<String> fileAttr = new ArrayList<>();
-      Map<BinaryObject, BinaryObject> map = new HashMap<>();
-      while (iterator.hasNext()) {
-        INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-        if (inode == null) continue;
-        if (env.equals("VOLT")) {
-          strAttr.add(inode.getLocalName());
-          if (inode.getId() == 16385) {
-            strAttr.add(" ");
-          } else {
-            strAttr.add(inode.getParentName());
-          }
-          longAttr.add(inode.getParentId());
-          longAttr.add(inode.getId());
-          longAttr.add(inode.getModificationTime());
-          longAttr.add(inode.getAccessTime());
-          longAttr.add(inode.getPermissionLong());
-          if (inode.isDirectory()) {
-            longAttr.add(0L);
-          } else {
-            longAttr.add(inode.asFile().getHeaderLong());
-            FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-            if (uc != null) {
-              fileIds.add(inode.getId());
-              fileAttr.add(uc.getClientName(inode.getId()));
-              fileAttr.add(uc.getClientMachine(inode.getId()));
-            }
-          }
-        } else if (env.equals("IGNITE")) {
-          BinaryObjectBuilder inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-          BinaryObject inodeKey = inodeKeyBuilder.setField("parentName", inode.getParentName()).setField("name", inode.getLocalName()).build();
-          BinaryObjectBuilder inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-          long header = 0L;
-          if (inode.isFile()) {
-            header = inode.asFile().getHeaderLong();
-          } 
-          String parentName = " ";
-          if (inode.getId() != 16385) {
-            parentName = inode.getParentName();
-          }
-          BinaryObject inodeValue = inodeBuilder
-            .setField("id", inode.getId(), Long.class)
-            .setField("parent", inode.getParentId(), Long.class)
-            .setField("parentName", parentName)
-            .setField("name", inode.getLocalName())
-            .setField("accessTime", inode.getAccessTime(), Long.class)
-            .setField("modificationTime", inode.getModificationTime(), Long.class)
-            .setField("header", header, Long.class)
-            .setField("permission", inode.getPermissionLong(), Long.class)
-            .build();
-          map.put(inodeKey, inodeValue);
-        }
-        iterator.remove();
-        if (++i >= num) break;
-      }
-      try {
-        if (env.equals("VOLT") && strAttr.size() > 0) {          
-          INodeKeyedObjects.setWalOffset(DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr));
-        } else if (env.equals("IGNITE") && map.size() > 0) {
-          IgniteCompute compute = conn.getIgniteClient().compute();
-          INodeKeyedObjects.setWalOffset(
-            compute.apply(new BatchUpdateINodes(), map)
-          );
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    } else {
-      if (updateSize > 0 && preUpdateSize == updateSize) {
-        Iterator<String> iterator = concurrentUpdateSet.iterator();
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate updated files/directories from cache to database.");
-        }
-        try {
-          List<Long> longAttr = new ArrayList<>();
-          List<String> strAttr = new ArrayList<>();
-          List<Long> fileIds = new ArrayList<>();
-          List<String> fileAttr = new ArrayList<>();
-          Map<BinaryObject, BinaryObject> map = new HashMap<>();
-          while (iterator.hasNext()) {
-            INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-            if (inode == null) continue;
-            if (env.equals("VOLT")) {
-              strAttr.add(inode.getLocalName());
-              if (inode.getId() == 16385) {
-                strAttr.add(" ");
-              } else {
-                strAttr.add(inode.getParentName());
-              }
-              longAttr.add(inode.getParentId());
-              longAttr.add(inode.getId());
-              longAttr.add(inode.getModificationTime());
-              longAttr.add(inode.getAccessTime());
-              longAttr.add(inode.getPermissionLong());
-              if (inode.isDirectory()) {
-                longAttr.add(0L);
-              } else {
-                longAttr.add(inode.asFile().getHeaderLong());
-                FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-                if (uc != null) {
-                  fileIds.add(inode.getId());
-                  fileAttr.add(uc.getClientName(inode.getId()));
-                  fileAttr.add(uc.getClientMachine(inode.getId()));
-                }
-              }
-            } else if (env.equals("IGNITE")) {
-              BinaryObjectBuilder inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-              BinaryObject inodeKey = inodeKeyBuilder.setField("parentName", inode.getParentName()).setField("name", inode.getLocalName()).build();
-              BinaryObjectBuilder inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-              long header = 0L;
-              if (inode.isFile()) {
-                header = inode.asFile().getHeaderLong();
-              } 
-              String parentName = " ";
-              if (inode.getId() != 16385) {
-                parentName = inode.getParentName();
-              }
-              BinaryObject inodeValue = inodeBuilder
-                .setField("id", inode.getId(), Long.class)
-                .setField("parent", inode.getParentId(), Long.class)
-                .setField("parentName", parentName)
-                .setField("name", inode.getLocalName())
-                .setField("accessTime", inode.getAccessTime(), Long.class)
-                .setField("modificationTime", inode.getModificationTime(), Long.class)
-                .setField("header", header, Long.class)
-                .setField("permission", inode.getPermissionLong(), Long.class)
-                .build();
-              map.put(inodeKey, inodeValue);             
-            }
-            iterator.remove();             
-          }
-          if (env.equals("VOLT") && strAttr.size() > 0) {          
-            INodeKeyedObjects.setWalOffset(DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr));
-          } else if (env.equals("IGNITE") && map.size() > 0) {
-            IgniteCompute compute = conn.getIgniteClient().compute();
-            INodeKeyedObjects.setWalOffset(
-              compute.apply(new BatchUpdateINodes(), map)
-            );
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
-    }
-    preUpdateSize = concurrentUpdateSet.size();
-    Database.getInstance().retConnection(conn);
+  public static void endScan() {
+    scanDepth.get()[0]--;
   }
 
-  private static void removeToDB() {
-    if (concurrentRemoveSet == null) {
-      return;
-    }
-    int i = 0;
-    final int num = 1024;
-    List<String> removePaths = new ArrayList<>();
-    Set<BinaryObject> removeKeys = new HashSet<>();
-    long removeSize = concurrentRemoveSet.size();
-    String env = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    if (removeSize >= num) {
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Propagate removed files/directories from cache to database.");
-      }
-      i = 0;
-      Iterator<String> iterator = concurrentRemoveSet.iterator();
-      while (iterator.hasNext()) {
-        String path = iterator.next();
-        if (env.equals("VOLT")) { 
-          removePaths.add(path);
-        } else if (env.equals("IGNITE")) {
-          INode inode = INodeKeyedObjects.getCache().getIfPresent(path);
-          BinaryObjectBuilder inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-          BinaryObject inodeKey = inodeKeyBuilder
-            .setField("parentName", inode.getParentName())
-            .setField("name", inode.getLocalName())
-            .build(); 
-          removeKeys.add(inodeKey);
-        }
-        iterator.remove();
-        if (++i >= num) break;
-      }
-
-      try {
-        if (env.equals("VOLT") && removePaths.size() > 0) {
-          INodeKeyedObjects.setWalOffset(DatabaseINode.batchRemoveINodes(removePaths));
-        } else if (env.equals("IGNITE") && removeKeys.size() > 0) {
-          IgniteCompute compute = conn.getIgniteClient().compute();
-          INodeKeyedObjects.setWalOffset(
-            compute.apply(new BatchRemoveINodes(), removeKeys)
-          );
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    } else {
-      if (removeSize > 0 && preRemoveSize == removeSize) {
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate removed files/directories from cache to database.");
-        }
-        try {
-          removePaths = new ArrayList<String>(concurrentRemoveSet);
-          Iterator<String> iterator = concurrentRemoveSet.iterator();
-          while (iterator.hasNext()) {
-            String path = iterator.next();
-            if (env.equals("IGNITE")) {
-              INode inode = INodeKeyedObjects.getCache().getIfPresent(path);
-              BinaryObjectBuilder inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-              BinaryObject inodeKey = inodeKeyBuilder
-                .setField("parentName", inode.getParentName())
-                .setField("name", inode.getLocalName())
-                .build(); 
-              removeKeys.add(inodeKey); 
-            }
-            iterator.remove();
-          }
-          if (env.equals("VOLT") && removePaths.size() > 0) {
-            INodeKeyedObjects.setWalOffset(DatabaseINode.batchRemoveINodes(removePaths));
-          } else if (env.equals("IGNITE") && removeKeys.size() > 0) {
-            IgniteCompute compute = conn.getIgniteClient().compute();
-            INodeKeyedObjects.setWalOffset(
-              compute.apply(new BatchRemoveINodes(), removeKeys)
-            );
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
-    }
-    preRemoveSize = concurrentRemoveSet.size();
-    Database.getInstance().retConnection(conn);
+  public static boolean inScan() {
+    return scanDepth.get()[0] > 0;
   }
 
-  private static void renameToDB() {
-    if (concurrentRenameSet == null) {
+  /**
+   * Caches {@code inode}, just loaded from the database or the off-heap tier. A file loaded by a
+   * scan is not cached: it is read once, and caching it would push the files of interactive
+   * clients out of the cache. Directories are always cached, as the scan resolves their children
+   * through them.
+   */
+  public static void admit(String path, INode inode) {
+    if (inode.isFile() && inScan()) {
+      scanBypass.increment();
       return;
     }
-    int i = 0;
-    final int num = 1024;
-    long renameSize = concurrentRenameSet.size();
-    String env = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    if (renameSize >= num) {
-      Iterator<String> iterator = concurrentRenameSet.iterator();
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Sync rename files/directories from cache to database.");
-      }
-
-      List<Long> longAttr = new ArrayList<>();
-      List<String> strAttr = new ArrayList<>();
-      List<BinaryObject> list = new ArrayList<>();
-      while (iterator.hasNext()) {
-        INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-        if (inode == null) continue;
-        if (env.equals("VOLT")) {
-          strAttr.add(inode.getLocalName());
-          if (inode.getId() == 16385) {
-            strAttr.add(" ");
-          } else {
-            strAttr.add(inode.getParentName());
-          }
-          longAttr.add(inode.getParentId());
-          longAttr.add(inode.getId());
-          longAttr.add(inode.getModificationTime());
-          longAttr.add(inode.getAccessTime());
-          longAttr.add(inode.getPermissionLong());
-          if (inode.isDirectory()) {
-            longAttr.add(0L);
-          } else {
-            longAttr.add(inode.asFile().getHeaderLong());
-          }
-        } else if (env.equals("IGNITE")) {
-          BinaryObjectBuilder inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-          long header = 0L;
-          if (inode.isFile()) {
-            header = inode.asFile().getHeaderLong();
-          } 
-          String parentName = " ";
-          if (inode.getId() != 16385) {
-            parentName = inode.getParentName();
-          }
-          BinaryObject inodeValue = inodeBuilder
-            .setField("id", inode.getId(), Long.class)
-            .setField("parent", inode.getParentId(), Long.class)
-            .setField("parentName", parentName)
-            .setField("name", inode.getLocalName())
-            .setField("accessTime", inode.getAccessTime(), Long.class)
-            .setField("modificationTime", inode.getModificationTime(), Long.class)
-            .setField("header", header, Long.class)
-            .setField("permission", inode.getPermissionLong(), Long.class)
-            .build();
-          list.add(inodeValue);        
-        }
-        iterator.remove();
-        if (++i >= num) break;
-      }
-      try {
-        if (env.equals("VOLT") && strAttr.size() > 0) {
-          INodeKeyedObjects.setWalOffset(DatabaseINode.batchRenameINodes(longAttr, strAttr));
-        } else if (env.equals("IGNITE") && list.size() > 0) {
-          IgniteCompute compute = conn.getIgniteClient().compute();
-          INodeKeyedObjects.setWalOffset(
-            compute.apply(new BatchRenameINodes(), list)
-          );
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    } else {
-      if (renameSize > 0 && preRenameSize == renameSize) {
-        Iterator<String> iterator = concurrentRenameSet.iterator();
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Propagate renamed files/directories from cache to database.");
-        }
-        try {
-          List<Long> longAttr = new ArrayList<>();
-          List<String> strAttr = new ArrayList<>();
-          List<BinaryObject> list = new ArrayList<>();
-          while (iterator.hasNext()) {
-            INode inode = INodeKeyedObjects.getCache().getIfPresent(iterator.next());
-            if (inode == null) continue;
-            if (env.equals("VOLT")) {
-              strAttr.add(inode.getLocalName());
-              if (inode.getId() == 16385) {
-                strAttr.add(" ");
-              } else {
-                strAttr.add(inode.getParentName());
-              }
-              longAttr.add(inode.getParentId());
-              longAttr.add(inode.getId());
-              longAttr.add(inode.getModificationTime());
-              longAttr.add(inode.getAccessTime());
-              longAttr.add(inode.getPermissionLong());
-              if (inode.isDirectory()) {
-                longAttr.add(0L);
-              } else {
-                longAttr.add(inode.asFile().getHeaderLong());
-              }
-            } else if (env.equals("IGNITE")) {
-              BinaryObjectBuilder inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-              long header = 0L;
-              if (inode.isFile()) {
-                header = inode.asFile().getHeaderLong();
-              } 
-              String parentName = " ";
-              if (inode.getId() != 16385) {
-                parentName = inode.getParentName();
-              }
-              BinaryObject inodeValue = inodeBuilder
-                .setField("id", inode.getId(), Long.class)
-                .setField("parent", inode.getParentId(), Long.class)
-                .setField("parentName", parentName)
-                .setField("name", inode.getLocalName())
-                .setField("accessTime", inode.getAccessTime(), Long.class)
-                .setField("modificationTime", inode.getModificationTime(), Long.class)
-                .setField("header", header, Long.class)
-                .setField("permission", inode.getPermissionLong(), Long.class)
-                .build();
-              list.add(inodeValue);               
-            }
-            iterator.remove();
-          }
-          if (env.equals("VOLT") && strAttr.size() > 0) {
-            INodeKeyedObjects.setWalOffset(DatabaseINode.batchRenameINodes(longAttr, strAttr));
-          } else if (env.equals("IGNITE") && list.size() > 0) {
-            IgniteCompute compute = conn.getIgniteClient().compute();
-            INodeKeyedObjects.setWalOffset(
-              compute.apply(new BatchRenameINodes(), list)
-            );
-          }
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
-    }
-    preRenameSize = concurrentRenameSet.size();
-    Database.getInstance().retConnection(conn);
+    getCache().put(path, inode);
   }
 
-  public static void asyncUpdateDB() {
-    // In HDFS, the default log buffer size is 512 * 1024 bytes, or 512 KB.
-    // We assume that each object size is 512 bytes, then the size of
-    // concurrentUpdateSet should be 1024 which only records INode Id.
-    // Note: Using INode Id, it's easy to find INode object in cache.
-    insertToDB();
-
-    removeToDB();
-
-    renameToDB();
+  /** @return the number of files loaded by scans and not cached. */
+  public static long getScanBypassCount() {
+    return scanBypass.sum();
   }
 
-  public static void BackupSetToDB() {
-    final Runnable updateToDB =
-        new Runnable() {
-          public void run() {
-            asyncUpdateDB();
-          }
-        };
-
-    // Creates and executes a periodic action that becomes enabled first after the given initial
-    // delay (1s), and subsequently with the given delay (2s) between the termination of one
-    // execution and the commencement of the next.
-    long delay = 300L;
-    String delayStr = System.getenv("UPDATE_DB_TIME_DELAY");
-    if (delayStr != null) {
-      delay = Long.parseLong(delayStr);
-    }
-
-    final ScheduledFuture<?> updateHandle =
-        scheduler.scheduleWithFixedDelay(updateToDB, 100, delay, MICROSECONDS);
+  public static INodeOffHeapTier getOffHeapTier() {
+    return offHeap;
+  }
 
-    scheduler.schedule(
-        new Runnable() {
-          public void run() {
-            updateHandle.cancel(true);
-          }
-        },
-        60 * 60 * 24,
-        SECONDS);
+  /**
+   * @return the row of the inode at {@code path} if it was evicted to the off-heap tier, or
+   *         null; the caller loads it from the database then.
+   */
+  public static DatabaseINode.LoadINode getEvicted(String path) {
+    return offHeap == null ? null : offHeap.get(path);
   }
 
   // --------------------------------------------------------
@@ -532,11 +132,8 @@ public void run() {
 
   public static IndexedCache<String, INode> getCache() {
     if (cache == null) {
-      concurrentUpdateSet = ConcurrentHashMap.newKeySet();
-      concurrentRemoveSet = ConcurrentHashMap.newKeySet();
-
       // async write updates to buffer
-      BackupSetToDB();
+      getWriteBehindLog();
 
       // Assuming each INode has 600 bytes, then
       // 10000000 * 600 / 2^30 = 5.58 GB.
@@ -562,6 +159,7 @@ public static IndexedCache<String, INode> getCache() {
                       INode inode = (INode) value;
                       if (inode.isDirectory()) {
                         inode.asDirectory().updateINodeDirectory();
+                        inode.asDirectory().persistFilter();
                       } else {
                         inode.asFile().updateINodeFile();
                         FileUnderConstructionFeature uc =
@@ -573,13 +171,75 @@ public static IndexedCache<String, INode> getCache() {
                     }
                   })
               .maximumSize(num);
+      // Caffeine admits new entries by W-TinyLFU and sizes its admission window itself; these
+      // tune the rest of the policy
+      String initialCapacity = System.getenv("FILESCALE_CACHE_INITIAL_CAPACITY");
+      if (initialCapacity != null) {
+        cfein.initialCapacity(Integer.parseInt(initialCapacity));
+      }
+      String expireSeconds = System.getenv("FILESCALE_CACHE_EXPIRE_SECONDS");
+      if (expireSeconds != null) {
+        cfein.expireAfterAccess(Long.parseLong(expireSeconds), SECONDS);
+      }
+      if (Boolean.parseBoolean(System.getenv("FILESCALE_CACHE_STATS"))) {
+        cfein.recordStats();
+      }
       cache =
           new IndexedCache.Builder<String, INode>()
+              .withOrderedKeys()
+              .withIndex(Long.class, (path, inode) -> inode.getId())
+              .withWriteListener((k, v) -> {
+                childIndex.onCacheWrite(v);
+                if (offHeap != null) {
+                  // the heap copy is authoritative again
+                  offHeap.remove(k);
+                }
+              })
+              .withDeleteListener((k, v) -> {
+                childIndex.onCacheDelete(v);
+                if (offHeap != null) {
+                  offHeap.remove(k);
+                }
+              })
+              .withEvictionListener((k, v) -> {
+                if (offHeap != null) {
+                  offHeap.put(k, v);
+                }
+              })
               .buildFromCaffeine(cfein);
     }
     return cache;
   }
 
+  /**
+   * Drops the cached inodes below {@code path}, not {@code path} itself, from the heap cache
+   * and the off-heap tier, without writing them back. Used when the rows of a subtree are moved
+   * or deleted in the database in bulk. The keys are found by a range scan of the ordered key
+   * index, so the cost follows the number of cached inodes below {@code path}.
+   *
+   * @return the number of inodes invalidated.
+   */
+  public static int invalidateSubtree(String path) {
+    if (offHeap != null) {
+      offHeap.removeSubtree(path);
+    }
+    return getCache().invalidateRange(subtreeStart(path), subtreeEnd(path));
+  }
+
+  /** @return the first key, inclusive, of the paths below {@code path}. */
+  @VisibleForTesting
+  static String subtreeStart(String path) {
+    // every path below the root is longer than "/", and no character sorts before '\0'
+    return path.equals("/") ? "/\0" : path + "/";
+  }
+
+  /** @return the last key, exclusive, of the paths below {@code path}. */
+  @VisibleForTesting
+  static String subtreeEnd(String path) {
+    // '0' follows '/', so the range holds every path below path and no sibling of it
+    return path.equals("/") ? "0" : path + "0";
+  }
+
   public static Cache<String, String> getMoveCache() {
     if (move == null) {
       move =  Caffeine.newBuilder()
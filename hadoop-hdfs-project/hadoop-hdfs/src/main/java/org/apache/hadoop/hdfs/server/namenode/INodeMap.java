@@ -14,16 +14,89 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.db.*;
-import org.apache.hadoop.hdfs.cuckoofilter4j.*;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 
 /** Storing all the {@link INode}s and maintaining the mapping between INode ID and INode. */
 public class INodeMap {
+  // rows being loaded for the path this thread resolves, by path; see prefetch
+  private static final ThreadLocal<Map<String, CompletableFuture<DatabaseINode.LoadINode>>>
+      prefetched = new ThreadLocal<>();
+
   public INodeMap() {}
 
+  private static String pathOf(String parentName, String childName) {
+    return parentName.equals("/") ? parentName + childName : parentName + "/" + childName;
+  }
+
+  /**
+   * Starts loading the inodes at {@code components[1]} to {@code components[last - 1]} that are
+   * neither cached nor evicted, all at once on the pipelined database client, so that resolving
+   * the path on this thread picks them up in {@link #get} instead of loading them one after the
+   * other. Nothing is loaded unless at least two components are missing.
+   *
+   * @return the previous prefetch of this thread, to pass to {@link #endPrefetch}.
+   */
+  static Object prefetch(final byte[][] components, final int last) {
+    Object prev = prefetched.get();
+    if (!DatabaseAsyncClient.getInstance().isPipelined()) {
+      return prev;
+    }
+    List<String> parents = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    String parentName = "/";
+    for (int i = 1; i < last; ++i) {
+      String name = DFSUtil.bytes2String(components[i]);
+      if (name.isEmpty()
+          || name.equals(HdfsConstants.DOT_SNAPSHOT_DIR)
+          || name.equals(HdfsConstants.DOT_RESERVED_STRING)) {
+        break;
+      }
+      String path = pathOf(parentName, name);
+      if (INodeKeyedObjects.getCache().getIfPresent(path) == null
+          && INodeKeyedObjects.getEvicted(path) == null) {
+        parents.add(parentName);
+        names.add(name);
+      }
+      parentName = path;
+    }
+    if (names.size() < 2) {
+      return prev;
+    }
+    Map<String, CompletableFuture<DatabaseINode.LoadINode>> futures = new HashMap<>();
+    DatabaseINode db = new DatabaseINode();
+    for (int i = 0; i < names.size(); ++i) {
+      futures.put(
+          pathOf(parents.get(i), names.get(i)), db.loadINodeAsync(parents.get(i), names.get(i)));
+    }
+    prefetched.set(futures);
+    return prev;
+  }
+
+  @SuppressWarnings("unchecked")
+  static void endPrefetch(Object prev) {
+    if (prev == null) {
+      prefetched.remove();
+    } else {
+      prefetched.set((Map<String, CompletableFuture<DatabaseINode.LoadINode>>) prev);
+    }
+  }
+
+  /** @return the row of {@code path} prefetched by this thread, or null if it was not. */
+  private static CompletableFuture<DatabaseINode.LoadINode> prefetchedOf(String path) {
+    Map<String, CompletableFuture<DatabaseINode.LoadINode>> futures = prefetched.get();
+    return futures == null ? null : futures.remove(path);
+  }
+
   /**
    * Add an {@link INode} into the {@link INode} map. Replace the old value if necessary.
    *
@@ -49,22 +122,28 @@ public long size() {
 
 
   public INode get(String parentName, String childName) {
-    String path = null;
-    if (parentName.equals("/")) {
-      path = parentName + childName;
-    } else {
-      path = parentName + "/" + childName;
-    }
+    String path = pathOf(parentName, childName);
     INode inode = INodeKeyedObjects.getCache().getIfPresent(path);
     if (inode == null) {
-      INodeDirectory parent = INodeKeyedObjects.getCache().getIfPresent(parentName).asDirectory();
-      if (!parent.getCurrentChildrenList2().contains(childName)) {
-        return null;
+      DatabaseINode.LoadINode node = INodeKeyedObjects.getEvicted(path);
+      CompletableFuture<DatabaseINode.LoadINode> future =
+          node == null ? prefetchedOf(path) : null;
+      if (future != null) {
+        try {
+          node = future.join();
+        } catch (CompletionException e) {
+          // loaded again below
+          future = null;
+        }
+      }
+      if (node == null && future == null) {
+        INodeDirectory parent = INodeKeyedObjects.getCache().getIfPresent(parentName).asDirectory();
+        if (!parent.getFilter().mightContain(childName)) {
+          return null;
+        }
+        // by parentName, the partition key, so the load is a single-partition call
+        node = new DatabaseINode().loadINode(parentName, childName);
       }
-      // if (!parent.getFilter().mightContain(String.valueOf(parent.getId()) + childName)) {
-      //   return null;
-      // }
-      DatabaseINode.LoadINode node = new DatabaseINode().loadINode(parent.getId(), childName);
       if (node == null) return null;
       byte[] name = (node.name != null && node.name.length() > 0) ? DFSUtil.string2Bytes(node.name) : null;
       if (node.header != 0L) {
@@ -96,7 +175,7 @@ public INode get(String parentName, String childName) {
                 node.parentName);
         inode.asDirectory().resetCurrentChildrenList();
       }
-      INodeKeyedObjects.getCache().put(path, inode);
+      INodeKeyedObjects.admit(path, inode);
     }
     return inode;
   }
@@ -108,14 +187,7 @@ public boolean find(INodeFile file) {
     }
 
     INodeDirectory parent = file.getParent();
-    if (parent.getCurrentChildrenList2().contains(file.getLocalName())) {
-      return true;
-    }
-    // if (parent.getFilter().mightContain(String.valueOf(parent.getId()) + file.getLocalName())) {
-    //   return true;
-    // }
-
-    return false;
+    return parent.hasChild(file.getLocalName());
   }
 
   public void clear() {}
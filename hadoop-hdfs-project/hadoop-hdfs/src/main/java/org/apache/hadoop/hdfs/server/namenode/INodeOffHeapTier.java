@@ -0,0 +1,487 @@
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second-level inode cache in direct memory, behind the heap cache of {@link INodeKeyedObjects}.
+ *
+ * <p>An inode evicted from the heap cache is spilled here as its inodes table row in a compact
+ * binary layout. The eviction still writes the inode back to the database, so the tier only
+ * saves the load: a heap miss looks here before it goes to the database, and the row is dropped
+ * again once the inode is back on the heap.
+ *
+ * <p>Rows are appended to fixed-size slabs of direct memory, filled one after the other. When
+ * every slab is full the oldest one is recycled and its rows are dropped. Rows are found through
+ * an open-addressing hash table of row addresses, also in direct memory, so the tier keeps no
+ * object per row on the heap. A row is matched by the hash and the path stored in it.
+ *
+ * <p>The rows below a moved or deleted directory are not looked for: the directory is recorded
+ * with the sequence number of the next row, and a row spilled before it below the directory is a
+ * miss. A record is dropped once the slabs that can hold such rows have been recycled.
+ *
+ * <p>A row is laid out as: path length (short), path hash (int), path (UTF-8), then sequence
+ * number, parent, id, permission, modificationTime, accessTime and header (longs), then the
+ * clientName and clientMachine of a file under construction (length as a short, -1 for none,
+ * then UTF-8). The name and parentName are derived from the path.
+ *
+ * <p>Writes are serialized on the tier. Reads do not lock: an address carries the generation of
+ * its slab, which is bumped before the slab is reused, and a read whose slab generation changed
+ * while it decoded the row is a miss. A read that races with a write may miss a row; it then
+ * loads the inode from the database.
+ *
+ * <p>The tier holds FILESCALE_OFFHEAP_CACHE_MB of rows (default 0, which disables it) in slabs
+ * of FILESCALE_OFFHEAP_SLAB_MB (default 64, at most 2047). The hash table has a slot of 8 bytes
+ * for every FIXED_BYTES * 3/4 bytes of slabs, rounded up to a power of two, so that it is at most
+ * 3/4 full when the slabs are; that is 15 to 30% of the slab memory.
+ */
+public class INodeOffHeapTier {
+  static final Logger LOG = LoggerFactory.getLogger(INodeOffHeapTier.class);
+
+  // path length, path hash, sequence number, six columns, two client field lengths
+  private static final int FIXED_BYTES = 2 + 4 + 7 * 8 + 2 + 2;
+  private static final long USED = Long.MIN_VALUE;
+
+  private final ByteBuffer[] slabs;
+  // next free offset of every slab
+  private final int[] limits;
+  private final AtomicIntegerArray generations;
+  private int current = 0;
+  private long nextSeq = 0;
+
+  // row addresses, 0 for a free slot
+  private final ByteBuffer table;
+  private final int mask;
+  private final int maxEntries;
+  private int entries = 0;
+
+  // directory -> first sequence number not invalidated below it
+  private final ConcurrentHashMap<String, Long> invalidated = new ConcurrentHashMap<>();
+
+  private final LongAdder spills = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+
+  INodeOffHeapTier(long capacityBytes, int slabBytes) {
+    int n = (int) Math.max(2, Math.min(256, capacityBytes / slabBytes));
+    slabs = new ByteBuffer[n];
+    for (int i = 0; i < n; ++i) {
+      slabs[i] = ByteBuffer.allocateDirect(slabBytes);
+    }
+    limits = new int[n];
+    generations = new AtomicIntegerArray(n);
+
+    // the most rows the slabs can hold, at 3/4 of the table
+    long rows = Math.max(1024, (long) n * slabBytes / FIXED_BYTES / 3 * 4);
+    int slots = (int) Math.min(1 << 27, Long.highestOneBit(rows - 1) << 1);
+    table = ByteBuffer.allocateDirect(slots * 8);
+    mask = slots - 1;
+    maxEntries = slots / 4 * 3;
+  }
+
+  /** @return the tier configured from the environment, or null if it is disabled. */
+  static INodeOffHeapTier fromEnv() {
+    long mb = 0;
+    String capacity = System.getenv("FILESCALE_OFFHEAP_CACHE_MB");
+    if (capacity != null) {
+      mb = Long.parseLong(capacity);
+    }
+    if (mb <= 0) {
+      return null;
+    }
+    long slabMb = 64;
+    String slab = System.getenv("FILESCALE_OFFHEAP_SLAB_MB");
+    if (slab != null) {
+      slabMb = Long.parseLong(slab);
+    }
+    // a slab is one ByteBuffer, indexed by int
+    if (slabMb <= 0 || slabMb << 20 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("FILESCALE_OFFHEAP_SLAB_MB must be in [1, 2047]");
+    }
+    LOG.info("Off-heap inode tier: " + mb + " MB in slabs of " + slabMb + " MB");
+    return new INodeOffHeapTier(mb << 20, (int) (slabMb << 20));
+  }
+
+  private static long address(int generation, int slab, int offset) {
+    return USED | ((long) (generation & 0x7fffff) << 40) | ((long) slab << 32) | offset;
+  }
+
+  private static int generationOf(long address) {
+    return (int) (address >>> 40) & 0x7fffff;
+  }
+
+  private static int slabOf(long address) {
+    return (int) (address >>> 32) & 0xff;
+  }
+
+  private static int offsetOf(long address) {
+    return (int) address;
+  }
+
+  private static String parentNameOf(String path) {
+    int idx = path.lastIndexOf('/');
+    return idx == 0 ? "/" : path.substring(0, idx);
+  }
+
+  private static byte[] bytesOf(String s) {
+    return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int sizeOf(byte[] b) {
+    return b == null ? 0 : b.length;
+  }
+
+  private int slotOf(int hash) {
+    // spread the bits of String#hashCode over the table
+    int h = hash * 0x9e3779b9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private long slotAt(int slot) {
+    return table.getLong(slot << 3);
+  }
+
+  private void setSlot(int slot, long address) {
+    table.putLong(slot << 3, address);
+  }
+
+  /**
+   * Spills {@code inode}, evicted from the heap cache under {@code path}.
+   *
+   * @return false if the row was not spilled, because it does not fit in a slab or the table is
+   *         full, which only happens past 2^27 slots.
+   */
+  boolean put(String path, INode inode) {
+    String clientName = null;
+    String clientMachine = null;
+    long header = 0L;
+    if (inode.isFile()) {
+      header = inode.asFile().getHeaderLong();
+      FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
+      if (uc != null) {
+        clientName = uc.peekClientName();
+        clientMachine = uc.peekClientMachine();
+      }
+    }
+    return put(path, new DatabaseINode.LoadINode(inode.getParentId(), null, inode.getId(), null,
+        inode.getPermissionLong(), inode.getModificationTime(), inode.getAccessTime(), header,
+        clientName, clientMachine));
+  }
+
+  /** Spills {@code row}, the row of the inode at {@code path}. */
+  boolean put(String path, DatabaseINode.LoadINode row) {
+    if (path.equals("/")) {
+      return false;
+    }
+    byte[] key = bytesOf(path);
+    byte[] clientName = bytesOf(row.clientName);
+    byte[] clientMachine = bytesOf(row.clientMachine);
+    int size = FIXED_BYTES + key.length + sizeOf(clientName) + sizeOf(clientMachine);
+    if (size > slabs[0].capacity() || key.length > Short.MAX_VALUE
+        || sizeOf(clientName) > Short.MAX_VALUE || sizeOf(clientMachine) > Short.MAX_VALUE) {
+      return false;
+    }
+    int hash = path.hashCode();
+
+    synchronized (this) {
+      int slot = find(key, hash);
+      if (slot < 0 && entries >= maxEntries) {
+        return false;
+      }
+      if (limits[current] + size > slabs[current].capacity()) {
+        current = (current + 1) % slabs.length;
+        recycle(current);
+        // the recycled rows may have freed the slot, or moved the one found
+        slot = find(key, hash);
+      }
+      ByteBuffer slab = slabs[current];
+      int offset = limits[current];
+      slab.putShort(offset, (short) key.length);
+      slab.putInt(offset + 2, hash);
+      int pos = putBytes(slab, offset + 6, key);
+      slab.putLong(pos, nextSeq++);
+      slab.putLong(pos + 8, row.parent);
+      slab.putLong(pos + 16, row.id);
+      slab.putLong(pos + 24, row.permission);
+      slab.putLong(pos + 32, row.modificationTime);
+      slab.putLong(pos + 40, row.accessTime);
+      slab.putLong(pos + 48, row.header);
+      pos = putString(slab, pos + 56, clientName);
+      putString(slab, pos, clientMachine);
+      limits[current] = offset + size;
+
+      long address = address(generations.get(current), current, offset);
+      if (slot < 0) {
+        slot = slotOf(hash);
+        while (slotAt(slot) != 0) {
+          slot = (slot + 1) & mask;
+        }
+        entries++;
+      }
+      setSlot(slot, address);
+    }
+    spills.increment();
+    return true;
+  }
+
+  private static int putBytes(ByteBuffer slab, int pos, byte[] b) {
+    for (int i = 0; i < b.length; ++i) {
+      slab.put(pos + i, b[i]);
+    }
+    return pos + b.length;
+  }
+
+  private static int putString(ByteBuffer slab, int pos, byte[] b) {
+    if (b == null) {
+      slab.putShort(pos, (short) -1);
+      return pos + 2;
+    }
+    slab.putShort(pos, (short) b.length);
+    return putBytes(slab, pos + 2, b);
+  }
+
+  private static String getString(ByteBuffer slab, int pos) {
+    int length = slab.getShort(pos);
+    if (length < 0) {
+      return null;
+    }
+    byte[] b = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      b[i] = slab.get(pos + 2 + i);
+    }
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  private static int stringSize(ByteBuffer slab, int pos) {
+    return 2 + Math.max(0, slab.getShort(pos));
+  }
+
+  private static int rowSize(ByteBuffer slab, int offset) {
+    int pos = offset + 6 + slab.getShort(offset) + 56;
+    int clientName = stringSize(slab, pos);
+    return pos + clientName + stringSize(slab, pos + clientName) - offset;
+  }
+
+  /** @return whether the row at {@code address} is the row of {@code key}. */
+  private boolean matches(long address, byte[] key, int hash) {
+    int slab = slabOf(address);
+    if (slab >= slabs.length) {
+      return false;
+    }
+    ByteBuffer buf = slabs[slab];
+    int offset = offsetOf(address);
+    if (buf.getInt(offset + 2) != hash || buf.getShort(offset) != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; ++i) {
+      if (buf.get(offset + 6 + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return the slot of the row of {@code path}, or -1. */
+  private int find(byte[] key, int hash) {
+    int slot = slotOf(hash);
+    for (int probes = 0; probes <= mask; ++probes) {
+      long address = slotAt(slot);
+      if (address == 0) {
+        return -1;
+      }
+      if (matches(address, key, hash)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** @return the address of the row of {@code path}, or 0; for the reads, which do not lock. */
+  private long lookup(byte[] key, int hash) {
+    int slot = slotOf(hash);
+    for (int probes = 0; probes <= mask; ++probes) {
+      long address = slotAt(slot);
+      if (address == 0 || matches(address, key, hash)) {
+        return address;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0;
+  }
+
+  /** @return the spilled row of {@code path}, or null. */
+  DatabaseINode.LoadINode get(String path) {
+    byte[] key = bytesOf(path);
+    int hash = path.hashCode();
+    long address;
+    int slab;
+    int generation;
+    DatabaseINode.LoadINode row;
+    long seq;
+    try {
+      address = lookup(key, hash);
+      if (address == 0) {
+        return null;
+      }
+      slab = slabOf(address);
+      generation = generationOf(address);
+      if ((generations.get(slab) & 0x7fffff) != generation) {
+        return null;
+      }
+      ByteBuffer buf = slabs[slab];
+      int pos = offsetOf(address) + 6 + key.length;
+      seq = buf.getLong(pos);
+      int clientName = pos + 56;
+      int clientMachine = clientName + stringSize(buf, clientName);
+      row = new DatabaseINode.LoadINode(
+          buf.getLong(pos + 8),
+          parentNameOf(path),
+          buf.getLong(pos + 16),
+          path.substring(path.lastIndexOf('/') + 1),
+          buf.getLong(pos + 24),
+          buf.getLong(pos + 32),
+          buf.getLong(pos + 40),
+          buf.getLong(pos + 48),
+          getString(buf, clientName),
+          getString(buf, clientMachine));
+    } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+      // the slab or the table was overwritten under the read
+      return null;
+    }
+    if ((generations.get(slab) & 0x7fffff) != generation) {
+      // the slab was reused while the row was read
+      return null;
+    }
+    if (isInvalidated(path, seq)) {
+      return null;
+    }
+    hits.increment();
+    return row;
+  }
+
+  /** @return whether a directory above {@code path} was invalidated after the row was spilled. */
+  private boolean isInvalidated(String path, long seq) {
+    if (invalidated.isEmpty()) {
+      return false;
+    }
+    String dir = path;
+    while (!dir.equals("/")) {
+      dir = parentNameOf(dir);
+      Long since = invalidated.get(dir);
+      if (since != null && seq < since) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Empties {@code slab} and drops its rows from the table. Called with the lock held. */
+  private void recycle(int slab) {
+    ByteBuffer buf = slabs[slab];
+    int generation = generations.get(slab);
+    int offset = 0;
+    while (offset < limits[slab]) {
+      remove(address(generation, slab, offset), buf.getInt(offset + 2));
+      offset += rowSize(buf, offset);
+    }
+    generations.incrementAndGet(slab);
+    limits[slab] = 0;
+
+    // the records older than every remaining row have no row left to hide
+    long oldest = nextSeq;
+    for (int i = 0; i < slabs.length; ++i) {
+      if (limits[i] > 0) {
+        oldest = Math.min(oldest, slabs[i].getLong(6 + slabs[i].getShort(0)));
+      }
+    }
+    final long since = oldest;
+    invalidated.values().removeIf(seq -> seq <= since);
+  }
+
+  /** Drops the slot holding {@code address}, if any. Called with the lock held. */
+  private void remove(long address, int hash) {
+    int slot = slotOf(hash);
+    for (int probes = 0; probes <= mask; ++probes) {
+      long a = slotAt(slot);
+      if (a == 0) {
+        return;
+      }
+      if (a == address) {
+        deleteSlot(slot);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** Empties {@code slot} and moves back the rows probed past it. Called with the lock held. */
+  private void deleteSlot(int slot) {
+    entries--;
+    int hole = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      long address = slotAt(next);
+      if (address == 0) {
+        break;
+      }
+      int home = slotOf(slabs[slabOf(address)].getInt(offsetOf(address) + 2));
+      // the row stays if its home is cyclically in (hole, next]
+      boolean stays = hole <= next
+          ? hole < home && home <= next
+          : hole < home || home <= next;
+      if (!stays) {
+        setSlot(hole, address);
+        hole = next;
+      }
+    }
+    setSlot(hole, 0);
+  }
+
+  /** Drops the row of {@code path}; its space is reclaimed when its slab is recycled. */
+  void remove(String path) {
+    byte[] key = bytesOf(path);
+    int hash = path.hashCode();
+    // most inodes put on the heap were never spilled; the probe does not lock, so a slab or
+    // table overwritten under it sends the remove to the locked path
+    try {
+      if (lookup(key, hash) == 0) {
+        return;
+      }
+    } catch (IndexOutOfBoundsException e) {
+      // checked again under the lock
+    }
+    synchronized (this) {
+      int slot = find(key, hash);
+      if (slot >= 0) {
+        deleteSlot(slot);
+      }
+    }
+  }
+
+  /** Drops the rows below {@code path}, not the row of {@code path} itself. */
+  void removeSubtree(String path) {
+    synchronized (this) {
+      invalidated.put(path, nextSeq);
+    }
+  }
+
+  /** @return the number of rows in the table, including the rows hidden by removeSubtree. */
+  public synchronized int size() {
+    return entries;
+  }
+
+  public long getSpillCount() {
+    return spills.sum();
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+}
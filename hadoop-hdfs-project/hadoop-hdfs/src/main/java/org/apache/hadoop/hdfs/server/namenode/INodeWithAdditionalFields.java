@@ -15,9 +15,13 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.*;
 import com.google.common.base.Preconditions;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
@@ -25,7 +29,7 @@
 import org.apache.hadoop.hdfs.db.*;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.LongBitFormat;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.hadoop.util.Time;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.MountPoint;
 import org.apache.hadoop.ipc.RPC;
@@ -34,16 +38,6 @@
 import com.google.protobuf.ByteString;
 import org.apache.hadoop.conf.Configuration;
 
-import org.apache.ignite.*;
-import org.apache.ignite.lang.IgniteClosure;
-import org.apache.ignite.binary.BinaryObject;
-import org.apache.ignite.binary.BinaryObjectBuilder;
-import org.apache.hadoop.hdfs.db.ignite.BatchUpdateINodes;
-import org.apache.hadoop.hdfs.db.ignite.RenamePayload;
-import org.apache.hadoop.hdfs.db.ignite.RenameSubtreeINodes;
-import org.apache.hadoop.hdfs.db.ignite.SetPermissions;
-import org.apache.hadoop.hdfs.db.ignite.SetPermissionsV2;
-import org.apache.hadoop.hdfs.db.ignite.PermissionsPayload;
 
 /**
  * {@link INode} with additional fields including id, name, permission, access time and modification
@@ -149,7 +143,7 @@ private INodeWithAdditionalFields(
     this.modificationTime = modificationTime;
     this.accessTime = accessTime;
 
-    INodeKeyedObjects.getUpdateSet().add(this.getPath());
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   public void InitINodeWithAdditionalFields(
@@ -351,12 +345,28 @@ public final String getPath() {
   @Override
   public final byte[] getLocalNameBytes() {
     if (name == null) {
-      String strName = DatabaseINode.getName(getId());
-      name = (strName != null) ? DFSUtil.string2Bytes(strName) : null;
+      loadRow();
     }
     return name;
   }
 
+  @Override
+  void hydrate(DatabaseINode.LoadINode node) {
+    super.hydrate(node);
+    if (name == null && node.name != null) {
+      name = DFSUtil.string2Bytes(node.name);
+    }
+    if (permission == -1L) {
+      permission = node.permission;
+    }
+    if (modificationTime == -1L) {
+      modificationTime = node.modificationTime;
+    }
+    if (accessTime == -1L) {
+      accessTime = node.accessTime;
+    }
+  }
+
   @Override
   public final void setLocalName(byte[] name) {
     if (name != null) {
@@ -379,227 +389,175 @@ final PermissionStatus getPermissionStatus(int snapshotId) {
 
   private final void setPermission(long perm) {
     permission = perm;
-    INodeKeyedObjects.getUpdateSet().add(getPath());
-  }
-
-  private static void update_subtree(Set<INode> inodes) {
-    String database = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    BinaryObjectBuilder inodeKeyBuilder = null;
-    BinaryObjectBuilder inodeBuilder = null;
-    if (database.equals("IGNITE")) {
-      inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-      inodeBuilder = conn.getIgniteClient().binary().builder("INode");
-    }
-
-    List<Long> longAttr = new ArrayList<>();
-    List<String> strAttr = new ArrayList<>();
-
-    List<Long> fileIds = new ArrayList<>();
-    List<String> fileAttr = new ArrayList<>();
-
-    Map<BinaryObject, BinaryObject> map = new HashMap<>();
-    Iterator<INode> iterator = inodes.iterator();
-    while (iterator.hasNext()) {
-      INode inode = iterator.next();
-      if (inode == null) continue;
-      if (database.equals("VOLT")) {
-        strAttr.add(inode.getLocalName());
-        if (inode.getId() == 16385) {
-          strAttr.add(" ");
-        } else {
-          strAttr.add(inode.getParentName());
-        }
-        longAttr.add(inode.getParentId());
-        longAttr.add(inode.getId());
-        longAttr.add(inode.getModificationTime());
-        longAttr.add(inode.getAccessTime());
-        longAttr.add(inode.getPermissionLong());
-        if (inode.isDirectory()) {
-          longAttr.add(0L);
-        } else {
-          longAttr.add(inode.asFile().getHeaderLong());
-          FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
-          if (uc != null) {
-            fileIds.add(inode.getId());
-            fileAttr.add(uc.getClientName(inode.getId()));
-            fileAttr.add(uc.getClientMachine(inode.getId()));
-          }
-        }
-      } else if (database.equals("IGNITE")) {
-        BinaryObject inodeKey = inodeKeyBuilder.setField("parentName", inode.getParentName()).setField("name", inode.getLocalName()).build();
-        long header = 0L;
-        if (inode.isFile()) {
-          header = inode.asFile().getHeaderLong();
-        } 
-        String parentName = " ";
-        if (inode.getId() != 16385) {
-          parentName = inode.getParentName();
-        }
-        BinaryObject inodeValue = inodeBuilder
-          .setField("id", inode.getId(), Long.class)
-          .setField("parent", inode.getParentId(), Long.class)
-          .setField("parentName", parentName)
-          .setField("name", inode.getLocalName())
-          .setField("accessTime", inode.getAccessTime(), Long.class)
-          .setField("modificationTime", inode.getModificationTime(), Long.class)
-          .setField("header", header, Long.class)
-          .setField("permission", inode.getPermissionLong(), Long.class)
-          .build();
-        map.put(inodeKey, inodeValue);
-      }
-      iterator.remove();
-    }
-    try {
-      if (database.equals("VOLT") && strAttr.size() > 0) {
-        INodeKeyedObjects.setWalOffset(DatabaseINode.batchUpdateINodes(longAttr, strAttr, fileIds, fileAttr));
-      } else if (database.equals("IGNITE") && map.size() > 0) {
-        IgniteCompute compute = conn.getIgniteClient().compute();
-        INodeKeyedObjects.setWalOffset(
-          compute.apply(new BatchUpdateINodes(), map)
-        );
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    Database.getInstance().retConnection(conn);
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
+  /**
+   * Drops the cached inodes of the mount point {@code parent}/{@code name} and of its subtree,
+   * so they are read again from the database. Every change to a cached inode is queued in the
+   * write-behind log, so flushing the log writes back all the dirty data of the subtree; the
+   * cached subtree is then dropped with a range scan over the resident paths, so the cost
+   * follows what is cached rather than the size of the mount point.
+   */
   public static final void invalidateAndWriteBackDB(String parent, String name) {
-    LOG.info("invalidate dirty data under " + parent + " " + name);
-    long dirtyCount = 100000;
     String dirtyCountStr = System.getenv("FILESCALE_DIRTY_OBJECT_NUM");
-    String database = System.getenv("DATABASE");
-    if (dirtyCountStr != null) {
-      dirtyCount = Long.parseLong(dirtyCountStr);
-    }
-    if (dirtyCount == 0) return;
-
-    Queue<ImmutablePair<String, String>> q = new LinkedList<>();
-    q.add(new ImmutablePair<>(parent, name));
-
-    ImmutablePair<String, String> id = null;
-    Set<INode> inodes = new HashSet<>();
-    long count = 0;
-    while ((id = q.poll()) != null) {
-      INode child = FSDirectory.getInstance().getInode(id.getLeft(), id.getRight());   
-      if (child != null) {
-        if (child.isDirectory()) {
-          HashSet<String> childNames = ((INodeDirectory)child).getCurrentChildrenList2();
-          for (String cname : childNames) {
-            q.add(new ImmutablePair<>(child.getPath(), cname));
-          }
-        }
-        inodes.add(child);
-        count++;
-        // invalidate inode
-        INodeKeyedObjects.getCache().invalidate(child.getPath());
-        if (count == dirtyCount) {
-          // write back to db
-          update_subtree(inodes);
-          break;
-        }
-        if (database.equals("VOLT")) {
-          if (inodes.size() >= 5120) {
-            // write back to db
-            update_subtree(inodes);
-          }
-        }
-      }
+    if (dirtyCountStr != null && Long.parseLong(dirtyCountStr) == 0) return;
+
+    long start = Time.monotonicNow();
+    String path = new File(parent, name).getPath();
+    INode top = FSDirectory.getInstance().getInode(parent, name);
+    if (top != null) {
+      INodeKeyedObjects.getChildIndex().detach(top.getId());
     }
-    if (count < dirtyCount && inodes.size() > 0) {
-      // write back to db
-      update_subtree(inodes);
+    INodeKeyedObjects.getWriteBehindLog().flush();
+    INodeKeyedObjects.getCache().invalidate(path);
+    if (INodeKeyedObjects.getOffHeapTier() != null) {
+      INodeKeyedObjects.getOffHeapTier().remove(path);
+    }
+    int count = INodeKeyedObjects.invalidateSubtree(path);
+    if (LOG.isInfoEnabled()) {
+      LOG.info("invalidated " + path + " and " + count + " cached inodes below it in "
+          + (Time.monotonicNow() - start) + " ms");
     }
   }
 
-  private final void remoteChmod(String path, Set<Pair<String, String>> mpoints) {
-    String database = System.getenv("DATABASE");
-    DatabaseConnection conn = Database.getInstance().getConnection();
-    BinaryObjectBuilder inodeKeyBuilder = null;
-    if (database.equals("IGNITE")) {
-      inodeKeyBuilder = conn.getIgniteClient().binary().builder("InodeKey");
-    }
+  /**
+   * Sets field {@code f} of the permission of every inode below {@code path} to {@code n}. The
+   * mount points under {@code path} are invalidated in parallel, here or on the namenodes that
+   * serve them, so no cached inode writes the old value back, then the database rewrites the
+   * field of the whole subtree in one transaction that spans its partitions.
+   *
+   * @return the wal offset before the database update
+   */
+  private final String remoteChmod(String path, Set<Pair<String, String>> mpoints,
+      PermissionStatusFormat f, long n) throws IOException {
+    final long start = Time.monotonicNow();
+    final int total = mpoints.size();
+    final AtomicInteger invalidated = new AtomicInteger();
 
-    // 1. invalidate cache and write back dirty data
-    Set<BinaryObject> keys = new HashSet<>();
+    // 1. write back dirty data and invalidate the cache of every mount point
     List<CompletableFuture<Void>> list = new ArrayList<>();
     for (Pair<String, String> pair : mpoints) {
       File file = new File(pair.getLeft());
       String parent = file.getParent();
       String name = file.getName();
       String url = pair.getRight();
-      try {
-        if (url == "localhost") {
-          list.add(CompletableFuture.runAsync(
-            () -> {
-              invalidateAndWriteBackDB(parent, name);
-            },
-            Database.getInstance().getExecutorService()));
-        } else {
-          list.add(CompletableFuture.runAsync(
-            () -> {
-              MountPoint.Builder b = MountPoint.newBuilder().setParent(parent).setName(name);
-              byte[] data = b.build().toByteArray();
-              try {
-                FSEditLogProtocol proxy = (FSEditLogProtocol) RPC.getProxy(
-                  FSEditLogProtocol.class, FSEditLogProtocol.versionID,
-                  new InetSocketAddress(url, 10087), new Configuration());
-                proxy.invalidateAndWriteBackDB(data);
-              } catch (Exception e) {
-                e.printStackTrace();
-              }
-            },
-            Database.getInstance().getExecutorService()));
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-
-      if (database.equals("IGNITE")) {
-        keys.add(inodeKeyBuilder.setField("parentName", parent).setField("name", name).build());
-      }
+      list.add(CompletableFuture.runAsync(
+        () -> {
+          if (url.equals("localhost")) {
+            invalidateAndWriteBackDB(parent, name);
+          } else {
+            MountPoint.Builder b = MountPoint.newBuilder().setParent(parent).setName(name);
+            byte[] data = b.build().toByteArray();
+            try {
+              FSEditLogProtocol proxy = (FSEditLogProtocol) RPC.getProxy(
+                FSEditLogProtocol.class, FSEditLogProtocol.versionID,
+                new InetSocketAddress(url, 10087), new Configuration());
+              proxy.invalidateAndWriteBackDB(data);
+            } catch (IOException e) {
+              throw new CompletionException(e);
+            }
+          }
+          if (LOG.isInfoEnabled()) {
+            LOG.info("chmod -R " + path + ": invalidated " + invalidated.incrementAndGet()
+                + "/" + total + " mount points");
+          }
+        },
+        Database.getInstance().getExecutorService()));
+    }
+    try {
+      CompletableFuture.allOf(list.toArray(new CompletableFuture[list.size()])).join();
+    } catch (CompletionException e) {
+      throw new IOException("chmod -R " + path + ": cannot invalidate a mount point", e.getCause());
     }
-    CompletableFuture.allOf(list.toArray(new CompletableFuture[list.size()])).join();
-
-    // 2. execute distributed txn
-    LOG.info("Execute dist txn for chmod");
 
-    if (path != null) {
-      String start = INodeKeyedObjects.getWalOffset();
-      if (database.equals("VOLT")) {
-        INodeKeyedObjects.setWalOffset(DatabaseINode.setPermissions(path, this.permission));
-      } else if (database.equals("IGNITE")) {
-        IgniteCompute compute = conn.getIgniteClient().compute();
-        INodeKeyedObjects.setWalOffset(
-          compute.apply(new SetPermissionsV2(), new PermissionsPayload(path, this.permission))
-        );
+    // 2. rewrite the field in the database, one distributed transaction for the subtree
+    long keep = f.BITS.combine(0, -1L);
+    long bits = f.BITS.combine(n, 0L);
+    String begin = INodeKeyedObjects.getWalOffset();
+    try {
+      String offset = DatabaseINode.setSubtreePermission(getId(), path, keep, bits);
+      if (offset != null) {
+        INodeKeyedObjects.setWalOffset(offset);
       }
-      String end = INodeKeyedObjects.getWalOffset();
-      FSDirectory.getInstance()
-        .getEditLog()
-        .logSetPermissionsMP(getPath(), new FsPermission(getFsPermissionShort()), start, end);
+    } catch (SQLException e) {
+      throw new IOException("chmod -R " + path + " failed", e);
     }
-    Database.getInstance().retConnection(conn);
+    if (LOG.isInfoEnabled()) {
+      LOG.info("chmod -R " + path + ": " + f + " of the subtree set in "
+          + (Time.monotonicNow() - start) + " ms");
+    }
+    return begin;
   }
 
   private final void updatePermissionStatus(PermissionStatusFormat f, long n) {
     this.permission = f.BITS.combine(n, getPermissionLong());
     if (FSDirectory.getInstance().isLocalNN()) {
-      INodeKeyedObjects.getUpdateSet().add(getPath());
-    } else if (isDirectory()) {
-      try {
-        Set<Pair<String, String>> mpoints = FSDirectory.getInstance().getMountsManager().resolveSubPaths(getPath());
-        LOG.info(getPath() + " has sub-paths that are mounted into: " + mpoints);
-        remoteChmod(getPath(), mpoints);
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
+      INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
     } else {
       INodeKeyedObjects.setWalOffset(DatabaseINode.setPermission(getId(), this.permission));
     }
   }
 
+  /**
+   * As {@link #updatePermissionStatus}, for this inode and every inode below it. Nothing changes
+   * in memory if a mount point cannot be invalidated or the database update fails.
+   *
+   * @return the wal offset before the subtree was updated, or null if this is not a directory
+   */
+  private final String updatePermissionStatusRecursive(PermissionStatusFormat f, long n)
+      throws IOException {
+    if (!isDirectory()) {
+      updatePermissionStatus(f, n);
+      return null;
+    }
+    String path = getPath();
+    Set<Pair<String, String>> mpoints;
+    if (FSDirectory.getInstance().isLocalNN()) {
+      mpoints = Collections.singleton(Pair.of(path, "localhost"));
+    } else {
+      mpoints = FSDirectory.getInstance().getMountsManager().resolveSubPaths(path);
+      LOG.info(path + " has sub-paths that are mounted into: " + mpoints);
+    }
+    String begin = remoteChmod(path, mpoints, f, n);
+    // the database row is already up to date
+    this.permission = f.BITS.combine(n, getPermissionLong());
+    return begin;
+  }
+
+  /**
+   * Sets the mode of this inode and, if it is a directory, of every inode below it; see
+   * {@link #remoteChmod}. {@link #setPermission(FsPermission)} only changes this inode.
+   */
+  final void setPermissionRecursive(FsPermission permission, int latestSnapshotId)
+      throws IOException {
+    recordModification(latestSnapshotId);
+    String begin = updatePermissionStatusRecursive(
+        PermissionStatusFormat.MODE, permission.toShort());
+    if (begin != null) {
+      FSDirectory.getInstance()
+        .getEditLog()
+        .logSetPermissionsMP(getPath(), permission, begin, INodeKeyedObjects.getWalOffset());
+    }
+  }
+
+  /**
+   * Sets the user and group, where not null, of this inode and, if it is a directory, of every
+   * inode below it. The caller logs the SetOwner op.
+   */
+  final void setOwnerRecursive(String user, String group, int latestSnapshotId)
+      throws IOException {
+    recordModification(latestSnapshotId);
+    if (user != null) {
+      updatePermissionStatusRecursive(
+          PermissionStatusFormat.USER, SerialNumberManager.USER.getSerialNumber(user));
+    }
+    if (group != null) {
+      updatePermissionStatusRecursive(
+          PermissionStatusFormat.GROUP, SerialNumberManager.GROUP.getSerialNumber(group));
+    }
+  }
+
   @Override
   final String getUserName(int snapshotId) {
     if (snapshotId != Snapshot.CURRENT_STATE_ID) {
@@ -651,7 +609,7 @@ void setPermission(FsPermission permission) {
   @Override
   public long getPermissionLong() {
     if (permission == -1L) {
-      permission = DatabaseINode.getPermission(getId());
+      loadRow();
     }
     return permission;
   }
@@ -672,7 +630,7 @@ final long getModificationTime(int snapshotId) {
     }
 
     if (modificationTime == -1L) {
-      modificationTime = DatabaseINode.getModificationTime(this.getId());
+      loadRow();
     }
     return modificationTime;
   }
@@ -694,7 +652,7 @@ final void cloneModificationTime(INodeWithAdditionalFields that) {
   @Override
   public final void setModificationTime(long modificationTime) {
     this.modificationTime = modificationTime;
-    INodeKeyedObjects.getUpdateSet().add(getPath());
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   @Override
@@ -704,7 +662,7 @@ final long getAccessTime(int snapshotId) {
     }
 
     if (accessTime == -1L) {
-      accessTime = DatabaseINode.getAccessTime(this.getId());
+      loadRow();
     }
     return accessTime;
   }
@@ -713,7 +671,7 @@ final long getAccessTime(int snapshotId) {
   @Override
   public final void setAccessTime(long accessTime) {
     this.accessTime = accessTime;
-    INodeKeyedObjects.getUpdateSet().add(getPath());
+    INodeKeyedObjects.getWriteBehindLog().update(getPath(), this);
   }
 
   protected void addFeature(Feature f) {
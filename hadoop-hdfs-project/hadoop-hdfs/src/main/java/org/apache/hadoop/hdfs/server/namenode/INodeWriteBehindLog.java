@@ -0,0 +1,653 @@
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.apache.hadoop.util.ExitUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind log of dirty inodes, drained to the database by a single flusher thread.
+ *
+ * <p>Handler threads append a delta (update, rename or remove of a path) to a bounded FIFO
+ * queue. When the queue is full the handler blocks until the flusher catches up, so a burst of
+ * mutations is throttled to the speed of the database instead of piling up in memory. A handler
+ * waits for a free slot before it takes the append lock, so the threads blocked on a full queue
+ * do not hold up each other's sequence numbers.
+ *
+ * <p>The flusher commits deltas in groups: a group is closed once it holds WRITE_BEHIND_BATCH_SIZE
+ * deltas (default 1024) or once its first delta has waited UPDATE_DB_TIME_DELAY microseconds
+ * (default 300). Within a group, consecutive deltas of the same kind go to the database in one
+ * batch call, so deltas are applied in the order they were logged.
+ *
+ * <p>A delta for a path that still has an unflushed delta is merged with it and moved to the tail
+ * of the queue, as long as the pair collapses into a single operation: update followed by update
+ * or rename, rename followed by update, update followed by remove, and remove followed by update
+ * or rename (the remove is then applied first). Other pairs are kept as two deltas.
+ *
+ * <p>The queue capacity is taken from WRITE_BEHIND_QUEUE_SIZE (default 65536).
+ *
+ * <p>A group that fails to reach the database is retried as a whole, in order, with a growing
+ * backoff; after WRITE_BEHIND_MAX_RETRIES failed retries (default 10) the namenode is stopped,
+ * since dropping the group would lose acknowledged changes.
+ *
+ * <p>If an {@link INodeJournal} is configured, the deltas not yet journaled are journaled when any
+ * handler syncs the edit log, that is before its operation is acknowledged, and by the flusher
+ * before it writes a group. The journal is checkpointed up to the oldest delta not yet in the
+ * database, and replayed when the log is started.
+ */
+public class INodeWriteBehindLog {
+  static final Logger LOG = LoggerFactory.getLogger(INodeWriteBehindLog.class);
+
+  enum Op {
+    UPDATE,
+    RENAME,
+    REMOVE
+  }
+
+  private static final class Delta {
+    final String path;
+    final INode inode;
+    final long queuedNanos;
+    long seq;
+    // sequence number of the oldest delta folded into this one
+    long firstSeq;
+    Op op;
+    boolean removeFirst = false;
+    long dirtyNanos;
+    // guarded by this
+    boolean dead = false;
+    boolean taken = false;
+
+    Delta(String path, Op op, INode inode, long now) {
+      this.path = path;
+      this.op = op;
+      this.inode = inode;
+      this.queuedNanos = now;
+      this.dirtyNanos = now;
+    }
+  }
+
+  private final BlockingQueue<Delta> queue;
+  // free slots of the queue; taken before the append lock and given back by the flusher
+  private final Semaphore slots;
+  private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<>();
+  // the deltas taken off pending and being written; set by the flusher before it takes them
+  private volatile List<Delta> writing = Collections.emptyList();
+  private final Object appendLock = new Object();
+  private final int batchSize;
+  private final long maxDelayNanos;
+  private final int maxRetries;
+  private final Store store;
+  private final Thread flusher;
+
+  private final INodeJournal journal;
+  private List<INodeJournal.Entry> recovered = null;
+  // assigned under appendLock
+  private volatile long lastSeq = 0;
+  // highest seq taken off the queue and committed, or dropped as merged; guarded by this
+  private long committedSeq = 0;
+  // firstSeq of every delta not yet written to the database; added to under appendLock
+  private final ConcurrentSkipListMap<Long, Boolean> unflushed = new ConcurrentSkipListMap<>();
+  // deltas not yet journaled, in seq order; guarded by appendLock
+  private List<Delta> unjournaled = new ArrayList<>();
+  // held while journaling, so that a sync that finds nothing left to journal knows that the
+  // deltas taken by a concurrent sync are already in the journal
+  private final Object journalLock = new Object();
+
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder stalls = new LongAdder();
+  private final LongAdder flushes = new LongAdder();
+  private final LongAdder flushed = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private volatile int lastBatchSize = 0;
+  private volatile long lastFlushLagMicros = 0;
+  private volatile long maxFlushLagMicros = 0;
+
+  /** Where the deltas are written: the database, unless replaced by a test. */
+  interface Store {
+    String update(List<DatabaseINode.LoadINode> rows) throws SQLException;
+
+    String rename(List<DatabaseINode.LoadINode> rows) throws SQLException;
+
+    String remove(List<String> paths) throws SQLException;
+  }
+
+  private static final Store DATABASE = new Store() {
+    @Override
+    public String update(List<DatabaseINode.LoadINode> rows) throws SQLException {
+      return DatabaseINode.batchUpdateINodes(rows);
+    }
+
+    @Override
+    public String rename(List<DatabaseINode.LoadINode> rows) throws SQLException {
+      return DatabaseINode.batchRenameINodes(rows);
+    }
+
+    @Override
+    public String remove(List<String> paths) throws SQLException {
+      return DatabaseINode.batchRemoveINodes(paths);
+    }
+  };
+
+  INodeWriteBehindLog() {
+    this(INodeJournal.open(), intEnv("WRITE_BEHIND_QUEUE_SIZE", 65536),
+        intEnv("WRITE_BEHIND_BATCH_SIZE", 1024), intEnv("UPDATE_DB_TIME_DELAY", 300),
+        intEnv("WRITE_BEHIND_MAX_RETRIES", 10), DATABASE);
+  }
+
+  INodeWriteBehindLog(INodeJournal journal, int capacity, int batchSize, long delayMicros,
+      int maxRetries, Store store) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.slots = new Semaphore(capacity);
+    this.batchSize = batchSize;
+    this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+    this.maxRetries = maxRetries;
+    this.store = store;
+    this.flusher = new Thread(this::run, "INodeWriteBehindLog");
+    this.flusher.setDaemon(true);
+
+    this.journal = journal;
+    if (journal != null) {
+      try {
+        recovered = journal.recover();
+        lastSeq = journal.getLastSeq();
+      } catch (Exception e) {
+        e.printStackTrace();
+        System.exit(-1);
+      }
+    }
+  }
+
+  private static int intEnv(String name, int defaultValue) {
+    String value = System.getenv(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  void start() {
+    if (recovered != null && !recovered.isEmpty()) {
+      replay(recovered);
+    }
+    recovered = null;
+    flusher.start();
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Write-behind log: capacity = " + queue.remainingCapacity()
+          + ", batch size = " + batchSize
+          + ", max delay = " + TimeUnit.NANOSECONDS.toMicros(maxDelayNanos) + "us");
+    }
+  }
+
+  public void update(String path, INode inode) {
+    append(new Delta(path, Op.UPDATE, inode, System.nanoTime()));
+  }
+
+  public void rename(String path, INode inode) {
+    append(new Delta(path, Op.RENAME, inode, System.nanoTime()));
+  }
+
+  public void remove(String path) {
+    append(new Delta(path, Op.REMOVE, null, System.nanoTime()));
+  }
+
+  /**
+   * Waits until every delta appended before the call is in the database. Used before an
+   * operation that writes the database directly, such as a subtree rename, so that it does not
+   * race the rows still in the queue.
+   */
+  public void flush() {
+    long target = lastSeq;
+    boolean interrupted = false;
+    synchronized (this) {
+      while (committedSeq < target && flusher.isAlive()) {
+        try {
+          wait(100);
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void append(Delta next) {
+    // reserve a slot first, so that a full queue blocks this thread without
+    // holding the append lock; the offer below then cannot fail
+    if (!slots.tryAcquire()) {
+      stalls.increment();
+      slots.acquireUninterruptibly();
+    }
+    // appends are serialized so that deltas of one path enter the queue in the
+    // order they were merged; the namesystem lock already orders mutations.
+    synchronized (appendLock) {
+      next.seq = ++lastSeq;
+      next.firstSeq = next.seq;
+      Delta prev = pending.put(next.path, next);
+      if (prev != null) {
+        synchronized (prev) {
+          if (!prev.taken && merge(prev, next)) {
+            prev.dead = true;
+            coalesced.increment();
+          }
+        }
+      }
+      if (journal != null) {
+        unflushed.put(next.firstSeq, Boolean.TRUE);
+        unjournaled.add(next);
+      }
+      appended.increment();
+      queue.add(next);
+    }
+  }
+
+  /**
+   * @return the children of {@code dir} whose rows are not in the database yet, mapped to true if
+   *         the child was added or changed and to false if it was removed. Taken before the
+   *         children are read from the database, the two together hold every child.
+   */
+  public Map<String, Boolean> getUnwrittenChildren(String dir) {
+    String prefix = dir.equals("/") ? dir : dir + "/";
+    Map<String, Boolean> children = new HashMap<>();
+    // pending first: a delta moves from pending to writing, never back, and is newer than any
+    // delta of its path being written
+    for (Delta d : pending.values()) {
+      if (isChild(prefix, d.path)) {
+        children.put(d.path.substring(prefix.length()), d.op != Op.REMOVE);
+      }
+    }
+    for (Delta d : writing) {
+      if (isChild(prefix, d.path)) {
+        children.putIfAbsent(d.path.substring(prefix.length()), d.op != Op.REMOVE);
+      }
+    }
+    return children;
+  }
+
+  private static boolean isChild(String prefix, String path) {
+    return path.length() > prefix.length()
+        && path.startsWith(prefix)
+        && path.indexOf('/', prefix.length()) < 0;
+  }
+
+  /** Folds {@code prev} into {@code next} if the pair collapses into one delta. */
+  private static boolean merge(Delta prev, Delta next) {
+    Op op = next.op;
+    switch (next.op) {
+    case UPDATE:
+      if (prev.op == Op.RENAME) {
+        if (prev.inode.getId() != next.inode.getId()) {
+          return false;
+        }
+        op = Op.RENAME;
+      }
+      break;
+    case RENAME:
+      if (prev.op == Op.RENAME && prev.inode.getId() != next.inode.getId()) {
+        return false;
+      }
+      break;
+    case REMOVE:
+      // a rename also drops the row of the old path, which a remove of the
+      // new path does not cover
+      if (prev.op == Op.RENAME) {
+        return false;
+      }
+      break;
+    default:
+      return false;
+    }
+    next.op = op;
+    next.removeFirst = op != Op.REMOVE && (prev.removeFirst || prev.op == Op.REMOVE);
+    next.dirtyNanos = prev.dirtyNanos;
+    next.firstSeq = prev.firstSeq;
+    return true;
+  }
+
+  /**
+   * Journals every delta not journaled yet, including those of the calling thread. Called when the
+   * thread syncs the edit log, so that they are durable before the operation is acknowledged.
+   */
+  public void sync() {
+    if (journal == null) {
+      return;
+    }
+    synchronized (journalLock) {
+      List<Delta> taken;
+      synchronized (appendLock) {
+        if (unjournaled.isEmpty()) {
+          return;
+        }
+        taken = unjournaled;
+        unjournaled = new ArrayList<>();
+      }
+      for (Delta d : taken) {
+        journal.append(INodeJournal.Entry.of(d.seq, d.op, d.removeFirst, d.path, d.inode));
+      }
+      journal.sync();
+    }
+  }
+
+  /** Writes the journal entries left over from the previous run to the database. */
+  private void replay(List<INodeJournal.Entry> entries) {
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Replaying " + entries.size() + " journaled inode deltas");
+    }
+    Run run = new Run(store);
+    try {
+      for (INodeJournal.Entry e : entries) {
+        if (e.removeFirst) {
+          run.add(Op.REMOVE, e);
+        }
+        run.add(e.op, e);
+      }
+      run.flush();
+      journal.checkpoint(lastSeq, run.getWalOffset());
+    } catch (SQLException e) {
+      LOG.error("Failed to replay the inode journal; it is kept for the next start", e);
+    }
+  }
+
+  private void run() {
+    List<Delta> batch = new ArrayList<>(batchSize);
+    while (true) {
+      try {
+        Delta first = queue.take();
+        batch.add(first);
+        slots.release();
+        long deadline = first.queuedNanos + maxDelayNanos;
+        while (batch.size() < batchSize) {
+          int drained = queue.drainTo(batch, batchSize - batch.size());
+          if (drained > 0) {
+            slots.release(drained);
+            continue;
+          }
+          long wait = deadline - System.nanoTime();
+          if (wait <= 0) {
+            break;
+          }
+          Delta d = queue.poll(wait, TimeUnit.NANOSECONDS);
+          if (d == null) {
+            break;
+          }
+          batch.add(d);
+          slots.release();
+        }
+        commit(batch);
+        committed(batch);
+      } catch (InterruptedException e) {
+        break;
+      } catch (Throwable t) {
+        // the group cannot be dropped without losing acknowledged changes
+        LOG.error("Write-behind flusher failed", t);
+        ExitUtil.terminate(1, t);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private synchronized void committed(List<Delta> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    // the queue is FIFO, so the last delta of the group has the highest seq
+    committedSeq = Math.max(committedSeq, batch.get(batch.size() - 1).seq);
+    notifyAll();
+  }
+
+  private void commit(List<Delta> batch) throws InterruptedException {
+    // a delta must be journaled before it is written, or a thread that never
+    // syncs could leave it out of the journal for good
+    sync();
+    List<Delta> live = new ArrayList<>(batch.size());
+    long oldest = Long.MAX_VALUE;
+    for (Delta d : batch) {
+      synchronized (d) {
+        if (d.dead) {
+          continue;
+        }
+        d.taken = true;
+      }
+      live.add(d);
+      oldest = Math.min(oldest, d.dirtyNanos);
+    }
+    if (live.isEmpty()) {
+      return;
+    }
+    // published before the deltas leave pending, see getUnwrittenChildren
+    writing = live;
+    for (Delta d : live) {
+      pending.remove(d.path, d);
+    }
+
+    List<INodeJournal.Entry> entries = new ArrayList<>(live.size());
+    for (Delta d : live) {
+      INode inode = d.inode;
+      if (d.op != Op.REMOVE) {
+        // prefer the cached object: a delta logged from a constructor refers
+        // to a partially initialized inode
+        INode cached = INodeKeyedObjects.getCache().getIfPresent(d.path);
+        if (cached != null) {
+          inode = cached;
+        }
+      }
+      entries.add(INodeJournal.Entry.of(d.seq, d.op, d.removeFirst, d.path, inode));
+    }
+    String walOffset = write(entries);
+    writing = Collections.emptyList();
+
+    if (journal != null) {
+      long durable;
+      synchronized (appendLock) {
+        for (Delta d : live) {
+          unflushed.remove(d.firstSeq);
+        }
+        // every delta before the oldest unflushed one is in the database; seqs
+        // are assigned and added to unflushed under the same lock, so a delta
+        // being appended cannot be skipped
+        Map.Entry<Long, Boolean> first = unflushed.firstEntry();
+        durable = first == null ? lastSeq : first.getKey() - 1;
+      }
+      journal.checkpoint(durable, walOffset);
+    }
+
+    long lag = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - oldest);
+    lastFlushLagMicros = lag;
+    if (lag > maxFlushLagMicros) {
+      maxFlushLagMicros = lag;
+    }
+    lastBatchSize = live.size();
+    flushes.increment();
+    flushed.add(live.size());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Write-behind flush: " + live.size() + " deltas, lag " + lag + "us");
+    }
+  }
+
+  /**
+   * Writes a group to the database, retrying it as a whole until it succeeds. Every operation of
+   * a group is an upsert or a delete applied in order, so a partly applied group can be rewritten.
+   *
+   * @return the wal offset returned for the group
+   */
+  private String write(List<INodeJournal.Entry> entries) throws InterruptedException {
+    long backoffMs = 100;
+    for (int attempt = 0; ; ++attempt) {
+      Run run = new Run(store);
+      try {
+        for (INodeJournal.Entry e : entries) {
+          if (e.removeFirst) {
+            run.add(Op.REMOVE, e);
+          }
+          run.add(e.op, e);
+        }
+        run.flush();
+        return run.getWalOffset();
+      } catch (SQLException e) {
+        retries.increment();
+        if (attempt >= maxRetries) {
+          String msg = "Failed to write " + entries.size() + " inode deltas to the database after "
+              + attempt + " retries";
+          LOG.error(msg, e);
+          ExitUtil.terminate(1, msg);
+        }
+        LOG.warn("Failed to write " + entries.size() + " inode deltas to the database, retrying in "
+            + backoffMs + "ms", e);
+        Thread.sleep(backoffMs);
+        backoffMs = Math.min(backoffMs * 2, 10000);
+      }
+    }
+  }
+
+  /** @return the inodes table row of {@code inode}. */
+  static DatabaseINode.LoadINode toRow(INode inode) {
+    long header = 0L;
+    String clientName = null;
+    String clientMachine = null;
+    if (inode.isFile()) {
+      header = inode.asFile().getHeaderLong();
+      FileUnderConstructionFeature uc = inode.asFile().getFileUnderConstructionFeature();
+      if (uc != null) {
+        clientName = uc.getClientName(inode.getId());
+        clientMachine = uc.getClientMachine(inode.getId());
+      }
+    }
+    return new DatabaseINode.LoadINode(
+        inode.getParentId(),
+        inode.getId() == INodeId.ROOT_INODE_ID ? " " : inode.getParentName(),
+        inode.getId(),
+        inode.getLocalName(),
+        inode.getPermissionLong(),
+        inode.getModificationTime(),
+        inode.getAccessTime(),
+        header,
+        clientName,
+        clientMachine);
+  }
+
+  /** Consecutive deltas of the same kind, sent to the database as one batch. */
+  private static final class Run {
+    private final Store store;
+    private Op op = null;
+    private String walOffset = null;
+
+    private final List<DatabaseINode.LoadINode> rows = new ArrayList<>();
+    private final List<String> paths = new ArrayList<>();
+
+    Run(Store store) {
+      this.store = store;
+    }
+
+    String getWalOffset() {
+      return walOffset;
+    }
+
+    void add(Op kind, INodeJournal.Entry e) throws SQLException {
+      if (op != kind) {
+        flush();
+        op = kind;
+      }
+      if (kind == Op.REMOVE) {
+        paths.add(e.path);
+        return;
+      }
+      rows.add(new DatabaseINode.LoadINode(
+          e.parent,
+          e.id == INodeId.ROOT_INODE_ID ? " " : e.parentName,
+          e.id,
+          e.name,
+          e.permission,
+          e.modificationTime,
+          e.accessTime,
+          e.header,
+          e.clientName,
+          e.clientMachine));
+    }
+
+    /** Sends the pending batch; on failure the later batches of the group are not sent. */
+    void flush() throws SQLException {
+      if (op == null) {
+        return;
+      }
+      String offset = null;
+      if (op == Op.UPDATE && rows.size() > 0) {
+        offset = store.update(rows);
+      } else if (op == Op.RENAME && rows.size() > 0) {
+        offset = store.rename(rows);
+      } else if (op == Op.REMOVE && paths.size() > 0) {
+        offset = store.remove(paths);
+      }
+      if (offset != null) {
+        walOffset = offset;
+        INodeKeyedObjects.setWalOffset(offset);
+      }
+      rows.clear();
+      paths.clear();
+      op = null;
+    }
+  }
+
+  /** Number of deltas waiting in the queue, including merged ones not yet dropped. */
+  public int getQueueLength() {
+    return queue.size();
+  }
+
+  public long getAppendedCount() {
+    return appended.sum();
+  }
+
+  /** Number of deltas folded into a later delta of the same path. */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /** Number of appends that found the queue full and had to wait. */
+  public long getStallCount() {
+    return stalls.sum();
+  }
+
+  public long getFlushCount() {
+    return flushes.sum();
+  }
+
+  public long getFlushedCount() {
+    return flushed.sum();
+  }
+
+  /** Number of times a group failed to reach the database and was retried. */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  public int getLastBatchSize() {
+    return lastBatchSize;
+  }
+
+  public double getAverageBatchSize() {
+    long n = flushes.sum();
+    return (n == 0) ? 0.0 : (double) flushed.sum() / n;
+  }
+
+  /** Time the oldest change of the last group waited before it was committed. */
+  public long getLastFlushLagMicros() {
+    return lastFlushLagMicros;
+  }
+
+  public long getMaxFlushLagMicros() {
+    return maxFlushLagMicros;
+  }
+}
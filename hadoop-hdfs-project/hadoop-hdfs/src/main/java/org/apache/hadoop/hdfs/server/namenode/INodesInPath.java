@@ -142,6 +142,19 @@ static INodesInPath resolve(final INodeDirectory startingDir,
 
   static INodesInPath resolve(final INodeDirectory startingDir,
       byte[][] components, final boolean isRaw, boolean isCreate) {
+    // the components that are not in memory are loaded together, not one
+    // lookup after the other
+    Object prev = INodeMap.prefetch(components,
+        isCreate ? components.length - 1 : components.length);
+    try {
+      return doResolve(startingDir, components, isRaw, isCreate);
+    } finally {
+      INodeMap.endPrefetch(prev);
+    }
+  }
+
+  private static INodesInPath doResolve(final INodeDirectory startingDir,
+      byte[][] components, final boolean isRaw, boolean isCreate) {
     Preconditions.checkArgument(startingDir.compareTo(components[0]) == 0);
     // we keeps a root reference in memory but we still need to borrow
     // root dir again since it had been returned to pool before.
@@ -228,14 +241,17 @@ static INodesInPath resolve(final INodeDirectory startingDir,
       } else {
         // normal case, and also for resolving file/dir under snapshot root
         if (isCreate && count == components.length - 1) {
-          String path = null;
-          String parentName = dir.getPath();
-          if (parentName.equals("/")) {
-            path = parentName + childName;
-          } else {
-            path = parentName + "/" + childName;
+          curNode = INodeKeyedObjects.getChildIndex().get(dir.getId(), childName);
+          if (curNode == null) {
+            String path = null;
+            String parentName = dir.getPath();
+            if (parentName.equals("/")) {
+              path = parentName + DFSUtil.bytes2String(childName);
+            } else {
+              path = parentName + "/" + DFSUtil.bytes2String(childName);
+            }
+            curNode = INodeKeyedObjects.getCache().getIfPresent(path);
           }
-          curNode = INodeKeyedObjects.getCache().getIfPresent(path);
           if (curNode == null) {
             break;
           }
@@ -2,28 +2,79 @@
 
 import com.github.benmanes.caffeine.cache.*;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.*;
 
 // Many keys to single value
 // https://stackoverflow.com/questions/53084384/caffeine-cache-many-keys-to-single-value
+//
+// A secondary index maps the value of its function to the set of resident keys with that value.
+// The index is updated by the cache writer on every write and removal, eviction included, so it
+// never holds more keys than the cache.
 public class IndexedCache<K, V> implements Cache<K, V> {
 
   private Cache<K, V> cache;
   private Map<Class<?>, Map<Object, Set<K>>> indexes;
+  // resident keys in key order, or null if the cache was built without withOrderedKeys
+  private NavigableSet<K> orderedKeys;
 
   private IndexedCache(Builder<K, V> bldr) {
     this.indexes = bldr.indexes;
+    this.orderedKeys = bldr.orderedKeys;
     cache = bldr.caf.build();
+    bldr.built = cache;
+  }
+
+  /**
+   * @return a live view of the resident keys from {@code from}, inclusive, to {@code to},
+   *         exclusive, in key order. Needs {@link Builder#withOrderedKeys()}.
+   */
+  public NavigableSet<K> keyRange(K from, K to) {
+    if (orderedKeys == null) {
+      throw new UnsupportedOperationException("the cache has no ordered key index");
+    }
+    return orderedKeys.subSet(from, true, to, false);
+  }
+
+  /**
+   * Invalidates the resident keys from {@code from}, inclusive, to {@code to}, exclusive. The
+   * cost is that of the entries in the range, not of the whole cache.
+   *
+   * @return the number of keys invalidated.
+   */
+  public int invalidateRange(K from, K to) {
+    int n = 0;
+    // the view is weakly consistent, so keys can be removed while it is iterated
+    for (K key : keyRange(from, to)) {
+      cache.invalidate(key);
+      ++n;
+    }
+    return n;
   }
 
   public <R> void invalidateAllWithIndex(Class<R> clazz, R value) {
-    cache.invalidateAll(indexes.get(clazz).getOrDefault(value, new HashSet<>()));
+    cache.invalidateAll(indexes.get(clazz).getOrDefault(value, Collections.emptySet()));
+  }
+
+  /** @return the resident keys indexed under {@code value}. */
+  @VisibleForTesting
+  <R> Set<K> indexedKeys(Class<R> clazz, R value) {
+    return Collections.unmodifiableSet(
+        indexes.get(clazz).getOrDefault(value, Collections.emptySet()));
+  }
+
+  /** @return the number of values in the index of {@code clazz}. */
+  @VisibleForTesting
+  int indexSize(Class<?> clazz) {
+    return indexes.get(clazz).size();
   }
 
   @Override
@@ -52,12 +103,18 @@ public V getIfPresent(Object key) {
   }
 
   public <R> V getIfPresent(Class<R> clazz, R value) {
-    Set<K> keys = indexes.get(clazz).getOrDefault(value, new HashSet<>());
-    if (keys.isEmpty()) {
+    Set<K> keys = indexes.get(clazz).get(value);
+    if (keys == null) {
       return null;
-    } else {
-      return cache.getIfPresent(keys.iterator().next());
     }
+    // a key may be removed between the index lookup and the cache lookup
+    for (K key : keys) {
+      V v = cache.getIfPresent(key);
+      if (v != null) {
+        return v;
+      }
+    }
+    return null;
   }
 
   @Override
@@ -101,16 +158,78 @@ public void cleanUp() {
   }
 
   public static class Builder<K, V> {
-    Map<Class<?>, Function<K, ?>> functions = new HashMap<>();
+    Map<Class<?>, BiFunction<K, V, ?>> functions = new HashMap<>();
     Map<Class<?>, Map<Object, Set<K>>> indexes = new ConcurrentHashMap<>();
+    NavigableSet<K> orderedKeys;
     Caffeine<K, V> caf;
+    Cache<K, V> built;
+    BiConsumer<K, V> writeListener = (k, v) -> {};
+    BiConsumer<K, V> deleteListener = (k, v) -> {};
+    BiConsumer<K, V> evictionListener = (k, v) -> {};
 
-    public <R> Builder<K, V> withIndex(Class<R> clazz, Function<K, R> function) {
+    // indexes the entries by function(key, value); a null result leaves the entry out
+    public <R> Builder<K, V> withIndex(Class<R> clazz, BiFunction<K, V, R> function) {
       functions.put(clazz, function);
       indexes.put(clazz, new ConcurrentHashMap<>());
       return this;
     }
 
+    private void index(K k, V v) {
+      for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
+        Object r = functions.get(indexesEntry.getKey()).apply(k, v);
+        if (r != null) {
+          // compute, not computeIfAbsent, so the set cannot be pruned before the key is added
+          indexesEntry.getValue().compute(r, (ky, keys) -> {
+            if (keys == null) {
+              keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(k);
+            return keys;
+          });
+        }
+      }
+    }
+
+    private void unindex(K k, V v) {
+      for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
+        Object r = functions.get(indexesEntry.getKey()).apply(k, v);
+        if (r != null) {
+          // drop only this key, and the set once it is empty
+          indexesEntry.getValue().computeIfPresent(r, (ky, keys) -> {
+            keys.remove(k);
+            return keys.isEmpty() ? null : keys;
+          });
+        }
+      }
+    }
+
+    // keeps the resident keys sorted, for keyRange and invalidateRange; the keys must be
+    // Comparable
+    public Builder<K, V> withOrderedKeys() {
+      orderedKeys = new ConcurrentSkipListSet<>();
+      return this;
+    }
+
+    // called synchronously whenever an entry is written to the cache
+    public Builder<K, V> withWriteListener(BiConsumer<K, V> listener) {
+      writeListener = listener;
+      return this;
+    }
+
+    // called synchronously whenever an entry is removed from the cache
+    public Builder<K, V> withDeleteListener(BiConsumer<K, V> listener) {
+      deleteListener = listener;
+      return this;
+    }
+
+    // called synchronously, after the delete listener, when an entry is evicted by the policy
+    // rather than invalidated or replaced; unlike a removal listener it runs before the key can
+    // be loaded again
+    public Builder<K, V> withEvictionListener(BiConsumer<K, V> listener) {
+      evictionListener = listener;
+      return this;
+    }
+
     public IndexedCache<K, V> buildFromCaffeine(Caffeine<Object, Object> caffeine) {
       caf =
           caffeine.writer(
@@ -118,19 +237,32 @@ public IndexedCache<K, V> buildFromCaffeine(Caffeine<Object, Object> caffeine) {
 
                 @Override
                 public void write(K k, V v) {
-                  for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
-                    indexesEntry
-                        .getValue()
-                        .computeIfAbsent(
-                            functions.get(indexesEntry.getKey()).apply(k), (ky) -> new HashSet<>())
-                        .add(k);
+                  if (!indexes.isEmpty()) {
+                    // the writer runs before the new value is stored, so the value it
+                    // replaces is still visible and its index entries can be dropped
+                    V old = built == null ? null : built.asMap().get(k);
+                    if (old != null && old != v) {
+                      unindex(k, old);
+                    }
+                    index(k, v);
                   }
+                  if (orderedKeys != null) {
+                    orderedKeys.add(k);
+                  }
+                  writeListener.accept(k, v);
                 }
 
                 @Override
                 public void delete(K k, V v, RemovalCause removalCause) {
-                  for (Map.Entry<Class<?>, Map<Object, Set<K>>> indexesEntry : indexes.entrySet()) {
-                    indexesEntry.getValue().remove(functions.get(indexesEntry.getKey()).apply(k));
+                  if (v != null) {
+                    unindex(k, v);
+                  }
+                  if (orderedKeys != null) {
+                    orderedKeys.remove(k);
+                  }
+                  deleteListener.accept(k, v);
+                  if (v != null && removalCause.wasEvicted()) {
+                    evictionListener.accept(k, v);
                   }
                 }
               });
@@ -352,6 +352,7 @@ public void blockIdCK(String blockId) {
    */
   public void fsck() {
     final long startTime = Time.monotonicNow();
+    INodeKeyedObjects.beginScan();
     try {
       if(blockIds != null) {
         String[] blocks = blockIds.split(" ");
@@ -456,6 +457,7 @@ public void fsck() {
       out.println(e.getMessage());
       out.print("\n\n" + errMsg);
     } finally {
+      INodeKeyedObjects.endScan();
       out.close();
     }
   }
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.db;
+
+import static org.apache.hadoop.hdfs.db.DatabaseBlockCache.BC_ID;
+import static org.apache.hadoop.hdfs.db.DatabaseBlockCache.GENERATION_STAMP;
+import static org.apache.hadoop.hdfs.db.DatabaseBlockCache.MISS;
+import static org.apache.hadoop.hdfs.db.DatabaseBlockCache.NUM_BYTES;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests the set-associative table and the versioned fills of {@link DatabaseBlockCache}. */
+public class TestDatabaseBlockCache {
+
+  @Test
+  public void testPutAndGet() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(1024);
+    assertEquals(MISS, cache.get(1L, NUM_BYTES));
+    cache.put(1L, NUM_BYTES, 10L);
+    assertEquals(10L, cache.get(1L, NUM_BYTES));
+    // the fields of an entry are valid independently
+    assertEquals(MISS, cache.get(1L, GENERATION_STAMP));
+    long[] res = new long[2];
+    assertFalse(cache.get(1L, NUM_BYTES, GENERATION_STAMP, res));
+    cache.put(1L, GENERATION_STAMP, 1001L);
+    assertTrue(cache.get(1L, NUM_BYTES, GENERATION_STAMP, res));
+    assertArrayEquals(new long[] {10L, 1001L}, res);
+
+    cache.invalidate(1L, NUM_BYTES);
+    assertEquals(MISS, cache.get(1L, NUM_BYTES));
+    assertEquals(1001L, cache.get(1L, GENERATION_STAMP));
+    cache.invalidate(1L);
+    assertEquals(MISS, cache.get(1L, GENERATION_STAMP));
+  }
+
+  @Test
+  public void testEvictionWithinSet() {
+    // one set of four ways
+    DatabaseBlockCache cache = new DatabaseBlockCache(4);
+    assertEquals(4, cache.capacity());
+    for (long b = 1; b <= 4; ++b) {
+      cache.put(b, NUM_BYTES, b * 10);
+    }
+    assertEquals(0, cache.getEvictionCount());
+    cache.put(5L, NUM_BYTES, 50L);
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(50L, cache.get(5L, NUM_BYTES));
+    int cached = 0;
+    for (long b = 1; b <= 4; ++b) {
+      if (cache.get(b, NUM_BYTES) != MISS) {
+        assertEquals(b * 10, cache.get(b, NUM_BYTES));
+        cached++;
+      }
+    }
+    assertEquals(3, cached);
+  }
+
+  @Test
+  public void testFillAfterWriteIsDropped() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(1024);
+    // a loader read the value before a write of the block
+    int version = cache.version(1L);
+    cache.put(1L, GENERATION_STAMP, 1002L);
+    cache.invalidate(1L, GENERATION_STAMP);
+    cache.fill(1L, NUM_BYTES, 10L, version);
+    assertEquals(MISS, cache.get(1L, NUM_BYTES));
+
+    version = cache.version(1L);
+    cache.fill(1L, NUM_BYTES, 10L, version);
+    assertEquals(10L, cache.get(1L, NUM_BYTES));
+    // a fill does not overwrite a cached value
+    cache.fill(1L, NUM_BYTES, 20L, version);
+    assertEquals(10L, cache.get(1L, NUM_BYTES));
+
+    int[] versions = cache.versions();
+    cache.invalidate(2L);
+    cache.fill(2L, NUM_BYTES, 30L, versions);
+    assertEquals(MISS, cache.get(2L, NUM_BYTES));
+  }
+
+  @Test
+  public void testInvalidateBcIdsByInode() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(1024);
+    cache.put(1L, BC_ID, 100L);
+    cache.put(2L, BC_ID, 100L);
+    cache.put(3L, BC_ID, 200L);
+    cache.put(1L, NUM_BYTES, 10L);
+    cache.invalidateBcIds(100L);
+    assertEquals(MISS, cache.get(1L, BC_ID));
+    assertEquals(MISS, cache.get(2L, BC_ID));
+    assertEquals(200L, cache.get(3L, BC_ID));
+    assertEquals(10L, cache.get(1L, NUM_BYTES));
+    // a write after the invalidation is cached
+    cache.put(1L, BC_ID, 100L);
+    assertEquals(100L, cache.get(1L, BC_ID));
+  }
+
+  @Test
+  public void testFillBcIdAfterInodeWriteIsDropped() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(1024);
+    int version = cache.version(1L);
+    long bcIdVersion = cache.bcIdVersion();
+    cache.invalidateBcIds(100L);
+    cache.fillBcId(1L, 100L, version, bcIdVersion);
+    assertEquals(MISS, cache.get(1L, BC_ID));
+
+    cache.fillBcId(1L, 100L, cache.version(1L), cache.bcIdVersion());
+    assertEquals(100L, cache.get(1L, BC_ID));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBcIdIsNotFilledWithoutBcIdVersion() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(1024);
+    cache.fill(1L, BC_ID, 100L, cache.version(1L));
+  }
+
+  @Test
+  public void testDisabled() {
+    DatabaseBlockCache cache = new DatabaseBlockCache(0);
+    assertFalse(cache.isEnabled());
+    cache.put(1L, NUM_BYTES, 10L);
+    cache.invalidateBcIds(100L);
+    assertEquals(MISS, cache.get(1L, NUM_BYTES));
+  }
+}
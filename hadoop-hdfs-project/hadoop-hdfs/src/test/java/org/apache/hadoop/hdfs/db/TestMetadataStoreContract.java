@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The behaviour every {@link MetadataStore} must have, run against {@link InMemoryMetadataStore}.
+ * A store over a database can be checked by overriding {@link #createStore}.
+ */
+public class TestMetadataStoreContract {
+  private MetadataStore store;
+
+  protected MetadataStore createStore() {
+    return new InMemoryMetadataStore();
+  }
+
+  private static LoadINode inode(long parent, String parentName, long id, String name) {
+    return new LoadINode(parent, parentName, id, name, 0644L, 1L, 1L, 0L);
+  }
+
+  // /, /a, /a/b, /a/b/f, /a/c and /ab, a sibling of /a that shares its prefix
+  @Before
+  public void setUp() throws Exception {
+    store = createStore();
+    store.updateINodes(Arrays.asList(
+        inode(0, " ", 1, ""),
+        inode(1, "/", 2, "a"),
+        inode(2, "/a", 3, "b"),
+        inode(3, "/a/b", 4, "f"),
+        inode(2, "/a", 5, "c"),
+        inode(1, "/", 6, "ab")));
+  }
+
+  private List<String> sorted(List<String> names) {
+    List<String> res = new ArrayList<>(names);
+    Collections.sort(res, store.getNameOrder());
+    return res;
+  }
+
+  @Test
+  public void testLoad() {
+    assertEquals(1, store.loadINode(" ", "").id);
+    assertEquals(3, store.loadINode("/a", "b").id);
+    assertEquals(3, store.loadINode(2, "b").id);
+    LoadINode f = store.loadINode(4);
+    assertEquals("/a/b", f.parentName);
+    assertEquals("f", f.name);
+    assertNull(store.loadINode("/a", "x"));
+    assertNull(store.loadINode(99));
+    assertEquals(6, store.getINodesNum());
+    assertEquals(6, store.getLastInodeId());
+    assertEquals(Arrays.asList("a", "ab"), sorted(store.getChildrenNames(1)));
+    assertEquals(Arrays.asList("b", "c"), sorted(store.getChildrenNames(2)));
+    assertTrue(store.getChildrenNames(4).isEmpty());
+  }
+
+  @Test
+  public void testUpdateReplacesRow() throws Exception {
+    store.updateINodes(Collections.singletonList(
+        new LoadINode(2, "/a", 5, "c", 0755L, 2L, 3L, 0L)));
+    LoadINode c = store.loadINode("/a", "c");
+    assertEquals(0755L, c.permission);
+    assertEquals(2L, c.modificationTime);
+    assertEquals(6, store.getINodesNum());
+    assertEquals(Arrays.asList("b", "c"), sorted(store.getChildrenNames(2)));
+  }
+
+  @Test
+  public void testRenameINodes() throws Exception {
+    // /a/c moves to /ab/d
+    store.renameINodes(Collections.singletonList(inode(6, "/ab", 5, "d")));
+    assertNull(store.loadINode("/a", "c"));
+    assertEquals(5, store.loadINode("/ab", "d").id);
+    assertEquals("d", store.loadINode(5).name);
+    assertEquals(Collections.singletonList("b"), store.getChildrenNames(2));
+    assertEquals(Collections.singletonList("d"), store.getChildrenNames(6));
+    assertEquals(6, store.getINodesNum());
+  }
+
+  @Test
+  public void testRenameSubtree() throws Exception {
+    // /a was renamed to /x; the rows below it follow, ids kept
+    store.renameINodes(Collections.singletonList(inode(1, "/", 2, "x")));
+    store.renameSubtree("/a", "/x", 1);
+    assertNull(store.loadINode("/a", "b"));
+    assertNull(store.loadINode("/a/b", "f"));
+    assertEquals(3, store.loadINode("/x", "b").id);
+    assertEquals(4, store.loadINode("/x/b", "f").id);
+    assertEquals(5, store.loadINode("/x", "c").id);
+    assertEquals("/x/b", store.loadINode(4).parentName);
+    // the sibling is not below /a
+    assertEquals("/", store.loadINode(6).parentName);
+    assertEquals(6, store.getINodesNum());
+  }
+
+  @Test
+  public void testRemoveSubtree() throws Exception {
+    store.removeINodes(Collections.singletonList("/a"));
+    assertNull(store.loadINode("/", "a"));
+    assertNull(store.loadINode(3));
+    assertNull(store.loadINode(4));
+    assertNull(store.loadINode(5));
+    assertNotNull(store.loadINode("/", "ab"));
+    assertEquals(Collections.singletonList("ab"), store.getChildrenNames(1));
+    assertEquals(2, store.getINodesNum());
+  }
+
+  @Test
+  public void testSubtreePartitions() {
+    assertEquals(Arrays.asList("/a", "/a/b"), sorted(store.getSubtreePartitions("/a")));
+    assertTrue(store.getSubtreePartitions("/ab").isEmpty());
+  }
+
+  @Test
+  public void testSetSubtreePermission() throws Exception {
+    store.setSubtreePermission(2, "/a", 0L, 0700L);
+    assertEquals(0700L, store.loadINode(2).permission);
+    assertEquals(0700L, store.loadINode(3).permission);
+    assertEquals(0700L, store.loadINode(4).permission);
+    assertEquals(0644L, store.loadINode(6).permission);
+    assertEquals(0644L, store.loadINode(1).permission);
+  }
+
+  @Test
+  public void testChildrenNamesPaged() throws Exception {
+    List<LoadINode> files = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 25; ++i) {
+      String name = String.format("f%02d", i);
+      files.add(inode(3, "/a/b", 100 + i, name));
+      names.add(name);
+    }
+    store.updateINodes(files);
+    names.add("f");
+    names = sorted(names);
+
+    List<String> listed = new ArrayList<>();
+    String startAfter = "";
+    while (true) {
+      List<String> page = store.getChildrenNamesPaged(3, startAfter, 10);
+      assertTrue(page.size() <= 10);
+      if (page.isEmpty()) {
+        break;
+      }
+      assertEquals(sorted(page), page);
+      listed.addAll(page);
+      startAfter = page.get(page.size() - 1);
+    }
+    assertEquals(names, listed);
+    assertTrue(store.getChildrenNamesPaged(99, "", 10).isEmpty());
+  }
+
+  @Test
+  public void testFilters() {
+    assertNull(store.getFilter(2));
+    store.setFilter(2, new byte[] {1, 2});
+    assertEquals(2, store.getFilter(2).length);
+    store.removeFilter(2);
+    assertNull(store.getFilter(2));
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.mount;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager.MountEntry;
+import org.junit.Test;
+
+/** Tests the longest-prefix matching of {@link MountTrie} and {@link MountsManager}. */
+public class TestMountTrie {
+
+  private static MountEntry mount(String fsUri, String mountPoint) {
+    return new MountEntry(fsUri, mountPoint, new String[0]);
+  }
+
+  private static final List<MountEntry> TABLE = Arrays.asList(
+      mount("hdfs://nn0:8020", "/"),
+      mount("hdfs://nn1:8020", "/a"),
+      mount("hdfs://nn2:8020", "/a/b/c"),
+      mount("hdfs://nn3:8020", "/ab"),
+      mount("hdfs://nn4:8020", "/d/e"),
+      mount("hdfs://nn5:8020", "/d/e"));
+
+  @Test
+  public void testLongestPrefix() {
+    MountTrie trie = MountTrie.build(TABLE);
+    assertEquals("/", trie.resolve("/").mountPoint);
+    assertEquals("/", trie.resolve("/x/y").mountPoint);
+    assertEquals("/a", trie.resolve("/a").mountPoint);
+    assertEquals("/a", trie.resolve("/a/b").mountPoint);
+    assertEquals("/a/b/c", trie.resolve("/a/b/c").mountPoint);
+    assertEquals("/a/b/c", trie.resolve("/a/b/c/f").mountPoint);
+    // matched by whole components only
+    assertEquals("/a", trie.resolve("/a/b/cd").mountPoint);
+    assertEquals("/ab", trie.resolve("/ab/f").mountPoint);
+    assertEquals("/", trie.resolve("/abc").mountPoint);
+    assertEquals("/a/b/c", trie.resolve("//a//b/c/").mountPoint);
+  }
+
+  @Test
+  public void testNoRoot() {
+    MountTrie trie = MountTrie.build(Arrays.asList(mount("hdfs://nn1:8020", "/a")));
+    assertNull(trie.resolve("/b"));
+    assertNull(trie.resolveAny("/b"));
+    assertNull(trie.owners("/"));
+    assertEquals("hdfs://nn1:8020", trie.resolve("/a/b").fsUri);
+  }
+
+  @Test
+  public void testSharedMountPoint() {
+    MountTrie trie = MountTrie.build(TABLE);
+    assertEquals(2, trie.owners("/d/e/f").length);
+    // resolve keeps the first in the table, resolveAny spreads over all of them
+    Set<String> picked = new HashSet<>();
+    for (int i = 0; i < 200; ++i) {
+      assertEquals("hdfs://nn4:8020", trie.resolve("/d/e/f").fsUri);
+      picked.add(trie.resolveAny("/d/e/f").fsUri);
+    }
+    assertEquals(new HashSet<>(Arrays.asList("hdfs://nn4:8020", "hdfs://nn5:8020")), picked);
+    assertEquals("hdfs://nn1:8020", trie.resolveAny("/a/b").fsUri);
+  }
+
+  @Test
+  public void testFindAndCollect() {
+    MountTrie trie = MountTrie.build(TABLE);
+    MountTrie.Node a = trie.find("/a");
+    assertTrue(a.entries != null);
+    assertTrue(a.hasMountBelow);
+    MountTrie.Node b = trie.find("/a/b");
+    assertNull(b.entries);
+    assertTrue(b.hasMountBelow);
+    assertFalse(trie.find("/a/b/c").hasMountBelow);
+    assertNull(trie.find("/a/x"));
+    assertNull(trie.find("/a/b/c/f"));
+
+    List<MountEntry> below = new ArrayList<>();
+    MountTrie.collect(trie.find("/d"), below);
+    assertEquals(2, below.size());
+    assertEquals("hdfs://nn4:8020", below.get(0).fsUri);
+    assertEquals("hdfs://nn5:8020", below.get(1).fsUri);
+  }
+
+  @Test
+  public void testMountsManager() {
+    MountsManager mounts = new MountsManager();
+    mounts.installMountTable(TABLE);
+    assertEquals("hdfs://nn0:8020", mounts.resolve(null));
+    assertEquals("hdfs://nn0:8020", mounts.resolve("/x"));
+    assertEquals("hdfs://nn2:8020", mounts.resolve("/a/b/c/f"));
+    assertEquals("hdfs://nn2:8020", mounts.resolveOpt("/a/b/c/f"));
+    for (int i = 0; i < 20; ++i) {
+      assertEquals("hdfs://nn4:8020", mounts.resolve("/d/e"));
+    }
+    assertTrue(mounts.resolveOpt("/d/e").matches("hdfs://nn[45]:8020"));
+    assertTrue(mounts.isMountPoint("/a/b/c"));
+    assertFalse(mounts.isMountPoint("/a/b"));
+    assertTrue(mounts.isUnified("/a/b/c"));
+    assertFalse(mounts.isUnified("/a"));
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.nnproxy.server.mount.MountsManager;
+import org.apache.hadoop.hdfs.nnproxy.server.upstream.UpstreamManager;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that {@link AsyncForwardingTranslatorPB} serves a call itself when its namenode has no
+ * asynchronous proxy, as for an HA nameservice.
+ */
+public class TestAsyncForwardingTranslatorPB {
+  private static final String FS = "hdfs://nn1:8020";
+
+  private ClientProtocol server;
+  private AsyncForwarder forwarder;
+
+  @BeforeClass
+  public static void setUpMetrics() {
+    if (NNProxy.proxyMetrics == null) {
+      NNProxy.proxyMetrics = ProxyMetrics.create(new Configuration());
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    final UserGroupInformation user = UserGroupInformation.createRemoteUser("user");
+    Server.getCurCall().set(
+        new Server.Call(0, 0, null, null, RPC.RpcKind.RPC_PROTOCOL_BUFFER, new byte[0]) {
+          @Override
+          public UserGroupInformation getRemoteUser() {
+            return user;
+          }
+        });
+    server = mock(ClientProtocol.class);
+    when(server.getFileInfo(anyString()))
+        .thenReturn(new HdfsFileStatus.Builder().isdir(false).build());
+  }
+
+  @After
+  public void tearDown() {
+    Server.getCurCall().remove();
+    if (forwarder != null) {
+      forwarder.invocationProxy.protocolHandler.leaseTracker.shutdown();
+      forwarder.shutdown();
+    }
+  }
+
+  // a translator whose only namenode, like an HA nameservice, has no rpcProxy
+  private AsyncForwardingTranslatorPB translator(boolean cache) throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(ProxyConfig.METADATA_CACHE_ENABLED, cache);
+    MountsManager mounts = mock(MountsManager.class);
+    when(mounts.resolveOpt(anyString())).thenReturn(FS);
+    NNProxy nnProxy = mock(NNProxy.class);
+    when(nnProxy.getMounts()).thenReturn(mounts);
+    UpstreamManager upstreamManager = mock(UpstreamManager.class);
+    when(upstreamManager.getUpstream(anyString(), anyString()))
+        .thenReturn(new UpstreamManager.Upstream(mock(ClientProtocol.class), null, null));
+    forwarder = new AsyncForwarder(new RpcInvocationProxy(nnProxy, conf, upstreamManager));
+    return new AsyncForwardingTranslatorPB(server, forwarder);
+  }
+
+  private void assertServedSynchronously(AsyncForwardingTranslatorPB translator)
+      throws Exception {
+    GetFileInfoRequestProto req = GetFileInfoRequestProto.newBuilder().setSrc("/a/f").build();
+    GetFileInfoResponseProto response = translator.getFileInfo(null, req);
+    assertNotNull(response);
+    assertTrue(response.hasFs());
+    verify(server, times(1)).getFileInfo("/a/f");
+  }
+
+  @Test
+  public void testGetFileInfoWithoutCache() throws Exception {
+    assertServedSynchronously(translator(false));
+  }
+
+  @Test
+  public void testGetFileInfoWithCache() throws Exception {
+    assertServedSynchronously(translator(true));
+  }
+}
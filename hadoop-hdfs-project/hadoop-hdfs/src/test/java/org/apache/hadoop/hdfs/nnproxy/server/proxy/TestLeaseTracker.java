@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests which namenodes {@link LeaseTracker} renews on, and when it forgets them. */
+public class TestLeaseTracker {
+  private static final List<String> ALL = Arrays.asList("nn1", "nn2", "nn3");
+
+  private LeaseTracker tracker;
+  private long expire;
+  // past the startup window, in which every renewal goes to all namenodes
+  private long t0;
+
+  @Before
+  public void setUp() {
+    Configuration conf = new Configuration();
+    conf.setLong(ProxyConfig.LEASE_TRACKING_EXPIRE_MS, 1000L);
+    conf.setInt(ProxyConfig.LEASE_RENEW_THREADS, 1);
+    tracker = new LeaseTracker(conf, new Router(null, conf, null));
+    expire = TimeUnit.MILLISECONDS.toNanos(1000L);
+    t0 = tracker.startNanos + 2 * expire;
+  }
+
+  @After
+  public void tearDown() {
+    tracker.shutdown();
+  }
+
+  @Test
+  public void testStartupRenewsOnAll() {
+    tracker.open("client", "nn1", tracker.startNanos);
+    assertEquals(ALL, tracker.renewTargets("client", ALL, tracker.startNanos));
+  }
+
+  @Test
+  public void testRenewsWhereFilesAreOpen() {
+    tracker.open("client", "nn1", t0);
+    assertEquals(Collections.singletonList("nn1"), tracker.renewTargets("client", ALL, t0));
+  }
+
+  @Test
+  public void testOpenFilesAreNeverDropped() {
+    tracker.open("client", "nn1", t0);
+    // the client keeps renewing but does not write for longer than the expiry
+    for (int i = 1; i <= 3; ++i) {
+      long now = t0 + i * expire;
+      assertEquals(Collections.singletonList("nn1"), tracker.renewTargets("client", ALL, now));
+      tracker.prune(now);
+    }
+  }
+
+  @Test
+  public void testClosedNamenodeExpires() {
+    tracker.open("client", "nn1", t0);
+    tracker.open("client", "nn2", t0);
+    tracker.close("client", "nn2", t0);
+    assertEquals(2, tracker.renewTargets("client", ALL, t0 + expire / 2).size());
+    assertEquals(
+        Collections.singletonList("nn1"), tracker.renewTargets("client", ALL, t0 + expire));
+  }
+
+  @Test
+  public void testUnseenClientRenewsOnAll() {
+    // e.g. it opened its files before the proxy restarted
+    assertEquals(ALL, tracker.renewTargets("client", ALL, t0));
+    tracker.open("client", "nn1", t0);
+    assertEquals(ALL, tracker.renewTargets("client", ALL, t0));
+  }
+
+  @Test
+  public void testIdleClientIsForgotten() {
+    tracker.open("client", "nn1", t0);
+    tracker.prune(t0 + expire);
+    assertTrue(tracker.leases.isEmpty());
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the per-user entries and the invalidations of {@link MetadataCache}. */
+public class TestMetadataCache {
+  private MetadataCache cache;
+
+  @BeforeClass
+  public static void setUpMetrics() {
+    if (NNProxy.proxyMetrics == null) {
+      NNProxy.proxyMetrics = ProxyMetrics.create(new Configuration());
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Configuration conf = new Configuration();
+    conf.setLong(ProxyConfig.METADATA_CACHE_TTL_MS, 60000L);
+    conf.setLong(ProxyConfig.METADATA_CACHE_MAX_ENTRIES, 4);
+    cache = new MetadataCache(conf);
+  }
+
+  private static HdfsFileStatus status(boolean isdir) {
+    return new HdfsFileStatus.Builder().isdir(isdir).build();
+  }
+
+  private void put(String user, String path, HdfsFileStatus status) {
+    cache.putFileInfo(user, path, status, cache.generation());
+  }
+
+  @Test
+  public void testEntriesArePerUser() {
+    HdfsFileStatus status = status(false);
+    put("alice", "/a/f", status);
+    assertSame(status, cache.getFileInfo("alice", "/a/f"));
+    assertNull(cache.getFileInfo("bob", "/a/f"));
+  }
+
+  @Test
+  public void testInvalidateDropsEveryUser() {
+    put("alice", "/a/f", status(false));
+    put("bob", "/a/f", status(false));
+    put("alice", "/a/f2", status(false));
+    cache.invalidate("/a/f");
+    assertNull(cache.getFileInfo("alice", "/a/f"));
+    assertNull(cache.getFileInfo("bob", "/a/f"));
+    assertNotNull(cache.getFileInfo("alice", "/a/f2"));
+  }
+
+  @Test
+  public void testInvalidateSubtree() {
+    put("alice", "/a", status(true));
+    put("alice", "/a/b/f", status(false));
+    put("bob", "/a/g", status(false));
+    put("alice", "/ab", status(false));
+    cache.onCall("delete", new Object[]{"/a", true});
+    assertNull(cache.getFileInfo("alice", "/a"));
+    assertNull(cache.getFileInfo("alice", "/a/b/f"));
+    assertNull(cache.getFileInfo("bob", "/a/g"));
+    // a sibling sharing the prefix of the name is kept
+    assertNotNull(cache.getFileInfo("alice", "/ab"));
+  }
+
+  @Test
+  public void testStaleReadIsNotCached() {
+    long gen = cache.generation();
+    cache.invalidate("/a/f");
+    cache.putFileInfo("alice", "/a/f", status(false), gen);
+    assertNull(cache.getFileInfo("alice", "/a/f"));
+  }
+
+  @Test
+  public void testOpenFileIsNotCached() {
+    cache.onCall("create", new Object[]{"/a/f"});
+    put("alice", "/a/f", status(false));
+    assertNull(cache.getFileInfo("alice", "/a/f"));
+    cache.onCall("complete", new Object[]{"/a/f"});
+    put("alice", "/a/f", status(false));
+    assertNotNull(cache.getFileInfo("alice", "/a/f"));
+  }
+
+  @Test
+  public void testOldestEntriesGoFirst() {
+    for (int i = 0; i < 6; i++) {
+      put("alice", "/f" + i, status(false));
+    }
+    assertNull(cache.getFileInfo("alice", "/f0"));
+    assertNull(cache.getFileInfo("alice", "/f1"));
+    assertNotNull(cache.getFileInfo("alice", "/f5"));
+  }
+
+  @Test
+  public void testInvalidatedEntriesAreNotCounted() {
+    for (int i = 0; i < 4; i++) {
+      put("alice", "/f" + i, status(false));
+    }
+    cache.invalidateSubtree("/");
+    for (int i = 0; i < 4; i++) {
+      put("alice", "/g" + i, status(false));
+    }
+    for (int i = 0; i < 4; i++) {
+      assertNotNull(cache.getFileInfo("alice", "/g" + i));
+    }
+    assertEquals(4, cache.live.get());
+  }
+
+  @Test
+  public void testOverwrittenEntriesAreNotCounted() {
+    for (int i = 0; i < 4; i++) {
+      put("alice", "/f", status(false));
+    }
+    HdfsFileStatus status = status(false);
+    put("alice", "/f", status);
+    for (int i = 0; i < 3; i++) {
+      put("alice", "/g" + i, status(false));
+    }
+    assertSame(status, cache.getFileInfo("alice", "/f"));
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(cache.getFileInfo("alice", "/g" + i));
+    }
+    assertEquals(4, cache.live.get());
+  }
+}
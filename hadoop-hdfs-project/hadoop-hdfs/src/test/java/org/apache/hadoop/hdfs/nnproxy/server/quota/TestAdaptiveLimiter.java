@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.nnproxy.server.quota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.nnproxy.ProxyConfig;
+import org.apache.hadoop.hdfs.nnproxy.server.NNProxy;
+import org.apache.hadoop.hdfs.nnproxy.server.proxy.ProxyMetrics;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the permits, the backoff and the latency gradient of {@link AdaptiveLimiter}. */
+public class TestAdaptiveLimiter {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @BeforeClass
+  public static void setUpMetrics() {
+    if (NNProxy.proxyMetrics == null) {
+      NNProxy.proxyMetrics = ProxyMetrics.create(new Configuration());
+    }
+  }
+
+  private static AdaptiveLimiter limiter(int initial, long maxWaitMs) {
+    Configuration conf = new Configuration();
+    conf.setInt(ProxyConfig.LIMITER_INITIAL_LIMIT, initial);
+    conf.setInt(ProxyConfig.LIMITER_MIN_LIMIT, 2);
+    conf.setLong(ProxyConfig.MAX_CONCURRENT_REQUEST_PER_FS, 1000);
+    conf.setLong(ProxyConfig.LIMITER_MAX_WAIT_MS, maxWaitMs);
+    return new AdaptiveLimiter("hdfs://nn:8020", conf);
+  }
+
+  // latencies of one window each, all calls made at the current limit
+  private static long windows(AdaptiveLimiter limiter, long now, int count, long... rtts) {
+    for (int w = 0; w < count; ++w) {
+      for (int i = 0; i < AdaptiveLimiter.MIN_WINDOW_SAMPLES; ++i) {
+        now += AdaptiveLimiter.WINDOW_NANOS / AdaptiveLimiter.MIN_WINDOW_SAMPLES;
+        synchronized (limiter) {
+          limiter.update(rtts[i % rtts.length], now);
+        }
+      }
+    }
+    return now;
+  }
+
+  private static void fill(AdaptiveLimiter limiter, int permits) throws StandbyException {
+    for (int i = 0; i < permits; ++i) {
+      limiter.acquire("user");
+    }
+  }
+
+  @Test
+  public void testRejectsOverLimit() throws Exception {
+    AdaptiveLimiter limiter = limiter(4, 10);
+    fill(limiter, 4);
+    try {
+      limiter.acquire("user");
+      fail("acquired a permit over the limit");
+    } catch (StandbyException e) {
+      // expected
+    }
+    assertEquals(4, limiter.inFlight);
+  }
+
+  @Test(timeout = 30000)
+  public void testReleaseGrantsWaiter() throws Exception {
+    AdaptiveLimiter limiter = limiter(4, 20000);
+    fill(limiter, 4);
+    CountDownLatch granted = new CountDownLatch(1);
+    AtomicBoolean rejected = new AtomicBoolean();
+    Thread waiter = new Thread(() -> {
+      try {
+        limiter.acquire("other");
+        granted.countDown();
+      } catch (StandbyException e) {
+        rejected.set(true);
+      }
+    });
+    waiter.start();
+    while (true) {
+      synchronized (limiter) {
+        if (limiter.waiting == 1) {
+          break;
+        }
+      }
+      Thread.sleep(1);
+    }
+    limiter.release(System.nanoTime(), false, null);
+    granted.await();
+    waiter.join();
+    assertEquals(false, rejected.get());
+    assertEquals(4, limiter.inFlight);
+  }
+
+  @Test
+  public void testBackoffOncePerInterval() {
+    AdaptiveLimiter limiter = limiter(100, 10);
+    RemoteException overloaded =
+        new RemoteException(StandbyException.class.getName(), "overloaded");
+    limiter.inFlight = 2;
+    limiter.release(System.nanoTime(), true, overloaded);
+    assertEquals(90, (int) limiter.limit);
+    limiter.release(System.nanoTime(), true, overloaded);
+    assertEquals(90, (int) limiter.limit);
+  }
+
+  @Test
+  public void testMixedLatencyKeepsLimit() throws Exception {
+    AdaptiveLimiter limiter = limiter(64, 10);
+    fill(limiter, 64);
+    // cheap and expensive calls interleaved, as getFileInfo and getListing
+    windows(limiter, System.nanoTime(), 200, MS, 20 * MS, MS, MS, 5 * MS);
+    assertTrue("limit " + limiter.limit, limiter.limit > 64);
+  }
+
+  @Test
+  public void testQueueingShrinksLimit() throws Exception {
+    AdaptiveLimiter limiter = limiter(64, 10);
+    fill(limiter, 64);
+    long now = windows(limiter, System.nanoTime(), 20, MS);
+    double before = limiter.limit;
+    windows(limiter, now, 20, 10 * MS);
+    assertTrue("limit " + limiter.limit, limiter.limit < before / 2);
+  }
+
+  @Test
+  public void testIdleLimitDoesNotGrow() {
+    AdaptiveLimiter limiter = limiter(64, 10);
+    windows(limiter, System.nanoTime(), 100, MS);
+    assertEquals(64, (int) limiter.limit);
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.db.Database;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the lookups, detaching and cache coupling of {@link INodeChildIndex}. */
+public class TestINodeChildIndex {
+  private INodeChildIndex index;
+  private INodeDirectory root;
+  private INodeDirectory a;
+  private INodeDirectory b;
+  private INodeDirectory f;
+  private INodeDirectory ab;
+
+  @BeforeClass
+  public static void setUpDatabase() {
+    // creating an inode queues its row in the write-behind log
+    Database.init("MEMORY");
+  }
+
+  private static INodeDirectory dir(long id, String name, String parentName) {
+    PermissionStatus perm = new PermissionStatus("user", "group", FsPermission.getDefault());
+    return new INodeDirectory(id, DFSUtil.string2Bytes(name), perm, 0L, parentName);
+  }
+
+  private static byte[] bytes(String name) {
+    return DFSUtil.string2Bytes(name);
+  }
+
+  // /, /a, /a/b, /a/b/f and /ab
+  @Before
+  public void setUp() {
+    index = new INodeChildIndex();
+    root = dir(1L << 41, "", " ");
+    a = dir(root.getId() + 1, "a", "/");
+    b = dir(root.getId() + 2, "b", "/a");
+    f = dir(root.getId() + 3, "f", "/a/b");
+    ab = dir(root.getId() + 4, "ab", "/");
+    index.put(root, a);
+    index.put(a, b);
+    index.put(b, f);
+    index.put(root, ab);
+  }
+
+  @Test
+  public void testGet() {
+    assertSame(a, index.get(root.getId(), bytes("a")));
+    assertSame(f, index.get(b.getId(), bytes("f")));
+    assertSame(ab, index.get(root.getId(), bytes("ab")));
+    assertEquals(3, index.getHitCount());
+    assertNull(index.get(root.getId(), bytes("x")));
+    // the name is looked up under its own parent only
+    assertNull(index.get(a.getId(), bytes("f")));
+    assertEquals(2, index.getMissCount());
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  public void testDetachedDirectoryMisses() {
+    index.detach(a.getId());
+    assertNull(index.get(root.getId(), bytes("a")));
+    // the entries below it are cut off with it, at any depth
+    assertNull(index.get(a.getId(), bytes("b")));
+    assertNull(index.get(b.getId(), bytes("f")));
+    // and dropped once looked up
+    assertEquals(1, index.size());
+    // a sibling sharing the prefix of its name is not below it
+    assertSame(ab, index.get(root.getId(), bytes("ab")));
+  }
+
+  @Test
+  public void testRePutAfterRename() {
+    // /a renamed to /x
+    index.detach(a.getId());
+    a.setLocalName(bytes("x"));
+    index.put(root, a);
+    assertSame(a, index.get(root.getId(), bytes("x")));
+    assertNull(index.get(root.getId(), bytes("a")));
+
+    // the subtree misses until it is resolved again below the new entry
+    assertNull(index.get(a.getId(), bytes("b")));
+    index.put(a, b);
+    index.put(b, f);
+    assertSame(b, index.get(a.getId(), bytes("b")));
+    assertSame(f, index.get(b.getId(), bytes("f")));
+
+    // a later detach of the renamed directory reaches the entries put below it
+    index.detach(a.getId());
+    assertNull(index.get(b.getId(), bytes("f")));
+  }
+
+  @Test
+  public void testRemove() {
+    // an inode that is not the one indexed leaves the entry alone
+    index.remove(dir(b.getId(), "b", "/a"));
+    assertSame(b, index.get(a.getId(), bytes("b")));
+    index.remove(b);
+    assertNull(index.get(a.getId(), bytes("b")));
+    // a put under the same key replaces the entry of the old inode
+    INodeDirectory c = dir(root.getId() + 5, "ab", "/");
+    index.put(root, c);
+    assertSame(c, index.get(root.getId(), bytes("ab")));
+    index.remove(ab);
+    assertSame(c, index.get(root.getId(), bytes("ab")));
+  }
+
+  // a cache wired to the index as INodeKeyedObjects wires the inode cache
+  private IndexedCache<String, INode> cache(int size) {
+    return new IndexedCache.Builder<String, INode>()
+        .withIndex(Long.class, (path, inode) -> inode.getId())
+        .withWriteListener((k, v) -> index.onCacheWrite(v))
+        .withDeleteListener((k, v) -> index.onCacheDelete(v))
+        .buildFromCaffeine(Caffeine.newBuilder().maximumSize(size).executor(Runnable::run));
+  }
+
+  @Test
+  public void testDroppedOnOverwrite() {
+    IndexedCache<String, INode> cache = cache(100);
+    cache.put("/a", a);
+    // writing the inode that is indexed keeps its entry
+    cache.put("/a", a);
+    assertSame(a, index.get(root.getId(), bytes("a")));
+
+    // a new copy of the inode replaces it in the cache
+    cache.put("/a", dir(a.getId(), "a", "/"));
+    assertNull(index.get(root.getId(), bytes("a")));
+
+    cache.put("/a/b", b);
+    cache.invalidate("/a/b");
+    assertNull(index.get(a.getId(), bytes("b")));
+  }
+
+  @Test
+  public void testDroppedOnEviction() {
+    IndexedCache<String, INode> cache = cache(4);
+    INodeDirectory[] files = new INodeDirectory[64];
+    for (int i = 0; i < files.length; ++i) {
+      files[i] = dir(root.getId() + 100 + i, "f" + i, "/");
+      // indexed first, as the cache may evict the new entry as soon as it is written
+      index.put(root, files[i]);
+      cache.put("/f" + i, files[i]);
+    }
+    cache.cleanUp();
+    int resident = 0;
+    for (int i = 0; i < files.length; ++i) {
+      boolean cached = cache.getIfPresent("/f" + i) == files[i];
+      INode indexed = index.get(root.getId(), bytes("f" + i));
+      if (cached) {
+        resident++;
+        assertSame(files[i], indexed);
+      } else {
+        assertNull("/f" + i, indexed);
+      }
+    }
+    assertTrue(resident <= 4);
+  }
+}
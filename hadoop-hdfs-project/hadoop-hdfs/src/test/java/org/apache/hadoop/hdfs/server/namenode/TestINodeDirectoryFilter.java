@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.db.Database;
+import org.apache.hadoop.hdfs.db.DatabaseINodeFilter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the growth, rebuild thresholds and serialization of {@link INodeDirectoryFilter}, and
+ * how {@link INodeDirectory} keeps the stored copy of its filter in step with its children.
+ */
+public class TestINodeDirectoryFilter {
+
+  @BeforeClass
+  public static void setUpDatabase() {
+    // the stored filters are kept in memory
+    Database.init("MEMORY");
+  }
+
+  private static List<String> names(String prefix, int n) {
+    List<String> names = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      names.add(prefix + i);
+    }
+    return names;
+  }
+
+  @Test
+  public void testNoFalseNegativesAcrossGrowth() {
+    INodeDirectoryFilter filter = INodeDirectoryFilter.build(names("a", 10));
+    List<String> added = names("f", 5000);
+    for (String name : added) {
+      filter.put(name);
+    }
+    for (String name : names("a", 10)) {
+      assertTrue(name, filter.mightContain(name));
+    }
+    for (String name : added) {
+      assertTrue(name, filter.mightContain(name));
+    }
+    assertEquals(5010, filter.getCount());
+  }
+
+  @Test
+  public void testNeedsRebuild() {
+    INodeDirectoryFilter filter = INodeDirectoryFilter.build(names("f", 100));
+    assertFalse(filter.needsRebuild());
+    // a single filter deletes names for real
+    for (int i = 0; i < 60; ++i) {
+      filter.delete("f" + i);
+    }
+    assertFalse(filter.needsRebuild());
+    assertEquals(40, filter.getCount());
+    // deletions that cannot be made count until they outnumber half the names
+    for (int i = 0; i < 20; ++i) {
+      filter.skipDelete();
+    }
+    assertFalse(filter.needsRebuild());
+    filter.skipDelete();
+    assertTrue(filter.needsRebuild());
+
+    // a chain grown past its limit
+    filter = INodeDirectoryFilter.build(Collections.<String>emptyList());
+    for (String name : names("g", 10000)) {
+      filter.put(name);
+    }
+    assertTrue(filter.needsRebuild());
+  }
+
+  @Test
+  public void testDeleteInChainIsCounted() {
+    INodeDirectoryFilter filter = INodeDirectoryFilter.build(Collections.<String>emptyList());
+    List<String> added = names("f", 200);
+    for (String name : added) {
+      filter.put(name);
+    }
+    long count = filter.getCount();
+    filter.delete("f0");
+    // with several filters nothing is deleted, so no other name can be hidden
+    assertEquals(count, filter.getCount());
+    for (String name : added) {
+      assertTrue(name, filter.mightContain(name));
+    }
+  }
+
+  @Test
+  public void testBytesRoundTrip() throws Exception {
+    INodeDirectoryFilter filter = INodeDirectoryFilter.build(names("a", 10));
+    List<String> added = names("f", 500);
+    for (String name : added) {
+      filter.put(name);
+    }
+    filter.skipDelete();
+    assertFalse(filter.isStored());
+
+    INodeDirectoryFilter read = INodeDirectoryFilter.fromBytes(filter.toBytes());
+    assertNotNull(read);
+    assertTrue(read.isStored());
+    assertEquals(filter.getCount(), read.getCount());
+    assertEquals(filter.needsRebuild(), read.needsRebuild());
+    for (String name : added) {
+      assertTrue(name, read.mightContain(name));
+    }
+    // the filter read back keeps growing like the original
+    read.put("g");
+    assertTrue(read.mightContain("g"));
+
+    assertNull(INodeDirectoryFilter.fromBytes(new byte[] {1, 2, 3}));
+  }
+
+  private static INodeDirectory directory(long id) {
+    PermissionStatus perm = new PermissionStatus("user", "group", FsPermission.getDefault());
+    return new INodeDirectory(id, DFSUtil.string2Bytes("d" + id), perm, 0L, "/");
+  }
+
+  @Test
+  public void testQueuedFilterIsNotStoredAfterChange() throws Exception {
+    long id = 1L << 40;
+    INodeDirectory dir = directory(id);
+    dir.initEmptyChildrenList();
+    dir.addChildName("a");
+    for (int i = 0; i < 200; ++i) {
+      // evicted, then changed while its write may still be queued
+      dir.persistFilter();
+      String name = "f" + i;
+      dir.addChildName(name);
+      INodeDirectory.awaitFilterWrites();
+      // whether the write ran before the change or was dropped, nothing is left stored
+      assertNull(name, DatabaseINodeFilter.getFilter(id));
+    }
+
+    dir.persistFilter();
+    INodeDirectory.awaitFilterWrites();
+    INodeDirectoryFilter stored =
+        INodeDirectoryFilter.fromBytes(DatabaseINodeFilter.getFilter(id));
+    assertNotNull(stored);
+    assertTrue(stored.mightContain("a"));
+    for (int i = 0; i < 200; ++i) {
+      assertTrue(stored.mightContain("f" + i));
+    }
+
+    // a change drops the stored copy before it is made
+    dir.removeChildName("a");
+    assertNull(DatabaseINodeFilter.getFilter(id));
+  }
+
+  @Test
+  public void testReloadTakesQueuedFilterOver() throws Exception {
+    long id = (1L << 40) + 1;
+    INodeDirectory dir = directory(id);
+    dir.initEmptyChildrenList();
+    dir.addChildName("a");
+    dir.persistFilter();
+    // loaded again, whether or not the write has run
+    assertTrue(directory(id).getFilter().mightContain("a"));
+    INodeDirectory.awaitFilterWrites();
+    assertTrue(directory(id).getFilter().mightContain("a"));
+  }
+}
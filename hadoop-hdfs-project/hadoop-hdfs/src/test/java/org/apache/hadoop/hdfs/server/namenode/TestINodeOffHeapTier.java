@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.hdfs.db.DatabaseINode.LoadINode;
+import org.junit.Test;
+
+/** Tests the lookups, removals and recycling of {@link INodeOffHeapTier}. */
+public class TestINodeOffHeapTier {
+
+  private static LoadINode row(long id) {
+    return new LoadINode(1, null, id, null, 0644, 2, 3, 4, null, null);
+  }
+
+  @Test
+  public void testPutAndGet() {
+    INodeOffHeapTier tier = new INodeOffHeapTier(2 << 20, 1 << 20);
+    tier.put("/a/b", new LoadINode(7, null, 8, null, 0644, 2, 3, 4, "client", "host"));
+    LoadINode row = tier.get("/a/b");
+    assertNotNull(row);
+    assertEquals(7, row.parent);
+    assertEquals(8, row.id);
+    assertEquals("/a", row.parentName);
+    assertEquals("b", row.name);
+    assertEquals(4, row.header);
+    assertEquals("client", row.clientName);
+    assertEquals("host", row.clientMachine);
+    assertNull(tier.get("/a/c"));
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    INodeOffHeapTier tier = new INodeOffHeapTier(2 << 20, 1 << 20);
+    tier.put("/a", row(1));
+    tier.put("/a", row(2));
+    assertEquals(1, tier.size());
+    assertEquals(2, tier.get("/a").id);
+    tier.remove("/a");
+    assertNull(tier.get("/a"));
+    assertEquals(0, tier.size());
+  }
+
+  @Test
+  public void testRemoveKeepsCollidingRows() {
+    INodeOffHeapTier tier = new INodeOffHeapTier(2 << 20, 1 << 20);
+    // enough rows to fill runs of probed slots
+    for (int i = 0; i < 5000; ++i) {
+      tier.put("/d/f" + i, row(i));
+    }
+    for (int i = 0; i < 5000; i += 2) {
+      tier.remove("/d/f" + i);
+    }
+    for (int i = 0; i < 5000; ++i) {
+      LoadINode row = tier.get("/d/f" + i);
+      if (i % 2 == 0) {
+        assertNull(row);
+      } else {
+        assertNotNull("/d/f" + i, row);
+        assertEquals(i, row.id);
+      }
+    }
+  }
+
+  @Test
+  public void testRemoveSubtree() {
+    INodeOffHeapTier tier = new INodeOffHeapTier(2 << 20, 1 << 20);
+    tier.put("/a", row(1));
+    tier.put("/a/b", row(2));
+    tier.put("/a/b/c", row(3));
+    tier.put("/ab", row(4));
+    tier.removeSubtree("/a");
+    assertNotNull(tier.get("/a"));
+    assertNull(tier.get("/a/b"));
+    assertNull(tier.get("/a/b/c"));
+    assertNotNull(tier.get("/ab"));
+    // spilled again after the subtree was dropped
+    tier.put("/a/b", row(5));
+    assertEquals(5, tier.get("/a/b").id);
+  }
+
+  @Test
+  public void testRecycleDropsOldestSlab() {
+    INodeOffHeapTier tier = new INodeOffHeapTier(2 << 20, 1 << 20);
+    int n = 60000;
+    for (int i = 0; i < n; ++i) {
+      tier.put("/f" + i, row(i));
+    }
+    assertNull(tier.get("/f0"));
+    assertEquals(n - 1, tier.get("/f" + (n - 1)).id);
+    assertEquals(tier.size(), countLive(tier, n));
+  }
+
+  private static int countLive(INodeOffHeapTier tier, int n) {
+    int live = 0;
+    for (int i = 0; i < n; ++i) {
+      if (tier.get("/f" + i) != null) {
+        ++live;
+      }
+    }
+    return live;
+  }
+}
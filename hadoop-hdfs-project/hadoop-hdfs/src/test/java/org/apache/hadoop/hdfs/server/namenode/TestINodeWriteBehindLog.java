@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.hdfs.db.DatabaseINode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the checkpointing and retries of {@link INodeWriteBehindLog}. Only removes are logged, so
+ * that no inode or database is needed.
+ */
+public class TestINodeWriteBehindLog {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Records the removed paths; the first {@code failures} calls fail. */
+  private static class RecordingStore implements INodeWriteBehindLog.Store {
+    final List<String> removed = Collections.synchronizedList(new ArrayList<String>());
+    final AtomicInteger failures;
+
+    RecordingStore(int failures) {
+      this.failures = new AtomicInteger(failures);
+    }
+
+    @Override
+    public String update(List<DatabaseINode.LoadINode> rows) {
+      return null;
+    }
+
+    @Override
+    public String rename(List<DatabaseINode.LoadINode> rows) {
+      return null;
+    }
+
+    @Override
+    public String remove(List<String> paths) throws SQLException {
+      if (failures.getAndDecrement() > 0) {
+        throw new SQLException("injected failure");
+      }
+      removed.addAll(paths);
+      return null;
+    }
+  }
+
+  private INodeJournal journal(File dir) throws Exception {
+    return new INodeJournal(dir, 1 << 20, false);
+  }
+
+  /** @return the paths a restarted namenode would replay from the journal in {@code dir}. */
+  private List<String> replayed(File dir) throws Exception {
+    List<String> paths = new ArrayList<>();
+    for (INodeJournal.Entry e : journal(dir).recover()) {
+      paths.add(e.path);
+    }
+    return paths;
+  }
+
+  @Test(timeout = 30000)
+  public void testCheckpointAfterFlush() throws Exception {
+    File dir = folder.newFolder();
+    RecordingStore store = new RecordingStore(0);
+    INodeWriteBehindLog log = new INodeWriteBehindLog(journal(dir), 16, 4, 0, 3, store);
+    log.start();
+    log.remove("/a");
+    log.remove("/b");
+    log.remove("/c");
+    log.sync();
+    log.flush();
+
+    assertEquals(3, store.removed.size());
+    assertEquals(Collections.emptyList(), replayed(dir));
+  }
+
+  @Test(timeout = 30000)
+  public void testUnsyncedDeltasAreJournaled() throws Exception {
+    File dir = folder.newFolder();
+    CountDownLatch release = new CountDownLatch(1);
+    INodeWriteBehindLog.Store blocked = new RecordingStore(0) {
+      @Override
+      public String remove(List<String> paths) throws SQLException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+        return super.remove(paths);
+      }
+    };
+    INodeWriteBehindLog log = new INodeWriteBehindLog(journal(dir), 16, 1, 0, 3, blocked);
+    log.start();
+    // no sync: the flusher journals the delta before it writes it
+    log.remove("/a");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    List<String> paths = replayed(dir);
+    while (paths.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      paths = replayed(dir);
+    }
+    assertEquals(Collections.singletonList("/a"), paths);
+    release.countDown();
+    log.flush();
+  }
+
+  @Test(timeout = 30000)
+  public void testCheckpointStopsAtUnflushedDelta() throws Exception {
+    File dir = folder.newFolder();
+    CountDownLatch firstCall = new CountDownLatch(1);
+    CountDownLatch secondCall = new CountDownLatch(1);
+    CountDownLatch releaseFirst = new CountDownLatch(1);
+    CountDownLatch releaseSecond = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    INodeWriteBehindLog.Store store = new RecordingStore(0) {
+      @Override
+      public String remove(List<String> paths) throws SQLException {
+        try {
+          if (calls.incrementAndGet() == 1) {
+            firstCall.countDown();
+            releaseFirst.await();
+          } else {
+            secondCall.countDown();
+            releaseSecond.await();
+          }
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+        return super.remove(paths);
+      }
+    };
+    INodeWriteBehindLog log = new INodeWriteBehindLog(journal(dir), 16, 1, 0, 3, store);
+    log.start();
+    log.remove("/a");
+    firstCall.await();
+    // appended while the group of /a is being written
+    log.remove("/b");
+    log.sync();
+    releaseFirst.countDown();
+    secondCall.await();
+
+    // /a is in the database, /b is not yet
+    assertEquals(Collections.singletonList("/b"), replayed(dir));
+    releaseSecond.countDown();
+    log.flush();
+  }
+
+  @Test(timeout = 30000)
+  public void testFailedGroupIsRetried() throws Exception {
+    File dir = folder.newFolder();
+    RecordingStore store = new RecordingStore(2);
+    INodeWriteBehindLog log = new INodeWriteBehindLog(journal(dir), 16, 4, 0, 3, store);
+    log.start();
+    log.remove("/a");
+    log.sync();
+    log.flush();
+
+    assertEquals(Collections.singletonList("/a"), store.removed);
+    assertEquals(2, log.getRetryCount());
+    assertEquals(Collections.emptyList(), replayed(dir));
+  }
+
+  @Test(timeout = 30000)
+  public void testUnwrittenChildren() throws Exception {
+    File dir = folder.newFolder();
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    INodeWriteBehindLog.Store blocked = new RecordingStore(0) {
+      @Override
+      public String remove(List<String> paths) throws SQLException {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+        return super.remove(paths);
+      }
+    };
+    INodeWriteBehindLog log = new INodeWriteBehindLog(journal(dir), 16, 1, 0, 3, blocked);
+    log.start();
+    log.remove("/d/a");
+    writing.await();
+    // /d/a is being written, /d/b is still queued
+    log.remove("/d/b");
+    log.remove("/d/b/c");
+    log.remove("/e/a");
+
+    Map<String, Boolean> children = log.getUnwrittenChildren("/d");
+    assertEquals(2, children.size());
+    assertEquals(Boolean.FALSE, children.get("a"));
+    assertEquals(Boolean.FALSE, children.get("b"));
+    assertEquals(0, log.getUnwrittenChildren("/").size());
+    release.countDown();
+    log.flush();
+    assertEquals(0, log.getUnwrittenChildren("/d").size());
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.server.namenode.INodeKeyedObjects.subtreeEnd;
+import static org.apache.hadoop.hdfs.server.namenode.INodeKeyedObjects.subtreeStart;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests the ordered key index of {@link IndexedCache} and the subtree ranges scanned in it, and
+ * that its secondary indexes hold the resident keys only.
+ */
+public class TestIndexedCache {
+
+  // /a-b sorts before /a/, and /a0 and /ab after /a/ and its subtree
+  private static final List<String> PATHS = Arrays.asList(
+      "/", "/a", "/a-b", "/a/b", "/a/b/c", "/a0", "/ab", "/b", "/b/a");
+
+  private static IndexedCache<String, String> orderedCache() {
+    IndexedCache<String, String> cache = new IndexedCache.Builder<String, String>()
+        .withOrderedKeys()
+        .buildFromCaffeine(Caffeine.newBuilder().executor(Runnable::run));
+    for (String path : PATHS) {
+      cache.put(path, path);
+    }
+    return cache;
+  }
+
+  private static List<String> below(IndexedCache<String, String> cache, String path) {
+    return new ArrayList<>(cache.keyRange(subtreeStart(path), subtreeEnd(path)));
+  }
+
+  @Test
+  public void testSubtreeRange() {
+    IndexedCache<String, String> cache = orderedCache();
+    assertEquals(Arrays.asList("/a/b", "/a/b/c"), below(cache, "/a"));
+    assertEquals(Collections.singletonList("/a/b/c"), below(cache, "/a/b"));
+    assertEquals(Collections.singletonList("/b/a"), below(cache, "/b"));
+    // a sibling sharing the prefix of the name is not below it
+    assertEquals(Collections.<String>emptyList(), below(cache, "/ab"));
+    assertEquals(Collections.<String>emptyList(), below(cache, "/a/b/c"));
+    // everything but the root itself is below the root
+    assertEquals(PATHS.subList(1, PATHS.size()), below(cache, "/"));
+  }
+
+  @Test
+  public void testInvalidateRange() {
+    IndexedCache<String, String> cache = orderedCache();
+    assertEquals(2, cache.invalidateRange(subtreeStart("/a"), subtreeEnd("/a")));
+    assertNull(cache.getIfPresent("/a/b"));
+    assertNull(cache.getIfPresent("/a/b/c"));
+    assertNotNull(cache.getIfPresent("/a"));
+    assertNotNull(cache.getIfPresent("/a-b"));
+    assertNotNull(cache.getIfPresent("/a0"));
+    assertNotNull(cache.getIfPresent("/ab"));
+    assertEquals(Collections.<String>emptyList(), below(cache, "/a"));
+
+    // keys written again are found by the next scan
+    cache.put("/a/b", "/a/b");
+    assertEquals(Collections.singletonList("/a/b"), below(cache, "/a"));
+
+    assertEquals(PATHS.size() - 2, cache.invalidateRange(subtreeStart("/"), subtreeEnd("/")));
+    assertNotNull(cache.getIfPresent("/"));
+    assertEquals(1, cache.estimatedSize());
+  }
+
+  @Test
+  public void testKeysLeaveTheRangeOnEviction() {
+    IndexedCache<String, String> cache = new IndexedCache.Builder<String, String>()
+        .withOrderedKeys()
+        .buildFromCaffeine(Caffeine.newBuilder().maximumSize(4).executor(Runnable::run));
+    for (int i = 0; i < 64; ++i) {
+      cache.put("/d/f" + i, "f" + i);
+    }
+    cache.cleanUp();
+    for (String key : cache.keyRange(subtreeStart("/d"), subtreeEnd("/d"))) {
+      assertNotNull(key, cache.getIfPresent(key));
+    }
+    assertEquals(cache.estimatedSize(), below(cache, "/d").size());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testRangeNeedsOrderedKeys() {
+    new IndexedCache.Builder<String, String>()
+        .buildFromCaffeine(Caffeine.newBuilder())
+        .keyRange("/", "0");
+  }
+
+  // caches the ids of inodes by path, indexed by id as the inode cache is
+  private static IndexedCache<String, Long> idCache(long size) {
+    return new IndexedCache.Builder<String, Long>()
+        .withIndex(Long.class, (path, id) -> id < 0 ? null : id)
+        .buildFromCaffeine(Caffeine.newBuilder().maximumSize(size).executor(Runnable::run));
+  }
+
+  @Test
+  public void testIndexPrunedOnOverwrite() {
+    IndexedCache<String, Long> cache = idCache(100);
+    cache.put("/a", 1000L);
+    assertEquals(1000L, (long) cache.getIfPresent(Long.class, 1000L));
+    // a new value for the key moves it to the index entry of that value
+    cache.put("/a", 1001L);
+    assertNull(cache.getIfPresent(Long.class, 1000L));
+    assertEquals(1001L, (long) cache.getIfPresent(Long.class, 1001L));
+    assertTrue(cache.indexedKeys(Long.class, 1000L).isEmpty());
+    assertEquals(1, cache.indexSize(Long.class));
+    // an equal value written again is indexed once
+    cache.put("/a", new Long(1001L));
+    assertEquals(Collections.singleton("/a"), cache.indexedKeys(Long.class, 1001L));
+  }
+
+  @Test
+  public void testIndexPrunedOnInvalidate() {
+    IndexedCache<String, Long> cache = idCache(100);
+    // an inode cached under its old and its new path
+    cache.put("/a", 1000L);
+    cache.put("/b", 1000L);
+    assertEquals(2, cache.indexedKeys(Long.class, 1000L).size());
+    cache.invalidate("/a");
+    assertEquals(Collections.singleton("/b"), cache.indexedKeys(Long.class, 1000L));
+    assertEquals(1000L, (long) cache.getIfPresent(Long.class, 1000L));
+    cache.invalidateAllWithIndex(Long.class, 1000L);
+    assertNull(cache.getIfPresent("/b"));
+    assertEquals(0, cache.indexSize(Long.class));
+
+    // a null from the index function leaves the entry out of the index
+    cache.put("/c", -1L);
+    assertEquals(-1L, (long) cache.getIfPresent("/c"));
+    assertEquals(0, cache.indexSize(Long.class));
+  }
+
+  @Test
+  public void testIndexPrunedOnEviction() {
+    IndexedCache<String, Long> cache = idCache(4);
+    for (long id = 0; id < 64; ++id) {
+      cache.put("/f" + id, id);
+    }
+    cache.cleanUp();
+    int resident = 0;
+    for (long id = 0; id < 64; ++id) {
+      if (cache.getIfPresent("/f" + id) != null) {
+        resident++;
+        assertEquals(id, (long) cache.getIfPresent(Long.class, id));
+      } else {
+        // an evicted key is neither found nor kept by the index
+        assertNull(cache.getIfPresent(Long.class, id));
+        assertTrue(cache.indexedKeys(Long.class, id).isEmpty());
+      }
+    }
+    assertTrue(resident <= 4);
+    assertEquals(resident, cache.indexSize(Long.class));
+  }
+}